@@ -0,0 +1,101 @@
+package com.skiwi.rovcontrolsoftware.benchmarks;
+
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+import com.skiwi.rovcontrolsoftware.commands.CommandProtocol;
+import com.skiwi.rovcontrolsoftware.commands.NioCommandChannel;
+import com.skiwi.rovcontrolsoftware.commands.TextCommandProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sending a batch of commands through a {@link NioCommandChannel} to a loopback sink that discards everything, until
+ * the I/O thread has written the whole batch to the socket.
+ *
+ * @author Frank van Heeswijk
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandChannelBenchmark {
+    private static final Actuator[] ACTUATORS = Actuator.values();
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    private ServerSocketChannel serverSocketChannel;
+    private Thread sinkThread;
+    private NioCommandChannel commandChannel;
+
+    private long batchBytes;
+    private long expectedBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        sinkThread = new Thread(this::drain, "loopback-sink");
+        sinkThread.setDaemon(true);
+        sinkThread.start();
+
+        CommandProtocol commandProtocol = new TextCommandProtocol();
+        ByteBuffer scratch = ByteBuffer.allocate(commandProtocol.getMaxFrameSize() * ACTUATORS.length);
+        for (Actuator actuator : ACTUATORS) {
+            commandProtocol.encode(actuator, value(actuator), scratch);
+        }
+        batchBytes = scratch.position();
+        commandChannel = NioCommandChannel.open((InetSocketAddress)serverSocketChannel.getLocalAddress(), CONNECT_TIMEOUT, commandProtocol);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        commandChannel.close();
+        serverSocketChannel.close();
+    }
+
+    private static int value(Actuator actuator) {
+        return 1000 + actuator.ordinal();
+    }
+
+    private void drain() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(65536);
+        try (SocketChannel socketChannel = serverSocketChannel.accept()) {
+            while (socketChannel.read(buffer) >= 0) {
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            //closed by the tear down
+        }
+    }
+
+    @Benchmark
+    public long sendBatch() throws IOException {
+        for (Actuator actuator : ACTUATORS) {
+            commandChannel.send(actuator, value(actuator));
+        }
+        commandChannel.flush();
+        expectedBytes += batchBytes;
+        long written;
+        while ((written = commandChannel.getBytesWritten()) < expectedBytes) {
+            Thread.yield();
+        }
+        return written;
+    }
+}
@@ -0,0 +1,56 @@
+package com.skiwi.rovcontrolsoftware.benchmarks;
+
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+import com.skiwi.rovcontrolsoftware.commands.BinaryCommandProtocol;
+import com.skiwi.rovcontrolsoftware.commands.CommandProtocol;
+import com.skiwi.rovcontrolsoftware.commands.TextCommandProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a single command with each protocol.
+ *
+ * @author Frank van Heeswijk
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandProtocolBenchmark {
+    private static final Actuator[] ACTUATORS = Actuator.values();
+
+    @Param({"text", "binary"})
+    private String protocol;
+
+    private CommandProtocol commandProtocol;
+    private ByteBuffer buffer;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        commandProtocol = protocol.equals("text") ? new TextCommandProtocol() : new BinaryCommandProtocol(true);
+        buffer = ByteBuffer.allocateDirect(commandProtocol.getMaxFrameSize());
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        counter++;
+        buffer.clear();
+        commandProtocol.encode(ACTUATORS[counter % ACTUATORS.length], (counter * 37) % 20001 - 10000, buffer);
+        return buffer;
+    }
+}
@@ -0,0 +1,78 @@
+package com.skiwi.rovcontrolsoftware.benchmarks;
+
+import com.skiwi.rovcontrolsoftware.control.ControlEngine;
+import com.skiwi.rovcontrolsoftware.control.OutputStage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Motor mixing in the {@link ControlEngine}, straight to a sink and through the {@link OutputStage} the application
+ * puts in front of the connection.
+ *
+ * @author Frank van Heeswijk
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControlBenchmark {
+    private static final int INPUT_COUNT = 1024;
+
+    private final float[] inputs = new float[INPUT_COUNT];
+    private int index;
+
+    private ControlEngine directEngine;
+    private ControlEngine stagedEngine;
+    private OutputStage outputStage;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        for (int i = 0; i < INPUT_COUNT; i++) {
+            inputs[i] = (float)Math.sin(i * 2d * Math.PI / INPUT_COUNT);
+        }
+        directEngine = new ControlEngine((actuator, value, originTime) -> blackhole.consume(value));
+        directEngine.reset();
+        outputStage = new OutputStage((actuator, value, originTime) -> blackhole.consume(value), System::nanoTime);
+        ControlEngine.configureOutputStage(outputStage);
+        stagedEngine = new ControlEngine(outputStage);
+        stagedEngine.reset();
+    }
+
+    private float nextInput() {
+        index = (index + 1) & (INPUT_COUNT - 1);
+        return inputs[index];
+    }
+
+    @Benchmark
+    public void steering() {
+        directEngine.setSteering(nextInput());
+    }
+
+    @Benchmark
+    public void throttle() {
+        directEngine.setThrottle(nextInput());
+    }
+
+    @Benchmark
+    public void steeringThroughOutputStage() {
+        stagedEngine.setSteering(nextInput());
+    }
+
+    @Benchmark
+    public void controlLoopTick() {
+        outputStage.step(System.nanoTime(), 5_000_000L);
+    }
+}
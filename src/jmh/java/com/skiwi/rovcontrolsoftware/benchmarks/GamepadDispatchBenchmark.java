@@ -0,0 +1,159 @@
+package com.skiwi.rovcontrolsoftware.benchmarks;
+
+import com.skiwi.rovcontrolsoftware.gamepads.XboxGamepad;
+import com.skiwi.rovcontrolsoftware.gamepads.events.ButtonPressedEvent;
+import net.java.games.input.AbstractComponent;
+import net.java.games.input.AbstractController;
+import net.java.games.input.Component;
+import net.java.games.input.Controller;
+import net.java.games.input.Event;
+import net.java.games.input.Rumbler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw device event to listener dispatch through {@link XboxGamepad}, including the deadzones the application sets. The
+ * events come from a controller that replays preallocated values, so whatever the allocation profile shows is
+ * allocated on the input path itself.
+ *
+ * @author Frank van Heeswijk
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GamepadDispatchBenchmark {
+    private static final int EVENTS_PER_POLL = 64;
+
+    private ReplayController controller;
+    private XboxGamepad gamepad;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        float[] axisValues = new float[EVENTS_PER_POLL];
+        float[] buttonValues = new float[EVENTS_PER_POLL];
+        for (int i = 0; i < EVENTS_PER_POLL; i++) {
+            axisValues[i] = (float)Math.sin(i * 0.1d);
+            buttonValues[i] = i & 1;
+        }
+        controller = new ReplayController(axisValues, buttonValues);
+        gamepad = new XboxGamepad(controller, 1_000_000L, 1_000_000L);
+        gamepad.setDeadzone(XboxGamepad.Component.LEFT_STICK_X_AXIS, XboxGamepad.DeadzoneType.RADIAL, 0.25f);
+        gamepad.setDeadzone(XboxGamepad.Component.LEFT_STICK_Y_AXIS, XboxGamepad.DeadzoneType.RADIAL, 0.25f);
+        gamepad.setDeadzone(XboxGamepad.Component.TRIGGER_AXIS, XboxGamepad.DeadzoneType.LINEAR, 0.10f);
+        gamepad.addAxisListener(XboxGamepad.Component.LEFT_STICK_X_AXIS, (component, time, value) -> blackhole.consume(value));
+        gamepad.addAxisListener(XboxGamepad.Component.TRIGGER_AXIS, (component, time, value) -> blackhole.consume(value));
+        gamepad.addButtonListener(XboxGamepad.Component.A_BUTTON, ButtonPressedEvent.class, (component, time, clickTime) -> blackhole.consume(time));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_POLL)
+    public int stickEvents() {
+        controller.replay(ReplayController.STICK);
+        return gamepad.pollOnce();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_POLL)
+    public int triggerEvents() {
+        controller.replay(ReplayController.TRIGGER);
+        return gamepad.pollOnce();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_POLL)
+    public int buttonEvents() {
+        controller.replay(ReplayController.BUTTON);
+        return gamepad.pollOnce();
+    }
+
+    /**
+     * Delivers one of three preallocated event sequences per poll, for the left stick, the trigger or the A button,
+     * with the device identifiers an Xbox gamepad reports for them.
+     */
+    private static class ReplayController extends AbstractController {
+        private static final int STICK = 0;
+        private static final int TRIGGER = 1;
+        private static final int BUTTON = 2;
+
+        private final Component[] components;
+        private final float[][] values;
+
+        //only accessed from the benchmark thread
+        private int replayedComponent;
+        private int nextValue;
+        private long time;
+
+        private ReplayController(float[] axisValues, float[] buttonValues) {
+            super("Benchmark", new Component[] {
+                new ReplayComponent("LEFT_STICK_X_AXIS", Component.Identifier.Axis.X, true),
+                new ReplayComponent("TRIGGER_AXIS", Component.Identifier.Axis.Z, true),
+                new ReplayComponent("A_BUTTON", Component.Identifier.Button._0, false)
+            }, new Controller[0], new Rumbler[0]);
+            this.components = getComponents();
+            this.values = new float[][] { axisValues, axisValues, buttonValues };
+            setEventQueueSize(EVENTS_PER_POLL);
+        }
+
+        @Override
+        public Type getType() {
+            return Type.GAMEPAD;
+        }
+
+        /**
+         * Makes the next poll deliver the whole sequence of the given component.
+         */
+        private void replay(int component) {
+            replayedComponent = component;
+            nextValue = 0;
+        }
+
+        @Override
+        protected boolean getNextDeviceEvent(Event event) {
+            float[] componentValues = values[replayedComponent];
+            if (nextValue >= componentValues.length) {
+                return false;
+            }
+            event.set(components[replayedComponent], componentValues[nextValue++], time++);
+            return true;
+        }
+    }
+
+    private static class ReplayComponent extends AbstractComponent {
+        private final boolean analog;
+
+        private ReplayComponent(String name, Identifier identifier, boolean analog) {
+            super(name, identifier);
+            this.analog = analog;
+        }
+
+        @Override
+        public boolean isAnalog() {
+            return analog;
+        }
+
+        @Override
+        public boolean isRelative() {
+            return false;
+        }
+
+        @Override
+        protected float poll() {
+            return getPollData();
+        }
+    }
+}
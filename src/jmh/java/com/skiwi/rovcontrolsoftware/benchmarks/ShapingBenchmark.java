@@ -0,0 +1,95 @@
+package com.skiwi.rovcontrolsoftware.benchmarks;
+
+import com.skiwi.rovcontrolsoftware.gamepads.XboxGamepad;
+import com.skiwi.rovcontrolsoftware.gamepads.shaping.InputShaper;
+import com.skiwi.rovcontrolsoftware.gamepads.shaping.LinearDeadzone;
+import com.skiwi.rovcontrolsoftware.gamepads.shaping.ScaledRadialDeadzone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Radial and linear deadzone shaping, on their own and through the compiled {@link InputShaper}. Inputs cycle through a
+ * fixed set of random stick positions, a quarter of them inside the deadzone.
+ *
+ * @author Frank van Heeswijk
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShapingBenchmark {
+    private static final int INPUT_COUNT = 1024;
+    private static final float DEADZONE = 0.25f;
+
+    private final float[] xValues = new float[INPUT_COUNT];
+    private final float[] yValues = new float[INPUT_COUNT];
+    private int index;
+
+    private final ScaledRadialDeadzone radialDeadzone = new ScaledRadialDeadzone(DEADZONE);
+    private final LinearDeadzone linearDeadzone = new LinearDeadzone(DEADZONE);
+    private final float[] stickOutput = new float[2];
+
+    private InputShaper inputShaper;
+    private final float[] rawValues = new float[XboxGamepad.Component.values().length];
+    private final float[] shapedValues = new float[XboxGamepad.Component.values().length];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42L);
+        for (int i = 0; i < INPUT_COUNT; i++) {
+            float scale = (i % 4 == 0) ? DEADZONE / 2f : 1f;
+            xValues[i] = (random.nextFloat() * 2f - 1f) * scale;
+            yValues[i] = (random.nextFloat() * 2f - 1f) * scale;
+        }
+        inputShaper = InputShaper.builder()
+                .stickFilter(XboxGamepad.Component.LEFT_STICK_X_AXIS, XboxGamepad.Component.LEFT_STICK_Y_AXIS, radialDeadzone)
+                .axisFilter(XboxGamepad.Component.TRIGGER_AXIS, linearDeadzone)
+                .build();
+    }
+
+    private int nextIndex() {
+        index = (index + 1) & (INPUT_COUNT - 1);
+        return index;
+    }
+
+    @Benchmark
+    public float[] radialDeadzone() {
+        int i = nextIndex();
+        radialDeadzone.apply(xValues[i], yValues[i], stickOutput);
+        return stickOutput;
+    }
+
+    @Benchmark
+    public float linearDeadzone() {
+        return linearDeadzone.apply(xValues[nextIndex()]);
+    }
+
+    @Benchmark
+    public float[] shapeStick() {
+        int i = nextIndex();
+        rawValues[XboxGamepad.Component.LEFT_STICK_X_AXIS.ordinal()] = xValues[i];
+        rawValues[XboxGamepad.Component.LEFT_STICK_Y_AXIS.ordinal()] = yValues[i];
+        inputShaper.shape(XboxGamepad.Component.LEFT_STICK_X_AXIS.ordinal(), rawValues, shapedValues);
+        return shapedValues;
+    }
+
+    @Benchmark
+    public float[] shapeTrigger() {
+        rawValues[XboxGamepad.Component.TRIGGER_AXIS.ordinal()] = xValues[nextIndex()];
+        inputShaper.shape(XboxGamepad.Component.TRIGGER_AXIS.ordinal(), rawValues, shapedValues);
+        return shapedValues;
+    }
+}
@@ -0,0 +1,198 @@
+package com.skiwi.rovcontrolsoftware;
+
+import com.skiwi.rovcontrolsoftware.commands.BinaryCommandProtocol;
+import com.skiwi.rovcontrolsoftware.commands.CommandPipeline;
+import com.skiwi.rovcontrolsoftware.commands.CommandProtocol;
+import com.skiwi.rovcontrolsoftware.commands.ConnectionManager;
+import com.skiwi.rovcontrolsoftware.commands.OfflineCommandBuffer;
+import com.skiwi.rovcontrolsoftware.commands.TextCommandProtocol;
+import com.skiwi.rovcontrolsoftware.control.ControlEngine;
+import com.skiwi.rovcontrolsoftware.control.ControlLoop;
+import com.skiwi.rovcontrolsoftware.control.ControlTask;
+import com.skiwi.rovcontrolsoftware.control.OutputStage;
+import com.skiwi.rovcontrolsoftware.gamepads.ControllerScanner;
+import com.skiwi.rovcontrolsoftware.gamepads.GamepadDiscovery;
+import com.skiwi.rovcontrolsoftware.gamepads.GamepadListener;
+import com.skiwi.rovcontrolsoftware.gamepads.XboxGamepad;
+import com.skiwi.rovcontrolsoftware.link.ShapingProxy;
+import com.skiwi.rovcontrolsoftware.recording.SessionReader;
+import com.skiwi.rovcontrolsoftware.replay.CommandDiff;
+import com.skiwi.rovcontrolsoftware.replay.CommandLog;
+import com.skiwi.rovcontrolsoftware.replay.SessionReplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs the control engine without a user interface, either live with the gamepads that are plugged in, or replaying a recorded
+ * session to check that the engine still produces the commands that were recorded. It also runs a
+ * {@link ShapingProxy}, to try the application against a slow tether on the bench.
+ *
+ * Usage:
+ * <pre>
+ * HeadlessApplication live &lt;host&gt; &lt;port&gt; [text|binary]
+ * HeadlessApplication replay &lt;session directory&gt; [speed]
+ * HeadlessApplication shape &lt;bytes per second&gt; &lt;queue bytes&gt; &lt;listen port&gt;:&lt;host&gt;:&lt;port&gt;...
+ * </pre>
+ *
+ * @author Frank van Heeswijk
+ */
+public class HeadlessApplication {
+    private static final long GAMEPAD_MIN_POLL_PERIOD = 500_000L;
+    private static final long GAMEPAD_MAX_POLL_PERIOD = 10_000_000L;
+    private static final int GAMEPAD_SCAN_INTERVAL = 1000;
+    private static final int COMMAND_FLUSH_DELAY = 10;
+    private static final int SOCKET_CONNECT_TIMEOUT = 2000;
+    private static final int SOCKET_DEBOUNCE_DELAY = 0;
+    private static final int SOCKET_INITIAL_BACKOFF = 250;
+    private static final int SOCKET_MAX_BACKOFF = 8000;
+    private static final int CONTROL_RATE = 200;
+    private static final int CONTROL_MAX_CATCH_UP_TICKS = 5;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length >= 3 && args[0].equals("live")) {
+            runLive(args[1], Integer.parseInt(args[2]), (args.length > 3) ? args[3] : "text");
+        }
+        else if (args.length >= 2 && args[0].equals("replay")) {
+            boolean identical = runReplay(new File(args[1]), (args.length > 2) ? Double.parseDouble(args[2]) : SessionReplayer.AS_FAST_AS_POSSIBLE);
+            System.exit(identical ? 0 : 1);
+        }
+        else if (args.length >= 4 && args[0].equals("shape")) {
+            runShapingProxy(Long.parseLong(args[1]), Integer.parseInt(args[2]), Arrays.copyOfRange(args, 3, args.length));
+        }
+        else {
+            System.err.println("Usage: HeadlessApplication live <host> <port> [text|binary]");
+            System.err.println("       HeadlessApplication replay <session directory> [speed]");
+            System.err.println("       HeadlessApplication shape <bytes per second> <queue bytes> <listen port>:<host>:<port>...");
+            System.exit(2);
+        }
+    }
+
+    private static void runLive(String host, int port, String protocol) throws InterruptedException {
+        Supplier<CommandProtocol> commandProtocolSupplier;
+        switch (protocol) {
+            case "text":
+                commandProtocolSupplier = TextCommandProtocol::new;
+                break;
+            case "binary":
+                commandProtocolSupplier = () -> new BinaryCommandProtocol(true);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown protocol: protocol = " + protocol);
+        }
+        ConnectionManager connectionManager = new ConnectionManager(new OfflineCommandBuffer(), SOCKET_CONNECT_TIMEOUT, SOCKET_DEBOUNCE_DELAY, SOCKET_INITIAL_BACKOFF, SOCKET_MAX_BACKOFF);
+        connectionManager.setStateListener(state -> System.out.println("Connection " + state.name().toLowerCase()));
+        CommandPipeline commandPipeline = new CommandPipeline(connectionManager, COMMAND_FLUSH_DELAY);
+        commandPipeline.start();
+        connectionManager.configure(host, port, commandProtocolSupplier);
+
+        OutputStage outputStage = new OutputStage(commandPipeline::submit, System::nanoTime);
+        ControlEngine.configureOutputStage(outputStage);
+        ControlEngine controlEngine = new ControlEngine(outputStage);
+        controlEngine.reset();
+        GamepadDiscovery gamepadDiscovery = new GamepadDiscovery(new ControllerScanner(), GAMEPAD_SCAN_INTERVAL, GAMEPAD_MIN_POLL_PERIOD, GAMEPAD_MAX_POLL_PERIOD);
+        gamepadDiscovery.setGamepadListener(new GamepadListener() {
+            @Override
+            public void onConnected(XboxGamepad gamepad) {
+                controlEngine.bind(gamepad);
+                System.out.println("Gamepad connected: " + gamepad.getName());
+            }
+
+            @Override
+            public void onDisconnected(XboxGamepad gamepad) {
+                controlEngine.unbind(gamepad);
+                System.out.println("Gamepad disconnected: " + gamepad.getName());
+            }
+        });
+        gamepadDiscovery.start();
+        ControlLoop controlLoop = new ControlLoop(CONTROL_RATE, ControlLoop.LatePolicy.CATCH_UP, CONTROL_MAX_CATCH_UP_TICKS, (time, elapsedTime) -> {
+            controlEngine.step(time, elapsedTime);
+            outputStage.step(time, elapsedTime);
+        });
+        controlLoop.start();
+        System.out.println("Controlling " + host + ":" + port);
+
+        while (true) {
+            TimeUnit.SECONDS.sleep(10);
+            System.out.printf("%d commands sent, %d suppressed, %d coalesced, %d dropped, %d control loop overruns, %.2f ms max lateness%n",
+                    commandPipeline.getSentCount(), outputStage.getSuppressedCount(), commandPipeline.getCoalescedCount(), commandPipeline.getDroppedCount(),
+                    controlLoop.getOverrunCount(), controlLoop.getLateness().getMax() / 1e6d);
+        }
+    }
+
+    /**
+     * @return  true if the replay produced the same commands as the recorded session
+     */
+    static boolean runReplay(File directory, double speed) throws IOException {
+        //everything follows the recorded clock, so that the control loop ticks and the output stage decides the same every replay
+        long[] replayTime = { 0L };
+        CommandLog replayedCommands = new CommandLog();
+        OutputStage outputStage = new OutputStage((actuator, value, originTime) -> replayedCommands.add(actuator, value), () -> replayTime[0]);
+        ControlEngine.configureOutputStage(outputStage);
+        ControlEngine controlEngine = new ControlEngine(outputStage);
+        ControlTask controlTask = (time, elapsedTime) -> {
+            controlEngine.step(time, elapsedTime);
+            outputStage.step(time, elapsedTime);
+        };
+        SessionReplayer sessionReplayer = new SessionReplayer();
+        sessionReplayer.setGamepadListener(new GamepadListener() {
+            @Override
+            public void onConnected(XboxGamepad gamepad) {
+                controlEngine.bind(gamepad);
+            }
+
+            @Override
+            public void onDisconnected(XboxGamepad gamepad) {
+                controlEngine.unbind(gamepad);
+            }
+        });
+        //the reset and the keys are recorded as control inputs, and the control loop ticks when it ticked in the session
+        sessionReplayer.setControlInputListener(controlEngine);
+        sessionReplayer.setControlTask(controlTask);
+
+        SessionReplayer.ReplayResult result;
+        try (SessionReader sessionReader = SessionReader.open(directory)) {
+            ControlLoop controlLoop = new ControlLoop(CONTROL_RATE, ControlLoop.LatePolicy.CATCH_UP, Integer.MAX_VALUE, controlTask);
+            boolean[] started = { false };
+            sessionReplayer.setClockListener(time -> {
+                replayTime[0] = time;
+                if (sessionReader.getVersion() > 1) {
+                    return;
+                }
+                //sessions of the first version recorded neither, they start with the reset and a grid at the time of their first record
+                if (!started[0]) {
+                    started[0] = true;
+                    controlEngine.reset();
+                }
+                controlLoop.advanceTo(time);
+            });
+            result = sessionReplayer.replay(sessionReader, speed);
+        }
+        CommandDiff commandDiff = CommandDiff.compare(result.getRecordedCommands(), replayedCommands);
+        System.out.printf("Replayed %d inputs and %d control loop ticks over %.1f s%n", result.getInputCount(), result.getTickCount(), result.getDuration() / 1e9d);
+        System.out.println(commandDiff);
+        return commandDiff.isIdentical();
+    }
+
+    private static void runShapingProxy(long bytesPerSecond, int queueCapacity, String[] routes) throws IOException, InterruptedException {
+        ShapingProxy shapingProxy = new ShapingProxy(bytesPerSecond, queueCapacity);
+        for (String route : routes) {
+            String[] parts = route.split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("A route must look like <listen port>:<host>:<port>: route = " + route);
+            }
+            int listenPort = shapingProxy.addRoute(Integer.parseInt(parts[0]), new InetSocketAddress(parts[1], Integer.parseInt(parts[2])));
+            System.out.println("Forwarding port " + listenPort + " to " + parts[1] + ":" + parts[2]);
+        }
+
+        while (true) {
+            TimeUnit.SECONDS.sleep(10);
+            System.out.printf("%d bytes upstream, %d bytes downstream, %d and %d bytes queued%n", shapingProxy.getUpstreamBytes(), shapingProxy.getDownstreamBytes(),
+                    shapingProxy.getUpstreamQueuedBytes(), shapingProxy.getDownstreamQueuedBytes());
+        }
+    }
+}
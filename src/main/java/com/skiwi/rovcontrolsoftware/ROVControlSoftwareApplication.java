@@ -1,10 +1,7 @@
 package com.skiwi.rovcontrolsoftware;
 
-import com.github.sarxos.webcam.Webcam;
-import com.github.sarxos.webcam.ds.ipcam.IpCamDriver;
 import com.skiwi.rovcontrolsoftware.controllers.MainWindowController;
 import javafx.application.Application;
-import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
@@ -16,9 +13,7 @@ import java.net.MalformedURLException;
  * @author Frank van Heeswijk
  */
 public class ROVControlSoftwareApplication extends Application {
-    static {
-        Webcam.setDriver(new IpCamDriver());
-    }
+    private MainWindowController mainWindowController;
 
     public static void main(String[] args) throws MalformedURLException {
         launch(args);
@@ -29,18 +24,23 @@ public class ROVControlSoftwareApplication extends Application {
         FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("MainWindow.fxml"));
         Parent root = fxmlLoader.load();
         Scene scene = new Scene(root);
-        MainWindowController mainWindowController = fxmlLoader.getController();
+        mainWindowController = fxmlLoader.getController();
         mainWindowController.setScene(scene);
 
         primaryStage.setTitle("ROV Control Application");
         primaryStage.setScene(scene);
         primaryStage.setWidth(800);
         primaryStage.setHeight(800);
-        primaryStage.setOnCloseRequest(windowEvent -> {
-            Platform.exit();
-            //TODO fix hack
-            System.exit(0);
-        });
         primaryStage.show();
     }
+
+    /**
+     * Called once the last window has been closed.
+     */
+    @Override
+    public void stop() {
+        if (mainWindowController != null) {
+            mainWindowController.shutdown();
+        }
+    }
 }
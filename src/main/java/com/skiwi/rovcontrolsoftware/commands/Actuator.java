@@ -0,0 +1,28 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public enum Actuator {
+    CX("cx", 0x01),
+    CY("cy", 0x02),
+    SY("sy", 0x03),
+    ML("ml", 0x04),
+    MR("mr", 0x05);
+
+    private final String key;
+    private final int opcode;
+
+    private Actuator(String key, int opcode) {
+        this.key = key;
+        this.opcode = opcode;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getOpcode() {
+        return opcode;
+    }
+}
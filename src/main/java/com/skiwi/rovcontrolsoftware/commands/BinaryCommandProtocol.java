@@ -0,0 +1,62 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed width framing: opcode (1 byte), value (int16, big endian), sequence number (uint16, big endian) and an
+ * optional CRC-8 over the preceding bytes. Values outside the int16 range are saturated.
+ *
+ * @author Frank van Heeswijk
+ */
+public class BinaryCommandProtocol implements CommandProtocol {
+    private static final int FRAME_SIZE = 5;
+    private static final int CRC_POLYNOMIAL = 0x07;
+
+    private static final byte[] CRC_TABLE = new byte[256];
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = ((crc & 0x80) != 0) ? (crc << 1) ^ CRC_POLYNOMIAL : crc << 1;
+            }
+            CRC_TABLE[i] = (byte)crc;
+        }
+    }
+
+    private final boolean crcEnabled;
+
+    private int sequenceNumber;
+
+    public BinaryCommandProtocol(boolean crcEnabled) {
+        this.crcEnabled = crcEnabled;
+    }
+
+    public boolean isCrcEnabled() {
+        return crcEnabled;
+    }
+
+    @Override
+    public int getMaxFrameSize() {
+        return crcEnabled ? FRAME_SIZE + 1 : FRAME_SIZE;
+    }
+
+    @Override
+    public void encode(Actuator actuator, int value, ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.put((byte)actuator.getOpcode());
+        buffer.putShort((short)Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value)));
+        buffer.putShort((short)sequenceNumber);
+        sequenceNumber = (sequenceNumber + 1) & 0xFFFF;
+        if (crcEnabled) {
+            buffer.put(crc8(buffer, start, FRAME_SIZE));
+        }
+    }
+
+    static byte crc8(ByteBuffer buffer, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = CRC_TABLE[(crc ^ buffer.get(i)) & 0xFF] & 0xFF;
+        }
+        return (byte)crc;
+    }
+}
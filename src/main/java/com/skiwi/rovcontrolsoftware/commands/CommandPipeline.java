@@ -0,0 +1,151 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+import com.skiwi.rovcontrolsoftware.metrics.LatencyTracer;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps only the newest pending value per actuator and hands them to the sink as one batch on a fixed cadence.
+ *
+ * @author Frank van Heeswijk
+ */
+public class CommandPipeline {
+    private static final Actuator[] ACTUATORS = Actuator.values();
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final CommandSink commandSink;
+    private final long flushDelay;
+
+    private final AtomicLongArray pendingValues = new AtomicLongArray(ACTUATORS.length);
+    private final AtomicLongArray pendingOrigins = new AtomicLongArray(ACTUATORS.length);
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private volatile LatencyTracer latencyTracer;
+
+    private ScheduledExecutorService flushExecutor;
+
+    public CommandPipeline(CommandSink commandSink, long flushDelay) {
+        this.commandSink = Objects.requireNonNull(commandSink, "commandSink");
+        if (flushDelay <= 0) {
+            throw new IllegalArgumentException("The flush delay must be positive: flushDelay = " + flushDelay);
+        }
+        this.flushDelay = flushDelay;
+        for (int i = 0; i < ACTUATORS.length; i++) {
+            pendingValues.set(i, EMPTY);
+        }
+    }
+
+    public void setLatencyTracer(LatencyTracer latencyTracer) {
+        this.latencyTracer = latencyTracer;
+    }
+
+    public synchronized void start() {
+        if (flushExecutor != null) {
+            throw new IllegalStateException("The command pipeline has already been started");
+        }
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "command-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleAtFixedRate(this::flush, flushDelay, flushDelay, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (flushExecutor == null) {
+            throw new IllegalStateException("The command pipeline has not been started");
+        }
+        flushExecutor.shutdown();
+        flushExecutor = null;
+        flush();
+    }
+
+    /**
+     * Submits a value caused by the trace running on the calling thread, if any.
+     */
+    public void submit(Actuator actuator, int value) {
+        LatencyTracer tracer = latencyTracer;
+        submit(actuator, value, (tracer != null) ? tracer.getCurrentOrigin() : 0L);
+    }
+
+    /**
+     * @param originTime    the trace origin of the input that caused the value, or zero if it is not traced
+     */
+    public void submit(Actuator actuator, int value, long originTime) {
+        Objects.requireNonNull(actuator, "actuator");
+        submittedCount.incrementAndGet();
+        LatencyTracer tracer = latencyTracer;
+        if (tracer != null) {
+            tracer.record(LatencyTracer.Stage.ENQUEUED, originTime);
+            pendingOrigins.set(actuator.ordinal(), originTime);
+        }
+        long previousValue = pendingValues.getAndSet(actuator.ordinal(), value);
+        if (previousValue == EMPTY) {
+            queueDepth.incrementAndGet();
+        }
+        else {
+            coalescedCount.incrementAndGet();
+        }
+    }
+
+    public synchronized void flush() {
+        int batchSize = 0;
+        try {
+            for (Actuator actuator : ACTUATORS) {
+                long value = pendingValues.getAndSet(actuator.ordinal(), EMPTY);
+                if (value == EMPTY) {
+                    continue;
+                }
+                queueDepth.decrementAndGet();
+                batchSize++;
+                commandSink.send(actuator, (int)value, pendingOrigins.getAndSet(actuator.ordinal(), 0L));
+            }
+            if (batchSize > 0) {
+                commandSink.flush();
+                sentCount.addAndGet(batchSize);
+                batchCount.incrementAndGet();
+            }
+        } catch (IOException | RuntimeException e) {
+            //a scheduled task that throws is never run again, so the batch is dropped instead
+            droppedCount.addAndGet(batchSize);
+        }
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+}
@@ -0,0 +1,14 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes commands onto the wire. Implementations write straight into the given buffer and must not allocate.
+ *
+ * @author Frank van Heeswijk
+ */
+public interface CommandProtocol {
+    int getMaxFrameSize();
+
+    void encode(Actuator actuator, int value, ByteBuffer buffer);
+}
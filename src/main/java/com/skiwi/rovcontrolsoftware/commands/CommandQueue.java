@@ -0,0 +1,93 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of commands packed into longs. Any thread may offer, only one thread may poll.
+ *
+ * @author Frank van Heeswijk
+ */
+class CommandQueue {
+    static final long EMPTY = Long.MIN_VALUE;
+
+    private final int mask;
+    private final long[] entries;
+    private final long[] origins;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private long lastOrigin;
+
+    CommandQueue(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a positive power of two: capacity = " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.entries = new long[capacity];
+        this.origins = new long[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    static long pack(Actuator actuator, int value) {
+        return ((long)actuator.ordinal() << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    static int unpackActuator(long entry) {
+        return (int)(entry >>> 32);
+    }
+
+    static int unpackValue(long entry) {
+        return (int)entry;
+    }
+
+    boolean offer(long entry) {
+        return offer(entry, 0L);
+    }
+
+    boolean offer(long entry, long origin) {
+        while (true) {
+            long position = tail.get();
+            int index = (int)position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    entries[index] = entry;
+                    origins[index] = origin;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            }
+            else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Takes the next entry, its trace origin is available through {@link #getLastOrigin()} until the next poll.
+     */
+    long poll() {
+        int index = (int)head & mask;
+        if (sequences.get(index) != head + 1) {
+            return EMPTY;
+        }
+        long entry = entries[index];
+        lastOrigin = origins[index];
+        sequences.set(index, head + mask + 1);
+        head++;
+        return entry;
+    }
+
+    long getLastOrigin() {
+        return lastOrigin;
+    }
+
+    int size() {
+        return (int)Math.max(0, tail.get() - head);
+    }
+}
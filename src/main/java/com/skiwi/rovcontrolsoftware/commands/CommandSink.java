@@ -0,0 +1,19 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+import java.io.IOException;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public interface CommandSink {
+    void send(Actuator actuator, int value) throws IOException;
+
+    /**
+     * Sends a command that belongs to the latency trace started at the given origin time, zero if it is not traced.
+     */
+    default void send(Actuator actuator, int value, long originTime) throws IOException {
+        send(actuator, value);
+    }
+
+    void flush() throws IOException;
+}
@@ -0,0 +1,341 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+import com.skiwi.rovcontrolsoftware.metrics.LatencyTracer;
+import com.skiwi.rovcontrolsoftware.telemetry.TelemetryParser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Owns the command connection. Configuration changes are debounced, and all connecting, reconnecting with exponential
+ * backoff and closing happens on a single scheduler thread. Commands sent while there is no connection end up in the
+ * offline buffer and are replayed as soon as a connection has been established. So do commands whose send fails
+ * because the connection was lost just then, and those a lost connection had not written completely yet.
+ *
+ * The backoff only starts over once a connection has stayed up for a while, so a peer that accepts every connection
+ * and drops it right away is retried less and less often.
+ *
+ * Sending and handing the offline buffer over to a new connection exclude each other, so a replayed command is always
+ * written before any command sent after it was buffered, and no command is buffered after the replay it should have
+ * been part of.
+ *
+ * @author Frank van Heeswijk
+ */
+public class ConnectionManager implements CommandSink, Closeable {
+    private static final long CHANNEL_TERMINATION_TIMEOUT = 1000L;  //milliseconds
+    private static final long STABLE_CONNECTION_TIME = 2000L;   //milliseconds
+
+    private final OfflineCommandBuffer offlineCommandBuffer;
+    private final int connectTimeout;
+    private final long debounceDelay;
+    private final long initialBackoff;
+    private final long maxBackoff;
+
+    private final ScheduledExecutorService scheduler;
+    private final AtomicReference<NioCommandChannel> commandChannel = new AtomicReference<>();
+    private final Object sendLock = new Object();
+
+    private volatile Consumer<State> stateListener = state -> { };
+    private volatile LatencyTracer latencyTracer;
+    private volatile Supplier<TelemetryParser> telemetryParserSupplier = () -> null;
+
+    private final AtomicLong connectCount = new AtomicLong();
+    private final AtomicLong reconnectCount = new AtomicLong();
+    private final AtomicLong failedConnectCount = new AtomicLong();
+    private final AtomicLong lastConnectLatency = new AtomicLong(-1L);
+    private final AtomicLong rescuedCommandCount = new AtomicLong();
+
+    //only accessed from the scheduler thread
+    private Target target;
+    private long generation;
+    private long backoff;
+    private long connectTime;
+    private ScheduledFuture<?> pendingConnect;
+    private boolean closed;
+
+    public ConnectionManager(OfflineCommandBuffer offlineCommandBuffer, int connectTimeout, long debounceDelay, long initialBackoff, long maxBackoff) {
+        this.offlineCommandBuffer = Objects.requireNonNull(offlineCommandBuffer, "offlineCommandBuffer");
+        if (initialBackoff <= 0 || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException("Invalid backoff: initialBackoff = " + initialBackoff + ", maxBackoff = " + maxBackoff);
+        }
+        this.connectTimeout = connectTimeout;
+        this.debounceDelay = debounceDelay;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-manager");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void setStateListener(Consumer<State> stateListener) {
+        this.stateListener = Objects.requireNonNull(stateListener, "stateListener");
+    }
+
+    public void setLatencyTracer(LatencyTracer latencyTracer) {
+        this.latencyTracer = latencyTracer;
+        NioCommandChannel channel = commandChannel.get();
+        if (channel != null) {
+            channel.setLatencyTracer(latencyTracer);
+        }
+    }
+
+    /**
+     * Sets the supplier of a fresh telemetry parser for every new connection, it may supply null to discard whatever
+     * the ROV sends back.
+     */
+    public void setTelemetryParserSupplier(Supplier<TelemetryParser> telemetryParserSupplier) {
+        this.telemetryParserSupplier = Objects.requireNonNull(telemetryParserSupplier, "telemetryParserSupplier");
+    }
+
+    public void configure(String host, int port, Supplier<CommandProtocol> commandProtocolSupplier) {
+        Objects.requireNonNull(host, "host");
+        Objects.requireNonNull(commandProtocolSupplier, "commandProtocolSupplier");
+        Target newTarget = new Target(host, port, commandProtocolSupplier);
+        scheduler.execute(() -> {
+            target = newTarget;
+            schedule(debounceDelay, true);
+        });
+    }
+
+    public void disconnect() {
+        scheduler.execute(() -> {
+            target = null;
+            generation++;
+            cancelPendingConnect();
+            closeChannel();
+            stateListener.accept(State.OFFLINE);
+        });
+    }
+
+    @Override
+    public void send(Actuator actuator, int value) {
+        send(actuator, value, 0L);
+    }
+
+    @Override
+    public void send(Actuator actuator, int value, long originTime) {
+        synchronized (sendLock) {
+            NioCommandChannel channel = commandChannel.get();
+            if (channel != null && channel.isOpen()) {
+                try {
+                    channel.send(actuator, value, originTime);
+                    return;
+                } catch (IOException e) {
+                    //the channel closed just now, keep the state for the next connection
+                }
+            }
+            offlineCommandBuffer.buffer(actuator, value);
+        }
+    }
+
+    @Override
+    public void flush() {
+        NioCommandChannel channel = commandChannel.get();
+        if (channel != null && channel.isOpen()) {
+            try {
+                channel.flush();
+            } catch (IOException e) {
+                //the channel closed just now, what it had not written yet is moved to the offline buffer
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.execute(() -> {
+            closed = true;
+            target = null;
+            cancelPendingConnect();
+            closeChannel();
+        });
+        scheduler.shutdown();
+    }
+
+    /**
+     * Waits until the connection has been closed after closing this manager.
+     *
+     * @return  true if it was closed within the timeout
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return scheduler.awaitTermination(timeout, unit);
+    }
+
+    public boolean isConnected() {
+        NioCommandChannel channel = commandChannel.get();
+        return channel != null && channel.isOpen();
+    }
+
+    public NioCommandChannel getCommandChannel() {
+        return commandChannel.get();
+    }
+
+    public long getConnectCount() {
+        return connectCount.get();
+    }
+
+    public long getReconnectCount() {
+        return reconnectCount.get();
+    }
+
+    public long getFailedConnectCount() {
+        return failedConnectCount.get();
+    }
+
+    public long getLastConnectLatency() {
+        return lastConnectLatency.get();
+    }
+
+    /**
+     * Returns the amount of commands that were moved to the offline buffer because their connection was lost before
+     * they had been written.
+     */
+    public long getRescuedCommandCount() {
+        return rescuedCommandCount.get();
+    }
+
+    private void schedule(long delay, boolean resetBackoff) {
+        generation++;
+        if (resetBackoff) {
+            backoff = initialBackoff;
+        }
+        cancelPendingConnect();
+        long connectGeneration = generation;
+        pendingConnect = scheduler.schedule(() -> connect(connectGeneration), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelPendingConnect() {
+        if (pendingConnect != null) {
+            pendingConnect.cancel(false);
+            pendingConnect = null;
+        }
+    }
+
+    private void connect(long connectGeneration) {
+        if (closed || target == null || connectGeneration != generation) {
+            return;
+        }
+        pendingConnect = null;
+        closeChannel();
+        stateListener.accept(State.CONNECTING);
+
+        Target connectTarget = target;
+        long startTime = System.nanoTime();
+        try {
+            InetSocketAddress address = new InetSocketAddress(connectTarget.host, connectTarget.port);
+            NioCommandChannel channel = NioCommandChannel.open(address, connectTimeout, connectTarget.commandProtocolSupplier.get(),
+                    telemetryParserSupplier.get(), () -> channelClosed(connectGeneration));
+            lastConnectLatency.set(System.nanoTime() - startTime);
+            if (connectCount.getAndIncrement() > 0) {
+                reconnectCount.incrementAndGet();
+            }
+            connectTime = System.nanoTime();
+            channel.setLatencyTracer(latencyTracer);
+            publish(channel);
+            stateListener.accept(State.ONLINE);
+        } catch (IllegalArgumentException e) {
+            //the configured host or port can never work, so there is no point in retrying until it changes
+            failedConnectCount.incrementAndGet();
+            stateListener.accept(State.OFFLINE);
+        } catch (IOException e) {
+            failedConnectCount.incrementAndGet();
+            closeChannel();
+            stateListener.accept(State.OFFLINE);
+            scheduleRetry();
+        }
+    }
+
+    private void scheduleRetry() {
+        long delay = backoff;
+        backoff = Math.min(backoff * 2, maxBackoff);
+        schedule(delay, false);
+    }
+
+    private void publish(NioCommandChannel channel) throws IOException {
+        synchronized (sendLock) {
+            try {
+                //the buffered state goes out before anything sent from now on
+                offlineCommandBuffer.replay(channel);
+            } catch (IOException | RuntimeException e) {
+                retireChannel(channel);
+                throw e;
+            }
+            commandChannel.set(channel);
+        }
+    }
+
+    private void channelClosed(long channelGeneration) {
+        try {
+            scheduler.execute(() -> onChannelClosed(channelGeneration));
+        } catch (RejectedExecutionException e) {
+            //the manager has been closed, nothing left to reconnect
+        }
+    }
+
+    private void onChannelClosed(long channelGeneration) {
+        NioCommandChannel channel = commandChannel.get();
+        if (closed || channelGeneration != generation || channel == null || channel.isOpen()) {
+            return;
+        }
+        closeChannel();
+        stateListener.accept(State.OFFLINE);
+        if (System.nanoTime() - connectTime >= TimeUnit.MILLISECONDS.toNanos(STABLE_CONNECTION_TIME)) {
+            backoff = initialBackoff;
+        }
+        scheduleRetry();
+    }
+
+    private void closeChannel() {
+        NioCommandChannel channel;
+        synchronized (sendLock) {
+            channel = commandChannel.getAndSet(null);
+        }
+        if (channel != null) {
+            retireChannel(channel);
+        }
+    }
+
+    /**
+     * Closes a channel that nothing can send to anymore, and moves whatever it had not written to the offline buffer.
+     */
+    private void retireChannel(NioCommandChannel channel) {
+        channel.close();
+        try {
+            if (channel.awaitTermination(CHANNEL_TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                rescuedCommandCount.addAndGet(channel.drainUnsent(offlineCommandBuffer));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static enum State {
+        ONLINE,
+        OFFLINE,
+        CONNECTING
+    }
+
+    private static class Target {
+        private final String host;
+        private final int port;
+        private final Supplier<CommandProtocol> commandProtocolSupplier;
+
+        private Target(String host, int port, Supplier<CommandProtocol> commandProtocolSupplier) {
+            this.host = host;
+            this.port = port;
+            this.commandProtocolSupplier = commandProtocolSupplier;
+        }
+    }
+}
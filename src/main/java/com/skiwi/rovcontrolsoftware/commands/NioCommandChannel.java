@@ -0,0 +1,375 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+import com.skiwi.rovcontrolsoftware.metrics.LatencyTracer;
+import com.skiwi.rovcontrolsoftware.telemetry.TelemetryParser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking command transport. Callers only enqueue commands, a single I/O thread owns the socket and does all
+ * reading and writing, so a stalled link can never block the thread that produced a command.
+ *
+ * Everything the ROV sends back is read as soon as it arrives, so the link cannot stall on a full receive buffer, and
+ * handed to the telemetry parser if there is one.
+ *
+ * Once the channel has closed, the commands it had not written completely can be moved to an
+ * {@link OfflineCommandBuffer}, so that losing the connection does not lose them.
+ *
+ * @author Frank van Heeswijk
+ */
+public class NioCommandChannel implements CommandSink, Closeable {
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int WRITE_BUFFER_SIZE = 8192;
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final int MAX_TRACED_COMMANDS = 256;
+    private static final int MAX_UNACKNOWLEDGED_WRITES = 16;    //per actuator, a power of two
+    private static final int MAX_BUFFERED_FRAMES = 1024;    //a power of two
+
+    private static final Actuator[] ACTUATORS = Actuator.values();
+
+    private final SocketChannel socketChannel;
+    private final CommandProtocol commandProtocol;
+    private final TelemetryParser telemetryParser;
+    private final Runnable closeListener;
+    private final Selector selector;
+    private final SelectionKey selectionKey;
+    private final Thread ioThread;
+
+    private final CommandQueue commandQueue = new CommandQueue(QUEUE_CAPACITY);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    //trace origins of the commands currently in the write buffer, only accessed from the I/O thread
+    private final long[] writeOrigins = new long[MAX_TRACED_COMMANDS];
+    private int writeOriginCount;
+
+    //ring buffers per actuator of the values written and when, oldest first, only accessed from the I/O thread
+    private final int[] writtenValues = new int[ACTUATORS.length * MAX_UNACKNOWLEDGED_WRITES];
+    private final long[] writtenTimes = new long[ACTUATORS.length * MAX_UNACKNOWLEDGED_WRITES];
+    private final int[] writtenStarts = new int[ACTUATORS.length];
+    private final int[] writtenEnds = new int[ACTUATORS.length];
+
+    //commands in the write buffer that have not been written completely, oldest first, only accessed from the I/O thread
+    private final long[] bufferedFrames = new long[MAX_BUFFERED_FRAMES];
+    private final long[] bufferedFrameEnds = new long[MAX_BUFFERED_FRAMES];
+    private int bufferedFrameStart;
+    private int bufferedFrameEnd;
+    private long encodedByteCount;
+    private long writtenByteCount;
+
+    private volatile LatencyTracer latencyTracer;
+
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private volatile boolean closed;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong partialWriteCount = new AtomicLong();
+
+    private NioCommandChannel(SocketChannel socketChannel, CommandProtocol commandProtocol, TelemetryParser telemetryParser, Runnable closeListener) throws IOException {
+        this.socketChannel = socketChannel;
+        this.commandProtocol = commandProtocol;
+        this.telemetryParser = telemetryParser;
+        this.closeListener = closeListener;
+        this.selector = Selector.open();
+        this.selectionKey = socketChannel.register(selector, SelectionKey.OP_READ);
+        this.ioThread = new Thread(this::runIoLoop, "command-channel-io");
+        this.ioThread.setDaemon(true);
+    }
+
+    public static NioCommandChannel open(InetSocketAddress address, int connectTimeout, CommandProtocol commandProtocol) throws IOException {
+        return open(address, connectTimeout, commandProtocol, () -> { });
+    }
+
+    public static NioCommandChannel open(InetSocketAddress address, int connectTimeout, CommandProtocol commandProtocol, Runnable closeListener) throws IOException {
+        return open(address, connectTimeout, commandProtocol, null, closeListener);
+    }
+
+    /**
+     * @param telemetryParser   the parser for everything the ROV sends back, or null to discard it
+     */
+    public static NioCommandChannel open(InetSocketAddress address, int connectTimeout, CommandProtocol commandProtocol, TelemetryParser telemetryParser, Runnable closeListener) throws IOException {
+        Objects.requireNonNull(address, "address");
+        Objects.requireNonNull(commandProtocol, "commandProtocol");
+        Objects.requireNonNull(closeListener, "closeListener");
+        SocketChannel socketChannel = SocketChannel.open();
+        try {
+            socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            socketChannel.socket().connect(address, connectTimeout);
+            socketChannel.configureBlocking(false);
+            NioCommandChannel commandChannel = new NioCommandChannel(socketChannel, commandProtocol, telemetryParser, closeListener);
+            commandChannel.ioThread.start();
+            return commandChannel;
+        } catch (IOException | RuntimeException e) {
+            socketChannel.close();
+            throw e;
+        }
+    }
+
+    public void setLatencyTracer(LatencyTracer latencyTracer) {
+        this.latencyTracer = latencyTracer;
+    }
+
+    @Override
+    public void send(Actuator actuator, int value) throws IOException {
+        send(actuator, value, 0L);
+    }
+
+    @Override
+    public void send(Actuator actuator, int value, long originTime) throws IOException {
+        if (closed) {
+            throw new IOException("The command channel is closed");
+        }
+        if (!commandQueue.offer(CommandQueue.pack(actuator, value), originTime)) {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (closed) {
+            throw new IOException("The command channel is closed");
+        }
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Waits until the I/O thread has finished after the channel closed.
+     *
+     * @return  true if it finished within the timeout
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        unit.timedJoin(ioThread, timeout);
+        return !ioThread.isAlive();
+    }
+
+    /**
+     * Moves the newest command per actuator that has not been written completely, either still queued or only partly
+     * written, to the offline buffer, unless the buffer holds a command for that actuator already, as that one is newer.
+     * The channel must have closed and its I/O thread must have finished, and nothing may be sent to it anymore.
+     *
+     * @return  the amount of commands moved
+     * @throws IllegalStateException if the I/O thread has not finished yet
+     */
+    public int drainUnsent(OfflineCommandBuffer offlineCommandBuffer) {
+        Objects.requireNonNull(offlineCommandBuffer, "offlineCommandBuffer");
+        if (ioThread.isAlive()) {
+            throw new IllegalStateException("The I/O thread of the command channel has not finished yet");
+        }
+        long[] newestEntries = new long[ACTUATORS.length];
+        Arrays.fill(newestEntries, CommandQueue.EMPTY);
+        for (int i = bufferedFrameStart; i != bufferedFrameEnd; i++) {
+            long entry = bufferedFrames[i & (MAX_BUFFERED_FRAMES - 1)];
+            newestEntries[CommandQueue.unpackActuator(entry)] = entry;
+        }
+        bufferedFrameStart = bufferedFrameEnd;
+        long entry;
+        while ((entry = commandQueue.poll()) != CommandQueue.EMPTY) {
+            newestEntries[CommandQueue.unpackActuator(entry)] = entry;
+        }
+        int moved = 0;
+        for (long newestEntry : newestEntries) {
+            if (newestEntry != CommandQueue.EMPTY
+                    && offlineCommandBuffer.bufferIfAbsent(ACTUATORS[CommandQueue.unpackActuator(newestEntry)], CommandQueue.unpackValue(newestEntry))) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    public int getQueueSize() {
+        return commandQueue.size();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    public long getPartialWriteCount() {
+        return partialWriteCount.get();
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the oldest unacknowledged write of the given value for the given
+     * actuator happened, or zero if there is none. That write and all older ones of the actuator count as acknowledged
+     * from then on, since the ROV acknowledges in order. Together with the acknowledgements of the ROV this gives the
+     * round trip time of the link.
+     *
+     * Only the last {@value #MAX_UNACKNOWLEDGED_WRITES} writes per actuator are remembered. Must be called on the I/O
+     * thread, which is the thread that calls the telemetry parser and thereby every telemetry listener.
+     */
+    public long takeWriteTime(Actuator actuator, int value) {
+        int index = actuator.ordinal();
+        int offset = index * MAX_UNACKNOWLEDGED_WRITES;
+        int mask = MAX_UNACKNOWLEDGED_WRITES - 1;
+        for (int i = writtenStarts[index]; i != writtenEnds[index]; i++) {
+            int slot = offset + (i & mask);
+            if (writtenValues[slot] == value) {
+                writtenStarts[index] = i + 1;
+                return writtenTimes[slot];
+            }
+        }
+        return 0L;
+    }
+
+    private void runIoLoop() {
+        try {
+            while (!closed) {
+                selector.select();
+                wakeupPending.set(false);
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        read();
+                    }
+                }
+
+                if (!closed) {
+                    write();
+                }
+            }
+        } catch (IOException e) {
+            //the connection is lost, whoever owns this channel decides whether to reconnect
+        } finally {
+            closed = true;
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            try {
+                socketChannel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            closeListener.run();
+        }
+    }
+
+    private void read() throws IOException {
+        readBuffer.clear();
+        int read = socketChannel.read(readBuffer);
+        if (read < 0) {
+            throw new IOException("The connection has been closed by the remote end");
+        }
+        bytesRead.addAndGet(read);
+        if (telemetryParser != null && read > 0) {
+            readBuffer.flip();
+            telemetryParser.parse(readBuffer, System.nanoTime());
+        }
+    }
+
+    private void write() throws IOException {
+        int maxFrameSize = commandProtocol.getMaxFrameSize();
+        long writeTime = System.nanoTime();
+        while (writeBuffer.remaining() >= maxFrameSize && bufferedFrameEnd - bufferedFrameStart < MAX_BUFFERED_FRAMES) {
+            long entry = commandQueue.poll();
+            if (entry == CommandQueue.EMPTY) {
+                break;
+            }
+            int actuator = CommandQueue.unpackActuator(entry);
+            int value = CommandQueue.unpackValue(entry);
+            int startPosition = writeBuffer.position();
+            commandProtocol.encode(ACTUATORS[actuator], value, writeBuffer);
+            encodedByteCount += writeBuffer.position() - startPosition;
+            bufferedFrames[bufferedFrameEnd & (MAX_BUFFERED_FRAMES - 1)] = entry;
+            bufferedFrameEnds[bufferedFrameEnd & (MAX_BUFFERED_FRAMES - 1)] = encodedByteCount;
+            bufferedFrameEnd++;
+            recordWrite(actuator, value, writeTime);
+            long originTime = commandQueue.getLastOrigin();
+            if (originTime != 0L && writeOriginCount < MAX_TRACED_COMMANDS) {
+                writeOrigins[writeOriginCount++] = originTime;
+            }
+        }
+        if (writeBuffer.position() == 0) {
+            return;
+        }
+
+        writeBuffer.flip();
+        int written = socketChannel.write(writeBuffer);
+        bytesWritten.addAndGet(written);
+        writtenByteCount += written;
+        while (bufferedFrameStart != bufferedFrameEnd && bufferedFrameEnds[bufferedFrameStart & (MAX_BUFFERED_FRAMES - 1)] <= writtenByteCount) {
+            bufferedFrameStart++;
+        }
+        writeCount.incrementAndGet();
+        boolean partial = writeBuffer.hasRemaining();
+        writeBuffer.compact();
+
+        if (partial) {
+            //the kernel buffer is full, continue once the socket becomes writable again
+            partialWriteCount.incrementAndGet();
+            selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        else {
+            //the write buffer may have filled up before the queue ran empty, the rest must not wait for the next flush
+            selectionKey.interestOps((commandQueue.size() > 0) ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            recordWritten();
+        }
+    }
+
+    private void recordWrite(int actuator, int value, long time) {
+        int end = writtenEnds[actuator];
+        int slot = actuator * MAX_UNACKNOWLEDGED_WRITES + (end & (MAX_UNACKNOWLEDGED_WRITES - 1));
+        writtenValues[slot] = value;
+        writtenTimes[slot] = time;
+        writtenEnds[actuator] = end + 1;
+        if (end + 1 - writtenStarts[actuator] > MAX_UNACKNOWLEDGED_WRITES) {
+            //the oldest write has been overwritten
+            writtenStarts[actuator] = end + 1 - MAX_UNACKNOWLEDGED_WRITES;
+        }
+    }
+
+    private void recordWritten() {
+        LatencyTracer tracer = latencyTracer;
+        if (tracer != null && writeOriginCount > 0) {
+            long time = System.nanoTime();
+            for (int i = 0; i < writeOriginCount; i++) {
+                tracer.record(LatencyTracer.Stage.WRITTEN, writeOrigins[i], time);
+            }
+        }
+        writeOriginCount = 0;
+    }
+}
@@ -0,0 +1,105 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Holds the last commanded state of every actuator while there is no connection, so that a reconnect only has to
+ * replay one command per actuator.
+ *
+ * @author Frank van Heeswijk
+ */
+public class OfflineCommandBuffer {
+    private static final Actuator[] ACTUATORS = Actuator.values();
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final AtomicLongArray values = new AtomicLongArray(ACTUATORS.length);
+
+    private final AtomicLong bufferedCount = new AtomicLong();
+    private final AtomicLong collapsedCount = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+
+    public OfflineCommandBuffer() {
+        for (int i = 0; i < ACTUATORS.length; i++) {
+            values.set(i, EMPTY);
+        }
+    }
+
+    public void buffer(Actuator actuator, int value) {
+        Objects.requireNonNull(actuator, "actuator");
+        bufferedCount.incrementAndGet();
+        if (values.getAndSet(actuator.ordinal(), value) != EMPTY) {
+            collapsedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Buffers the value only if nothing is buffered for the actuator yet, for values that are older than anything
+     * buffered since.
+     *
+     * @return  true if the value has been buffered
+     */
+    public boolean bufferIfAbsent(Actuator actuator, int value) {
+        Objects.requireNonNull(actuator, "actuator");
+        if (!values.compareAndSet(actuator.ordinal(), EMPTY, value)) {
+            return false;
+        }
+        bufferedCount.incrementAndGet();
+        return true;
+    }
+
+    public int replay(CommandSink commandSink) throws IOException {
+        Objects.requireNonNull(commandSink, "commandSink");
+        int replayed = 0;
+        for (int i = 0; i < ACTUATORS.length; i++) {
+            long value = values.getAndSet(i, EMPTY);
+            if (value == EMPTY) {
+                continue;
+            }
+            try {
+                commandSink.send(ACTUATORS[i], (int)value);
+            } catch (IOException | RuntimeException e) {
+                //put the state back unless a newer command has been buffered in the meantime
+                values.compareAndSet(i, EMPTY, value);
+                throw e;
+            }
+            replayed++;
+        }
+        if (replayed > 0) {
+            commandSink.flush();
+            replayedCount.addAndGet(replayed);
+        }
+        return replayed;
+    }
+
+    public void clear() {
+        for (int i = 0; i < ACTUATORS.length; i++) {
+            values.set(i, EMPTY);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < ACTUATORS.length; i++) {
+            if (values.get(i) != EMPTY) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public long getBufferedCount() {
+        return bufferedCount.get();
+    }
+
+    public long getCollapsedCount() {
+        return collapsedCount.get();
+    }
+
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+}
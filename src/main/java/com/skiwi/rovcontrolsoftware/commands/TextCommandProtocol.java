@@ -0,0 +1,44 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The original line based protocol, for example {@code cx 90\n}.
+ *
+ * @author Frank van Heeswijk
+ */
+public class TextCommandProtocol implements CommandProtocol {
+    private static final byte[][] ACTUATOR_KEYS = new byte[Actuator.values().length][];
+    static {
+        for (Actuator actuator : Actuator.values()) {
+            ACTUATOR_KEYS[actuator.ordinal()] = actuator.getKey().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Override
+    public int getMaxFrameSize() {
+        //two character key, space, sign, ten digits and a newline
+        return 16;
+    }
+
+    @Override
+    public void encode(Actuator actuator, int value, ByteBuffer buffer) {
+        buffer.put(ACTUATOR_KEYS[actuator.ordinal()]);
+        buffer.put((byte)' ');
+        if (value < 0) {
+            buffer.put((byte)'-');
+        }
+        long remaining = Math.abs((long)value);
+        long divisor = 1;
+        while (divisor * 10 <= remaining) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            buffer.put((byte)('0' + (remaining / divisor)));
+            remaining %= divisor;
+            divisor /= 10;
+        }
+        buffer.put((byte)'\n');
+    }
+}
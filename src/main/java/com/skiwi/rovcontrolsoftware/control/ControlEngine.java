@@ -0,0 +1,398 @@
+package com.skiwi.rovcontrolsoftware.control;
+
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+import com.skiwi.rovcontrolsoftware.gamepads.GamepadState;
+import com.skiwi.rovcontrolsoftware.gamepads.XboxGamepad;
+import com.skiwi.rovcontrolsoftware.gamepads.events.ButtonPressedEvent;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Turns pilot input into actuator values: the camera pan and tilt, the shovel and the two motors. Inputs come in
+ * through the methods of this class, usually called by the listeners {@link #bind(XboxGamepad)} installs, and every
+ * resulting value goes out to a {@link ControlOutput}. The engine knows nothing about the user interface or the
+ * connection, so it runs just as well headless, in a replay or in a benchmark.
+ *
+ * The camera moves at a speed set by the right stick, which is integrated on every step of a {@link ControlLoop}.
+ *
+ * A value caused by a gamepad carries the trace origin of its input to the output, also when it is computed on the
+ * thread of the control loop. A camera motion is traced back to the newest input of the right stick only on the first
+ * step after it, a stick that is held still causes no new input.
+ *
+ * Several gamepads can be bound at once. The first one takes the pilot seat and drives, the second one takes the
+ * co-pilot seat and operates the camera and the shovel, and a pilot without co-pilot does both. Pressing select takes
+ * the pilot seat, and a pilot that leaves is replaced by the co-pilot. An input of a gamepad in the wrong seat is
+ * ignored. The seats only change while holding the lock of the engine, and every input checks its seat while holding it
+ * too, so that a gamepad that just lost its seat cannot change a value after the hand-over. They are atomic references
+ * so that they can be read without the lock.
+ *
+ * @author Frank van Heeswijk
+ */
+public class ControlEngine implements ControlTask, ControlInputListener {
+    public static final float CX_DEFAULT = 90f;
+    public static final float CY_DEFAULT = 90f;
+    public static final float SY_DEFAULT = 90f;
+
+    public static final int CX_MIN = 10;
+    public static final int CX_MAX = 170;
+    public static final int CY_MIN = 0;
+    public static final int CY_MAX = 180;
+    public static final int SY_MIN = 0;
+    public static final int SY_MAX = 180;
+
+    private static final float CAMERA_SPEED = 50f;  //degrees per second at full stick deflection
+    private static final int SHOVEL_DELTA = 10;
+
+    private static final float CONTROLLER_RS_DEADZONE = 0.25f;
+    private static final float CONTROLLER_TRIGGER_DEADZONE = 0.10f;
+    private static final float CONTROLLER_LS_DEADZONE = 0.25f;
+
+    private static final int SERVO_MAX_RATE = 50;
+    private static final int SERVO_KEEPALIVE_INTERVAL = 1000;
+    private static final int MOTOR_MAX_RATE = 50;
+    private static final int MOTOR_MAX_SLEW_RATE = 40000;   //from standstill to full power in a quarter second
+    private static final int MOTOR_KEEPALIVE_INTERVAL = 500;
+
+    private final ControlOutput output;
+
+    private float cxAngle;
+    private float cyAngle;
+    private float syAngle;
+
+    private float motorThrottle;
+    private float motorLeftModifier;
+    private float motorRightModifier;
+    private float motorLeft;
+    private float motorRight;
+
+    private final List<XboxGamepad> gamepads = new CopyOnWriteArrayList<>();
+    private final AtomicReference<XboxGamepad> pilot = new AtomicReference<>();
+    private final AtomicReference<XboxGamepad> coPilot = new AtomicReference<>();
+    private final GamepadState gamepadState = new GamepadState();
+    private long cameraOriginTime;
+
+    public ControlEngine(ControlOutput output) {
+        this.output = Objects.requireNonNull(output, "output");
+    }
+
+    /**
+     * Sets the limits that suit the actuator values this engine outputs on the given output stage.
+     */
+    public static void configureOutputStage(OutputStage outputStage) {
+        outputStage.setLimits(Actuator.CX, SERVO_MAX_RATE, 0, SERVO_KEEPALIVE_INTERVAL);
+        outputStage.setLimits(Actuator.CY, SERVO_MAX_RATE, 0, SERVO_KEEPALIVE_INTERVAL);
+        outputStage.setLimits(Actuator.SY, SERVO_MAX_RATE, 0, SERVO_KEEPALIVE_INTERVAL);
+        outputStage.setLimits(Actuator.ML, MOTOR_MAX_RATE, MOTOR_MAX_SLEW_RATE, MOTOR_KEEPALIVE_INTERVAL);
+        outputStage.setLimits(Actuator.MR, MOTOR_MAX_RATE, MOTOR_MAX_SLEW_RATE, MOTOR_KEEPALIVE_INTERVAL);
+    }
+
+    /**
+     * Moves everything to its default position and outputs every value.
+     */
+    public synchronized void reset() {
+        cxAngle = CX_DEFAULT;
+        cyAngle = CY_DEFAULT;
+        syAngle = SY_DEFAULT;
+        output.onOutput(Actuator.CX, Math.round(cxAngle));
+        output.onOutput(Actuator.CY, Math.round(cyAngle));
+        output.onOutput(Actuator.SY, Math.round(syAngle));
+
+        motorThrottle = 0f;
+        motorLeftModifier = 1f;
+        motorRightModifier = 1f;
+        updateMotors(0L);
+    }
+
+    /**
+     * Configures the deadzones of the given gamepad and makes its inputs drive this engine, in the first free seat.
+     */
+    public void bind(XboxGamepad gamepad) {
+        Objects.requireNonNull(gamepad, "gamepad");
+        gamepad.setDeadzone(XboxGamepad.Component.LEFT_STICK_X_AXIS, XboxGamepad.DeadzoneType.RADIAL, CONTROLLER_LS_DEADZONE);
+        gamepad.setDeadzone(XboxGamepad.Component.LEFT_STICK_Y_AXIS, XboxGamepad.DeadzoneType.RADIAL, CONTROLLER_LS_DEADZONE);
+
+        gamepad.setDeadzone(XboxGamepad.Component.RIGHT_STICK_X_AXIS, XboxGamepad.DeadzoneType.RADIAL, CONTROLLER_RS_DEADZONE);
+        gamepad.setDeadzone(XboxGamepad.Component.RIGHT_STICK_Y_AXIS, XboxGamepad.DeadzoneType.RADIAL, CONTROLLER_RS_DEADZONE);
+
+        gamepad.setDeadzone(XboxGamepad.Component.TRIGGER_AXIS, XboxGamepad.DeadzoneType.LINEAR, CONTROLLER_TRIGGER_DEADZONE);
+
+        gamepad.addButtonListener(XboxGamepad.Component.RIGHT_STICK_BUTTON, ButtonPressedEvent.class, (component, time, clickTime) -> centerCamera(gamepad));
+        gamepad.addButtonListener(XboxGamepad.Component.A_BUTTON, ButtonPressedEvent.class, (component, time, clickTime) -> moveShovel(gamepad, SHOVEL_DELTA));
+        gamepad.addButtonListener(XboxGamepad.Component.X_BUTTON, ButtonPressedEvent.class, (component, time, clickTime) -> moveShovel(gamepad, -SHOVEL_DELTA));
+        gamepad.addButtonListener(XboxGamepad.Component.SELECT_BUTTON, ButtonPressedEvent.class, (component, time, clickTime) -> takePilotSeat(gamepad));
+
+        gamepad.addAxisListener(XboxGamepad.Component.TRIGGER_AXIS, (component, time, value) -> setThrottle(gamepad, -value));
+        gamepad.addAxisListener(XboxGamepad.Component.LEFT_STICK_X_AXIS, (component, time, value) -> setSteering(gamepad, value));
+
+        gamepads.add(gamepad);
+        takeFreeSeat(gamepad);
+    }
+
+    /**
+     * Stops the given gamepad from driving this engine, for example because it was unplugged. If it was the pilot, the
+     * motors stop and the co-pilot becomes the pilot.
+     */
+    public synchronized void unbind(XboxGamepad gamepad) {
+        Objects.requireNonNull(gamepad, "gamepad");
+        gamepads.remove(gamepad);
+        coPilot.compareAndSet(gamepad, null);
+        if (pilot.compareAndSet(gamepad, null)) {
+            //nobody holds the trigger anymore
+            stopDriving();
+            XboxGamepad promoted = coPilot.get();
+            if (promoted != null && pilot.compareAndSet(null, promoted)) {
+                coPilot.compareAndSet(promoted, null);
+            }
+        }
+        for (XboxGamepad waiting : gamepads) {
+            takeFreeSeat(waiting);
+        }
+    }
+
+    /**
+     * Puts the given bound gamepad in the pilot seat. The previous pilot moves to the co-pilot seat if it is free, or
+     * if the gamepad came from there.
+     */
+    public synchronized void takePilotSeat(XboxGamepad gamepad) {
+        Objects.requireNonNull(gamepad, "gamepad");
+        if (!gamepads.contains(gamepad)) {
+            return;
+        }
+        XboxGamepad previous = pilot.getAndSet(gamepad);
+        if (previous == gamepad) {
+            return;
+        }
+        if (!coPilot.compareAndSet(gamepad, previous) && previous != null) {
+            coPilot.compareAndSet(null, previous);
+        }
+        //the throttle of the previous pilot does not carry over
+        stopDriving();
+    }
+
+    private synchronized void takeFreeSeat(XboxGamepad gamepad) {
+        if (pilot.get() != gamepad && coPilot.get() != gamepad && !pilot.compareAndSet(null, gamepad)) {
+            coPilot.compareAndSet(null, gamepad);
+        }
+    }
+
+    /**
+     * Only accurate while holding the lock of this engine.
+     */
+    private boolean isPayloadOperator(XboxGamepad gamepad) {
+        XboxGamepad currentCoPilot = coPilot.get();
+        return (currentCoPilot != null) ? currentCoPilot == gamepad : pilot.get() == gamepad;
+    }
+
+    /**
+     * Returns the gamepad that drives, or null if there is none.
+     */
+    public XboxGamepad getPilot() {
+        return pilot.get();
+    }
+
+    /**
+     * Returns the gamepad that operates the camera and the shovel besides the pilot, or null if there is none.
+     */
+    public XboxGamepad getCoPilot() {
+        return coPilot.get();
+    }
+
+    @Override
+    public void onControlInput(ControlInput input, float value) {
+        switch (input) {
+            case RESET:
+                reset();
+                break;
+            case PAN_CAMERA:
+                panCamera(value);
+                break;
+            case TILT_CAMERA:
+                tiltCamera(value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Moves the camera as far as the right stick of the gamepad that operates it asks for in the elapsed time.
+     */
+    @Override
+    public synchronized void step(long time, long elapsedTime) {
+        XboxGamepad currentGamepad = coPilot.get();
+        if (currentGamepad == null) {
+            currentGamepad = pilot.get();
+        }
+        if (currentGamepad == null || elapsedTime <= 0) {
+            return;
+        }
+        currentGamepad.readState(gamepadState);
+        float rightStickXValue = gamepadState.getAxisValue(XboxGamepad.Component.RIGHT_STICK_X_AXIS);
+        float rightStickYValue = gamepadState.getAxisValue(XboxGamepad.Component.RIGHT_STICK_Y_AXIS);
+        float maxDelta = CAMERA_SPEED * elapsedTime / 1e9f;
+        if (rightStickXValue == 0f && rightStickYValue == 0f) {
+            //an idle stick leaves the camera alone instead of resending its angles on every tick
+            return;
+        }
+        long originTime = gamepadState.getOriginTime();
+        if (originTime == cameraOriginTime) {
+            originTime = 0L;
+        }
+        else {
+            cameraOriginTime = originTime;
+        }
+        if (rightStickXValue != 0f) {
+            panCamera(rightStickXValue * maxDelta, originTime);
+        }
+        if (rightStickYValue != 0f) {
+            tiltCamera(-rightStickYValue * maxDelta, originTime);
+        }
+    }
+
+    public synchronized void panCamera(float delta) {
+        panCamera(delta, 0L);
+    }
+
+    public synchronized void tiltCamera(float delta) {
+        tiltCamera(delta, 0L);
+    }
+
+    public synchronized void centerCamera() {
+        centerCamera(0L);
+    }
+
+    public synchronized void moveShovel(float delta) {
+        moveShovel(delta, 0L);
+    }
+
+    private synchronized void panCamera(float delta, long originTime) {
+        cxAngle = clamp(cxAngle + delta, CX_MIN, CX_MAX);
+        output.onOutput(Actuator.CX, Math.round(cxAngle), originTime);
+    }
+
+    private synchronized void tiltCamera(float delta, long originTime) {
+        cyAngle = clamp(cyAngle + delta, CY_MIN, CY_MAX);
+        output.onOutput(Actuator.CY, Math.round(cyAngle), originTime);
+    }
+
+    private synchronized void centerCamera(long originTime) {
+        cxAngle = CX_DEFAULT;
+        cyAngle = CY_DEFAULT;
+        output.onOutput(Actuator.CX, Math.round(cxAngle), originTime);
+        output.onOutput(Actuator.CY, Math.round(cyAngle), originTime);
+    }
+
+    private synchronized void moveShovel(float delta, long originTime) {
+        syAngle = clamp(syAngle + delta, SY_MIN, SY_MAX);
+        output.onOutput(Actuator.SY, Math.round(syAngle), originTime);
+    }
+
+    private synchronized void centerCamera(XboxGamepad gamepad) {
+        if (isPayloadOperator(gamepad)) {
+            centerCamera(gamepad.getCurrentOriginTime());
+        }
+    }
+
+    private synchronized void moveShovel(XboxGamepad gamepad, float delta) {
+        if (isPayloadOperator(gamepad)) {
+            moveShovel(delta, gamepad.getCurrentOriginTime());
+        }
+    }
+
+    /**
+     * @param throttle  the throttle of both motors, from -1 for full reverse to 1 for full forward
+     */
+    public synchronized void setThrottle(float throttle) {
+        setThrottle(throttle, 0L);
+    }
+
+    /**
+     * @param steering  the steering, from -1 for turning left on the spot to 1 for turning right on the spot
+     */
+    public synchronized void setSteering(float steering) {
+        setSteering(steering, 0L);
+    }
+
+    private synchronized void setThrottle(float throttle, long originTime) {
+        motorThrottle = throttle;
+        updateMotors(originTime);
+    }
+
+    private synchronized void setSteering(float steering, long originTime) {
+        //differential drive: the motor on the inside of the turn slows down, and reverses beyond half deflection
+        if (steering >= 0f) {
+            motorLeftModifier = 1f;
+            motorRightModifier = 1f - 2 * steering;
+        }
+        else {
+            motorLeftModifier = 1f + 2 * steering;
+            motorRightModifier = 1f;
+        }
+        updateMotors(originTime);
+    }
+
+    private synchronized void setThrottle(XboxGamepad gamepad, float throttle) {
+        if (pilot.get() == gamepad) {
+            setThrottle(throttle, gamepad.getCurrentOriginTime());
+        }
+    }
+
+    private synchronized void setSteering(XboxGamepad gamepad, float steering) {
+        if (pilot.get() == gamepad) {
+            setSteering(steering, gamepad.getCurrentOriginTime());
+        }
+    }
+
+    public synchronized float getCXAngle() {
+        return cxAngle;
+    }
+
+    public synchronized float getCYAngle() {
+        return cyAngle;
+    }
+
+    public synchronized float getSYAngle() {
+        return syAngle;
+    }
+
+    /**
+     * Returns the power of the left motor, from -1 to 1.
+     */
+    public synchronized float getMotorLeft() {
+        return motorLeft;
+    }
+
+    /**
+     * Returns the power of the right motor, from -1 to 1.
+     */
+    public synchronized float getMotorRight() {
+        return motorRight;
+    }
+
+    private synchronized void stopDriving() {
+        motorThrottle = 0f;
+        motorLeftModifier = 1f;
+        motorRightModifier = 1f;
+        updateMotors(0L);
+    }
+
+    private void updateMotors(long originTime) {
+        motorLeft = motorThrottle * motorLeftModifier;
+        motorRight = motorThrottle * motorRightModifier;
+        output.onOutput(Actuator.ML, Math.round(10000 * motorLeft), originTime);
+        output.onOutput(Actuator.MR, Math.round(10000 * motorRight), originTime);
+    }
+
+    private static float clamp(float value, float min, float max) {
+        if (value < min) {
+            return min;
+        }
+        if (value > max) {
+            return max;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,16 @@
+package com.skiwi.rovcontrolsoftware.control;
+
+/**
+ * The inputs of a {@link ControlEngine} that do not come from a gamepad, such as the keys of the main window. They are
+ * applied through {@link ControlInputListener} so that a session recording can replay them.
+ *
+ * @author Frank van Heeswijk
+ */
+public enum ControlInput {
+    /** Moves everything to its default position, the value is ignored. */
+    RESET,
+    /** Pans the camera by the value in degrees. */
+    PAN_CAMERA,
+    /** Tilts the camera by the value in degrees. */
+    TILT_CAMERA
+}
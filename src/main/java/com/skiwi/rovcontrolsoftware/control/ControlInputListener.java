@@ -0,0 +1,9 @@
+package com.skiwi.rovcontrolsoftware.control;
+
+/**
+ * @author Frank van Heeswijk
+ */
+@FunctionalInterface
+public interface ControlInputListener {
+    void onControlInput(ControlInput input, float value);
+}
@@ -0,0 +1,195 @@
+package com.skiwi.rovcontrolsoftware.control;
+
+import com.skiwi.rovcontrolsoftware.metrics.Histogram;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a {@link ControlTask} at a fixed rate. Ticks are scheduled on a fixed grid, so a late tick does not shift the
+ * ticks after it, and every tick tells the task how much time actually passed, so that whatever the task integrates
+ * keeps the right speed even if a tick was late.
+ *
+ * The loop runs either on its own thread against {@link System#nanoTime()}, or is driven by calling
+ * {@link #advanceTo(long)} with the times of another clock, such as the recorded clock of a replay. Given the same
+ * times it always runs the same ticks.
+ *
+ * @author Frank van Heeswijk
+ */
+public class ControlLoop {
+    public static final int MIN_RATE = 1;
+    public static final int MAX_RATE = 1000;
+
+    private final long period;
+    private final LatePolicy latePolicy;
+    private final int maxCatchUpTicks;
+    private final ControlTask task;
+
+    //only accessed while holding the lock on this loop
+    private boolean ticked;
+    private long nextTickTime;
+    private long lastTickTime;
+
+    private final Histogram lateness = new Histogram();
+    private final Histogram stepTime = new Histogram();
+    private final AtomicLong tickCount = new AtomicLong();
+    private final AtomicLong overrunCount = new AtomicLong();
+    private final AtomicLong skippedTickCount = new AtomicLong();
+
+    private volatile Thread loopThread;
+
+    /**
+     * @param rate  the amount of ticks per second
+     * @param latePolicy    what to do with ticks that are missed because the loop fell behind
+     * @param maxCatchUpTicks   the maximum amount of missed ticks run back to back with {@link LatePolicy#CATCH_UP},
+     *                          any more are skipped
+     */
+    public ControlLoop(int rate, LatePolicy latePolicy, int maxCatchUpTicks, ControlTask task) {
+        if (rate < MIN_RATE || rate > MAX_RATE) {
+            throw new IllegalArgumentException("The rate must be between " + MIN_RATE + " and " + MAX_RATE + " Hz: rate = " + rate);
+        }
+        if (maxCatchUpTicks < 0) {
+            throw new IllegalArgumentException("The maximum amount of catch up ticks cannot be negative: maxCatchUpTicks = " + maxCatchUpTicks);
+        }
+        this.period = 1_000_000_000L / rate;
+        this.latePolicy = Objects.requireNonNull(latePolicy, "latePolicy");
+        this.maxCatchUpTicks = maxCatchUpTicks;
+        this.task = Objects.requireNonNull(task, "task");
+    }
+
+    public synchronized void start() {
+        if (loopThread != null) {
+            throw new IllegalStateException("The control loop is already running");
+        }
+        loopThread = new Thread(this::runLoop, "control-loop");
+        loopThread.setDaemon(true);
+        loopThread.setPriority(Thread.MAX_PRIORITY);
+        loopThread.start();
+    }
+
+    public synchronized void stop() {
+        Thread stoppedLoopThread = loopThread;
+        loopThread = null;
+        if (stoppedLoopThread != null) {
+            LockSupport.unpark(stoppedLoopThread);
+        }
+    }
+
+    /**
+     * Runs every tick that is due at the given time. The first call runs the first tick at exactly that time.
+     *
+     * @return  the time of the next tick
+     */
+    public synchronized long advanceTo(long time) {
+        if (!ticked) {
+            ticked = true;
+            nextTickTime = time;
+            lastTickTime = time;
+        }
+        if (time - nextTickTime < 0) {
+            return nextTickTime;
+        }
+        long missedTicks = (time - nextTickTime) / period;
+        lateness.record(time - nextTickTime);
+        if (missedTicks > 0) {
+            overrunCount.incrementAndGet();
+        }
+
+        long stepStartTime = System.nanoTime();
+        long ticksToRun;
+        switch (latePolicy) {
+            case CATCH_UP:
+                ticksToRun = 1 + Math.min(missedTicks, maxCatchUpTicks);
+                break;
+            case SKIP:
+            default:
+                ticksToRun = 1;
+                break;
+        }
+        long skippedTicks = missedTicks + 1 - ticksToRun;
+        if (skippedTicks > 0) {
+            skippedTickCount.addAndGet(skippedTicks);
+            nextTickTime += skippedTicks * period;
+        }
+        for (long i = 0; i < ticksToRun; i++) {
+            //a skipped tick is still integrated by the next tick that runs, because it sees all the elapsed time
+            long tickTime = (i == ticksToRun - 1) ? time : nextTickTime;
+            runTask(tickTime, tickTime - lastTickTime);
+            lastTickTime = tickTime;
+            nextTickTime += period;
+        }
+        stepTime.record(System.nanoTime() - stepStartTime);
+        return nextTickTime;
+    }
+
+    private void runTask(long time, long elapsedTime) {
+        tickCount.incrementAndGet();
+        try {
+            task.step(time, elapsedTime);
+        } catch (RuntimeException e) {
+            //one failing tick must not stop the loop
+            e.printStackTrace();
+        }
+    }
+
+    private void runLoop() {
+        Thread currentThread = Thread.currentThread();
+        long nextTime = System.nanoTime();
+        while (loopThread == currentThread) {
+            long waitTime = nextTime - System.nanoTime();
+            if (waitTime > 0) {
+                LockSupport.parkNanos(this, waitTime);
+                continue;
+            }
+            nextTime = advanceTo(System.nanoTime());
+        }
+    }
+
+    /**
+     * Returns the time between ticks in nanoseconds.
+     */
+    public long getPeriod() {
+        return period;
+    }
+
+    /**
+     * Returns how late the loop woke up compared to the tick that was due, in nanoseconds.
+     */
+    public Histogram getLateness() {
+        return lateness;
+    }
+
+    /**
+     * Returns the nanoseconds spent running the due ticks per wake up.
+     */
+    public Histogram getStepTime() {
+        return stepTime;
+    }
+
+    public long getTickCount() {
+        return tickCount.get();
+    }
+
+    /**
+     * Returns the amount of times the loop woke up a full period or more after a tick was due.
+     */
+    public long getOverrunCount() {
+        return overrunCount.get();
+    }
+
+    public long getSkippedTickCount() {
+        return skippedTickCount.get();
+    }
+
+    public static enum LatePolicy {
+        /**
+         * Runs the missed ticks back to back, each with one period of elapsed time, followed by the due tick.
+         */
+        CATCH_UP,
+        /**
+         * Runs only the due tick, with all the elapsed time since the last tick that ran.
+         */
+        SKIP
+    }
+}
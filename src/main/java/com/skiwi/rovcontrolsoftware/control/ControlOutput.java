@@ -0,0 +1,25 @@
+package com.skiwi.rovcontrolsoftware.control;
+
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+
+/**
+ * Receives the actuator values a {@link ControlEngine} decides on. A value carries the trace origin of the input that
+ * caused it, see {@link com.skiwi.rovcontrolsoftware.metrics.LatencyTracer}, as it may go out on another thread than
+ * the one of that input.
+ *
+ * @author Frank van Heeswijk
+ */
+@FunctionalInterface
+public interface ControlOutput {
+    /**
+     * @param originTime    the trace origin of the input that caused the value, or zero if it is not traced
+     */
+    void onOutput(Actuator actuator, int value, long originTime);
+
+    /**
+     * Outputs a value that no traced input caused.
+     */
+    default void onOutput(Actuator actuator, int value) {
+        onOutput(actuator, value, 0L);
+    }
+}
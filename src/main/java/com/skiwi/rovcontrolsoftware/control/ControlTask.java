@@ -0,0 +1,15 @@
+package com.skiwi.rovcontrolsoftware.control;
+
+/**
+ * Work done on every tick of a {@link ControlLoop}.
+ *
+ * @author Frank van Heeswijk
+ */
+@FunctionalInterface
+public interface ControlTask {
+    /**
+     * @param time  the time of this tick in nanoseconds, on the clock that drives the loop
+     * @param elapsedTime   the nanoseconds since the previous tick, zero on the first tick
+     */
+    void step(long time, long elapsedTime);
+}
@@ -0,0 +1,168 @@
+package com.skiwi.rovcontrolsoftware.control;
+
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Sits between a {@link ControlEngine} and whatever sends the commands, and decides per actuator what actually goes
+ * out. A value equal to the one last sent is suppressed, an actuator is not updated more often than its maximum rate,
+ * a value moves no faster than the slew rate of its actuator, and a value that has not been sent for a while is sent
+ * again as a keepalive. The amount of commands therefore follows the motion of the actuators, not the poll rate.
+ *
+ * Values that cannot go out immediately are held back and sent by {@link #step(long, long)}, so the stage has to be
+ * stepped by a {@link ControlLoop} that runs on the same clock as the stage.
+ *
+ * The first value sent towards a target carries the trace origin of the input that set the target, also when it is
+ * held back or slew limited, so the latency of those inputs is measured up to the first command they cause. The
+ * remaining steps of a slew and keepalives are not traced.
+ *
+ * @author Frank van Heeswijk
+ */
+public class OutputStage implements ControlOutput, ControlTask {
+    private static final Actuator[] ACTUATORS = Actuator.values();
+
+    //a slew limited value never moves further in one go than it may move in this time
+    private static final long MAX_SLEW_STEP_TIME = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final ControlOutput output;
+    private final LongSupplier clock;
+
+    private final long[] minIntervals = new long[ACTUATORS.length];
+    private final int[] maxSlewRates = new int[ACTUATORS.length];
+    private final long[] keepaliveIntervals = new long[ACTUATORS.length];
+
+    private final int[] targetValues = new int[ACTUATORS.length];
+    private final long[] targetOrigins = new long[ACTUATORS.length];
+    private final boolean[] hasSent = new boolean[ACTUATORS.length];
+    private final int[] sentValues = new int[ACTUATORS.length];
+    private final long[] sendTimes = new long[ACTUATORS.length];
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong suppressedCount = new AtomicLong();
+    private final AtomicLong deferredCount = new AtomicLong();
+    private final AtomicLong slewLimitedCount = new AtomicLong();
+    private final AtomicLong keepaliveCount = new AtomicLong();
+
+    /**
+     * Creates a stage without any limits, which only suppresses unchanged values until limits are set.
+     *
+     * @param clock the clock in nanoseconds, the same clock the control loop stepping this stage runs on
+     */
+    public OutputStage(ControlOutput output, LongSupplier clock) {
+        this.output = Objects.requireNonNull(output, "output");
+        this.clock = Objects.requireNonNull(clock, "clock");
+    }
+
+    /**
+     * @param maxRate   the maximum amount of updates per second, zero for no limit
+     * @param maxSlewRate   the maximum change of the value per second, zero for no limit
+     * @param keepaliveInterval the milliseconds after which an unchanged value is sent again, zero for never
+     */
+    public synchronized void setLimits(Actuator actuator, int maxRate, int maxSlewRate, long keepaliveInterval) {
+        Objects.requireNonNull(actuator, "actuator");
+        if (maxRate < 0 || maxSlewRate < 0 || keepaliveInterval < 0) {
+            throw new IllegalArgumentException("Limits cannot be negative: maxRate = " + maxRate + ", maxSlewRate = " + maxSlewRate + ", keepaliveInterval = " + keepaliveInterval);
+        }
+        int index = actuator.ordinal();
+        minIntervals[index] = (maxRate == 0) ? 0L : 1_000_000_000L / maxRate;
+        maxSlewRates[index] = maxSlewRate;
+        keepaliveIntervals[index] = TimeUnit.MILLISECONDS.toNanos(keepaliveInterval);
+    }
+
+    @Override
+    public synchronized void onOutput(Actuator actuator, int value, long originTime) {
+        int index = actuator.ordinal();
+        targetValues[index] = value;
+        targetOrigins[index] = originTime;
+        if (hasSent[index] && value == sentValues[index]) {
+            //also cancels a value that was still held back
+            suppressedCount.incrementAndGet();
+            return;
+        }
+        long time = clock.getAsLong();
+        if (hasSent[index] && time - sendTimes[index] < minIntervals[index]) {
+            //goes out on a later step
+            deferredCount.incrementAndGet();
+            return;
+        }
+        sendTowardsTarget(index, time);
+    }
+
+    /**
+     * Sends the values that were held back and are now allowed out, and the keepalives that are due.
+     */
+    @Override
+    public synchronized void step(long time, long elapsedTime) {
+        for (int index = 0; index < ACTUATORS.length; index++) {
+            if (!hasSent[index]) {
+                continue;
+            }
+            long sinceSend = time - sendTimes[index];
+            if (targetValues[index] != sentValues[index]) {
+                if (sinceSend >= minIntervals[index]) {
+                    sendTowardsTarget(index, time);
+                }
+            }
+            else if (keepaliveIntervals[index] > 0 && sinceSend >= keepaliveIntervals[index]) {
+                keepaliveCount.incrementAndGet();
+                send(index, sentValues[index], time, 0L);
+            }
+        }
+    }
+
+    private void sendTowardsTarget(int index, long time) {
+        int value = targetValues[index];
+        if (hasSent[index] && maxSlewRates[index] > 0) {
+            long slewTime = Math.min(time - sendTimes[index], Math.max(minIntervals[index], MAX_SLEW_STEP_TIME));
+            long maxStep = Math.max(1L, maxSlewRates[index] * slewTime / 1_000_000_000L);
+            long step = (long)value - sentValues[index];
+            if (Math.abs(step) > maxStep) {
+                slewLimitedCount.incrementAndGet();
+                value = (int)(sentValues[index] + Long.signum(step) * maxStep);
+            }
+        }
+        send(index, value, time, targetOrigins[index]);
+        targetOrigins[index] = 0L;
+    }
+
+    private void send(int index, int value, long time, long originTime) {
+        hasSent[index] = true;
+        sentValues[index] = value;
+        sendTimes[index] = time;
+        sentCount.incrementAndGet();
+        output.onOutput(ACTUATORS[index], value, originTime);
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * Returns the amount of values that were dropped because they equal the value last sent.
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.get();
+    }
+
+    /**
+     * Returns the amount of values that were held back by the maximum rate of their actuator.
+     */
+    public long getDeferredCount() {
+        return deferredCount.get();
+    }
+
+    /**
+     * Returns the amount of sends that went out as an intermediate value because of the slew rate.
+     */
+    public long getSlewLimitedCount() {
+        return slewLimitedCount.get();
+    }
+
+    public long getKeepaliveCount() {
+        return keepaliveCount.get();
+    }
+}
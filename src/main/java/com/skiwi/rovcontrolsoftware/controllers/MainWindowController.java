@@ -1,17 +1,39 @@
 package com.skiwi.rovcontrolsoftware.controllers;
 
-import com.github.sarxos.webcam.Webcam;
-import com.github.sarxos.webcam.WebcamEvent;
-import com.github.sarxos.webcam.WebcamListener;
-import com.github.sarxos.webcam.WebcamPanel;
-import com.github.sarxos.webcam.ds.ipcam.IpCamDevice;
-import com.github.sarxos.webcam.ds.ipcam.IpCamDeviceRegistry;
-import com.github.sarxos.webcam.ds.ipcam.IpCamMode;
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+import com.skiwi.rovcontrolsoftware.commands.BinaryCommandProtocol;
+import com.skiwi.rovcontrolsoftware.commands.CommandPipeline;
+import com.skiwi.rovcontrolsoftware.commands.CommandProtocol;
+import com.skiwi.rovcontrolsoftware.commands.ConnectionManager;
+import com.skiwi.rovcontrolsoftware.commands.OfflineCommandBuffer;
+import com.skiwi.rovcontrolsoftware.commands.TextCommandProtocol;
+import com.skiwi.rovcontrolsoftware.control.ControlEngine;
+import com.skiwi.rovcontrolsoftware.control.ControlInput;
+import com.skiwi.rovcontrolsoftware.control.ControlLoop;
+import com.skiwi.rovcontrolsoftware.control.OutputStage;
+import com.skiwi.rovcontrolsoftware.gamepads.ControllerScanner;
+import com.skiwi.rovcontrolsoftware.gamepads.GamepadDiscovery;
+import com.skiwi.rovcontrolsoftware.gamepads.GamepadListener;
 import com.skiwi.rovcontrolsoftware.gamepads.XboxGamepad;
-import com.skiwi.rovcontrolsoftware.gamepads.events.AxisMovedEvent;
-import com.skiwi.rovcontrolsoftware.gamepads.events.ButtonPressedEvent;
+import com.skiwi.rovcontrolsoftware.link.LinkMonitor;
+import com.skiwi.rovcontrolsoftware.link.VideoLevel;
+import com.skiwi.rovcontrolsoftware.metrics.Histogram;
+import com.skiwi.rovcontrolsoftware.metrics.LatencyTracer;
+import com.skiwi.rovcontrolsoftware.recording.SessionRecorder;
+import com.skiwi.rovcontrolsoftware.recording.VideoRecorder;
+import com.skiwi.rovcontrolsoftware.telemetry.Telemetry;
+import com.skiwi.rovcontrolsoftware.telemetry.TelemetryChannel;
+import com.skiwi.rovcontrolsoftware.telemetry.TextTelemetryParser;
+import com.skiwi.rovcontrolsoftware.ui.LabelUpdater;
+import com.skiwi.rovcontrolsoftware.ui.VideoView;
+import com.skiwi.rovcontrolsoftware.video.CameraManager;
+import com.skiwi.rovcontrolsoftware.video.DecodePool;
+import com.skiwi.rovcontrolsoftware.video.MjpegStream;
+import com.skiwi.rovcontrolsoftware.video.VideoMetrics;
+import com.skiwi.rovcontrolsoftware.video.VideoRenderer;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
-import javafx.embed.swing.SwingNode;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.Scene;
@@ -19,45 +41,59 @@ import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyEvent;
-import net.java.games.input.Controller;
-import net.java.games.input.ControllerEnvironment;
+import javafx.stage.Stage;
+import javafx.util.Duration;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.MalformedURLException;
-import java.net.Socket;
 import java.net.URL;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * @author Frank van Heeswijk
  */
 public class MainWindowController implements Initializable {
     private static final int POLL_RATE = 100;   //amount of times polled per second
-    private static final int CONTROLLER_DELTA = 500;
+    private static final int CONTROL_RATE = 200;    //amount of control loop ticks per second
+    private static final int CONTROL_MAX_CATCH_UP_TICKS = 5;
+    private static final long GAMEPAD_MIN_POLL_PERIOD = 500_000L;   //nanoseconds between polls while the gamepad is in use
+    private static final long GAMEPAD_MAX_POLL_PERIOD = 1_000_000_000L / POLL_RATE;
+    private static final int GAMEPAD_SCAN_INTERVAL = 1000;
     private static final int KEYBOARD_DELTA = 5;
-    private static final int SHOVEL_DELTA = 10;
+    private static final int COMMAND_FLUSH_DELAY = 1000 / POLL_RATE;
+    private static final int SOCKET_CONNECT_TIMEOUT = 2000;
+    private static final int SOCKET_DEBOUNCE_DELAY = 300;
+    private static final int SOCKET_INITIAL_BACKOFF = 250;
+    private static final int SOCKET_MAX_BACKOFF = 8000;
+    private static final int CAMERA_CONNECT_TIMEOUT = 2000;
+    private static final int CAMERA_READ_TIMEOUT = 5000;
+    private static final int CAMERA_RECONNECT_DELAY = 1000;
+    private static final int CAMERA_DEBOUNCE_DELAY = 300;
+    private static final int CAMERA_COUNT = 2;  //the forward and the downward camera
+    private static final int DECODE_MAX_THREADS = 2;
+    private static final double DECODE_SECONDARY_FRAME_RATE = 5d;
+    private static final int DECODE_SECONDARY_SUBSAMPLING = 4;
+    private static final int LINK_MAX_QUEUE_DELAY = 50;     //milliseconds of queueing on the tether before video is reduced
+
+    private static final int LATENCY_OVERLAY_INTERVAL = 500;
+
+    private static final int TELEMETRY_CHANNEL_CAPACITY = 4096;
+    private static final int TELEMETRY_MAX_CHANNELS = 32;
+
+    private static final String SESSION_DIRECTORY = "sessions";
+    private static final long SESSION_SEGMENT_SIZE = 16L * 1024 * 1024;
+
+    private static final int SHUTDOWN_TIMEOUT = 2000;   //milliseconds to wait for every recording and the connection
 
-    private static final float CONTROLLER_RS_DEADZONE = 0.25f;
-    private static final float CONTROLLER_TRIGGER_DEADZONE = 0.10f;
-    private static final float CONTROLLER_LS_DEADZONE = 0.25f;
-
-    private static final float CX_DEFAULT = 90f;
-    private static final float CY_DEFAULT = 90f;
-    private static final float SY_DEFAULT = 90f;
-
-    private static final int CX_MIN = 10;
-    private static final int CX_MAX = 170;
-    private static final int CY_MIN = 0;
-    private static final int CY_MAX = 180;
-    private static final int SY_MIN = 0;
-    private static final int SY_MAX = 180;
+    @FXML
+    private VideoView videoView;
 
     @FXML
-    private SwingNode swingNode;
+    private VideoView thumbnailVideoView;
 
     @FXML
     private ChoiceBox<Configuration> configurationChoiceBox;
@@ -65,6 +101,9 @@ public class MainWindowController implements Initializable {
     @FXML
     private TextField cameraUrlTextField;
 
+    @FXML
+    private TextField downCameraUrlTextField;
+
     @FXML
     private TextField socketHostTextField;
 
@@ -95,213 +134,364 @@ public class MainWindowController implements Initializable {
     @FXML
     private Label motorRightLabel;
 
-    private Scene scene;
+    @FXML
+    private Label latencyLabel;
 
-    private float rightStickXValue = 0f;
-    private float rightStickYValue = 0f;
+    private Scene scene;
 
-    private float cxAngle;
-    private float cyAngle;
+    private Supplier<CommandProtocol> commandProtocolSupplier = TextCommandProtocol::new;
 
-    private float syAngle;
+    private final OfflineCommandBuffer offlineCommandBuffer = new OfflineCommandBuffer();
 
-    private float motorThrottle;
+    private final ConnectionManager connectionManager = new ConnectionManager(offlineCommandBuffer, SOCKET_CONNECT_TIMEOUT, SOCKET_DEBOUNCE_DELAY, SOCKET_INITIAL_BACKOFF, SOCKET_MAX_BACKOFF);
+    private final CommandPipeline commandPipeline = new CommandPipeline(connectionManager, COMMAND_FLUSH_DELAY);
 
-    private float motorLeftModifier;
-    private float motorRightModifier;
+    private final LatencyTracer latencyTracer = new LatencyTracer();
+    private final LinkMonitor linkMonitor = new LinkMonitor(connectionManager, this::getVideoBytesReceived, LINK_MAX_QUEUE_DELAY);
 
-    private Socket commandSocket;
-    private PrintWriter outCommandSocket;
-    private BufferedReader inCommandSocket;
+    private SessionRecorder sessionRecorder;
 
-    private List<String> bufferedCommands = new ArrayList<>();
+    private final OutputStage outputStage = new OutputStage(this::onControlOutput, System::nanoTime);
+    private final ControlEngine controlEngine = new ControlEngine(outputStage);
+    private final ControlLoop controlLoop = new ControlLoop(CONTROL_RATE, ControlLoop.LatePolicy.CATCH_UP, CONTROL_MAX_CATCH_UP_TICKS, (time, elapsedTime) -> {
+        if (sessionRecorder != null) {
+            //a replay runs the ticks at these times instead of on a grid of its own
+            sessionRecorder.recordControlTick(time, elapsedTime);
+        }
+        controlEngine.step(time, elapsedTime);
+        outputStage.step(time, elapsedTime);
+    });
+
+    private final ControllerScanner controllerScanner = new ControllerScanner();
+    private final GamepadDiscovery gamepadDiscovery = new GamepadDiscovery(controllerScanner, GAMEPAD_SCAN_INTERVAL, GAMEPAD_MIN_POLL_PERIOD, GAMEPAD_MAX_POLL_PERIOD);
+
+    private final Telemetry telemetry = new Telemetry(TELEMETRY_CHANNEL_CAPACITY, TELEMETRY_MAX_CHANNELS);
+
+    //only accessed from the gamepad discovery thread
+    private final Map<XboxGamepad, Integer> gamepadIndices = new HashMap<>();
+    private int nextGamepadIndex;
+
+    private final LabelUpdater labelUpdater = new LabelUpdater();
+    private LabelUpdater.IntBinding cxAngleBinding;
+    private LabelUpdater.IntBinding cyAngleBinding;
+    private LabelUpdater.IntBinding syAngleBinding;
+    private LabelUpdater.IntBinding motorLeftBinding;
+    private LabelUpdater.IntBinding motorRightBinding;
+    private LabelUpdater.TextBinding cameraStatusBinding;
+    private LabelUpdater.TextBinding socketStatusBinding;
+    private LabelUpdater.TextBinding gamepadStatusBinding;
+
+    private VideoRenderer videoRenderer;
+    private VideoRenderer thumbnailRenderer;
+    //leaves a core for the control loop, the gamepad and the scene
+    private final DecodePool decodePool = new DecodePool(Math.max(1, Math.min(DECODE_MAX_THREADS, Runtime.getRuntime().availableProcessors() - 1)),
+            DECODE_SECONDARY_FRAME_RATE, DECODE_SECONDARY_SUBSAMPLING);
+    private final Camera[] cameras = new Camera[CAMERA_COUNT];
+
+    //only accessed from the JavaFX application thread
+    private int focusedCamera;
+    private VideoLevel videoLevel = VideoLevel.FULL;
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
-        cameraUrlTextField.textProperty().addListener((observableValue, oldValue, newValue) -> {
-            try {
-                IpCamDevice ipCamDevice = IpCamDeviceRegistry.register(new IpCamDevice("Test " + new Random().nextInt(), cameraUrlTextField.getText(), IpCamMode.PUSH));
-                Runnable cameraOnlineRunnable = () -> {
-                    setCameraStatus(Status.CONNECTING);
-                    boolean cameraOnline = ipCamDevice.isOnline();
-                    setCameraStatus(cameraOnline ? Status.ONLINE : Status.OFFLINE);
-                    if (cameraOnline) {
-                        List<Webcam> webcams = Webcam.getWebcams();
-                        Webcam addedWebcam = webcams.get(webcams.size() - 1);
-                        addedWebcam.addWebcamListener(new WebcamListener() {
-                            @Override
-                            public void webcamOpen(WebcamEvent we) {
-                                Platform.runLater(() -> swingNode.setContent(new WebcamPanel(we.getSource())));
-                            }
-
-                            @Override
-                            public void webcamClosed(WebcamEvent we) {
-                            }
-
-                            @Override
-                            public void webcamDisposed(WebcamEvent we) {
-                            }
-
-                            @Override
-                            public void webcamImageObtained(WebcamEvent we) {
-                            }
-                        });
-                        addedWebcam.open(false);
-                    }
-                };
-                new Thread(cameraOnlineRunnable).start();
-            } catch (MalformedURLException e) {
-                e.printStackTrace();
-            }
-        });
+        cxAngleBinding = labelUpdater.bindInt(cxAngleLabel);
+        cyAngleBinding = labelUpdater.bindInt(cyAngleLabel);
+        syAngleBinding = labelUpdater.bindInt(syAngleLabel);
+        motorLeftBinding = labelUpdater.bindInt(motorLeftLabel);
+        motorRightBinding = labelUpdater.bindInt(motorRightLabel);
+        cameraStatusBinding = labelUpdater.bindText(cameraStatusLabel);
+        socketStatusBinding = labelUpdater.bindText(socketStatusLabel);
+        gamepadStatusBinding = labelUpdater.bindText(gamepadStatusLabel);
+        labelUpdater.start();
 
-        socketHostTextField.textProperty().addListener((observableValue, oldValue, newValue) -> new Thread(this::updateSocketConnection).start());
-        socketPortTextField.textProperty().addListener((observableValue, oldValue, newValue) -> new Thread(this::updateSocketConnection).start());
-
-        setCXAngle(CX_DEFAULT);
-        setCYAngle(CY_DEFAULT);
-        setSYAngle(SY_DEFAULT);
-
-        motorThrottle = 0f;
-        motorLeftModifier = 1f;
-        motorRightModifier = 1f;
-        updateMotors();
-
-        List<Controller> gamepads = Arrays.stream(ControllerEnvironment.getDefaultEnvironment().getControllers())
-                .filter(controller -> controller.getType().equals(Controller.Type.GAMEPAD))
-                .collect(Collectors.toList());
-        if (!gamepads.isEmpty()) {
-            setGamepadStatus(Status.ONLINE);
-            Controller controller = gamepads.get(0);
-
-            XboxGamepad xboxGamepad = new XboxGamepad(controller, 1000 / POLL_RATE);
-
-            xboxGamepad.setDeadzone(XboxGamepad.Component.LEFT_STICK_X_AXIS, XboxGamepad.DeadzoneType.RADIAL, CONTROLLER_LS_DEADZONE);
-            xboxGamepad.setDeadzone(XboxGamepad.Component.LEFT_STICK_Y_AXIS, XboxGamepad.DeadzoneType.RADIAL, CONTROLLER_LS_DEADZONE);
-
-            xboxGamepad.setDeadzone(XboxGamepad.Component.RIGHT_STICK_X_AXIS, XboxGamepad.DeadzoneType.RADIAL, CONTROLLER_RS_DEADZONE);
-            xboxGamepad.setDeadzone(XboxGamepad.Component.RIGHT_STICK_Y_AXIS, XboxGamepad.DeadzoneType.RADIAL, CONTROLLER_RS_DEADZONE);
-
-            xboxGamepad.setDeadzone(XboxGamepad.Component.TRIGGER_AXIS, XboxGamepad.DeadzoneType.LINEAR, CONTROLLER_TRIGGER_DEADZONE);
-
-            xboxGamepad.addListener(XboxGamepad.Component.RIGHT_STICK_X_AXIS, AxisMovedEvent.class, event -> rightStickXValue = event.getNewValue());
-            xboxGamepad.addListener(XboxGamepad.Component.RIGHT_STICK_Y_AXIS, AxisMovedEvent.class, event -> rightStickYValue = event.getNewValue());
-
-            xboxGamepad.addListener(XboxGamepad.Component.RIGHT_STICK_BUTTON, ButtonPressedEvent.class, event -> {
-                setCXAngle(CX_DEFAULT);
-                setCYAngle(CY_DEFAULT);
-            });
-
-            xboxGamepad.addListener(XboxGamepad.Component.A_BUTTON, ButtonPressedEvent.class, event -> {
-                setSYAngle(clamp(syAngle + SHOVEL_DELTA, SY_MIN, SY_MAX));
-            });
-            xboxGamepad.addListener(XboxGamepad.Component.X_BUTTON, ButtonPressedEvent.class, event -> {
-                setSYAngle(clamp(syAngle - SHOVEL_DELTA, SY_MIN, SY_MAX));
-            });
+        try {
+            String sessionName = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            sessionRecorder = SessionRecorder.open(new File(SESSION_DIRECTORY, sessionName), SESSION_SEGMENT_SIZE);
+            telemetry.addListener(sessionRecorder);
+        } catch (IOException e) {
+            //flying without a recording beats not flying
+            e.printStackTrace();
+        }
 
-            xboxGamepad.addListener(XboxGamepad.Component.TRIGGER_AXIS, AxisMovedEvent.class, event -> {
-                motorThrottle = -event.getNewValue();
-                updateMotors();
-            });
-            xboxGamepad.addListener(XboxGamepad.Component.LEFT_STICK_X_AXIS, AxisMovedEvent.class, event -> {
-                float value = event.getNewValue();
-                if (value >= 0f) {
-                    motorLeftModifier = 1f;
-                    motorRightModifier = 1f - 2 * value;
-                }
-                else {
-                    motorLeftModifier = 1f + 2 * value;
-                    motorRightModifier = 1f;
+        connectionManager.setStateListener(state -> {
+            if (sessionRecorder != null) {
+                sessionRecorder.recordConnectionState(state);
+            }
+            switch (state) {
+                case ONLINE:
+                    setSocketStatus(Status.ONLINE);
+                    break;
+                case OFFLINE:
+                    setSocketStatus(Status.OFFLINE);
+                    break;
+                case CONNECTING:
+                    setSocketStatus(Status.CONNECTING);
+                    break;
+            }
+        });
+        connectionManager.setLatencyTracer(latencyTracer);
+        connectionManager.setTelemetryParserSupplier(() -> new TextTelemetryParser(telemetry));
+        commandPipeline.setLatencyTracer(latencyTracer);
+        commandPipeline.start();
+
+        Timeline latencyOverlayTimeline = new Timeline(new KeyFrame(Duration.millis(LATENCY_OVERLAY_INTERVAL), event -> updateLatencyOverlay()));
+        latencyOverlayTimeline.setCycleCount(Timeline.INDEFINITE);
+        latencyOverlayTimeline.play();
+
+        videoRenderer = new VideoRenderer(videoView);
+        videoRenderer.start();
+        thumbnailRenderer = new VideoRenderer(thumbnailVideoView);
+        thumbnailRenderer.start();
+        for (int i = 0; i < CAMERA_COUNT; i++) {
+            cameras[i] = new Camera(i);
+        }
+        thumbnailVideoView.setOnMouseClicked(event -> switchCamera());
+        updateCameraFocus();
+        cameraUrlTextField.textProperty().addListener((observableValue, oldValue, newValue) -> cameras[0].cameraManager.setUrl(newValue));
+        downCameraUrlTextField.textProperty().addListener((observableValue, oldValue, newValue) -> cameras[1].cameraManager.setUrl(newValue));
+
+        //acknowledgements arrive as telemetry
+        telemetry.addListener(linkMonitor);
+        linkMonitor.setVideoLevelListener(level -> Platform.runLater(() -> {
+            videoLevel = level;
+            updateCameraFocus();
+        }));
+        linkMonitor.start();
+
+        socketHostTextField.textProperty().addListener((observableValue, oldValue, newValue) -> updateSocketConnection());
+        socketPortTextField.textProperty().addListener((observableValue, oldValue, newValue) -> updateSocketConnection());
+
+        ControlEngine.configureOutputStage(outputStage);
+        applyControlInput(ControlInput.RESET, 0f);
+        //also runs without a gamepad, the output stage needs it for held back values and keepalives
+        controlLoop.start();
+
+        //gamepads come and go during a dive, they are found and polled away from this thread
+        setGamepadStatus(Status.OFFLINE);
+        gamepadDiscovery.setGamepadListener(new GamepadListener() {
+            @Override
+            public void onConnected(XboxGamepad gamepad) {
+                gamepad.setLatencyTracer(latencyTracer);
+                if (sessionRecorder != null) {
+                    //a replay tells the gamepads apart by their index
+                    int gamepadIndex = nextGamepadIndex++;
+                    gamepadIndices.put(gamepad, gamepadIndex);
+                    sessionRecorder.recordGamepadConnected(gamepadIndex);
+                    gamepad.setRawInputListener((component, time, value) -> sessionRecorder.recordGamepadInput(gamepadIndex, component, time, value));
                 }
-                updateMotors();
-            });
-
-            xboxGamepad.startListening();
+                controlEngine.bind(gamepad);
+                setGamepadStatus(Status.ONLINE);
+            }
 
-            Timer timer = new Timer(true);
-            timer.scheduleAtFixedRate(new TimerTask() {
-                @Override
-                public void run() {
-                    setCXAngle(clamp(cxAngle + (rightStickXValue * CONTROLLER_DELTA / POLL_RATE), CX_MIN, CX_MAX));
-                    setCYAngle(clamp(cyAngle - (rightStickYValue * CONTROLLER_DELTA / POLL_RATE), CY_MIN, CY_MAX));
+            @Override
+            public void onDisconnected(XboxGamepad gamepad) {
+                Integer gamepadIndex = gamepadIndices.remove(gamepad);
+                if (gamepadIndex != null) {
+                    sessionRecorder.recordGamepadDisconnected(gamepadIndex);
                 }
-            }, 0, 1000 / (POLL_RATE / 10));
-        }
-        else {
-            setGamepadStatus(Status.OFFLINE);
-        }
+                controlEngine.unbind(gamepad);
+                setGamepadStatus(gamepadDiscovery.getGamepads().isEmpty() ? Status.OFFLINE : Status.ONLINE);
+            }
+        });
+        gamepadDiscovery.start();
 
         configurationChoiceBox.getItems().addAll(
-                new Configuration("Test", "http://195.235.198.107:3346/axis-cgi/mjpg/video.cgi", "127.0.0.1", "2001"),
-                new Configuration("Ethernet", "http://192.168.1.1:8080/?action=stream", "192.168.1.1", "2001"),
-                new Configuration("WiFi", "http://192.168.50.122:8080/?action=stream", "192.168.50.122", "2001")
+                new Configuration("Test", "http://195.235.198.107:3346/axis-cgi/mjpg/video.cgi", "http://195.235.198.107:3346/axis-cgi/mjpg/video.cgi?resolution=320x240",
+                        "", "", "127.0.0.1", "2001", TextCommandProtocol::new),
+                new Configuration("Test (binary)", "http://195.235.198.107:3346/axis-cgi/mjpg/video.cgi", "http://195.235.198.107:3346/axis-cgi/mjpg/video.cgi?resolution=320x240",
+                        "", "", "127.0.0.1", "2002", () -> new BinaryCommandProtocol(true)),
+                new Configuration("Ethernet", "http://192.168.1.1:8080/?action=stream", "", "http://192.168.1.1:8081/?action=stream", "", "192.168.1.1", "2001", TextCommandProtocol::new),
+                new Configuration("WiFi", "http://192.168.50.122:8080/?action=stream", "", "http://192.168.50.122:8081/?action=stream", "", "192.168.50.122", "2001", TextCommandProtocol::new)
         );
         configurationChoiceBox.valueProperty().addListener((observableValue, oldValue, newValue) -> {
+            commandProtocolSupplier = newValue.commandProtocolSupplier;
+            cameras[0].cameraManager.setLowResolutionUrl(newValue.lowResolutionCameraUrl);
+            cameras[1].cameraManager.setLowResolutionUrl(newValue.lowResolutionDownCameraUrl);
             cameraUrlTextField.setText(newValue.cameraUrl);
+            downCameraUrlTextField.setText(newValue.downCameraUrl);
             socketHostTextField.setText(newValue.socketHost);
             socketPortTextField.setText(newValue.socketPort);
+            updateSocketConnection();
         });
         configurationChoiceBox.setValue(configurationChoiceBox.getItems().get(0));
     }
 
-    private void updateSocketConnection() {
-        String host = socketHostTextField.getText();
-        String port = socketPortTextField.getText();
-
-        setSocketStatus(Status.CONNECTING);
+    /**
+     * Stops everything, to be called on the JavaFX application thread when the application exits. Every thread of the
+     * application is a daemon that would die with the JVM in the middle of what it is doing, so the recordings are
+     * completed first, then the last commands are sent and the connection is closed, and the cameras and the gamepads
+     * go last.
+     */
+    public void shutdown() {
         try {
-            if (commandSocket != null) {
-                commandSocket.close();
+            if (sessionRecorder != null) {
+                sessionRecorder.close();
+                sessionRecorder.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            List<VideoRecorder> videoRecorders = new ArrayList<>();
+            for (Camera camera : cameras) {
+                VideoRecorder videoRecorder = camera.stopRecording();
+                if (videoRecorder != null) {
+                    videoRecorders.add(videoRecorder);
+                }
+            }
+            for (VideoRecorder videoRecorder : videoRecorders) {
+                videoRecorder.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
             }
 
-            commandSocket = new Socket(host, Integer.parseInt(port));
-            outCommandSocket = new PrintWriter(commandSocket.getOutputStream(), true);
-            inCommandSocket = new BufferedReader(new InputStreamReader(commandSocket.getInputStream()));
-
-            bufferedCommands.forEach(outCommandSocket::println);
+            controlLoop.stop();
+            commandPipeline.stop();
+            connectionManager.close();
+            linkMonitor.close();
+            connectionManager.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            //exiting anyway, the rest is stopped without waiting
+            Thread.currentThread().interrupt();
+        }
 
-            setSocketStatus(Status.ONLINE);
-        } catch (IOException e) {
-            setSocketStatus(Status.OFFLINE);
+        for (Camera camera : cameras) {
+            camera.cameraManager.close();
         }
+        decodePool.close();
+        videoRenderer.stop();
+        thumbnailRenderer.stop();
+        labelUpdater.stop();
+
+        gamepadDiscovery.close();
     }
 
-    private void setCXAngle(float angle) {
-        cxAngle = angle;
-        Platform.runLater(() -> cxAngleLabel.setText(String.valueOf(Math.round(angle))));
-        sendCommand("cx " + Math.round(angle));
+    /**
+     * Shows the next camera in the main view, and the one that was there in the thumbnail view.
+     */
+    private void switchCamera() {
+        focusedCamera = (focusedCamera + 1) % CAMERA_COUNT;
+        updateCameraFocus();
     }
 
-    private void setCYAngle(float angle) {
-        cyAngle = angle;
-        Platform.runLater(() -> cyAngleLabel.setText(String.valueOf(Math.round(angle))));
-        sendCommand("cy " + Math.round(angle));
+    /**
+     * Applies the focus and the video level of the link monitor to every camera.
+     */
+    private void updateCameraFocus() {
+        for (Camera camera : cameras) {
+            boolean focused = (camera.index == focusedCamera);
+            camera.cameraManager.setFocused(focused);
+            camera.cameraManager.setPaused(!focused && videoLevel.compareTo(VideoLevel.SECONDARY_PAUSED) >= 0);
+            camera.cameraManager.setLowResolution(videoLevel.compareTo(VideoLevel.LOW_RESOLUTION) >= 0);
+        }
+        videoRenderer.setStream(cameras[focusedCamera].stream);
+        thumbnailRenderer.setStream(cameras[(focusedCamera + 1) % CAMERA_COUNT].stream);
+        setCameraStatus(cameras[focusedCamera].status);
+    }
+
+    private void updateSocketConnection() {
+        String host = socketHostTextField.getText();
+        int port;
+        try {
+            port = Integer.parseInt(socketPortTextField.getText());
+        } catch (NumberFormatException e) {
+            connectionManager.disconnect();
+            return;
+        }
+        connectionManager.configure(host, port, commandProtocolSupplier);
     }
 
-    private void setSYAngle(float angle) {
-        syAngle = angle;
-        Platform.runLater(() -> syAngleLabel.setText(String.valueOf(Math.round(angle))));
-        sendCommand("sy " + Math.round(angle));
+    private void onControlOutput(Actuator actuator, int value, long originTime) {
+        switch (actuator) {
+            case CX:
+                cxAngleBinding.set(value);
+                break;
+            case CY:
+                cyAngleBinding.set(value);
+                break;
+            case SY:
+                syAngleBinding.set(value);
+                break;
+            case ML:
+                motorLeftBinding.set(Math.round(value / 100f));
+                break;
+            case MR:
+                motorRightBinding.set(Math.round(value / 100f));
+                break;
+            default:
+                break;
+        }
+        sendCommand(actuator, value, originTime);
     }
 
-    private void updateMotors() {
-        float motorLeft = motorThrottle * motorLeftModifier;
-        float motorRight = motorThrottle * motorRightModifier;
+    /**
+     * Applies an input that does not come from a gamepad, recording it first so that a replay applies it too.
+     */
+    private void applyControlInput(ControlInput input, float value) {
+        if (sessionRecorder != null) {
+            sessionRecorder.recordControlInput(input, value);
+        }
+        controlEngine.onControlInput(input, value);
+    }
 
-        Platform.runLater(() -> motorLeftLabel.setText(String.valueOf(Math.round(100 * motorLeft))));
-        Platform.runLater(() -> motorRightLabel.setText(String.valueOf(Math.round(100 * motorRight))));
+    private void sendCommand(Actuator actuator, int value, long originTime) {
+        if (sessionRecorder != null) {
+            sessionRecorder.recordCommand(actuator, value, originTime);
+        }
+        commandPipeline.submit(actuator, value, originTime);
+    }
 
-        sendCommand("ml " + Math.round(10000 * motorLeft));
-        sendCommand("mr " + Math.round(10000 * motorRight));
+    private long getVideoBytesReceived() {
+        long bytesReceived = 0L;
+        for (Camera camera : cameras) {
+            if (camera != null) {
+                bytesReceived += camera.cameraManager.getBytesReceived();
+            }
+        }
+        return bytesReceived;
     }
 
-    private void sendCommand(String command) {
-        if (outCommandSocket == null) {
-            bufferedCommands.add(command);
+    private void updateLatencyOverlay() {
+        if (!latencyLabel.isVisible()) {
+            return;
         }
-        else {
-            outCommandSocket.println(command);
+        StringBuilder text = new StringBuilder("Input latency (p50 / p99 / max, ms)");
+        for (LatencyTracer.Stage stage : LatencyTracer.Stage.values()) {
+            Histogram histogram = latencyTracer.getHistogram(stage);
+            text.append(String.format("%n%-10s %7.2f %7.2f %7.2f", stage.name().toLowerCase(),
+                    histogram.getValueAtPercentile(50d) / 1e6d, histogram.getValueAtPercentile(99d) / 1e6d, histogram.getMax() / 1e6d));
         }
+        Histogram controlLateness = controlLoop.getLateness();
+        text.append(String.format("%ncontrol    %7.2f %7.2f %7.2f, %d overruns, %d skipped", controlLateness.getValueAtPercentile(50d) / 1e6d,
+                controlLateness.getValueAtPercentile(99d) / 1e6d, controlLateness.getMax() / 1e6d, controlLoop.getOverrunCount(), controlLoop.getSkippedTickCount()));
+        for (XboxGamepad gamepad : gamepadDiscovery.getGamepads()) {
+            String seat = (gamepad == controlEngine.getPilot()) ? "pilot" : (gamepad == controlEngine.getCoPilot()) ? "co-pilot" : "standby";
+            Histogram pollJitter = gamepad.getPollJitter();
+            text.append(String.format("%n%-10s %7.2f %7.2f %7.2f jitter, %.3f ms p99 poll, %d polls, %s", seat,
+                    pollJitter.getValueAtPercentile(50d) / 1e6d, pollJitter.getValueAtPercentile(99d) / 1e6d, pollJitter.getMax() / 1e6d,
+                    gamepad.getPollDuration().getValueAtPercentile(99d) / 1e6d, gamepad.getPollCount(), gamepad.getName()));
+        }
+        Histogram roundTripTime = linkMonitor.getRoundTripTime();
+        text.append(String.format("%nlink rtt   %7.2f %7.2f %7.2f, %s", roundTripTime.getValueAtPercentile(50d) / 1e6d,
+                roundTripTime.getValueAtPercentile(99d) / 1e6d, roundTripTime.getMax() / 1e6d, linkMonitor.isCongested() ? "congested" : "clear"));
+        text.append(String.format("%nlink       %.0f KiB/s video, %.1f KiB/s commands, %.0f KiB/s budget, video %s", linkMonitor.getVideoThroughput() / 1024d,
+                linkMonitor.getCommandThroughput() / 1024d, linkMonitor.getBudget() / 1024d, linkMonitor.getVideoLevel().name().toLowerCase()));
+        MjpegStream stream = cameras[focusedCamera].cameraManager.getActiveStream();
+        if (stream != null) {
+            Histogram glassToGlassLatency = stream.getVideoMetrics().getGlassToGlassLatency();
+            Histogram renderTime = videoView.getRenderTime();
+            text.append(String.format("%nvideo      %7.2f %7.2f %7.2f", glassToGlassLatency.getValueAtPercentile(50d) / 1e6d,
+                    glassToGlassLatency.getValueAtPercentile(99d) / 1e6d, glassToGlassLatency.getMax() / 1e6d));
+            text.append(String.format("%nrender     %7.2f %7.2f %7.2f", renderTime.getValueAtPercentile(50d) / 1e6d,
+                    renderTime.getValueAtPercentile(99d) / 1e6d, renderTime.getMax() / 1e6d));
+        }
+        for (Camera camera : cameras) {
+            MjpegStream cameraStream = camera.cameraManager.getActiveStream();
+            if (cameraStream != null) {
+                VideoMetrics videoMetrics = cameraStream.getVideoMetrics();
+                text.append(String.format("%ncamera %d   %5.1f fps decoded, %5.2f ms p99 decode, %d KiB, %d frames dropped", camera.index + 1,
+                        videoMetrics.getDecodeFps(), videoMetrics.getDecodeTime().getValueAtPercentile(99d) / 1e6d,
+                        videoMetrics.getFrameMemory() / 1024, videoMetrics.getDroppedFrameCount()));
+            }
+        }
+        for (TelemetryChannel channel : telemetry.getChannels()) {
+            text.append(String.format("%n%-10s %7.2f", channel.getName(), channel.getLatestValue()));
+        }
+        latencyLabel.setText(text.toString());
     }
 
     private void setCameraStatus(Status status) {
@@ -319,7 +509,7 @@ public class MainWindowController implements Initializable {
             default:
                 text = "";
         }
-        Platform.runLater(() -> cameraStatusLabel.setText(text));
+        cameraStatusBinding.set(text);
     }
 
     private void setSocketStatus(Status status) {
@@ -337,7 +527,7 @@ public class MainWindowController implements Initializable {
             default:
                 text = "";
         }
-        Platform.runLater(() -> socketStatusLabel.setText(text));
+        socketStatusBinding.set(text);
     }
 
     private void setGamepadStatus(Status status) {
@@ -355,40 +545,47 @@ public class MainWindowController implements Initializable {
             default:
                 text = "";
         }
-        Platform.runLater(() -> gamepadStatusLabel.setText(text));
-    }
-
-    private static float clamp(float value, float min, float max) {
-        if (value < min) {
-            return min;
-        }
-        if (value > max) {
-            return max;
-        }
-        return value;
+        gamepadStatusBinding.set(text);
     }
 
     public void setScene(Scene scene) {
         this.scene = scene;
 
+        //nothing is worth decoding while the window is minimized
+        scene.windowProperty().addListener((observableValue, oldWindow, newWindow) -> {
+            if (newWindow instanceof Stage) {
+                ((Stage)newWindow).iconifiedProperty().addListener((iconifiedObservable, wasIconified, iconified) -> {
+                    for (Camera camera : cameras) {
+                        camera.cameraManager.setVisible(!iconified);
+                    }
+                });
+            }
+        });
+
         scene.addEventHandler(KeyEvent.KEY_PRESSED, keyEventHandler -> {
-            float newAngle;
             switch (keyEventHandler.getCode()) {
                 case W:
-                    newAngle = cyAngle + KEYBOARD_DELTA;
-                    setCYAngle(clamp(newAngle, CY_MIN, CY_MAX));
+                    applyControlInput(ControlInput.TILT_CAMERA, KEYBOARD_DELTA);
                     break;
                 case S:
-                    newAngle = cyAngle - KEYBOARD_DELTA;
-                    setCYAngle(clamp(newAngle, CY_MIN, CY_MAX));
+                    applyControlInput(ControlInput.TILT_CAMERA, -KEYBOARD_DELTA);
                     break;
                 case D:
-                    newAngle = cxAngle + KEYBOARD_DELTA;
-                    setCXAngle(clamp(newAngle, CX_MIN, CX_MAX));
+                    applyControlInput(ControlInput.PAN_CAMERA, KEYBOARD_DELTA);
                     break;
                 case A:
-                    newAngle = cxAngle - KEYBOARD_DELTA;
-                    setCXAngle(clamp(newAngle, CX_MIN, CX_MAX));
+                    applyControlInput(ControlInput.PAN_CAMERA, -KEYBOARD_DELTA);
+                    break;
+                case C:
+                    switchCamera();
+                    break;
+                case F3:
+                    latencyLabel.setVisible(!latencyLabel.isVisible());
+                    break;
+                case F5:
+                    //not every system tells when a gamepad is plugged in
+                    controllerScanner.requestRefresh();
+                    gamepadDiscovery.rescan();
                     break;
                 default:
                     break;
@@ -402,17 +599,114 @@ public class MainWindowController implements Initializable {
         CONNECTING
     }
 
+    /**
+     * One of the cameras, with its own manager and recordings, decoded on the shared decode pool.
+     */
+    private class Camera {
+        private final int index;
+        private final CameraManager cameraManager = new CameraManager(CAMERA_CONNECT_TIMEOUT, CAMERA_READ_TIMEOUT, CAMERA_RECONNECT_DELAY, CAMERA_DEBOUNCE_DELAY, decodePool);
+
+        //only accessed from the JavaFX application thread
+        private MjpegStream stream;
+        private Status status = Status.OFFLINE;
+
+        //guarded by the lock of the camera, the recording changes on the camera manager thread
+        private MjpegStream recordedStream;
+        private VideoRecorder videoRecorder;
+        private int videoRecordingCount;
+        private boolean recordingStopped;
+
+        private Camera(int index) {
+            this.index = index;
+            cameraManager.setStreamListener(newStream -> {
+                record(newStream);
+                Platform.runLater(() -> {
+                    stream = newStream;
+                    updateCameraFocus();
+                });
+            });
+            cameraManager.setStateListener(state -> {
+                Status newStatus;
+                switch (state) {
+                    case ONLINE:
+                        newStatus = Status.ONLINE;
+                        break;
+                    case CONNECTING:
+                        newStatus = Status.CONNECTING;
+                        break;
+                    default:
+                        newStatus = Status.OFFLINE;
+                        break;
+                }
+                Platform.runLater(() -> {
+                    status = newStatus;
+                    updateCameraFocus();
+                });
+            });
+        }
+
+        private synchronized void record(MjpegStream newStream) {
+            closeVideoRecorder();
+            if (newStream == null || sessionRecorder == null || recordingStopped) {
+                return;
+            }
+            try {
+                //the stream has not started yet, so the recording starts with its first frame
+                videoRecorder = VideoRecorder.open(sessionRecorder.getDirectory(), String.format("camera%d-%03d", index + 1, videoRecordingCount++));
+                newStream.addFrameListener(videoRecorder);
+                recordedStream = newStream;
+            } catch (IOException e) {
+                //the session recording goes on without video
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Stops recording this camera for good.
+         *
+         * @return  the recorder that was still writing, or null if there was none
+         */
+        private synchronized VideoRecorder stopRecording() {
+            recordingStopped = true;
+            VideoRecorder stoppedVideoRecorder = videoRecorder;
+            closeVideoRecorder();
+            return stoppedVideoRecorder;
+        }
+
+        private void closeVideoRecorder() {
+            if (videoRecorder != null) {
+                recordedStream.removeFrameListener(videoRecorder);
+                videoRecorder.close();
+                videoRecorder = null;
+                recordedStream = null;
+            }
+        }
+    }
+
     private static class Configuration {
         private String name;
         private String cameraUrl;
+        private String lowResolutionCameraUrl;
+        private String downCameraUrl;
+        private String lowResolutionDownCameraUrl;
         private String socketHost;
         private String socketPort;
-
-        private Configuration(String name, String cameraUrl, String socketHost, String socketPort) {
+        private Supplier<CommandProtocol> commandProtocolSupplier;
+
+        /**
+         * An empty camera URL means there is no such camera, an empty low resolution URL that the camera has no lower
+         * resolution stream.
+         */
+        private Configuration(String name, String cameraUrl, String lowResolutionCameraUrl, String downCameraUrl, String lowResolutionDownCameraUrl,
+                              String socketHost, String socketPort, Supplier<CommandProtocol> commandProtocolSupplier) {
             this.name = name;
             this.cameraUrl = cameraUrl;
+            this.lowResolutionCameraUrl = lowResolutionCameraUrl;
+            this.downCameraUrl = downCameraUrl;
+            this.lowResolutionDownCameraUrl = lowResolutionDownCameraUrl;
             this.socketHost = socketHost;
             this.socketPort = socketPort;
+            this.commandProtocolSupplier = commandProtocolSupplier;
         }
 
         @Override
@@ -0,0 +1,12 @@
+package com.skiwi.rovcontrolsoftware.gamepads;
+
+/**
+ * Primitive variant of an {@link com.skiwi.rovcontrolsoftware.gamepads.events.AxisMovedEvent} listener, dispatching
+ * to it does not allocate.
+ *
+ * @author Frank van Heeswijk
+ */
+@FunctionalInterface
+public interface AxisListener {
+    void onAxis(XboxGamepad.Component component, long time, float newValue);
+}
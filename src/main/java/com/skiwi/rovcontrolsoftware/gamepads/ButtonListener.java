@@ -0,0 +1,12 @@
+package com.skiwi.rovcontrolsoftware.gamepads;
+
+/**
+ * Primitive variant of a {@link com.skiwi.rovcontrolsoftware.gamepads.events.ButtonEvent} listener, dispatching to it
+ * does not allocate. The click time is only set for clicked events and is zero otherwise.
+ *
+ * @author Frank van Heeswijk
+ */
+@FunctionalInterface
+public interface ButtonListener {
+    void onButton(XboxGamepad.Component component, long time, long clickTime);
+}
@@ -0,0 +1,73 @@
+package com.skiwi.rovcontrolsoftware.gamepads;
+
+import net.java.games.input.Controller;
+import net.java.games.input.ControllerEnvironment;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Returns the controllers that are plugged in right now. The default environment of JInput only ever returns the
+ * controllers it found the first time, so devices are enumerated in a new environment instead. JInput keeps the devices
+ * of every environment open until the application exits though, so a new environment is only created when the devices
+ * did change: on Linux when a joystick or event device appeared or disappeared, and elsewhere, where there is no cheap
+ * way to tell, only after {@link #requestRefresh()}. In between, the controllers of the previous enumeration are
+ * returned.
+ *
+ * Falls back on the default environment if a new one cannot be created.
+ *
+ * @author Frank van Heeswijk
+ */
+public class ControllerScanner implements Supplier<Controller[]> {
+    private static final File LINUX_DEVICE_DIRECTORY = new File("/dev/input");
+
+    private volatile boolean refreshRequested;
+
+    //only accessed while holding the lock of this scanner
+    private Controller[] controllers;
+    private String[] deviceNames;
+
+    /**
+     * Makes the next call enumerate the devices again, for when the user plugged in a gamepad on a system where that
+     * cannot be detected.
+     */
+    public void requestRefresh() {
+        refreshRequested = true;
+    }
+
+    @Override
+    public synchronized Controller[] get() {
+        String[] currentDeviceNames = listDeviceNames();
+        boolean changed = refreshRequested || (currentDeviceNames != null && !Arrays.equals(currentDeviceNames, deviceNames));
+        if (controllers == null || changed) {
+            refreshRequested = false;
+            controllers = enumerate();
+            deviceNames = currentDeviceNames;
+        }
+        return controllers.clone();
+    }
+
+    /**
+     * Returns the sorted names of the device nodes that gamepads show up as on Linux, or null elsewhere. The other
+     * entries of the directory, such as the mouse nodes and the by-id and by-path links, are left out.
+     */
+    private static String[] listDeviceNames() {
+        String[] names = LINUX_DEVICE_DIRECTORY.list((directory, name) -> name.startsWith("event") || name.startsWith("js"));
+        if (names != null) {
+            Arrays.sort(names);
+        }
+        return names;
+    }
+
+    private static Controller[] enumerate() {
+        try {
+            Constructor<?> constructor = Class.forName("net.java.games.input.DefaultControllerEnvironment").getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return ((ControllerEnvironment)constructor.newInstance()).getControllers();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return ControllerEnvironment.getDefaultEnvironment().getControllers();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.skiwi.rovcontrolsoftware.gamepads;
+
+import com.skiwi.rovcontrolsoftware.metrics.Histogram;
+import net.java.games.input.Controller;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Finds gamepads while the application runs. The controllers are scanned periodically on a thread of its own, as
+ * enumerating devices can take long enough to stall a frame, and every new gamepad gets an {@link XboxGamepad} that
+ * polls it on its own thread. A gamepad is gone as soon as a poll of it fails.
+ *
+ * A scan may return new controller objects for devices that are already known, so controllers that are not known by
+ * identity are matched by name: only those beyond the amount of connected gamepads with that name are new.
+ *
+ * All decisions are taken on a single thread, the listener is called from it.
+ *
+ * @author Frank van Heeswijk
+ */
+public class GamepadDiscovery implements Closeable {
+    private final Supplier<Controller[]> controllerSource;
+    private final long scanInterval;
+    private final long minPollPeriod;
+    private final long maxPollPeriod;
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile GamepadListener gamepadListener;
+
+    //only accessed from the scheduler thread
+    private final List<XboxGamepad> connectedGamepads = new ArrayList<>();
+    private boolean started;
+    private boolean closed;
+
+    private volatile List<XboxGamepad> gamepads = Collections.emptyList();
+
+    private final Histogram scanDuration = new Histogram();
+    private final AtomicLong scanErrorCount = new AtomicLong();
+    private final AtomicLong connectedCount = new AtomicLong();
+    private final AtomicLong disconnectedCount = new AtomicLong();
+
+    /**
+     * @param controllerSource  returns the controllers present at the moment it is called, usually a
+     *                          {@link ControllerScanner}
+     * @param scanInterval  the time in milliseconds between scans
+     * @param minPollPeriod the minimum poll period of every gamepad in nanoseconds, see {@link XboxGamepad}
+     * @param maxPollPeriod the maximum poll period of every gamepad in nanoseconds
+     */
+    public GamepadDiscovery(Supplier<Controller[]> controllerSource, long scanInterval, long minPollPeriod, long maxPollPeriod) {
+        if (scanInterval <= 0) {
+            throw new IllegalArgumentException("The scan interval must be positive: scanInterval = " + scanInterval);
+        }
+        if (minPollPeriod <= 0 || maxPollPeriod < minPollPeriod) {
+            throw new IllegalArgumentException("Invalid poll period: minPollPeriod = " + minPollPeriod + ", maxPollPeriod = " + maxPollPeriod);
+        }
+        this.controllerSource = Objects.requireNonNull(controllerSource, "controllerSource");
+        this.scanInterval = scanInterval;
+        this.minPollPeriod = minPollPeriod;
+        this.maxPollPeriod = maxPollPeriod;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gamepad-discovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the listener that is told about gamepads being plugged in and unplugged, it should be set before starting.
+     */
+    public void setGamepadListener(GamepadListener gamepadListener) {
+        this.gamepadListener = Objects.requireNonNull(gamepadListener, "gamepadListener");
+    }
+
+    public void start() {
+        execute(() -> {
+            if (started || closed) {
+                return;
+            }
+            started = true;
+            scheduler.scheduleWithFixedDelay(this::scan, 0L, scanInterval, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * Scans right away instead of waiting for the next periodic scan.
+     */
+    public void rescan() {
+        execute(this::scan);
+    }
+
+    @Override
+    public void close() {
+        execute(() -> {
+            closed = true;
+            for (XboxGamepad gamepad : connectedGamepads) {
+                gamepad.setDisconnectListener(null);
+                gamepad.stopListening();
+            }
+            connectedGamepads.clear();
+            gamepads = Collections.emptyList();
+        });
+        scheduler.shutdown();
+    }
+
+    /**
+     * Returns the gamepads that are connected, in the order they were found.
+     */
+    public List<XboxGamepad> getGamepads() {
+        return gamepads;
+    }
+
+    /**
+     * Returns how long every scan took in nanoseconds.
+     */
+    public Histogram getScanDuration() {
+        return scanDuration;
+    }
+
+    public long getScanErrorCount() {
+        return scanErrorCount.get();
+    }
+
+    public long getConnectedCount() {
+        return connectedCount.get();
+    }
+
+    public long getDisconnectedCount() {
+        return disconnectedCount.get();
+    }
+
+    private void execute(Runnable task) {
+        try {
+            scheduler.execute(task);
+        } catch (RejectedExecutionException e) {
+            //the discovery has been closed
+        }
+    }
+
+    private void scan() {
+        if (closed) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        Controller[] controllers;
+        try {
+            controllers = controllerSource.get();
+        } catch (RuntimeException e) {
+            scanErrorCount.incrementAndGet();
+            e.printStackTrace();
+            return;
+        }
+
+        Set<Controller> knownControllers = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Controller controller : controllers) {
+            knownControllers.add(controller);
+        }
+        //connected gamepads that the scan did not return by identity may be among its new objects
+        Map<String, Integer> unmatchedCounts = new HashMap<>();
+        for (XboxGamepad gamepad : connectedGamepads) {
+            if (!knownControllers.contains(gamepad.getController())) {
+                unmatchedCounts.merge(gamepad.getName(), 1, Integer::sum);
+            }
+        }
+        knownControllers.clear();
+        for (XboxGamepad gamepad : connectedGamepads) {
+            knownControllers.add(gamepad.getController());
+        }
+
+        for (Controller controller : controllers) {
+            if (controller.getType() != Controller.Type.GAMEPAD || knownControllers.contains(controller)) {
+                continue;
+            }
+            Integer unmatchedCount = unmatchedCounts.get(controller.getName());
+            if (unmatchedCount != null && unmatchedCount > 0) {
+                unmatchedCounts.put(controller.getName(), unmatchedCount - 1);
+                continue;
+            }
+            connect(controller);
+        }
+        scanDuration.record(System.nanoTime() - startTime);
+    }
+
+    private void connect(Controller controller) {
+        XboxGamepad gamepad = new XboxGamepad(controller, minPollPeriod, maxPollPeriod);
+        gamepad.setDisconnectListener(disconnectedGamepad -> execute(() -> disconnect(disconnectedGamepad)));
+        connectedGamepads.add(gamepad);
+        gamepads = Collections.unmodifiableList(new ArrayList<>(connectedGamepads));
+        connectedCount.incrementAndGet();
+        GamepadListener listener = gamepadListener;
+        if (listener != null) {
+            try {
+                listener.onConnected(gamepad);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        gamepad.startListening();
+    }
+
+    private void disconnect(XboxGamepad gamepad) {
+        if (!connectedGamepads.remove(gamepad)) {
+            return;
+        }
+        gamepads = Collections.unmodifiableList(new ArrayList<>(connectedGamepads));
+        disconnectedCount.incrementAndGet();
+        GamepadListener listener = gamepadListener;
+        if (listener != null) {
+            try {
+                listener.onDisconnected(gamepad);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
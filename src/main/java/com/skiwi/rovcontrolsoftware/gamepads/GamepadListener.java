@@ -0,0 +1,17 @@
+package com.skiwi.rovcontrolsoftware.gamepads;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public interface GamepadListener {
+    /**
+     * Called for a gamepad that was plugged in, before it starts polling, so that listeners can be added to it without
+     * missing any input.
+     */
+    void onConnected(XboxGamepad gamepad);
+
+    /**
+     * Called for a gamepad that was unplugged, after it stopped polling.
+     */
+    void onDisconnected(XboxGamepad gamepad);
+}
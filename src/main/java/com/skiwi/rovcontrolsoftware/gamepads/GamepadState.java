@@ -0,0 +1,64 @@
+package com.skiwi.rovcontrolsoftware.gamepads;
+
+import java.util.Objects;
+
+/**
+ * Snapshot of the whole gamepad, indexed by component ordinal. Axis values are reported both as read from the device
+ * and after deadzone shaping, which is what axis listeners receive.
+ *
+ * @author Frank van Heeswijk
+ */
+public class GamepadState {
+    private static final int COMPONENT_COUNT = XboxGamepad.Component.values().length;
+
+    final float[] rawAxisValues = new float[COMPONENT_COUNT];
+    final float[] axisValues = new float[COMPONENT_COUNT];
+    final boolean[] buttonPressed = new boolean[COMPONENT_COUNT];
+    final long[] buttonLastPressedTime = new long[COMPONENT_COUNT];
+
+    long time;
+    long originTime;
+    long updateCount;
+
+    public float getRawAxisValue(XboxGamepad.Component component) {
+        return rawAxisValues[component.ordinal()];
+    }
+
+    public float getAxisValue(XboxGamepad.Component component) {
+        return axisValues[component.ordinal()];
+    }
+
+    public boolean isPressed(XboxGamepad.Component component) {
+        return buttonPressed[component.ordinal()];
+    }
+
+    public long getLastPressedTime(XboxGamepad.Component component) {
+        return buttonLastPressedTime[component.ordinal()];
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the trace origin of the newest input, or zero if it was not traced.
+     */
+    public long getOriginTime() {
+        return originTime;
+    }
+
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
+    void copyFrom(GamepadState other) {
+        Objects.requireNonNull(other, "other");
+        System.arraycopy(other.rawAxisValues, 0, rawAxisValues, 0, COMPONENT_COUNT);
+        System.arraycopy(other.axisValues, 0, axisValues, 0, COMPONENT_COUNT);
+        System.arraycopy(other.buttonPressed, 0, buttonPressed, 0, COMPONENT_COUNT);
+        System.arraycopy(other.buttonLastPressedTime, 0, buttonLastPressedTime, 0, COMPONENT_COUNT);
+        time = other.time;
+        originTime = other.originTime;
+        updateCount = other.updateCount;
+    }
+}
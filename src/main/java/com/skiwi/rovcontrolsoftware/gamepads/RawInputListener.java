@@ -0,0 +1,15 @@
+package com.skiwi.rovcontrolsoftware.gamepads;
+
+/**
+ * @author Frank van Heeswijk
+ */
+@FunctionalInterface
+public interface RawInputListener {
+    /**
+     * Called for every input read from the device. Buttons report 0 or 1, axes their unshaped value, and the
+     * directional pad reports as {@link XboxGamepad.Component#DPAD_ANY} with its POV value.
+     *
+     * @param time  the event time reported by the device, in nanoseconds
+     */
+    void onRawInput(XboxGamepad.Component component, long time, float value);
+}
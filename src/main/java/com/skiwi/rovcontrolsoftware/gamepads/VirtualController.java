@@ -0,0 +1,145 @@
+package com.skiwi.rovcontrolsoftware.gamepads;
+
+import net.java.games.input.AbstractComponent;
+import net.java.games.input.AbstractController;
+import net.java.games.input.Component;
+import net.java.games.input.Controller;
+import net.java.games.input.Event;
+import net.java.games.input.Rumbler;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A gamepad without hardware. Inputs pushed into it come out of its event queue exactly like those of a real Xbox
+ * gamepad, so an {@link XboxGamepad} on top of it behaves the same as on a physical device, up to being unplugged.
+ * Used for replays, tests and benchmarks.
+ *
+ * @author Frank van Heeswijk
+ */
+public class VirtualController extends AbstractController {
+    private static final int EVENT_QUEUE_SIZE = 256;
+
+    private final Map<XboxGamepad.Component, Component> components;
+    private final Queue<PendingInput> pendingInputs = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean disconnected;
+
+    //only accessed while polling, which the superclass synchronizes
+    private int deliveredInputs;
+
+    public VirtualController(String name) {
+        this(name, createComponents());
+    }
+
+    private VirtualController(String name, Map<XboxGamepad.Component, Component> components) {
+        super(name, components.values().toArray(new Component[components.size()]), new Controller[0], new Rumbler[0]);
+        this.components = components;
+        setEventQueueSize(EVENT_QUEUE_SIZE);
+    }
+
+    private static Map<XboxGamepad.Component, Component> createComponents() {
+        Map<XboxGamepad.Component, Component> components = new EnumMap<>(XboxGamepad.Component.class);
+        for (XboxGamepad.Component component : XboxGamepad.Component.values()) {
+            Component.Identifier identifier = XboxGamepad.identifierOf(component);
+            if (identifier != null) {
+                boolean analog = (identifier instanceof Component.Identifier.Axis) && identifier != Component.Identifier.Axis.POV;
+                components.put(component, new VirtualComponent(component.name(), identifier, analog));
+            }
+        }
+        return components;
+    }
+
+    @Override
+    public Type getType() {
+        return Type.GAMEPAD;
+    }
+
+    /**
+     * Queues an input for the next poll, in the raw form a {@link RawInputListener} receives it.
+     *
+     * @throws IllegalArgumentException if the component is not one a device reports, such as a single dpad direction
+     */
+    public void push(XboxGamepad.Component component, float value, long time) {
+        Objects.requireNonNull(component, "component");
+        Component deviceComponent = components.get(component);
+        if (deviceComponent == null) {
+            throw new IllegalArgumentException("Component " + component + " is not reported by a device, use DPAD_ANY with a POV value instead");
+        }
+        pendingInputs.offer(new PendingInput(deviceComponent, value, time));
+    }
+
+    public int getPendingCount() {
+        return pendingInputs.size();
+    }
+
+    /**
+     * Makes every following poll fail, the way a poll of an unplugged device does.
+     */
+    public void disconnect() {
+        disconnected = true;
+    }
+
+    @Override
+    protected void pollDevice() throws IOException {
+        if (disconnected) {
+            throw new IOException("The controller " + getName() + " has been disconnected");
+        }
+        deliveredInputs = 0;
+    }
+
+    @Override
+    protected boolean getNextDeviceEvent(Event event) {
+        //never deliver more than the event queue holds, the remainder waits for the next poll
+        if (deliveredInputs >= EVENT_QUEUE_SIZE) {
+            return false;
+        }
+        PendingInput pendingInput = pendingInputs.poll();
+        if (pendingInput == null) {
+            return false;
+        }
+        deliveredInputs++;
+        event.set(pendingInput.component, pendingInput.value, pendingInput.time);
+        return true;
+    }
+
+    private static class PendingInput {
+        private final Component component;
+        private final float value;
+        private final long time;
+
+        private PendingInput(Component component, float value, long time) {
+            this.component = component;
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+    private static class VirtualComponent extends AbstractComponent {
+        private final boolean analog;
+
+        private VirtualComponent(String name, Identifier identifier, boolean analog) {
+            super(name, identifier);
+            this.analog = analog;
+        }
+
+        @Override
+        public boolean isAnalog() {
+            return analog;
+        }
+
+        @Override
+        public boolean isRelative() {
+            return false;
+        }
+
+        @Override
+        protected float poll() {
+            return getPollData();
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package com.skiwi.rovcontrolsoftware.gamepads;
 
 import com.skiwi.rovcontrolsoftware.gamepads.events.*;
+import com.skiwi.rovcontrolsoftware.gamepads.shaping.*;
+import com.skiwi.rovcontrolsoftware.metrics.Histogram;
+import com.skiwi.rovcontrolsoftware.metrics.LatencyTracer;
 import net.java.games.input.Controller;
 import net.java.games.input.EventQueue;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
 import java.util.function.Consumer;
 
 import static com.skiwi.rovcontrolsoftware.gamepads.XboxGamepad.Component.*;
@@ -18,204 +25,423 @@ public class XboxGamepad {
         Arrays.asList(RIGHT_STICK_X_AXIS, RIGHT_STICK_Y_AXIS)
     );
 
+    private static final Component[] COMPONENTS = Component.values();
+    private static final int COMPONENT_COUNT = COMPONENTS.length;
+    private static final int EVENT_TYPE_COUNT = EventType.values().length;
+
     private final Controller gamepad;
-    private final int pollDelay;
+    private final long minPollPeriod;
+    private final long maxPollPeriod;
 
     private final EventQueue eventQueue;
     private final net.java.games.input.Event event;
 
-    private final Map<Component, Map<Class, List<Consumer<Event>>>> componentEventListeners = new EnumMap<>(Component.class);
+    //copy-on-write dispatch tables indexed by component ordinal and event type ordinal
+    private volatile Consumer<Event>[][][] eventListeners = new Consumer[COMPONENT_COUNT][EVENT_TYPE_COUNT][0];
+    private volatile AxisListener[][] axisListeners = new AxisListener[COMPONENT_COUNT][0];
+    private volatile ButtonListener[][][] buttonListeners = new ButtonListener[COMPONENT_COUNT][EVENT_TYPE_COUNT][0];
+
+    private final InputShaper.Builder inputShaperBuilder = InputShaper.builder();
+    private volatile InputShaper inputShaper = inputShaperBuilder.build();
 
-    private final Map<Component, Long> buttonLastPressedTime = new EnumMap<>(Component.class);
+    //only accessed from the polling thread, published to readers once per poll
+    private final GamepadState workingState = new GamepadState();
+    private final float[] shapedAxisValues = new float[COMPONENT_COUNT];
+    private long currentOriginTime;
 
-    private final List<Deadzone> axisDeadzones = new ArrayList<>();
-    private final Map<Component, List<Deadzone>> axisToDeadzonesMap = new EnumMap<>(Component.class);
+    private final GamepadState publishedState = new GamepadState();
+    private final StampedLock publishedStateLock = new StampedLock();
 
-    private final Map<Component, Float> axisValues = new EnumMap<>(Component.class);
-    private final Map<Component, Boolean> axisInDeadzone = new EnumMap<>(Component.class);
+    private final Histogram pollJitter = new Histogram();
+    private final Histogram pollDuration = new Histogram();
+    private final Histogram eventsPerPoll = new Histogram();
+    private final AtomicLong pollCount = new AtomicLong();
+    private final AtomicLong listenerErrorCount = new AtomicLong();
 
-    private Timer pollTimer;
+    private volatile Thread pollThread;
+    private volatile LatencyTracer latencyTracer;
+    private volatile RawInputListener rawInputListener;
+    private volatile Consumer<XboxGamepad> disconnectListener;
+    private volatile boolean disconnected;
 
     public XboxGamepad(Controller gamepad, int pollDelay) {
-        this.gamepad = gamepad;
-        this.pollDelay = pollDelay;
+        this(gamepad, TimeUnit.MILLISECONDS.toNanos(pollDelay), TimeUnit.MILLISECONDS.toNanos(pollDelay));
+    }
+
+    /**
+     * Polls every {@code minPollPeriod} nanoseconds while events are arriving. If the maximum poll period is larger, the
+     * period doubles on every poll without events until it reaches the maximum, and drops back to the minimum as soon as
+     * events arrive again.
+     */
+    public XboxGamepad(Controller gamepad, long minPollPeriod, long maxPollPeriod) {
+        if (minPollPeriod <= 0 || maxPollPeriod < minPollPeriod) {
+            throw new IllegalArgumentException("Invalid poll period: minPollPeriod = " + minPollPeriod + ", maxPollPeriod = " + maxPollPeriod);
+        }
+        this.gamepad = Objects.requireNonNull(gamepad, "gamepad");
+        this.minPollPeriod = minPollPeriod;
+        this.maxPollPeriod = maxPollPeriod;
 
         this.eventQueue = gamepad.getEventQueue();
         this.event = new net.java.games.input.Event();
     }
 
-    public void startListening() {
-        if (pollTimer != null) {
+    public synchronized void startListening() {
+        if (pollThread != null) {
             throw new IllegalStateException("You are already listening to events");
         }
-        pollTimer = new Timer(true);
-        this.pollTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                poll();
-            }
-        }, 0, pollDelay);
+        pollThread = new Thread(this::runPollLoop, "gamepad-poll-" + gamepad.getName());
+        pollThread.setDaemon(true);
+        pollThread.setPriority(Thread.MAX_PRIORITY);
+        pollThread.start();
     }
 
-    public void stopListening() {
-        if (pollTimer == null) {
+    public synchronized void stopListening() {
+        if (pollThread == null) {
             throw new IllegalStateException("You never started listening to events");
         }
-        pollTimer.cancel();
-        pollTimer = null;
+        Thread stoppedPollThread = pollThread;
+        pollThread = null;
+        LockSupport.unpark(stoppedPollThread);
+    }
+
+    /**
+     * Polls once on the calling thread, for driving the gamepad without its polling thread, for example during a
+     * replay.
+     *
+     * @return  the amount of events processed
+     * @throws IllegalStateException if the gamepad is being polled by its own thread
+     */
+    public int pollOnce() {
+        if (pollThread != null) {
+            throw new IllegalStateException("The gamepad is already being polled by its own thread");
+        }
+        return poll();
+    }
+
+    public Controller getController() {
+        return gamepad;
+    }
+
+    public String getName() {
+        return gamepad.getName();
+    }
+
+    /**
+     * Returns whether the device still answers polls. A gamepad that has been unplugged stays disconnected, plugging it
+     * back in makes a new controller appear.
+     */
+    public boolean isConnected() {
+        return !disconnected;
+    }
+
+    /**
+     * Sets the listener that is told once that the device stopped answering polls, or null for none. It is called on
+     * the polling thread, which stops polling afterwards.
+     */
+    public void setDisconnectListener(Consumer<XboxGamepad> disconnectListener) {
+        this.disconnectListener = disconnectListener;
+    }
+
+    public void setLatencyTracer(LatencyTracer latencyTracer) {
+        this.latencyTracer = latencyTracer;
+    }
+
+    /**
+     * Returns the trace origin of the input that is being dispatched, or zero if it is not traced. Only meaningful when
+     * called from a listener, on the polling thread.
+     */
+    public long getCurrentOriginTime() {
+        return currentOriginTime;
+    }
+
+    /**
+     * Sets the listener that sees every input exactly as read from the device, before any shaping, or null for none.
+     * It is called on the polling thread.
+     */
+    public void setRawInputListener(RawInputListener rawInputListener) {
+        this.rawInputListener = rawInputListener;
+    }
+
+    /**
+     * Returns how late every poll started compared to its schedule, in nanoseconds.
+     */
+    public Histogram getPollJitter() {
+        return pollJitter;
+    }
+
+    /**
+     * Returns how long every poll took, including dispatching its events to the listeners, in nanoseconds.
+     */
+    public Histogram getPollDuration() {
+        return pollDuration;
+    }
+
+    public Histogram getEventsPerPoll() {
+        return eventsPerPoll;
+    }
+
+    public long getPollCount() {
+        return pollCount.get();
     }
 
-    public <T extends Event> void addListener(Component component, Class<T> eventClass, Consumer<T> eventListener) {
+    public long getListenerErrorCount() {
+        return listenerErrorCount.get();
+    }
+
+    public synchronized <T extends Event> void addListener(Component component, Class<T> eventClass, Consumer<T> eventListener) {
         Objects.requireNonNull(component, "component");
         Objects.requireNonNull(eventClass, "eventClass");
         Objects.requireNonNull(eventListener, "eventListener");
-        componentEventListeners.putIfAbsent(component, new HashMap<>());
-        Map<Class, List<Consumer<Event>>> eventListenerMap = componentEventListeners.get(component);
-        eventListenerMap.putIfAbsent(eventClass, new ArrayList<>());
-        List<Consumer<Event>> eventListeners = eventListenerMap.get(eventClass);
-        eventListeners.add((Consumer<Event>)eventListener);
+        int eventType = EventType.of(eventClass).ordinal();
+        Consumer<Event>[][][] newEventListeners = eventListeners.clone();
+        newEventListeners[component.ordinal()] = newEventListeners[component.ordinal()].clone();
+        newEventListeners[component.ordinal()][eventType] = append(newEventListeners[component.ordinal()][eventType], (Consumer<Event>)eventListener);
+        eventListeners = newEventListeners;
+    }
+
+    public synchronized void addAxisListener(Component component, AxisListener axisListener) {
+        Objects.requireNonNull(component, "component");
+        Objects.requireNonNull(axisListener, "axisListener");
+        AxisListener[][] newAxisListeners = axisListeners.clone();
+        newAxisListeners[component.ordinal()] = append(newAxisListeners[component.ordinal()], axisListener);
+        axisListeners = newAxisListeners;
+    }
+
+    public synchronized void addButtonListener(Component component, Class<? extends ButtonEvent> eventClass, ButtonListener buttonListener) {
+        Objects.requireNonNull(component, "component");
+        Objects.requireNonNull(eventClass, "eventClass");
+        Objects.requireNonNull(buttonListener, "buttonListener");
+        int eventType = EventType.of(eventClass).ordinal();
+        ButtonListener[][][] newButtonListeners = buttonListeners.clone();
+        newButtonListeners[component.ordinal()] = newButtonListeners[component.ordinal()].clone();
+        newButtonListeners[component.ordinal()][eventType] = append(newButtonListeners[component.ordinal()][eventType], buttonListener);
+        buttonListeners = newButtonListeners;
+    }
+
+    private static <T> T[] append(T[] array, T element) {
+        T[] newArray = Arrays.copyOf(array, array.length + 1);
+        newArray[array.length] = element;
+        return newArray;
     }
 
-    public void setDeadzone(Component component, DeadzoneType deadzoneType, float value) {
+    public synchronized void setDeadzone(Component component, DeadzoneType deadzoneType, float value) {
         if (value < 0f) {
             throw new IllegalArgumentException("You cannot set a deadzone with a negative value: component = " + component + ", deadzoneType = " + deadzoneType + ", value = " + value);
         }
         switch (deadzoneType) {
             case LINEAR:
-                addDeadzone(new Deadzone(component, Arrays.asList(component), deadzoneType, value));
+                inputShaperBuilder.axisFilter(component, new LinearDeadzone(value));
                 break;
             case RADIAL:
-                List<Component> radialAxes = RADIAL_DEADZONE_AXES.stream()
-                        .filter(axes -> axes.contains(component))
-                        .findFirst()
-                        .orElseThrow(() -> new IllegalArgumentException("Component " + component + " is not part of a radial deadzone axes group"));
-                addDeadzone(new Deadzone(component, radialAxes, deadzoneType, value));
+                setStickFilter(component, new ScaledRadialDeadzone(value));
+                break;
+            case AXIAL:
+                setStickFilter(component, new AxialCrossDeadzone(value));
                 break;
         }
+        inputShaper = inputShaperBuilder.build();
+    }
+
+    public synchronized void setStickFilter(Component component, StickFilter stickFilter) {
+        List<Component> stickAxes = RADIAL_DEADZONE_AXES.stream()
+                .filter(axes -> axes.contains(component))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Component " + component + " is not part of a radial deadzone axes group"));
+        inputShaperBuilder.stickFilter(stickAxes.get(0), stickAxes.get(1), stickFilter);
+        inputShaper = inputShaperBuilder.build();
+    }
+
+    public synchronized void addAxisFilter(Component component, AxisFilter axisFilter) {
+        inputShaperBuilder.axisFilter(component, axisFilter);
+        inputShaper = inputShaperBuilder.build();
     }
 
-    private void addDeadzone(Deadzone deadzone) {
-        axisDeadzones.add(deadzone);
-        axisToDeadzonesMap.clear();
-        for (Deadzone axisDeadzone : axisDeadzones) {
-            for (Component axis : axisDeadzone.axes) {
-                axisToDeadzonesMap.putIfAbsent(axis, new ArrayList<>());
-                axisToDeadzonesMap.get(axis).add(axisDeadzone);
+    public synchronized void setResponseCurve(Component component, ResponseCurve responseCurve) {
+        inputShaperBuilder.responseCurve(component, responseCurve);
+        inputShaper = inputShaperBuilder.build();
+    }
+
+    public GamepadState getState() {
+        return readState(new GamepadState());
+    }
+
+    public GamepadState readState(GamepadState target) {
+        Objects.requireNonNull(target, "target");
+        long stamp = publishedStateLock.tryOptimisticRead();
+        target.copyFrom(publishedState);
+        if (!publishedStateLock.validate(stamp)) {
+            stamp = publishedStateLock.readLock();
+            try {
+                target.copyFrom(publishedState);
+            } finally {
+                publishedStateLock.unlockRead(stamp);
+            }
+        }
+        return target;
+    }
+
+    private void publishState() {
+        long stamp = publishedStateLock.writeLock();
+        try {
+            publishedState.copyFrom(workingState);
+        } finally {
+            publishedStateLock.unlockWrite(stamp);
+        }
+    }
+
+    private void runPollLoop() {
+        long pollPeriod = minPollPeriod;
+        long nextPollTime = System.nanoTime();
+        Thread currentThread = Thread.currentThread();
+        while (pollThread == currentThread) {
+            long waitTime = nextPollTime - System.nanoTime();
+            if (waitTime > 0) {
+                LockSupport.parkNanos(this, waitTime);
+                continue;
+            }
+
+            long pollTime = System.nanoTime();
+            pollJitter.record(pollTime - nextPollTime);
+            int eventCount;
+            try {
+                eventCount = poll();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                eventCount = 0;
+            }
+            pollDuration.record(System.nanoTime() - pollTime);
+            eventsPerPoll.record(eventCount);
+            if (disconnected) {
+                Consumer<XboxGamepad> listener = disconnectListener;
+                if (listener != null) {
+                    listener.accept(this);
+                }
+                return;
+            }
+
+            pollPeriod = (eventCount > 0) ? minPollPeriod : Math.min(pollPeriod * 2, maxPollPeriod);
+            nextPollTime += pollPeriod;
+            if (nextPollTime < pollTime) {
+                //do not try to catch up on polls that were missed, the event queue holds everything that happened
+                nextPollTime = pollTime + pollPeriod;
             }
         }
     }
 
-    private void poll() {
-        gamepad.poll();
+    private int poll() {
+        pollCount.incrementAndGet();
+        if (disconnected) {
+            return 0;
+        }
+        if (!gamepad.poll()) {
+            //the device is gone, its controller will not work again
+            disconnected = true;
+            return 0;
+        }
+        int eventCount = 0;
+        InputShaper shaper = inputShaper;
+        LatencyTracer tracer = latencyTracer;
+        RawInputListener rawListener = rawInputListener;
         while (eventQueue.getNextEvent(event)) {
+            eventCount++;
+            long originTime = (tracer != null) ? tracer.begin() : 0L;
+            currentOriginTime = originTime;
+            workingState.originTime = originTime;
             net.java.games.input.Component component = event.getComponent();
             float value = event.getValue();
             long timeNanos = event.getNanos();
+            Component mappedComponent;
             if (!component.isAnalog()) {
                 if (component.getIdentifier() == net.java.games.input.Component.Identifier.Axis.POV) {
-                    //directional pad
-                    if (value == 0f) {
-                        fireEvent(DPAD_ANY, new ButtonReleasedEvent(timeNanos));
-                    }
-                    else {
-                        Component dpadComponent = dpadToComponent(value);
-                        if (dpadComponent == null) {
-                            System.out.println("Unable to process dpad value " + value);
-                        }
-                        else {
-                            fireEvent(dpadComponent, new ButtonPressedEvent(timeNanos));
-                        }
-                    }
+                    //directional pad, its value tells the direction
+                    mappedComponent = DPAD_ANY;
                 }
                 else {
-                    //button
-                    Component buttonComponent = buttonToComponent(component.getIdentifier());
-                    if (buttonComponent == null) {
-                        System.out.println("Unable to map button " + buttonComponent);
-                    }
-                    else {
-                        if (value == 1f) {
-                            buttonLastPressedTime.put(buttonComponent, timeNanos);
-                            fireEvent(buttonComponent, new ButtonPressedEvent(timeNanos));
-                        } else if (value == 0f) {
-                            fireEvent(buttonComponent, new ButtonReleasedEvent(timeNanos));
-                            fireEvent(buttonComponent, new ButtonClickedEvent(timeNanos, timeNanos - buttonLastPressedTime.getOrDefault(buttonComponent, timeNanos)));
-                        }
-                        else {
-                            System.out.println("Unable to process button value " + value + " for " + buttonComponent);
-                        }
+                    mappedComponent = buttonToComponent(component.getIdentifier());
+                    if (mappedComponent == null) {
+                        System.out.println("Unable to map button " + component.getIdentifier());
                     }
                 }
             }
             else {
-                //no button
-                Component axisComponent = axisToComponent(component.getIdentifier());
-                if (axisComponent == null) {
-                    System.out.println("Unable to map axis " + axisComponent);
+                mappedComponent = axisToComponent(component.getIdentifier());
+                if (mappedComponent == null) {
+                    System.out.println("Unable to map axis " + component.getIdentifier());
                 }
-                else {
-                    axisValues.put(axisComponent, value);
-                    List<Deadzone> activeDeadzones = axisToDeadzonesMap.getOrDefault(axisComponent, Collections.emptyList());
+            }
+            if (mappedComponent != null) {
+                if (rawListener != null) {
+                    rawListener.onRawInput(mappedComponent, timeNanos, value);
+                }
+                processInput(mappedComponent, value, timeNanos, shaper, tracer, originTime);
+            }
+            if (tracer != null) {
+                tracer.end();
+            }
+        }
+        if (eventCount > 0) {
+            workingState.updateCount++;
+            publishState();
+        }
+        return eventCount;
+    }
 
-                    if (activeDeadzones.isEmpty()) {
-                        //no deadzone
-                        fireEvent(axisComponent, new AxisMovedEvent(timeNanos, value));
-                    }
-                    else {
-                        //has at least one deadzone associated
-                        for (Deadzone deadzone : activeDeadzones) {
-                            if (deadzone.deadzoneType == DeadzoneType.LINEAR) {
-                                float absoluteValue = Math.abs(value);
-
-                                if (absoluteValue < deadzone.value) {
-                                    if (!axisInDeadzone.getOrDefault(axisComponent, false)) {
-                                        fireEvent(axisComponent, new AxisMovedEvent(timeNanos, 0f));
-                                        axisInDeadzone.put(axisComponent, true);
-                                    }
-                                    continue;
-                                }
-
-                                float newValue = value * ((absoluteValue - deadzone.value) / (1f - deadzone.value));
-                                if (axisComponent == deadzone.eventAxis) {
-                                    fireEvent(axisComponent, new AxisMovedEvent(timeNanos, newValue));
-                                    axisInDeadzone.put(axisComponent, false);
-                                }
-                            }
-                            else if (deadzone.deadzoneType == DeadzoneType.RADIAL) {
-                                Component deadzoneXAxis = deadzone.axes.get(0);
-                                Component deadzoneYAxis = deadzone.axes.get(1);
-
-                                float xValue = axisValues.getOrDefault(deadzoneXAxis, 0f);
-                                float yValue = axisValues.getOrDefault(deadzoneYAxis, 0f);
-
-                                float magnitude = (float)Math.sqrt(Math.pow(xValue, 2) + Math.pow(yValue, 2));
-                                if (magnitude < deadzone.value) {
-                                    if (!axisInDeadzone.getOrDefault(axisComponent, false)) {
-                                        fireEvent(axisComponent, new AxisMovedEvent(timeNanos, 0f));
-                                        axisInDeadzone.put(axisComponent, true);
-                                    }
-                                    continue;
-                                }
-
-                                if (deadzoneXAxis == axisComponent && axisComponent == deadzone.eventAxis) {
-                                    float newXValue = (xValue / magnitude) * ((magnitude - deadzone.value) / (1f - deadzone.value));
-                                    fireEvent(axisComponent, new AxisMovedEvent(timeNanos, newXValue));
-                                    axisInDeadzone.put(axisComponent, false);
-                                }
-                                else if (deadzoneYAxis == axisComponent && axisComponent == deadzone.eventAxis) {
-                                    float newYValue = (yValue / magnitude) * ((magnitude - deadzone.value) / (1f - deadzone.value));
-                                    fireEvent(axisComponent, new AxisMovedEvent(timeNanos, newYValue));
-                                    axisInDeadzone.put(axisComponent, false);
-                                }
-                            }
-                            else {
-                                System.out.println("Unknown deadzone type " + deadzone.deadzoneType);
-                            }
-                        }
+    private void processInput(Component component, float value, long timeNanos, InputShaper shaper, LatencyTracer tracer, long originTime) {
+        workingState.time = timeNanos;
+        if (component == DPAD_ANY) {
+            if (value == 0f) {
+                for (int dpadOrdinal = DPAD_ANY.ordinal(); dpadOrdinal <= DPAD_UPLEFT.ordinal(); dpadOrdinal++) {
+                    workingState.buttonPressed[dpadOrdinal] = false;
+                }
+                fireButtonEvent(DPAD_ANY, EventType.BUTTON_RELEASED, timeNanos, 0L);
+            }
+            else {
+                Component dpadComponent = dpadToComponent(value);
+                if (dpadComponent == null) {
+                    System.out.println("Unable to process dpad value " + value);
+                }
+                else {
+                    //the hat can move from one direction to another without passing the centre
+                    for (int dpadOrdinal = DPAD_UP.ordinal(); dpadOrdinal <= DPAD_UPLEFT.ordinal(); dpadOrdinal++) {
+                        workingState.buttonPressed[dpadOrdinal] = false;
                     }
+                    workingState.buttonPressed[DPAD_ANY.ordinal()] = true;
+                    workingState.buttonPressed[dpadComponent.ordinal()] = true;
+                    workingState.buttonLastPressedTime[dpadComponent.ordinal()] = timeNanos;
+                    fireButtonEvent(dpadComponent, EventType.BUTTON_PRESSED, timeNanos, 0L);
                 }
             }
         }
+        else if (component.ordinal() < LEFT_STICK_X_AXIS.ordinal()) {
+            //button
+            int buttonOrdinal = component.ordinal();
+            if (value == 1f) {
+                workingState.buttonPressed[buttonOrdinal] = true;
+                workingState.buttonLastPressedTime[buttonOrdinal] = timeNanos;
+                fireButtonEvent(component, EventType.BUTTON_PRESSED, timeNanos, 0L);
+            } else if (value == 0f) {
+                long clickTime = workingState.buttonPressed[buttonOrdinal] ? timeNanos - workingState.buttonLastPressedTime[buttonOrdinal] : 0L;
+                workingState.buttonPressed[buttonOrdinal] = false;
+                fireButtonEvent(component, EventType.BUTTON_RELEASED, timeNanos, 0L);
+                fireButtonEvent(component, EventType.BUTTON_CLICKED, timeNanos, clickTime);
+            }
+            else {
+                System.out.println("Unable to process button value " + value + " for " + component);
+            }
+        }
+        else {
+            //axis
+            int axis = component.ordinal();
+            workingState.rawAxisValues[axis] = value;
+            int partnerAxis = shaper.shape(axis, workingState.rawAxisValues, shapedAxisValues);
+            if (tracer != null) {
+                tracer.record(LatencyTracer.Stage.SHAPED, originTime);
+            }
+            fireAxisMovedEventIfChanged(axis, timeNanos);
+            if (partnerAxis >= 0) {
+                fireAxisMovedEventIfChanged(partnerAxis, timeNanos);
+            }
+        }
     }
 
     private static Component dpadToComponent(float value) {
@@ -279,8 +505,103 @@ public class XboxGamepad {
         return AXIS_COMPONENT_MAP.get(axis);
     }
 
-    private void fireEvent(Component component, Event event) {
-        componentEventListeners.getOrDefault(component, Collections.emptyMap()).getOrDefault(event.getClass(), Collections.emptyList()).forEach(listener -> listener.accept(event));
+    /**
+     * Returns the device identifier that maps to the given component, {@code Axis.POV} for the directional pad, or
+     * null if no identifier maps to it.
+     */
+    static net.java.games.input.Component.Identifier identifierOf(Component component) {
+        if (component == DPAD_ANY) {
+            return net.java.games.input.Component.Identifier.Axis.POV;
+        }
+        net.java.games.input.Component.Identifier identifier = findIdentifier(BUTTON_COMPONENT_MAP, component);
+        return (identifier != null) ? identifier : findIdentifier(AXIS_COMPONENT_MAP, component);
+    }
+
+    private static net.java.games.input.Component.Identifier findIdentifier(Map<net.java.games.input.Component.Identifier, Component> componentMap, Component component) {
+        for (Map.Entry<net.java.games.input.Component.Identifier, Component> entry : componentMap.entrySet()) {
+            if (entry.getValue() == component) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private void fireAxisMovedEventIfChanged(int axis, long time) {
+        float newValue = shapedAxisValues[axis];
+        if (newValue != workingState.axisValues[axis]) {
+            fireAxisMovedEvent(COMPONENTS[axis], time, newValue);
+        }
+    }
+
+    private void fireAxisMovedEvent(Component component, long time, float newValue) {
+        workingState.axisValues[component.ordinal()] = newValue;
+        recordListenerLatency();
+        for (AxisListener axisListener : axisListeners[component.ordinal()]) {
+            try {
+                axisListener.onAxis(component, time, newValue);
+            } catch (RuntimeException e) {
+                listenerFailed(e);
+            }
+        }
+        Consumer<Event>[] listeners = eventListeners[component.ordinal()][EventType.AXIS_MOVED.ordinal()];
+        if (listeners.length > 0) {
+            Event event = new AxisMovedEvent(time, newValue);
+            for (Consumer<Event> listener : listeners) {
+                try {
+                    listener.accept(event);
+                } catch (RuntimeException e) {
+                    listenerFailed(e);
+                }
+            }
+        }
+    }
+
+    private void fireButtonEvent(Component component, EventType eventType, long time, long clickTime) {
+        recordListenerLatency();
+        for (ButtonListener buttonListener : buttonListeners[component.ordinal()][eventType.ordinal()]) {
+            try {
+                buttonListener.onButton(component, time, clickTime);
+            } catch (RuntimeException e) {
+                listenerFailed(e);
+            }
+        }
+        Consumer<Event>[] listeners = eventListeners[component.ordinal()][eventType.ordinal()];
+        if (listeners.length > 0) {
+            Event event;
+            switch (eventType) {
+                case BUTTON_PRESSED:
+                    event = new ButtonPressedEvent(time);
+                    break;
+                case BUTTON_RELEASED:
+                    event = new ButtonReleasedEvent(time);
+                    break;
+                case BUTTON_CLICKED:
+                    event = new ButtonClickedEvent(time, clickTime);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Event type " + eventType + " is not a button event type");
+            }
+            for (Consumer<Event> listener : listeners) {
+                try {
+                    listener.accept(event);
+                } catch (RuntimeException e) {
+                    listenerFailed(e);
+                }
+            }
+        }
+    }
+
+    private void recordListenerLatency() {
+        LatencyTracer tracer = latencyTracer;
+        if (tracer != null) {
+            tracer.record(LatencyTracer.Stage.LISTENER, currentOriginTime);
+        }
+    }
+
+    private void listenerFailed(RuntimeException e) {
+        //a failing listener must neither stop the other listeners nor the polling thread
+        listenerErrorCount.incrementAndGet();
+        e.printStackTrace();
     }
 
     public static enum Component {
@@ -310,22 +631,31 @@ public class XboxGamepad {
         TRIGGER_AXIS
     }
 
-    private static class Deadzone {
-        private Component eventAxis;
-        private final List<Component> axes;
-        private final DeadzoneType deadzoneType;
-        private final float value;
+    private static enum EventType {
+        AXIS_MOVED(AxisMovedEvent.class),
+        BUTTON_PRESSED(ButtonPressedEvent.class),
+        BUTTON_RELEASED(ButtonReleasedEvent.class),
+        BUTTON_CLICKED(ButtonClickedEvent.class);
 
-        private Deadzone(Component eventAxis, List<Component> axes, DeadzoneType deadzoneType, float value) {
-            this.eventAxis = eventAxis;
-            this.axes = axes;
-            this.deadzoneType = deadzoneType;
-            this.value = value;
+        private final Class<? extends Event> eventClass;
+
+        private EventType(Class<? extends Event> eventClass) {
+            this.eventClass = eventClass;
+        }
+
+        private static EventType of(Class<?> eventClass) {
+            for (EventType eventType : values()) {
+                if (eventType.eventClass == eventClass) {
+                    return eventType;
+                }
+            }
+            throw new IllegalArgumentException("Event class " + eventClass + " is not a dispatchable event");
         }
     }
 
     public static enum DeadzoneType {
         LINEAR,
-        RADIAL
+        RADIAL,
+        AXIAL
     }
 }
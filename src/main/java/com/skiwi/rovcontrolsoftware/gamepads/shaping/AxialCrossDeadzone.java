@@ -0,0 +1,21 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+/**
+ * Applies a linear deadzone to each axis of the stick independently, which leaves a cross shaped dead area that makes
+ * it easy to move along exactly one axis.
+ *
+ * @author Frank van Heeswijk
+ */
+public class AxialCrossDeadzone implements StickFilter {
+    private final LinearDeadzone linearDeadzone;
+
+    public AxialCrossDeadzone(float deadzone) {
+        this.linearDeadzone = new LinearDeadzone(deadzone);
+    }
+
+    @Override
+    public void apply(float x, float y, float[] output) {
+        output[0] = linearDeadzone.apply(x);
+        output[1] = linearDeadzone.apply(y);
+    }
+}
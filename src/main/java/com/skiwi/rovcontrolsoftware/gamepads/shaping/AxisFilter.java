@@ -0,0 +1,12 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+/**
+ * Shapes the value of a single axis. Implementations may keep state, they are only ever called from the polling
+ * thread.
+ *
+ * @author Frank van Heeswijk
+ */
+@FunctionalInterface
+public interface AxisFilter {
+    float apply(float value);
+}
@@ -0,0 +1,22 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+/**
+ * Blends a linear and a cubic response, giving finer control around the center for larger expo values.
+ *
+ * @author Frank van Heeswijk
+ */
+public class ExpoCurve implements ResponseCurve {
+    private final float expo;
+
+    public ExpoCurve(float expo) {
+        if (expo < 0f || expo > 1f) {
+            throw new IllegalArgumentException("The expo must be in [0, 1]: expo = " + expo);
+        }
+        this.expo = expo;
+    }
+
+    @Override
+    public float apply(float value) {
+        return (1f - expo) * value + expo * value * value * value;
+    }
+}
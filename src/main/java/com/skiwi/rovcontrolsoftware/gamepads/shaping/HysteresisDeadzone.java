@@ -0,0 +1,46 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+/**
+ * Radial deadzone that is entered below the enter threshold but only left again above the larger exit threshold, so
+ * that a stick resting near the edge does not flicker in and out of the deadzone.
+ *
+ * @author Frank van Heeswijk
+ */
+public class HysteresisDeadzone implements StickFilter {
+    private final float enterDeadzoneSquared;
+    private final float exitDeadzoneSquared;
+    private final float enterDeadzone;
+    private final float scale;
+
+    private boolean inDeadzone = true;
+
+    public HysteresisDeadzone(float enterDeadzone, float exitDeadzone) {
+        if (enterDeadzone < 0f || exitDeadzone < enterDeadzone || exitDeadzone >= 1f) {
+            throw new IllegalArgumentException("The deadzones must satisfy 0 <= enter <= exit < 1: enterDeadzone = " + enterDeadzone + ", exitDeadzone = " + exitDeadzone);
+        }
+        this.enterDeadzoneSquared = enterDeadzone * enterDeadzone;
+        this.exitDeadzoneSquared = exitDeadzone * exitDeadzone;
+        this.enterDeadzone = enterDeadzone;
+        this.scale = 1f / (1f - enterDeadzone);
+    }
+
+    @Override
+    public void apply(float x, float y, float[] output) {
+        float magnitudeSquared = x * x + y * y;
+        if (inDeadzone) {
+            inDeadzone = magnitudeSquared <= exitDeadzoneSquared;
+        }
+        else {
+            inDeadzone = magnitudeSquared < enterDeadzoneSquared;
+        }
+        if (inDeadzone || magnitudeSquared == 0f) {
+            output[0] = 0f;
+            output[1] = 0f;
+            return;
+        }
+        float magnitude = (float)Math.sqrt(magnitudeSquared);
+        float factor = (magnitude - enterDeadzone) * scale / magnitude;
+        output[0] = x * factor;
+        output[1] = y * factor;
+    }
+}
@@ -0,0 +1,144 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+import com.skiwi.rovcontrolsoftware.gamepads.XboxGamepad.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compiled shaping pipeline for all axes. Per axis the stick filter of its pair is applied first, computing the shared
+ * magnitude once for both axes, then its own axis filters in order and finally its response curve.
+ *
+ * Build a new shaper through {@link Builder} whenever the configuration changes, shaping itself never allocates.
+ *
+ * @author Frank van Heeswijk
+ */
+public class InputShaper {
+    private static final int COMPONENT_COUNT = Component.values().length;
+
+    private final int[] partnerAxes = new int[COMPONENT_COUNT];
+    private final boolean[] isXAxis = new boolean[COMPONENT_COUNT];
+    private final StickFilter[] stickFilters = new StickFilter[COMPONENT_COUNT];
+    private final AxisFilter[][] axisFilters = new AxisFilter[COMPONENT_COUNT][];
+    private final ResponseCurve[] responseCurves = new ResponseCurve[COMPONENT_COUNT];
+
+    private final float[] stickOutput = new float[2];
+
+    private InputShaper(Builder builder) {
+        for (int i = 0; i < COMPONENT_COUNT; i++) {
+            partnerAxes[i] = -1;
+            axisFilters[i] = new AxisFilter[0];
+        }
+        for (StickConfiguration stick : builder.sticks) {
+            int xAxis = stick.xAxis.ordinal();
+            int yAxis = stick.yAxis.ordinal();
+            partnerAxes[xAxis] = yAxis;
+            partnerAxes[yAxis] = xAxis;
+            isXAxis[xAxis] = true;
+            stickFilters[xAxis] = stick.stickFilter;
+            stickFilters[yAxis] = stick.stickFilter;
+        }
+        for (Map.Entry<Component, List<AxisFilter>> entry : builder.axisFilters.entrySet()) {
+            axisFilters[entry.getKey().ordinal()] = entry.getValue().toArray(new AxisFilter[0]);
+        }
+        for (Map.Entry<Component, ResponseCurve> entry : builder.responseCurves.entrySet()) {
+            responseCurves[entry.getKey().ordinal()] = entry.getValue();
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Shapes the given axis from the raw values into the shaped values. If the axis is part of a stick, its partner axis
+     * is shaped as well, since both depend on the same magnitude.
+     *
+     * @return  the ordinal of the partner axis that was also shaped, or -1 if there is none
+     */
+    public int shape(int axis, float[] rawValues, float[] shapedValues) {
+        int partnerAxis = partnerAxes[axis];
+        StickFilter stickFilter = stickFilters[axis];
+        if (stickFilter == null) {
+            shapedValues[axis] = finish(axis, rawValues[axis]);
+            return -1;
+        }
+
+        int xAxis = isXAxis[axis] ? axis : partnerAxis;
+        int yAxis = isXAxis[axis] ? partnerAxis : axis;
+        stickFilter.apply(rawValues[xAxis], rawValues[yAxis], stickOutput);
+        shapedValues[xAxis] = finish(xAxis, stickOutput[0]);
+        shapedValues[yAxis] = finish(yAxis, stickOutput[1]);
+        return partnerAxis;
+    }
+
+    private float finish(int axis, float value) {
+        for (AxisFilter axisFilter : axisFilters[axis]) {
+            value = axisFilter.apply(value);
+        }
+        ResponseCurve responseCurve = responseCurves[axis];
+        return (responseCurve == null) ? value : responseCurve.apply(value);
+    }
+
+    public static class Builder {
+        private final List<StickConfiguration> sticks = new ArrayList<>();
+        private final Map<Component, List<AxisFilter>> axisFilters = new EnumMap<>(Component.class);
+        private final Map<Component, ResponseCurve> responseCurves = new EnumMap<>(Component.class);
+
+        private Builder() {
+        }
+
+        public Builder stickFilter(Component xAxis, Component yAxis, StickFilter stickFilter) {
+            Objects.requireNonNull(xAxis, "xAxis");
+            Objects.requireNonNull(yAxis, "yAxis");
+            Objects.requireNonNull(stickFilter, "stickFilter");
+            if (xAxis == yAxis) {
+                throw new IllegalArgumentException("A stick needs two different axes: xAxis = " + xAxis + ", yAxis = " + yAxis);
+            }
+            for (StickConfiguration stick : sticks) {
+                if (stick.xAxis == xAxis && stick.yAxis == yAxis) {
+                    stick.stickFilter = stickFilter;
+                    return this;
+                }
+                if (stick.xAxis == xAxis || stick.xAxis == yAxis || stick.yAxis == xAxis || stick.yAxis == yAxis) {
+                    throw new IllegalArgumentException("Axis " + xAxis + " or " + yAxis + " is already part of another stick");
+                }
+            }
+            sticks.add(new StickConfiguration(xAxis, yAxis, stickFilter));
+            return this;
+        }
+
+        public Builder axisFilter(Component axis, AxisFilter axisFilter) {
+            Objects.requireNonNull(axis, "axis");
+            Objects.requireNonNull(axisFilter, "axisFilter");
+            axisFilters.computeIfAbsent(axis, key -> new ArrayList<>()).add(axisFilter);
+            return this;
+        }
+
+        public Builder responseCurve(Component axis, ResponseCurve responseCurve) {
+            Objects.requireNonNull(axis, "axis");
+            Objects.requireNonNull(responseCurve, "responseCurve");
+            responseCurves.put(axis, responseCurve);
+            return this;
+        }
+
+        public InputShaper build() {
+            return new InputShaper(this);
+        }
+    }
+
+    private static class StickConfiguration {
+        private final Component xAxis;
+        private final Component yAxis;
+        private StickFilter stickFilter;
+
+        private StickConfiguration(Component xAxis, Component yAxis, StickFilter stickFilter) {
+            this.xAxis = xAxis;
+            this.yAxis = yAxis;
+            this.stickFilter = stickFilter;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class LinearDeadzone implements AxisFilter {
+    private final float deadzone;
+    private final float scale;
+
+    public LinearDeadzone(float deadzone) {
+        if (deadzone < 0f || deadzone >= 1f) {
+            throw new IllegalArgumentException("The deadzone must be in [0, 1): deadzone = " + deadzone);
+        }
+        this.deadzone = deadzone;
+        this.scale = 1f / (1f - deadzone);
+    }
+
+    @Override
+    public float apply(float value) {
+        float absoluteValue = Math.abs(value);
+        if (absoluteValue < deadzone) {
+            return 0f;
+        }
+        return value * (absoluteValue - deadzone) * scale;
+    }
+}
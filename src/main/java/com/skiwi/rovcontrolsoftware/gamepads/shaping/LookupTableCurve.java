@@ -0,0 +1,34 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Response curve given by equally spaced points over the magnitude range [0, 1], linearly interpolated in between. The
+ * curve is mirrored for negative values.
+ *
+ * @author Frank van Heeswijk
+ */
+public class LookupTableCurve implements ResponseCurve {
+    private final float[] table;
+    private final int lastIndex;
+
+    public LookupTableCurve(float... table) {
+        Objects.requireNonNull(table, "table");
+        if (table.length < 2) {
+            throw new IllegalArgumentException("The lookup table needs at least two points: table = " + Arrays.toString(table));
+        }
+        this.table = table.clone();
+        this.lastIndex = table.length - 1;
+    }
+
+    @Override
+    public float apply(float value) {
+        float absoluteValue = Math.min(Math.abs(value), 1f);
+        float position = absoluteValue * lastIndex;
+        int index = Math.min((int)position, lastIndex - 1);
+        float fraction = position - index;
+        float result = table[index] + (table[index + 1] - table[index]) * fraction;
+        return (value < 0f) ? -result : result;
+    }
+}
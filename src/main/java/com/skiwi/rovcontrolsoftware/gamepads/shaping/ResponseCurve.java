@@ -0,0 +1,11 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+/**
+ * Maps an axis value in [-1, 1] onto [-1, 1], applied after all deadzones.
+ *
+ * @author Frank van Heeswijk
+ */
+@FunctionalInterface
+public interface ResponseCurve {
+    float apply(float value);
+}
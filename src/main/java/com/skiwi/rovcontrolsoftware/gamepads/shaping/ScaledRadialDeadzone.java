@@ -0,0 +1,35 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+/**
+ * Zeroes the stick within a circle and rescales the remaining magnitude onto the full range, keeping the direction.
+ *
+ * @author Frank van Heeswijk
+ */
+public class ScaledRadialDeadzone implements StickFilter {
+    private final float deadzone;
+    private final float deadzoneSquared;
+    private final float scale;
+
+    public ScaledRadialDeadzone(float deadzone) {
+        if (deadzone < 0f || deadzone >= 1f) {
+            throw new IllegalArgumentException("The deadzone must be in [0, 1): deadzone = " + deadzone);
+        }
+        this.deadzone = deadzone;
+        this.deadzoneSquared = deadzone * deadzone;
+        this.scale = 1f / (1f - deadzone);
+    }
+
+    @Override
+    public void apply(float x, float y, float[] output) {
+        float magnitudeSquared = x * x + y * y;
+        if (magnitudeSquared < deadzoneSquared || magnitudeSquared == 0f) {
+            output[0] = 0f;
+            output[1] = 0f;
+            return;
+        }
+        float magnitude = (float)Math.sqrt(magnitudeSquared);
+        float factor = (magnitude - deadzone) * scale / magnitude;
+        output[0] = x * factor;
+        output[1] = y * factor;
+    }
+}
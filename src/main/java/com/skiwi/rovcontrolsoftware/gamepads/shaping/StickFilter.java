@@ -0,0 +1,12 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+/**
+ * Shapes both axes of a stick at once, writing the shaped x and y values to {@code output[0]} and {@code output[1]}.
+ * Implementations may keep state, they are only ever called from the polling thread.
+ *
+ * @author Frank van Heeswijk
+ */
+@FunctionalInterface
+public interface StickFilter {
+    void apply(float x, float y, float[] output);
+}
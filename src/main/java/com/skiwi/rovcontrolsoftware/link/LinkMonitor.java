@@ -0,0 +1,310 @@
+package com.skiwi.rovcontrolsoftware.link;
+
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+import com.skiwi.rovcontrolsoftware.commands.ConnectionManager;
+import com.skiwi.rovcontrolsoftware.commands.NioCommandChannel;
+import com.skiwi.rovcontrolsoftware.metrics.Histogram;
+import com.skiwi.rovcontrolsoftware.telemetry.TelemetryChannel;
+import com.skiwi.rovcontrolsoftware.telemetry.TelemetryListener;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Watches the tether that commands and video share. The round trip time is measured on the command channel, from
+ * writing a command until the ROV acknowledges it with an {@code "ack <key> <value>"} line, and the throughput of
+ * commands and video is sampled a few times per second.
+ *
+ * Queueing on the tether shows up as a round trip time above the lowest one seen recently. Once that queueing delay
+ * exceeds the allowed maximum, or the command socket stops accepting writes, the link is congested: the throughput at
+ * that moment minus a margin becomes the budget, and the video level is lowered one step at a time until the
+ * congestion is gone. After a quiet period the video level is raised again, one step at a time as well. A raise that
+ * brings the congestion back doubles the quiet period before the next try, so a link that cannot carry more video is
+ * not probed every few seconds.
+ *
+ * The round trip time depends on the ROV firmware acknowledging every command it applies with an
+ * {@code "ack <key> <value>"} line on the command connection. Firmware that does not send them leaves the round trip
+ * time unknown, and then only a command socket that stops accepting writes is detected as congestion, which happens
+ * much later than the queueing delay would have shown it.
+ *
+ * @author Frank van Heeswijk
+ */
+public class LinkMonitor implements TelemetryListener, Closeable {
+    public static final String ACK_PREFIX = "ack ";
+
+    private static final long SAMPLE_INTERVAL = 250L;   //milliseconds
+    private static final long MIN_RTT_WINDOW = TimeUnit.SECONDS.toNanos(10);
+    private static final long ACK_TIMEOUT = TimeUnit.SECONDS.toNanos(2);
+    private static final long LEVEL_HOLD_TIME = TimeUnit.SECONDS.toNanos(1);
+    private static final long RECOVERY_TIME = TimeUnit.SECONDS.toNanos(10);
+    private static final long MAX_RECOVERY_TIME = TimeUnit.SECONDS.toNanos(160);
+    private static final double BUDGET_MARGIN = 0.8d;
+    private static final double THROUGHPUT_SMOOTHING = 0.5d;
+
+    private static final Actuator[] ACTUATORS = Actuator.values();
+    private static final VideoLevel[] VIDEO_LEVELS = VideoLevel.values();
+
+    private final ConnectionManager connectionManager;
+    private final LongSupplier videoBytesReceived;
+    private final long maxQueueDelay;
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile Consumer<VideoLevel> videoLevelListener = videoLevel -> { };
+
+    //round trip times, only written from the I/O thread of the command channel
+    private final Histogram roundTripTime = new Histogram();
+    private volatile long smoothedRoundTripTime = -1L;
+    private volatile long minRoundTripTime = -1L;
+    private volatile long lastAckTime;
+    private long windowMinRoundTripTime = Long.MAX_VALUE;
+    private long previousWindowMinRoundTripTime = Long.MAX_VALUE;
+    private long windowStart = System.nanoTime();
+
+    //only accessed from the scheduler thread
+    private NioCommandChannel sampledChannel;
+    private long lastSampleTime;
+    private long lastCommandBytes;
+    private long lastVideoBytes;
+    private long lastPartialWriteCount;
+    private long lastCongestionTime;
+    private long lastLevelChangeTime;
+    private long recoveryTime = RECOVERY_TIME;
+    private boolean raised;
+
+    private volatile double commandThroughput;
+    private volatile double videoThroughput;
+    private volatile double budget = Double.NaN;
+    private volatile boolean congested;
+    private volatile VideoLevel videoLevel = VideoLevel.FULL;
+
+    private final AtomicLong congestionCount = new AtomicLong();
+
+    /**
+     * @param videoBytesReceived    the total amount of video bytes received so far, over all cameras
+     * @param maxQueueDelay the queueing delay in milliseconds above which the link counts as congested
+     */
+    public LinkMonitor(ConnectionManager connectionManager, LongSupplier videoBytesReceived, long maxQueueDelay) {
+        if (maxQueueDelay <= 0) {
+            throw new IllegalArgumentException("The maximum queue delay must be positive: maxQueueDelay = " + maxQueueDelay);
+        }
+        this.connectionManager = Objects.requireNonNull(connectionManager, "connectionManager");
+        this.videoBytesReceived = Objects.requireNonNull(videoBytesReceived, "videoBytesReceived");
+        this.maxQueueDelay = TimeUnit.MILLISECONDS.toNanos(maxQueueDelay);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "link-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the listener that is told about every change of the video level, it is called from the monitor thread.
+     */
+    public void setVideoLevelListener(Consumer<VideoLevel> videoLevelListener) {
+        this.videoLevelListener = Objects.requireNonNull(videoLevelListener, "videoLevelListener");
+    }
+
+    public void start() {
+        long now = System.nanoTime();
+        lastLevelChangeTime = now;
+        lastCongestionTime = now;
+        scheduler.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+    }
+
+    @Override
+    public void onSample(TelemetryChannel channel, long time, double value) {
+        String name = channel.getName();
+        if (!name.startsWith(ACK_PREFIX)) {
+            return;
+        }
+        NioCommandChannel commandChannel = connectionManager.getCommandChannel();
+        if (commandChannel == null) {
+            return;
+        }
+        for (Actuator actuator : ACTUATORS) {
+            String key = actuator.getKey();
+            if (name.length() == ACK_PREFIX.length() + key.length() && name.endsWith(key)) {
+                long writeTime = commandChannel.takeWriteTime(actuator, (int)value);
+                if (writeTime != 0L) {
+                    recordRoundTrip(time, time - writeTime);
+                }
+                return;
+            }
+        }
+    }
+
+    private void recordRoundTrip(long time, long rtt) {
+        roundTripTime.record(rtt);
+        lastAckTime = time;
+        long smoothed = smoothedRoundTripTime;
+        //the same smoothing as TCP uses
+        smoothedRoundTripTime = (smoothed < 0) ? rtt : smoothed + (rtt - smoothed) / 8;
+
+        //the minimum over the current and the previous window, so that it follows a link that got slower for good
+        if (time - windowStart >= MIN_RTT_WINDOW) {
+            previousWindowMinRoundTripTime = windowMinRoundTripTime;
+            windowMinRoundTripTime = Long.MAX_VALUE;
+            windowStart = time;
+        }
+        windowMinRoundTripTime = Math.min(windowMinRoundTripTime, rtt);
+        minRoundTripTime = Math.min(windowMinRoundTripTime, previousWindowMinRoundTripTime);
+    }
+
+    private void sample() {
+        long now = System.nanoTime();
+        NioCommandChannel commandChannel = connectionManager.getCommandChannel();
+        long commandBytes = (commandChannel == null) ? 0L : commandChannel.getBytesWritten() + commandChannel.getBytesRead();
+        long partialWriteCount = (commandChannel == null) ? 0L : commandChannel.getPartialWriteCount();
+        long videoBytes = videoBytesReceived.getAsLong();
+        if (commandChannel != sampledChannel) {
+            //a new connection starts its counters at zero
+            sampledChannel = commandChannel;
+            lastCommandBytes = commandBytes;
+            lastPartialWriteCount = partialWriteCount;
+        }
+        if (lastSampleTime == 0L) {
+            lastSampleTime = now;
+            lastVideoBytes = videoBytes;
+            return;
+        }
+        double elapsedSeconds = (now - lastSampleTime) / 1e9d;
+        double commandRate = (commandBytes - lastCommandBytes) / elapsedSeconds;
+        //a stream that is replaced may be counted a little late, never count backwards
+        double videoRate = Math.max(0L, videoBytes - lastVideoBytes) / elapsedSeconds;
+        commandThroughput += (commandRate - commandThroughput) * THROUGHPUT_SMOOTHING;
+        videoThroughput += (videoRate - videoThroughput) * THROUGHPUT_SMOOTHING;
+        boolean stalledWrites = (partialWriteCount != lastPartialWriteCount);
+        lastSampleTime = now;
+        lastCommandBytes = commandBytes;
+        lastVideoBytes = videoBytes;
+        lastPartialWriteCount = partialWriteCount;
+
+        long queueDelay = getQueueDelay();
+        congested = stalledWrites || queueDelay > maxQueueDelay;
+        double throughput = commandThroughput + videoThroughput;
+        if (congested) {
+            congestionCount.incrementAndGet();
+            lastCongestionTime = now;
+            double congestedBudget = throughput * BUDGET_MARGIN;
+            if (Double.isNaN(budget) || congestedBudget < budget) {
+                budget = congestedBudget;
+            }
+            if (now - lastLevelChangeTime >= LEVEL_HOLD_TIME && videoLevel.ordinal() < VIDEO_LEVELS.length - 1) {
+                if (raised) {
+                    //the previous raise was too much for the link
+                    recoveryTime = Math.min(recoveryTime * 2, MAX_RECOVERY_TIME);
+                    raised = false;
+                }
+                changeVideoLevel(VIDEO_LEVELS[videoLevel.ordinal() + 1], now);
+            }
+        }
+        else {
+            if (throughput > budget) {
+                //the link carried more than the budget without queueing
+                budget = throughput;
+            }
+            if (raised && now - lastLevelChangeTime >= RECOVERY_TIME) {
+                //the previous raise held
+                recoveryTime = RECOVERY_TIME;
+                raised = false;
+            }
+            if (now - lastCongestionTime >= recoveryTime && now - lastLevelChangeTime >= recoveryTime && videoLevel.ordinal() > 0) {
+                raised = true;
+                changeVideoLevel(VIDEO_LEVELS[videoLevel.ordinal() - 1], now);
+            }
+        }
+    }
+
+    private void changeVideoLevel(VideoLevel newVideoLevel, long now) {
+        videoLevel = newVideoLevel;
+        lastLevelChangeTime = now;
+        videoLevelListener.accept(newVideoLevel);
+    }
+
+    public Histogram getRoundTripTime() {
+        return roundTripTime;
+    }
+
+    /**
+     * Returns the smoothed round trip time in nanoseconds, or -1 if no acknowledgement has been seen yet.
+     */
+    public long getSmoothedRoundTripTime() {
+        return smoothedRoundTripTime;
+    }
+
+    /**
+     * Returns the lowest recent round trip time in nanoseconds, or -1 if no acknowledgement has been seen yet.
+     */
+    public long getMinRoundTripTime() {
+        return minRoundTripTime;
+    }
+
+    /**
+     * Returns how much longer than the lowest recent round trip the smoothed round trip time is in nanoseconds, or zero
+     * if there have been no recent acknowledgements.
+     */
+    public long getQueueDelay() {
+        long smoothed = smoothedRoundTripTime;
+        if (smoothed < 0 || System.nanoTime() - lastAckTime > ACK_TIMEOUT) {
+            return 0L;
+        }
+        return Math.max(0L, smoothed - minRoundTripTime);
+    }
+
+    /**
+     * Returns the bytes per second sent and received on the command channel.
+     */
+    public double getCommandThroughput() {
+        return commandThroughput;
+    }
+
+    /**
+     * Returns the bytes per second received from all cameras.
+     */
+    public double getVideoThroughput() {
+        return videoThroughput;
+    }
+
+    /**
+     * Returns the bytes per second the link is estimated to carry without queueing, or NaN as long as it has not been
+     * congested yet and there is no estimate.
+     */
+    public double getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns the bytes per second left of the budget, negative if the link is over budget, or NaN if there is no
+     * budget yet.
+     */
+    public double getAvailableBudget() {
+        return budget - commandThroughput - videoThroughput;
+    }
+
+    public boolean isCongested() {
+        return congested;
+    }
+
+    public VideoLevel getVideoLevel() {
+        return videoLevel;
+    }
+
+    /**
+     * Returns the amount of samples at which the link was congested.
+     */
+    public long getCongestionCount() {
+        return congestionCount.get();
+    }
+}
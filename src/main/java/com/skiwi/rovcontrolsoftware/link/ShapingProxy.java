@@ -0,0 +1,222 @@
+package com.skiwi.rovcontrolsoftware.link;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A stand-in for a slow tether, to try out the link monitor on the bench. Every route forwards TCP connections to a
+ * target, and all routes share one bottleneck per direction: a queue of limited size that is drained at a fixed rate.
+ * Like the buffer of a real bottleneck it delays whatever sits behind a burst, so a video burst delays the commands and
+ * acknowledgements that follow it. A full queue pushes back on the sender.
+ *
+ * @author Frank van Heeswijk
+ */
+public class ShapingProxy implements Closeable {
+    private static final int CHUNK_SIZE = 1460;
+
+    private final Bottleneck upstream;
+    private final Bottleneck downstream;
+
+    private final List<Closeable> closeables = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * @param bytesPerSecond    the rate of each direction
+     * @param queueCapacity the amount of bytes each direction queues at most
+     */
+    public ShapingProxy(long bytesPerSecond, int queueCapacity) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("The rate must be positive: bytesPerSecond = " + bytesPerSecond);
+        }
+        if (queueCapacity < CHUNK_SIZE) {
+            throw new IllegalArgumentException("The queue capacity must hold at least one chunk of " + CHUNK_SIZE + " bytes: queueCapacity = " + queueCapacity);
+        }
+        this.upstream = new Bottleneck("shaping-proxy-upstream", bytesPerSecond, queueCapacity);
+        this.downstream = new Bottleneck("shaping-proxy-downstream", bytesPerSecond, queueCapacity);
+    }
+
+    /**
+     * Forwards connections to the given port to the target.
+     *
+     * @param listenPort    the port to listen on, or zero for any free port
+     * @return  the port listened on
+     */
+    public int addRoute(int listenPort, InetSocketAddress target) throws IOException {
+        Objects.requireNonNull(target, "target");
+        ServerSocket serverSocket = new ServerSocket(listenPort);
+        closeables.add(serverSocket);
+        startThread("shaping-proxy-accept-" + serverSocket.getLocalPort(), () -> accept(serverSocket, target));
+        return serverSocket.getLocalPort();
+    }
+
+    public long getUpstreamBytes() {
+        return upstream.forwardedBytes.get();
+    }
+
+    public long getDownstreamBytes() {
+        return downstream.forwardedBytes.get();
+    }
+
+    public int getUpstreamQueuedBytes() {
+        return upstream.getQueuedBytes();
+    }
+
+    public int getDownstreamQueuedBytes() {
+        return downstream.getQueuedBytes();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Closeable closeable : closeables) {
+            closeQuietly(closeable);
+        }
+        upstream.thread.interrupt();
+        downstream.thread.interrupt();
+    }
+
+    private void accept(ServerSocket serverSocket, InetSocketAddress target) {
+        while (!closed) {
+            Socket client;
+            try {
+                client = serverSocket.accept();
+            } catch (IOException e) {
+                //closed
+                return;
+            }
+            Socket server = new Socket();
+            try {
+                server.connect(target);
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+            } catch (IOException e) {
+                closeQuietly(client);
+                closeQuietly(server);
+                continue;
+            }
+            closeables.add(client);
+            closeables.add(server);
+            String name = "shaping-proxy-" + client.getPort();
+            startThread(name + "-upstream", () -> pump(client, server, upstream));
+            startThread(name + "-downstream", () -> pump(server, client, downstream));
+        }
+    }
+
+    private void pump(Socket from, Socket to, Bottleneck bottleneck) {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try {
+            InputStream input = from.getInputStream();
+            OutputStream output = to.getOutputStream();
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                bottleneck.enqueue(new Chunk(Arrays.copyOf(buffer, read), output, to, System.nanoTime()));
+            }
+        } catch (IOException | InterruptedException e) {
+            //either side went away
+        } finally {
+            closeQuietly(from);
+            closeQuietly(to);
+            closeables.remove(from);
+            closeables.remove(to);
+        }
+    }
+
+    private static Thread startThread(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            //nothing left to do
+        }
+    }
+
+    private static class Chunk {
+        private final byte[] data;
+        private final OutputStream output;
+        private final Socket socket;
+        private final long arrivalTime;
+
+        private Chunk(byte[] data, OutputStream output, Socket socket, long arrivalTime) {
+            this.data = data;
+            this.output = output;
+            this.socket = socket;
+            this.arrivalTime = arrivalTime;
+        }
+    }
+
+    private static class Bottleneck {
+        private final long bytesPerSecond;
+        private final int queueCapacity;
+        private final Semaphore freeBytes;
+        private final BlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+        private final Thread thread;
+
+        private final AtomicLong forwardedBytes = new AtomicLong();
+
+        private Bottleneck(String name, long bytesPerSecond, int queueCapacity) {
+            this.bytesPerSecond = bytesPerSecond;
+            this.queueCapacity = queueCapacity;
+            this.freeBytes = new Semaphore(queueCapacity, true);
+            this.thread = startThread(name, this::drain);
+        }
+
+        private void enqueue(Chunk chunk) throws InterruptedException {
+            freeBytes.acquire(chunk.data.length);
+            queue.put(chunk);
+        }
+
+        private int getQueuedBytes() {
+            return queueCapacity - freeBytes.availablePermits();
+        }
+
+        private void drain() {
+            long nextDepartureTime = 0L;
+            try {
+                while (true) {
+                    Chunk chunk = queue.take();
+                    //a chunk leaves once the chunks before it and then itself have been transmitted at the rate of the link
+                    long startTime = (nextDepartureTime == 0L || chunk.arrivalTime - nextDepartureTime > 0) ? chunk.arrivalTime : nextDepartureTime;
+                    nextDepartureTime = startTime + chunk.data.length * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+                    long delay;
+                    while ((delay = nextDepartureTime - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(delay);
+                        if (Thread.interrupted()) {
+                            return;
+                        }
+                    }
+                    try {
+                        chunk.output.write(chunk.data);
+                        forwardedBytes.addAndGet(chunk.data.length);
+                    } catch (IOException e) {
+                        closeQuietly(chunk.socket);
+                    } finally {
+                        freeBytes.release(chunk.data.length);
+                    }
+                }
+            } catch (InterruptedException e) {
+                //the proxy has been closed
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.skiwi.rovcontrolsoftware.link;
+
+/**
+ * How much video the tether is trusted with, from everything to the least that still lets the pilot see. Every level
+ * includes the restrictions of the levels before it.
+ *
+ * @author Frank van Heeswijk
+ */
+public enum VideoLevel {
+    /**
+     * Every camera streams as configured.
+     */
+    FULL,
+    /**
+     * Only the focused camera streams, the others are paused.
+     */
+    SECONDARY_PAUSED,
+    /**
+     * The focused camera streams at its lower resolution, if it has one.
+     */
+    LOW_RESOLUTION
+}
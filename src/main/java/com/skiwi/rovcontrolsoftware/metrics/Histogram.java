@@ -0,0 +1,120 @@
+package com.skiwi.rovcontrolsoftware.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative long values with log-linear buckets: every power of two is split into sixteen
+ * sub-buckets, so any recorded value is reported with a relative error of at most about 6%. Recording never allocates
+ * and may happen from any number of threads.
+ *
+ * @author Frank van Heeswijk
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT << 1;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMin;
+        while (value < (currentMin = min.get()) && !min.compareAndSet(currentMin, value)) {
+            //retry
+        }
+        long currentMax;
+        while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+            //retry
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMin() {
+        return (count.get() == 0) ? 0 : min.get();
+    }
+
+    public long getMax() {
+        return (count.get() == 0) ? 0 : max.get();
+    }
+
+    public double getMean() {
+        long currentCount = count.get();
+        return (currentCount == 0) ? 0d : (double)sum.get() / currentCount;
+    }
+
+    /**
+     * Returns the highest value equivalent to the value at the given percentile, where the percentile is in [0, 100].
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0d || percentile > 100d) {
+            throw new IllegalArgumentException("The percentile must be in [0, 100]: percentile = " + percentile);
+        }
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long)Math.ceil(total * percentile / 100d));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(Long.MIN_VALUE);
+    }
+
+    @Override
+    public String toString() {
+        return "Histogram(count = " + getCount() + ", min = " + getMin() + ", mean = " + Math.round(getMean())
+                + ", p50 = " + getValueAtPercentile(50d) + ", p99 = " + getValueAtPercentile(99d) + ", max = " + getMax() + ")";
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int)value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS + 1);
+        int subBucket = (int)(value >>> shift);
+        return (shift + 1) * SUB_BUCKET_COUNT + (subBucket - SUB_BUCKET_COUNT);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        if (Long.numberOfLeadingZeros(subBucket + 1) <= shift) {
+            return Long.MAX_VALUE;
+        }
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
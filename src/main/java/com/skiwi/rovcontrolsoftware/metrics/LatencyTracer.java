@@ -0,0 +1,75 @@
+package com.skiwi.rovcontrolsoftware.metrics;
+
+import java.util.Objects;
+
+/**
+ * Traces how long it takes from reading an input event to the matching command leaving the socket. A trace starts when
+ * the polling thread takes an event from the JInput queue, every later stage records the time elapsed since then.
+ * Only the polling thread knows the trace through {@link #getCurrentOrigin()}, values that leave on another thread
+ * carry their origin along explicitly.
+ *
+ * The origin is taken from {@link System#nanoTime()} rather than from the JInput event time, since JInput does not
+ * guarantee that its event times use the same clock.
+ *
+ * @author Frank van Heeswijk
+ */
+public class LatencyTracer {
+    private static final Stage[] STAGES = Stage.values();
+
+    private final Histogram[] histograms = new Histogram[STAGES.length];
+
+    private final ThreadLocal<long[]> currentOrigin = ThreadLocal.withInitial(() -> new long[1]);
+
+    public LatencyTracer() {
+        for (int i = 0; i < STAGES.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Starts a trace on the calling thread, everything this thread submits until {@link #end()} belongs to it.
+     */
+    public long begin() {
+        long originTime = System.nanoTime();
+        currentOrigin.get()[0] = originTime;
+        return originTime;
+    }
+
+    public void end() {
+        currentOrigin.get()[0] = 0L;
+    }
+
+    /**
+     * Returns the origin of the trace running on the calling thread, or zero if there is none.
+     */
+    public long getCurrentOrigin() {
+        return currentOrigin.get()[0];
+    }
+
+    public void record(Stage stage, long originTime) {
+        record(stage, originTime, System.nanoTime());
+    }
+
+    public void record(Stage stage, long originTime, long time) {
+        if (originTime != 0L) {
+            histograms[stage.ordinal()].record(time - originTime);
+        }
+    }
+
+    public Histogram getHistogram(Stage stage) {
+        return histograms[Objects.requireNonNull(stage, "stage").ordinal()];
+    }
+
+    public void reset() {
+        for (Histogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    public static enum Stage {
+        SHAPED,
+        LISTENER,
+        ENQUEUED,
+        WRITTEN
+    }
+}
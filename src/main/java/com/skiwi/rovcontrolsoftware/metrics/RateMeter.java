@@ -0,0 +1,56 @@
+package com.skiwi.rovcontrolsoftware.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free events per second meter over tumbling windows. The reported rate is the one of the last completed window,
+ * and drops to zero once no events have been marked for two windows.
+ *
+ * @author Frank van Heeswijk
+ */
+public class RateMeter {
+    private static final long DEFAULT_WINDOW = 1_000_000_000L;
+
+    private final long window;
+
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final AtomicLong windowCount = new AtomicLong();
+    private final AtomicLong totalCount = new AtomicLong();
+
+    private volatile double rate;
+
+    public RateMeter() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window    the length of a window in nanoseconds
+     */
+    public RateMeter(long window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("The window must be positive: window = " + window);
+        }
+        this.window = window;
+    }
+
+    public void mark() {
+        mark(System.nanoTime());
+    }
+
+    public void mark(long time) {
+        long start = windowStart.get();
+        if (time - start >= window && windowStart.compareAndSet(start, time)) {
+            rate = windowCount.getAndSet(0) * 1e9d / (time - start);
+        }
+        windowCount.incrementAndGet();
+        totalCount.incrementAndGet();
+    }
+
+    public double getRate() {
+        return (System.nanoTime() - windowStart.get() >= 2 * window) ? 0d : rate;
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+}
@@ -0,0 +1,67 @@
+package com.skiwi.rovcontrolsoftware.recording;
+
+/**
+ * The kinds of records in a session file. Every record is {@link SessionRecorder#RECORD_SIZE} bytes:
+ *
+ * <pre>
+ * offset  size  field
+ *      0     1  type code, zero for a slot that was never written
+ *      1     1  key: component, actuator, state or control input ordinal, or the length of a channel name
+ *      4     4  int value
+ *      8     8  time, from System.nanoTime()
+ *     16     8  first long value
+ *     24     8  second long value
+ * </pre>
+ *
+ * @author Frank van Heeswijk
+ */
+public enum RecordType {
+    /** First record of every segment: int value is the segment index, first long the session start in epoch milliseconds. */
+    SEGMENT_HEADER(0x7F),
+    /**
+     * A raw gamepad input: int value holds the float bits of the raw value, first long the device event time, second
+     * long the index of the gamepad.
+     */
+    GAMEPAD_INPUT(0x01),
+    /** A command given to the command pipeline: int value is the command value, first long the trace origin. */
+    COMMAND(0x02),
+    /** A change of the command connection state. */
+    CONNECTION_STATE(0x03),
+    /** The name of a telemetry channel, up to sixteen ASCII bytes over both longs: int value is the channel id. */
+    TELEMETRY_CHANNEL(0x04),
+    /** A telemetry sample: int value is the channel id, first long holds the double bits of the value. */
+    TELEMETRY_SAMPLE(0x05),
+    /** A gamepad was plugged in, before any of its inputs: int value is the index of the gamepad. */
+    GAMEPAD_CONNECTED(0x06),
+    /** A gamepad was unplugged, after all of its inputs: int value is the index of the gamepad. */
+    GAMEPAD_DISCONNECTED(0x07),
+    /** A tick of the control loop: first long is the time of the tick, second long the elapsed time since the previous one. */
+    CONTROL_TICK(0x08),
+    /** A control input that did not come from a gamepad: key is the control input ordinal, int value holds the float bits of its value. */
+    CONTROL_INPUT(0x09);
+
+    private static final RecordType[] BY_CODE = new RecordType[128];
+
+    static {
+        for (RecordType recordType : values()) {
+            BY_CODE[recordType.code] = recordType;
+        }
+    }
+
+    private final byte code;
+
+    private RecordType(int code) {
+        this.code = (byte)code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * Returns the record type with the given code, or null if there is none.
+     */
+    public static RecordType of(byte code) {
+        return (code <= 0) ? null : BY_CODE[code];
+    }
+}
@@ -0,0 +1,133 @@
+package com.skiwi.rovcontrolsoftware.recording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reads a session written by a {@link SessionRecorder}, segment by segment in the order they were written. Slots that
+ * were reserved but never written, and the unused tail of the last segment, are skipped.
+ *
+ * @author Frank van Heeswijk
+ */
+public class SessionReader implements Closeable {
+    private static final int RECORD_SIZE = SessionRecorder.RECORD_SIZE;
+
+    private final File[] segmentFiles;
+    private final Map<Integer, String> channelNames = new HashMap<>();
+
+    private int segmentFileIndex = -1;
+    private MappedByteBuffer buffer;
+    private int offset;
+    private int segmentIndex;
+    private int version;
+    private long startTimeMillis;
+
+    private SessionReader(File[] segmentFiles) {
+        this.segmentFiles = segmentFiles;
+    }
+
+    public static SessionReader open(File directory) throws IOException {
+        Objects.requireNonNull(directory, "directory");
+        File[] segmentFiles = directory.listFiles((dir, name) -> name.startsWith(SessionRecorder.SEGMENT_PREFIX) && name.endsWith(SessionRecorder.SEGMENT_SUFFIX));
+        if (segmentFiles == null || segmentFiles.length == 0) {
+            throw new IOException("There is no recording in " + directory);
+        }
+        //segment names have a fixed width index, so their names sort in order
+        Arrays.sort(segmentFiles);
+        return new SessionReader(segmentFiles);
+    }
+
+    /**
+     * Reads the next record into the given one.
+     *
+     * @return  false if the end of the session has been reached
+     */
+    public boolean next(SessionRecord record) throws IOException {
+        while (true) {
+            if (buffer == null || offset + RECORD_SIZE > buffer.capacity()) {
+                if (!openNextSegment()) {
+                    return false;
+                }
+            }
+            int recordOffset = offset;
+            offset += RECORD_SIZE;
+            RecordType type = RecordType.of(buffer.get(recordOffset));
+            if (type == null) {
+                continue;
+            }
+            record.type = type;
+            record.key = buffer.get(recordOffset + 1) & 0xFF;
+            record.intValue = buffer.getInt(recordOffset + 4);
+            record.time = buffer.getLong(recordOffset + 8);
+            record.first = buffer.getLong(recordOffset + 16);
+            record.second = buffer.getLong(recordOffset + 24);
+            record.segmentIndex = segmentIndex;
+            switch (type) {
+                case SEGMENT_HEADER:
+                    //the first version lacks gamepad indices, which read as 0, and control loop and control input records
+                    if (record.key < 1 || record.key > SessionRecorder.VERSION || record.second != RECORD_SIZE) {
+                        throw new IOException("Unsupported session format: version = " + record.key + ", record size = " + record.second);
+                    }
+                    version = record.key;
+                    segmentIndex = record.intValue;
+                    startTimeMillis = record.first;
+                    //headers are an implementation detail of the file layout
+                    continue;
+                case TELEMETRY_CHANNEL:
+                    channelNames.put(record.getChannelId(), record.getChannelName());
+                    break;
+                default:
+                    break;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Returns the name of a telemetry channel announced so far, or null if it has not been announced yet.
+     */
+    public String getChannelName(int channelId) {
+        return channelNames.get(channelId);
+    }
+
+    /**
+     * Returns the format version of the session, once the first record has been read.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the wall clock time in epoch milliseconds at which the session started.
+     */
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    @Override
+    public void close() {
+        buffer = null;
+        segmentFileIndex = segmentFiles.length;
+    }
+
+    private boolean openNextSegment() throws IOException {
+        buffer = null;
+        segmentFileIndex++;
+        if (segmentFileIndex >= segmentFiles.length) {
+            return false;
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(segmentFiles[segmentFileIndex], "r")) {
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+        }
+        offset = 0;
+        return true;
+    }
+}
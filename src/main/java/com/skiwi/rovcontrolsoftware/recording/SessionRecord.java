@@ -0,0 +1,172 @@
+package com.skiwi.rovcontrolsoftware.recording;
+
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+import com.skiwi.rovcontrolsoftware.commands.ConnectionManager;
+import com.skiwi.rovcontrolsoftware.control.ControlInput;
+import com.skiwi.rovcontrolsoftware.gamepads.XboxGamepad;
+
+/**
+ * One record as read back by a {@link SessionReader}. The reader reuses the instance for every record, copy what you
+ * need to keep.
+ *
+ * @author Frank van Heeswijk
+ */
+public class SessionRecord {
+    private static final XboxGamepad.Component[] COMPONENTS = XboxGamepad.Component.values();
+    private static final Actuator[] ACTUATORS = Actuator.values();
+    private static final ConnectionManager.State[] STATES = ConnectionManager.State.values();
+    private static final ControlInput[] CONTROL_INPUTS = ControlInput.values();
+
+    RecordType type;
+    int key;
+    int intValue;
+    long time;
+    long first;
+    long second;
+    int segmentIndex;
+
+    public RecordType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the record was made.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public int getSegmentIndex() {
+        return segmentIndex;
+    }
+
+    public XboxGamepad.Component getComponent() {
+        checkType(RecordType.GAMEPAD_INPUT);
+        return COMPONENTS[key];
+    }
+
+    public float getRawValue() {
+        checkType(RecordType.GAMEPAD_INPUT);
+        return Float.intBitsToFloat(intValue);
+    }
+
+    public long getEventTime() {
+        checkType(RecordType.GAMEPAD_INPUT);
+        return first;
+    }
+
+    /**
+     * Returns the index of the gamepad of an input, connection or disconnection record. Sessions of the first version
+     * only knew a single gamepad, with index 0.
+     */
+    public int getGamepadIndex() {
+        switch (type) {
+            case GAMEPAD_INPUT:
+                return (int)second;
+            case GAMEPAD_CONNECTED:
+            case GAMEPAD_DISCONNECTED:
+                return intValue;
+            default:
+                throw new IllegalStateException("A " + type + " record has no gamepad");
+        }
+    }
+
+    public Actuator getActuator() {
+        checkType(RecordType.COMMAND);
+        return ACTUATORS[key];
+    }
+
+    public int getCommandValue() {
+        checkType(RecordType.COMMAND);
+        return intValue;
+    }
+
+    public long getOriginTime() {
+        checkType(RecordType.COMMAND);
+        return first;
+    }
+
+    /**
+     * Returns the time a control tick was due, which is before the time of its record if it caught up.
+     */
+    public long getTickTime() {
+        checkType(RecordType.CONTROL_TICK);
+        return first;
+    }
+
+    /**
+     * Returns the nanoseconds between a control tick and the tick before it.
+     */
+    public long getElapsedTime() {
+        checkType(RecordType.CONTROL_TICK);
+        return second;
+    }
+
+    public ControlInput getControlInput() {
+        checkType(RecordType.CONTROL_INPUT);
+        return CONTROL_INPUTS[key];
+    }
+
+    public float getControlInputValue() {
+        checkType(RecordType.CONTROL_INPUT);
+        return Float.intBitsToFloat(intValue);
+    }
+
+    public ConnectionManager.State getConnectionState() {
+        checkType(RecordType.CONNECTION_STATE);
+        return STATES[key];
+    }
+
+    public int getChannelId() {
+        if (type != RecordType.TELEMETRY_SAMPLE && type != RecordType.TELEMETRY_CHANNEL) {
+            throw new IllegalStateException("A " + type + " record has no telemetry channel");
+        }
+        return intValue;
+    }
+
+    public double getTelemetryValue() {
+        checkType(RecordType.TELEMETRY_SAMPLE);
+        return Double.longBitsToDouble(first);
+    }
+
+    public String getChannelName() {
+        checkType(RecordType.TELEMETRY_CHANNEL);
+        char[] name = new char[key];
+        for (int i = 0; i < key; i++) {
+            long bytes = (i < 8) ? first : second;
+            name[i] = (char)((bytes >>> (8 * (i % 8))) & 0xFF);
+        }
+        return new String(name);
+    }
+
+    private void checkType(RecordType expectedType) {
+        if (type != expectedType) {
+            throw new IllegalStateException("Expected a " + expectedType + " record, but this is a " + type + " record");
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case GAMEPAD_INPUT:
+                return time + " " + type + " " + getGamepadIndex() + " " + getComponent() + " = " + getRawValue();
+            case GAMEPAD_CONNECTED:
+            case GAMEPAD_DISCONNECTED:
+                return time + " " + type + " " + getGamepadIndex();
+            case CONTROL_TICK:
+                return time + " " + type + " " + getTickTime() + " + " + getElapsedTime();
+            case CONTROL_INPUT:
+                return time + " " + type + " " + getControlInput() + " = " + getControlInputValue();
+            case COMMAND:
+                return time + " " + type + " " + getActuator() + " = " + getCommandValue();
+            case CONNECTION_STATE:
+                return time + " " + type + " " + getConnectionState();
+            case TELEMETRY_CHANNEL:
+                return time + " " + type + " " + getChannelId() + " = " + getChannelName();
+            case TELEMETRY_SAMPLE:
+                return time + " " + type + " " + getChannelId() + " = " + getTelemetryValue();
+            default:
+                return time + " " + type + " " + intValue;
+        }
+    }
+}
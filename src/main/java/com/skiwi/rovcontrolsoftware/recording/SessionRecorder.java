@@ -0,0 +1,356 @@
+package com.skiwi.rovcontrolsoftware.recording;
+
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+import com.skiwi.rovcontrolsoftware.commands.ConnectionManager;
+import com.skiwi.rovcontrolsoftware.control.ControlInput;
+import com.skiwi.rovcontrolsoftware.gamepads.XboxGamepad;
+import com.skiwi.rovcontrolsoftware.telemetry.TelemetryChannel;
+import com.skiwi.rovcontrolsoftware.telemetry.TelemetryListener;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Append-only recorder of everything that happens during a session. Records have a fixed size and are written into a
+ * memory-mapped segment file, any thread reserves its slot with a single atomic add and then fills it, so recording
+ * never takes a lock and never does I/O on the calling thread.
+ *
+ * Segments are created, preallocated and touched ahead of time by a background thread. When a segment is full the
+ * next one takes over; if it is not ready yet the record is dropped and counted rather than waited for.
+ *
+ * Records of different threads appear in the order their slots were reserved, which may differ slightly from the order
+ * of their times.
+ *
+ * @author Frank van Heeswijk
+ */
+public class SessionRecorder implements TelemetryListener, Closeable {
+    public static final int RECORD_SIZE = 32;
+    public static final int VERSION = 2;
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".rec";
+
+    private static final int PAGE_SIZE = 4096;
+    private static final int MAX_CHANNELS = 256;
+    private static final int MAX_CHANNEL_NAME_LENGTH = 16;
+
+    private final File directory;
+    private final long segmentSize;
+    private final LongSupplier clock;
+    private final long startTimeMillis = System.currentTimeMillis();
+
+    private final ExecutorService segmentPreparer;
+    private final AtomicReference<Segment> currentSegment = new AtomicReference<>();
+    private final AtomicReference<Segment> spareSegment = new AtomicReference<>();
+
+    //only accessed from the segment preparer thread
+    private int nextSegmentIndex;
+
+    private final boolean[] announcedChannels = new boolean[MAX_CHANNELS];
+
+    private final AtomicLong recordCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong segmentCount = new AtomicLong();
+
+    private SessionRecorder(File directory, long segmentSize, LongSupplier clock) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.clock = clock;
+        this.segmentPreparer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-recorder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts recording into the given directory, which must not contain an earlier recording.
+     *
+     * @param segmentSize   the size of every segment file in bytes, a multiple of the page size
+     */
+    public static SessionRecorder open(File directory, long segmentSize) throws IOException {
+        return open(directory, segmentSize, System::nanoTime);
+    }
+
+    /**
+     * Starts recording into the given directory with the given clock in nanoseconds instead of
+     * {@link System#nanoTime()}, the clock of the code whose inputs and outputs are recorded.
+     */
+    public static SessionRecorder open(File directory, long segmentSize, LongSupplier clock) throws IOException {
+        Objects.requireNonNull(directory, "directory");
+        Objects.requireNonNull(clock, "clock");
+        if (segmentSize < PAGE_SIZE || segmentSize % PAGE_SIZE != 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The segment size must be a multiple of " + PAGE_SIZE + " below 2 GiB: segmentSize = " + segmentSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the session directory " + directory);
+        }
+        File[] existingSegments = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX));
+        if (existingSegments != null && existingSegments.length > 0) {
+            throw new IOException("The session directory " + directory + " already contains a recording");
+        }
+        SessionRecorder sessionRecorder = new SessionRecorder(directory, segmentSize, clock);
+        try {
+            //the first segment is prepared on the calling thread, every later one in the background
+            sessionRecorder.currentSegment.set(sessionRecorder.prepareSegment());
+            sessionRecorder.segmentPreparer.execute(sessionRecorder::prepareSpare);
+        } catch (IOException | RuntimeException e) {
+            sessionRecorder.segmentPreparer.shutdown();
+            throw e;
+        }
+        return sessionRecorder;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Records an input of the gamepad with the given index, as a {@link com.skiwi.rovcontrolsoftware.gamepads.RawInputListener}
+     * receives it.
+     */
+    public void recordGamepadInput(int gamepadIndex, XboxGamepad.Component component, long time, float value) {
+        write(RecordType.GAMEPAD_INPUT, component.ordinal(), Float.floatToRawIntBits(value), clock.getAsLong(), time, gamepadIndex);
+    }
+
+    /**
+     * Records that a gamepad was plugged in. Every gamepad of a session needs an index of its own, so that a replay can
+     * tell their inputs apart.
+     */
+    public void recordGamepadConnected(int gamepadIndex) {
+        write(RecordType.GAMEPAD_CONNECTED, 0, gamepadIndex, clock.getAsLong(), 0L, 0L);
+    }
+
+    public void recordGamepadDisconnected(int gamepadIndex) {
+        write(RecordType.GAMEPAD_DISCONNECTED, 0, gamepadIndex, clock.getAsLong(), 0L, 0L);
+    }
+
+    /**
+     * Records a tick of the control loop, before anything it does, so that a replay can run it with the same times. A
+     * tick that catches up runs later than its own time, the record keeps both.
+     */
+    public void recordControlTick(long tickTime, long elapsedTime) {
+        write(RecordType.CONTROL_TICK, 0, 0, clock.getAsLong(), tickTime, elapsedTime);
+    }
+
+    /**
+     * Records a control input that does not come from a gamepad, before it is applied.
+     */
+    public void recordControlInput(ControlInput input, float value) {
+        write(RecordType.CONTROL_INPUT, input.ordinal(), Float.floatToRawIntBits(value), clock.getAsLong(), 0L, 0L);
+    }
+
+    public void recordCommand(Actuator actuator, int value, long originTime) {
+        write(RecordType.COMMAND, actuator.ordinal(), value, clock.getAsLong(), originTime, 0L);
+    }
+
+    public void recordConnectionState(ConnectionManager.State state) {
+        write(RecordType.CONNECTION_STATE, state.ordinal(), 0, clock.getAsLong(), 0L, 0L);
+    }
+
+    @Override
+    public void onSample(TelemetryChannel channel, long time, double value) {
+        int id = channel.getId();
+        if (id >= MAX_CHANNELS) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        if (!announcedChannels[id]) {
+            //a race may announce a channel twice, which readers tolerate
+            announcedChannels[id] = true;
+            announceChannel(id, channel.getName(), time);
+        }
+        write(RecordType.TELEMETRY_SAMPLE, 0, id, time, Double.doubleToRawLongBits(value), 0L);
+    }
+
+    private void announceChannel(int id, String name, long time) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        int length = Math.min(nameBytes.length, MAX_CHANNEL_NAME_LENGTH);
+        long first = 0L;
+        long second = 0L;
+        for (int i = 0; i < length; i++) {
+            long value = nameBytes[i] & 0xFFL;
+            if (i < 8) {
+                first |= value << (8 * i);
+            }
+            else {
+                second |= value << (8 * (i - 8));
+            }
+        }
+        write(RecordType.TELEMETRY_CHANNEL, length, id, time, first, second);
+    }
+
+    public long getRecordCount() {
+        return recordCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getSegmentCount() {
+        return segmentCount.get();
+    }
+
+    /**
+     * Stops recording. The last segment is forced to disk and cut off after its last record, and a spare segment that
+     * was never used is cut off after its header. This happens in the background, see
+     * {@link #awaitTermination(long, TimeUnit)}.
+     */
+    @Override
+    public void close() {
+        Segment segment = currentSegment.getAndSet(null);
+        //a writer that still holds the segment finds it full from now on, so nothing is written past the cut
+        long length = (segment == null) ? 0L : Math.min(segment.position.getAndSet(segment.capacity), segment.capacity);
+        try {
+            segmentPreparer.execute(() -> {
+                if (segment != null) {
+                    segment.finish();
+                    segment.truncate(length);
+                }
+                //runs after a spare that was still being prepared
+                Segment spare = spareSegment.getAndSet(null);
+                if (spare != null) {
+                    spare.finish();
+                    spare.truncate(RECORD_SIZE);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //already closed
+        }
+        segmentPreparer.shutdown();
+    }
+
+    /**
+     * Waits until the segments have been completed after closing.
+     *
+     * @return  true if they were completed within the timeout
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return segmentPreparer.awaitTermination(timeout, unit);
+    }
+
+    private void write(RecordType type, int key, int intValue, long time, long first, long second) {
+        Segment segment = currentSegment.get();
+        while (segment != null) {
+            long offset = segment.position.getAndAdd(RECORD_SIZE);
+            if (offset + RECORD_SIZE <= segment.capacity) {
+                segment.write((int)offset, type, key, intValue, time, first, second);
+                recordCount.incrementAndGet();
+                return;
+            }
+            segment = rotate(segment);
+        }
+        droppedCount.incrementAndGet();
+    }
+
+    private Segment rotate(Segment fullSegment) {
+        Segment current = currentSegment.get();
+        if (current != fullSegment) {
+            //another thread rotated already
+            return current;
+        }
+        Segment spare = spareSegment.getAndSet(null);
+        if (spare == null) {
+            //the next segment is not ready yet, dropping beats blocking
+            return null;
+        }
+        if (!currentSegment.compareAndSet(fullSegment, spare)) {
+            //closed in the meantime
+            spare.finish();
+            return currentSegment.get();
+        }
+        try {
+            segmentPreparer.execute(() -> {
+                fullSegment.finish();
+                prepareSpare();
+            });
+        } catch (RejectedExecutionException e) {
+            //closed in the meantime
+        }
+        return spare;
+    }
+
+    private void prepareSpare() {
+        try {
+            spareSegment.set(prepareSegment());
+        } catch (IOException e) {
+            //recording continues until the current segment is full, after that records are dropped
+            e.printStackTrace();
+        }
+    }
+
+    private Segment prepareSegment() throws IOException {
+        int index = nextSegmentIndex++;
+        File file = new File(directory, segmentFileName(index));
+        MappedByteBuffer buffer;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(segmentSize);
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        //touch every page now, so that writers never take a page fault that allocates disk space
+        for (int offset = 0; offset < segmentSize; offset += PAGE_SIZE) {
+            buffer.put(offset, (byte)0);
+        }
+        Segment segment = new Segment(file, buffer, (int)segmentSize);
+        segment.position.set(RECORD_SIZE);
+        segment.write(0, RecordType.SEGMENT_HEADER, VERSION, index, clock.getAsLong(), startTimeMillis, RECORD_SIZE);
+        segmentCount.incrementAndGet();
+        return segment;
+    }
+
+    static String segmentFileName(int index) {
+        return String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    private static class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final AtomicLong position = new AtomicLong();
+
+        private Segment(File file, MappedByteBuffer buffer, int capacity) {
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        private void write(int offset, RecordType type, int key, int intValue, long time, long first, long second) {
+            //absolute puts only, so writers of different slots never interfere; the type goes last and marks the slot as written
+            buffer.putInt(offset + 4, intValue);
+            buffer.putLong(offset + 8, time);
+            buffer.putLong(offset + 16, first);
+            buffer.putLong(offset + 24, second);
+            buffer.put(offset + 1, (byte)key);
+            buffer.put(offset, type.getCode());
+        }
+
+        private void finish() {
+            buffer.force();
+        }
+
+        /**
+         * Cuts the file off at the given length, nothing may be written beyond it anymore.
+         */
+        private void truncate(long length) {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(length);
+            } catch (IOException e) {
+                //some systems refuse while the file is mapped, the reader skips the slots that were never written
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.skiwi.rovcontrolsoftware.recording;
+
+import com.skiwi.rovcontrolsoftware.video.EncodedFrame;
+import com.skiwi.rovcontrolsoftware.video.EncodedFrameListener;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records a camera stream exactly as it arrives. Every JPEG is appended unchanged to a video file, which is a plain
+ * MJPEG file most players open, and an entry with its offset, length, sequence and receive time is appended to an
+ * index file, which makes the recording seekable and lines it up with a session recording of the same run.
+ *
+ * The stream's reader thread only retains the frame and hands it over, the writing happens on a thread of the
+ * recorder. If the writer falls behind, frames are dropped from the recording rather than holding back the stream. A
+ * write that fails ends the recording, with the files cut off after the last frame that was written completely.
+ *
+ * @author Frank van Heeswijk
+ */
+public class VideoRecorder implements EncodedFrameListener, Closeable {
+    public static final String VIDEO_SUFFIX = ".mjpeg";
+    public static final String INDEX_SUFFIX = ".idx";
+
+    static final int INDEX_MAGIC = 0x4D4A4958;   //"MJIX"
+    static final int INDEX_VERSION = 1;
+    static final int INDEX_ENTRY_SIZE = 32;
+
+    private static final int QUEUE_CAPACITY = 16;
+    private static final int INDEX_BUFFER_ENTRIES = 64;
+    private static final long POLL_TIMEOUT = 100;
+
+    private final File videoFile;
+    private final FileChannel videoChannel;
+    private final FileChannel indexChannel;
+    private final ByteBuffer indexBuffer = ByteBuffer.allocateDirect(INDEX_ENTRY_SIZE * INDEX_BUFFER_ENTRIES);
+    private final BlockingQueue<EncodedFrame> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writerThread;
+
+    //only accessed from the writer thread
+    private long videoPosition;
+
+    private volatile boolean closed;
+    private volatile boolean failed;
+
+    private final AtomicLong recordedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+
+    private VideoRecorder(File videoFile, FileChannel videoChannel, FileChannel indexChannel) {
+        this.videoFile = videoFile;
+        this.videoChannel = videoChannel;
+        this.indexChannel = indexChannel;
+        this.writerThread = new Thread(this::runWriteLoop, "video-recorder-" + videoFile.getName());
+        this.writerThread.setDaemon(true);
+        this.writerThread.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    /**
+     * Starts a recording into {@code <directory>/<name>.mjpeg} and {@code <directory>/<name>.idx}, which must not exist
+     * yet.
+     */
+    public static VideoRecorder open(File directory, String name) throws IOException {
+        Objects.requireNonNull(directory, "directory");
+        Objects.requireNonNull(name, "name");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the recording directory " + directory);
+        }
+        File videoFile = new File(directory, name + VIDEO_SUFFIX);
+        File indexFile = new File(directory, name + INDEX_SUFFIX);
+        FileChannel videoChannel = FileChannel.open(videoFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        FileChannel indexChannel;
+        try {
+            indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            videoChannel.close();
+            throw e;
+        }
+        VideoRecorder videoRecorder = new VideoRecorder(videoFile, videoChannel, indexChannel);
+        try {
+            videoRecorder.writeIndexHeader();
+        } catch (IOException e) {
+            videoChannel.close();
+            indexChannel.close();
+            throw e;
+        }
+        videoRecorder.writerThread.start();
+        return videoRecorder;
+    }
+
+    public File getVideoFile() {
+        return videoFile;
+    }
+
+    @Override
+    public void onFrame(EncodedFrame frame) {
+        if (closed) {
+            return;
+        }
+        frame.retain();
+        if (!queue.offer(frame)) {
+            frame.release();
+            droppedCount.incrementAndGet();
+        }
+        else if (closed && queue.remove(frame)) {
+            //closed in the meantime, the writer may have drained the queue already
+            frame.release();
+        }
+    }
+
+    public long getRecordedCount() {
+        return recordedCount.get();
+    }
+
+    /**
+     * Returns the amount of frames left out of the recording because the writer could not keep up.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * Returns whether the recording ended early because a write failed.
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Stops recording, the frames already handed over are still written. Detach the recorder from its stream first.
+     */
+    @Override
+    public void close() {
+        //no interrupt, it would close the file channels in the middle of a write
+        closed = true;
+    }
+
+    /**
+     * Waits until the writer has written the frames it was handed and the index, and closed the files.
+     *
+     * @return  true if it finished within the timeout
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        unit.timedJoin(writerThread, timeout);
+        return !writerThread.isAlive();
+    }
+
+    private void writeIndexHeader() throws IOException {
+        indexBuffer.clear();
+        indexBuffer.putInt(INDEX_MAGIC);
+        indexBuffer.putInt(INDEX_VERSION);
+        indexBuffer.putLong(System.currentTimeMillis());
+        indexBuffer.putLong(System.nanoTime());
+        indexBuffer.putLong(INDEX_ENTRY_SIZE);
+        flushIndex();
+    }
+
+    private void runWriteLoop() {
+        try {
+            while (!failed && (!closed || !queue.isEmpty())) {
+                EncodedFrame frame;
+                try {
+                    frame = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (frame == null) {
+                    continue;
+                }
+                try {
+                    write(frame);
+                } catch (IOException e) {
+                    //part of the frame may have been written, every offset indexed after it would be off
+                    fail(e);
+                } finally {
+                    frame.release();
+                }
+                if (!failed && queue.isEmpty()) {
+                    //the index is only behind while frames keep arriving back to back
+                    flushIndex();
+                }
+            }
+            if (failed) {
+                //the index ends with the last frame that was written completely, so does the video from now on
+                videoChannel.truncate(videoPosition);
+            }
+            flushIndex();
+            videoChannel.force(false);
+            indexChannel.force(false);
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            closeQuietly(videoChannel);
+            closeQuietly(indexChannel);
+            EncodedFrame frame;
+            while ((frame = queue.poll()) != null) {
+                frame.release();
+            }
+        }
+    }
+
+    private void fail(IOException e) {
+        errorCount.incrementAndGet();
+        e.printStackTrace();
+        failed = true;
+        //the stream stops handing frames over
+        closed = true;
+    }
+
+    private void write(EncodedFrame frame) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(frame.getData(), 0, frame.getLength());
+        long offset = videoPosition;
+        while (data.hasRemaining()) {
+            videoChannel.write(data);
+        }
+        videoPosition += frame.getLength();
+        bytesWritten.addAndGet(frame.getLength());
+
+        if (indexBuffer.remaining() < INDEX_ENTRY_SIZE) {
+            flushIndex();
+        }
+        indexBuffer.putLong(offset);
+        indexBuffer.putLong(frame.getReceiveTime());
+        indexBuffer.putLong(frame.getSequence());
+        indexBuffer.putInt(frame.getLength());
+        indexBuffer.putInt(0);
+        recordedCount.incrementAndGet();
+    }
+
+    private void flushIndex() throws IOException {
+        indexBuffer.flip();
+        while (indexBuffer.hasRemaining()) {
+            indexChannel.write(indexBuffer);
+        }
+        indexBuffer.clear();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //nothing left to save
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.skiwi.rovcontrolsoftware.recording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * A camera stream recorded by a {@link VideoRecorder}. Frames are found through the index, by number or by time, and
+ * read straight from the video file.
+ *
+ * @author Frank van Heeswijk
+ */
+public class VideoRecording implements Closeable {
+    private final FileChannel videoChannel;
+    private final MappedByteBuffer index;
+    private final int frameCount;
+    private final long startTimeMillis;
+    private final long startTime;
+
+    private VideoRecording(FileChannel videoChannel, MappedByteBuffer index) throws IOException {
+        this.videoChannel = videoChannel;
+        this.index = index;
+        if (index.capacity() < VideoRecorder.INDEX_ENTRY_SIZE || index.getInt(0) != VideoRecorder.INDEX_MAGIC) {
+            throw new IOException("Not a video index");
+        }
+        if (index.getInt(4) != VideoRecorder.INDEX_VERSION || index.getLong(24) != VideoRecorder.INDEX_ENTRY_SIZE) {
+            throw new IOException("Unsupported video index: version = " + index.getInt(4) + ", entry size = " + index.getLong(24));
+        }
+        this.startTimeMillis = index.getLong(8);
+        this.startTime = index.getLong(16);
+        //a recording that was cut off may end in a partial entry, which is ignored
+        this.frameCount = index.capacity() / VideoRecorder.INDEX_ENTRY_SIZE - 1;
+    }
+
+    /**
+     * Opens the recording {@code <directory>/<name>.mjpeg} with its index.
+     */
+    public static VideoRecording open(File directory, String name) throws IOException {
+        Objects.requireNonNull(directory, "directory");
+        Objects.requireNonNull(name, "name");
+        File indexFile = new File(directory, name + VideoRecorder.INDEX_SUFFIX);
+        MappedByteBuffer index;
+        try (FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+        }
+        FileChannel videoChannel = FileChannel.open(new File(directory, name + VideoRecorder.VIDEO_SUFFIX).toPath(), StandardOpenOption.READ);
+        try {
+            return new VideoRecording(videoChannel, index);
+        } catch (IOException e) {
+            videoChannel.close();
+            throw e;
+        }
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns the wall clock time in epoch milliseconds at which the recording started.
+     */
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the recording started, on the same clock as the frame times.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getOffset(int frame) {
+        return index.getLong(entry(frame));
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the first byte of the frame was received, on the same clock as the
+     * record times of a session recording of the same run.
+     */
+    public long getReceiveTime(int frame) {
+        return index.getLong(entry(frame) + 8);
+    }
+
+    /**
+     * Returns the sequence number of the frame in its stream, gaps are frames that were not recorded.
+     */
+    public long getSequence(int frame) {
+        return index.getLong(entry(frame) + 16);
+    }
+
+    public int getLength(int frame) {
+        return index.getInt(entry(frame) + 24);
+    }
+
+    /**
+     * Returns the last frame received at or before the given time, or -1 if the recording starts later.
+     */
+    public int findFrame(long time) {
+        int low = 0;
+        int high = frameCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (getReceiveTime(middle) - time <= 0) {
+                low = middle + 1;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Reads the JPEG of the frame into the given buffer, which must have room for {@link #getLength(int)} bytes.
+     */
+    public void readFrame(int frame, ByteBuffer target) throws IOException {
+        int length = getLength(frame);
+        if (target.remaining() < length) {
+            throw new IllegalArgumentException("The target buffer is too small: remaining = " + target.remaining() + ", length = " + length);
+        }
+        long position = getOffset(frame);
+        int limit = target.limit();
+        target.limit(target.position() + length);
+        try {
+            while (target.hasRemaining()) {
+                int read = videoChannel.read(target, position);
+                if (read < 0) {
+                    throw new IOException("The video file ends before frame " + frame);
+                }
+                position += read;
+            }
+        } finally {
+            target.limit(limit);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        videoChannel.close();
+    }
+
+    private int entry(int frame) {
+        if (frame < 0 || frame >= frameCount) {
+            throw new IndexOutOfBoundsException("frame = " + frame + ", frameCount = " + frameCount);
+        }
+        return (frame + 1) * VideoRecorder.INDEX_ENTRY_SIZE;
+    }
+}
@@ -0,0 +1,116 @@
+package com.skiwi.rovcontrolsoftware.replay;
+
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+
+import java.util.Objects;
+
+/**
+ * Compares an expected command stream with an actual one, per actuator. Repeats of the same value are left out before
+ * comparing, since how often an unchanged value is resent depends on timing and not on the control logic, so only
+ * the sequence of distinct values each actuator was driven through has to match.
+ *
+ * @author Frank van Heeswijk
+ */
+public class CommandDiff {
+    private static final Actuator[] ACTUATORS = Actuator.values();
+
+    private final int[] expectedCounts = new int[ACTUATORS.length];
+    private final int[] actualCounts = new int[ACTUATORS.length];
+    private final int[] matchingCounts = new int[ACTUATORS.length];
+    private final int[] firstMismatches = new int[ACTUATORS.length];
+    private final int[] expectedFinalValues = new int[ACTUATORS.length];
+    private final int[] actualFinalValues = new int[ACTUATORS.length];
+
+    private CommandDiff() {
+    }
+
+    public static CommandDiff compare(CommandLog expected, CommandLog actual) {
+        Objects.requireNonNull(expected, "expected");
+        Objects.requireNonNull(actual, "actual");
+        CommandDiff commandDiff = new CommandDiff();
+        for (Actuator actuator : ACTUATORS) {
+            int[] expectedValues = distinctValues(expected, actuator);
+            int[] actualValues = distinctValues(actual, actuator);
+            int index = actuator.ordinal();
+            commandDiff.expectedCounts[index] = expectedValues.length;
+            commandDiff.actualCounts[index] = actualValues.length;
+            commandDiff.firstMismatches[index] = -1;
+            int common = Math.min(expectedValues.length, actualValues.length);
+            for (int i = 0; i < common; i++) {
+                if (expectedValues[i] == actualValues[i]) {
+                    commandDiff.matchingCounts[index]++;
+                }
+                else if (commandDiff.firstMismatches[index] < 0) {
+                    commandDiff.firstMismatches[index] = i;
+                }
+            }
+            if (commandDiff.firstMismatches[index] < 0 && expectedValues.length != actualValues.length) {
+                commandDiff.firstMismatches[index] = common;
+            }
+            commandDiff.expectedFinalValues[index] = (expectedValues.length == 0) ? 0 : expectedValues[expectedValues.length - 1];
+            commandDiff.actualFinalValues[index] = (actualValues.length == 0) ? 0 : actualValues[actualValues.length - 1];
+        }
+        return commandDiff;
+    }
+
+    private static int[] distinctValues(CommandLog commandLog, Actuator actuator) {
+        int[] distinct = new int[commandLog.size()];
+        int count = 0;
+        for (int i = 0; i < commandLog.size(); i++) {
+            if (commandLog.getActuator(i) != actuator) {
+                continue;
+            }
+            int value = commandLog.getValue(i);
+            if (count == 0 || distinct[count - 1] != value) {
+                distinct[count++] = value;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(distinct, 0, result, 0, count);
+        return result;
+    }
+
+    public boolean isIdentical() {
+        for (Actuator actuator : ACTUATORS) {
+            if (!isIdentical(actuator)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isIdentical(Actuator actuator) {
+        return firstMismatches[actuator.ordinal()] < 0;
+    }
+
+    /**
+     * Returns the index of the first distinct value that differs, or -1 if the streams match for this actuator.
+     */
+    public int getFirstMismatch(Actuator actuator) {
+        return firstMismatches[actuator.ordinal()];
+    }
+
+    public int getExpectedCount(Actuator actuator) {
+        return expectedCounts[actuator.ordinal()];
+    }
+
+    public int getActualCount(Actuator actuator) {
+        return actualCounts[actuator.ordinal()];
+    }
+
+    public int getMatchingCount(Actuator actuator) {
+        return matchingCounts[actuator.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(isIdentical() ? "Command streams match" : "Command streams differ");
+        for (Actuator actuator : ACTUATORS) {
+            int index = actuator.ordinal();
+            text.append(String.format("%n%-3s expected %6d, actual %6d, matching %6d, final %6d / %6d%s", actuator.getKey(),
+                    expectedCounts[index], actualCounts[index], matchingCounts[index], expectedFinalValues[index], actualFinalValues[index],
+                    (firstMismatches[index] < 0) ? "" : ", first mismatch at " + firstMismatches[index]));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package com.skiwi.rovcontrolsoftware.replay;
+
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+import com.skiwi.rovcontrolsoftware.commands.CommandSink;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An in-memory stream of commands in primitive arrays, either as recorded or as emitted during a replay. As a
+ * {@link CommandSink} it logs every command it is sent.
+ *
+ * @author Frank van Heeswijk
+ */
+public class CommandLog implements CommandSink {
+    private static final Actuator[] ACTUATORS = Actuator.values();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private byte[] actuators = new byte[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+    private int size;
+
+    public synchronized void add(Actuator actuator, int value) {
+        Objects.requireNonNull(actuator, "actuator");
+        if (size == values.length) {
+            actuators = Arrays.copyOf(actuators, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        actuators[size] = (byte)actuator.ordinal();
+        values[size] = value;
+        size++;
+    }
+
+    @Override
+    public void send(Actuator actuator, int value) {
+        add(actuator, value);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized Actuator getActuator(int index) {
+        checkIndex(index);
+        return ACTUATORS[actuators[index]];
+    }
+
+    public synchronized int getValue(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    public synchronized void clear() {
+        size = 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index = " + index + ", size = " + size);
+        }
+    }
+}
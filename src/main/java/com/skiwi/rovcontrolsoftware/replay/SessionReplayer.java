@@ -0,0 +1,232 @@
+package com.skiwi.rovcontrolsoftware.replay;
+
+import com.skiwi.rovcontrolsoftware.control.ControlInputListener;
+import com.skiwi.rovcontrolsoftware.control.ControlTask;
+import com.skiwi.rovcontrolsoftware.gamepads.GamepadListener;
+import com.skiwi.rovcontrolsoftware.gamepads.VirtualController;
+import com.skiwi.rovcontrolsoftware.gamepads.XboxGamepad;
+import com.skiwi.rovcontrolsoftware.recording.SessionReader;
+import com.skiwi.rovcontrolsoftware.recording.SessionRecord;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * Feeds a recorded session back through gamepads, so that whatever listens to them sees exactly the inputs, with
+ * exactly the event times, of the original session. Every recorded gamepad gets a gamepad of its own, which comes and
+ * goes when the recorded one was plugged in and unplugged, and is announced to a {@link GamepadListener} like a
+ * discovered one. The gamepads are polled on the calling thread after every input, which makes a replay deterministic
+ * no matter how fast it runs. The recorded control inputs and control loop ticks are replayed as well, so the ticks
+ * run at their recorded times with their recorded elapsed times instead of on a grid of their own.
+ *
+ * The commands of the original session are collected as they are read, to compare with the commands the replay
+ * produces using a {@link CommandDiff}.
+ *
+ * @author Frank van Heeswijk
+ */
+public class SessionReplayer {
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    private volatile GamepadListener gamepadListener;
+    private volatile ControlInputListener controlInputListener;
+    private volatile ControlTask controlTask;
+    private volatile LongConsumer clockListener;
+
+    //only accessed from the replaying thread
+    private final Map<Integer, ReplayedGamepad> gamepads = new HashMap<>();
+
+    /**
+     * Sets the listener that is told about the gamepads of the session as they were plugged in and unplugged. It can
+     * add listeners and set deadzones on a new gamepad, but must not start it, the replayer polls it.
+     */
+    public void setGamepadListener(GamepadListener gamepadListener) {
+        this.gamepadListener = gamepadListener;
+    }
+
+    /**
+     * Sets the listener that receives the recorded control inputs, usually the engine the gamepads are bound to.
+     */
+    public void setControlInputListener(ControlInputListener controlInputListener) {
+        this.controlInputListener = controlInputListener;
+    }
+
+    /**
+     * Sets the task that runs on every recorded tick of the control loop, in place of a control loop of its own. The
+     * clock listener is told the time the tick actually ran first.
+     */
+    public void setControlTask(ControlTask controlTask) {
+        this.controlTask = controlTask;
+    }
+
+    /**
+     * Sets the listener that is told the recorded time of every record before it is replayed, the clock that code
+     * driven by the replay should follow instead of {@link System#nanoTime()}.
+     */
+    public void setClockListener(LongConsumer clockListener) {
+        this.clockListener = clockListener;
+    }
+
+    /**
+     * Replays the remainder of the session on the calling thread.
+     *
+     * @param speed the speed relative to the original session, or {@link #AS_FAST_AS_POSSIBLE}
+     * @return  the commands of the original session and what was replayed
+     */
+    public ReplayResult replay(SessionReader sessionReader, double speed) throws IOException {
+        Objects.requireNonNull(sessionReader, "sessionReader");
+        if (!(speed > 0d)) {
+            throw new IllegalArgumentException("The speed must be positive: speed = " + speed);
+        }
+        ReplayResult result = new ReplayResult();
+        SessionRecord record = new SessionRecord();
+        long wallStartTime = System.nanoTime();
+        long sessionStartTime = 0L;
+        boolean first = true;
+        while (sessionReader.next(record)) {
+            long time = record.getTime();
+            if (first) {
+                sessionStartTime = time;
+                result.startTime = time;
+                first = false;
+            }
+            result.endTime = time;
+            if (speed != AS_FAST_AS_POSSIBLE) {
+                waitUntil(wallStartTime + (long)((time - sessionStartTime) / speed));
+            }
+            LongConsumer listener = clockListener;
+            if (listener != null) {
+                listener.accept(time);
+            }
+            switch (record.getType()) {
+                case GAMEPAD_INPUT:
+                    //sessions of the first version have inputs without any connection
+                    ReplayedGamepad replayedGamepad = connect(record.getGamepadIndex());
+                    replayedGamepad.controller.push(record.getComponent(), record.getRawValue(), record.getEventTime());
+                    replayedGamepad.gamepad.pollOnce();
+                    result.inputCount++;
+                    break;
+                case GAMEPAD_CONNECTED:
+                    connect(record.getGamepadIndex());
+                    break;
+                case GAMEPAD_DISCONNECTED:
+                    disconnect(record.getGamepadIndex());
+                    break;
+                case CONTROL_INPUT:
+                    ControlInputListener inputListener = controlInputListener;
+                    if (inputListener != null) {
+                        inputListener.onControlInput(record.getControlInput(), record.getControlInputValue());
+                    }
+                    result.inputCount++;
+                    break;
+                case CONTROL_TICK:
+                    ControlTask task = controlTask;
+                    if (task != null) {
+                        task.step(record.getTickTime(), record.getElapsedTime());
+                    }
+                    result.tickCount++;
+                    break;
+                case COMMAND:
+                    result.recordedCommands.add(record.getActuator(), record.getCommandValue());
+                    break;
+                default:
+                    result.otherCount++;
+                    break;
+            }
+        }
+        return result;
+    }
+
+    private ReplayedGamepad connect(int index) {
+        ReplayedGamepad replayedGamepad = gamepads.get(index);
+        if (replayedGamepad == null) {
+            replayedGamepad = new ReplayedGamepad(index);
+            gamepads.put(index, replayedGamepad);
+            GamepadListener listener = gamepadListener;
+            if (listener != null) {
+                listener.onConnected(replayedGamepad.gamepad);
+            }
+        }
+        return replayedGamepad;
+    }
+
+    private void disconnect(int index) {
+        ReplayedGamepad replayedGamepad = gamepads.remove(index);
+        if (replayedGamepad == null) {
+            return;
+        }
+        GamepadListener listener = gamepadListener;
+        if (listener != null) {
+            listener.onDisconnected(replayedGamepad.gamepad);
+        }
+    }
+
+    private static void waitUntil(long deadline) {
+        long waitTime;
+        while ((waitTime = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(waitTime);
+        }
+    }
+
+    private static class ReplayedGamepad {
+        private final VirtualController controller;
+        private final XboxGamepad gamepad;
+
+        private ReplayedGamepad(int index) {
+            controller = new VirtualController("Replay " + (index + 1));
+            gamepad = new XboxGamepad(controller, 1_000_000L, 1_000_000L);
+        }
+    }
+
+    public static class ReplayResult {
+        private final CommandLog recordedCommands = new CommandLog();
+        private long inputCount;
+        private long tickCount;
+        private long otherCount;
+        private long startTime;
+        private long endTime;
+
+        private ReplayResult() {
+        }
+
+        public CommandLog getRecordedCommands() {
+            return recordedCommands;
+        }
+
+        /**
+         * Returns the amount of gamepad and control inputs.
+         */
+        public long getInputCount() {
+            return inputCount;
+        }
+
+        public long getTickCount() {
+            return tickCount;
+        }
+
+        /**
+         * Returns the amount of connection state and telemetry records, which are read but not replayed.
+         */
+        public long getOtherCount() {
+            return otherCount;
+        }
+
+        /**
+         * Returns the recorded time of the first record, in {@link System#nanoTime()} of the original session.
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getEndTime() {
+            return endTime;
+        }
+
+        public long getDuration() {
+            return endTime - startTime;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.skiwi.rovcontrolsoftware.telemetry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * All telemetry channels by name. Channels are created on first use, either by a subscriber or by the first sample
+ * that arrives for them, up to a fixed maximum so that a misbehaving ROV cannot exhaust memory.
+ *
+ * @author Frank van Heeswijk
+ */
+public class Telemetry {
+    private final int channelCapacity;
+    private final int maxChannels;
+
+    private final ConcurrentMap<String, TelemetryChannel> channels = new ConcurrentHashMap<>();
+
+    private volatile TelemetryListener[] listeners = new TelemetryListener[0];
+
+    private final AtomicLong sampleCount = new AtomicLong();
+    private final AtomicLong malformedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param channelCapacity   the amount of samples kept per channel, must be a power of two
+     * @param maxChannels   the maximum amount of channels
+     */
+    public Telemetry(int channelCapacity, int maxChannels) {
+        if (Integer.bitCount(channelCapacity) != 1) {
+            throw new IllegalArgumentException("The channel capacity must be a power of two: channelCapacity = " + channelCapacity);
+        }
+        this.channelCapacity = channelCapacity;
+        this.maxChannels = maxChannels;
+    }
+
+    /**
+     * Returns the channel with the given name, creating it if needed, or null if the maximum amount of channels has
+     * been reached.
+     */
+    public TelemetryChannel getChannel(String name) {
+        Objects.requireNonNull(name, "name");
+        TelemetryChannel channel = channels.get(name);
+        if (channel != null) {
+            return channel;
+        }
+        synchronized (channels) {
+            if (channels.size() >= maxChannels) {
+                return channels.get(name);
+            }
+            return channels.computeIfAbsent(name, key -> new TelemetryChannel(key, channels.size(), channelCapacity));
+        }
+    }
+
+    public TelemetryChannel findChannel(String name) {
+        return channels.get(Objects.requireNonNull(name, "name"));
+    }
+
+    public Collection<TelemetryChannel> getChannels() {
+        List<TelemetryChannel> sortedChannels = new ArrayList<>(channels.values());
+        sortedChannels.sort((first, second) -> first.getName().compareTo(second.getName()));
+        return Collections.unmodifiableList(sortedChannels);
+    }
+
+    /**
+     * Subscribes to the channel with the given name, which may not have received any samples yet.
+     *
+     * @throws IllegalStateException if the channel does not exist and the maximum amount of channels has been reached
+     */
+    public TelemetryChannel subscribe(String name, TelemetryListener listener) {
+        TelemetryChannel channel = getChannel(name);
+        if (channel == null) {
+            throw new IllegalStateException("There are already " + maxChannels + " telemetry channels, cannot add " + name);
+        }
+        channel.addListener(listener);
+        return channel;
+    }
+
+    /**
+     * Adds a listener for the samples of all channels, including channels that do not exist yet.
+     */
+    public synchronized void addListener(TelemetryListener listener) {
+        Objects.requireNonNull(listener, "listener");
+        TelemetryListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+        newListeners[listeners.length] = listener;
+        listeners = newListeners;
+    }
+
+    public long getSampleCount() {
+        return sampleCount.get();
+    }
+
+    public long getMalformedCount() {
+        return malformedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    void record(TelemetryChannel channel, long time, double value) {
+        sampleCount.incrementAndGet();
+        channel.record(time, value);
+        for (TelemetryListener listener : listeners) {
+            try {
+                listener.onSample(channel, time, value);
+            } catch (RuntimeException e) {
+                //a failing listener must not stop the telemetry
+                e.printStackTrace();
+            }
+        }
+    }
+
+    void recordMalformed() {
+        malformedCount.incrementAndGet();
+    }
+
+    void recordRejected() {
+        rejectedCount.incrementAndGet();
+    }
+}
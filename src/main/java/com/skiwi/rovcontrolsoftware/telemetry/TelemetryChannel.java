@@ -0,0 +1,187 @@
+package com.skiwi.rovcontrolsoftware.telemetry;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The most recent samples of one telemetry value, kept in primitive ring buffers. There is a single writer, the thread
+ * that reads the telemetry, and any number of readers. Readers never block the writer: a read that raced with the
+ * writer wrapping around simply leaves out the samples that were overwritten.
+ *
+ * @author Frank van Heeswijk
+ */
+public class TelemetryChannel {
+    private final String name;
+    private final int id;
+    private final int capacity;
+    private final int mask;
+    private final long[] times;
+    private final double[] values;
+
+    private final AtomicLong writeCount = new AtomicLong();
+
+    private volatile TelemetryListener[] listeners = new TelemetryListener[0];
+
+    TelemetryChannel(String name, int id, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two: capacity = " + capacity);
+        }
+        this.name = name;
+        this.id = id;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.times = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the index of this channel in the order the channels were created.
+     */
+    public int getId() {
+        return id;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized void addListener(TelemetryListener listener) {
+        Objects.requireNonNull(listener, "listener");
+        TelemetryListener[] newListeners = new TelemetryListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+        newListeners[listeners.length] = listener;
+        listeners = newListeners;
+    }
+
+    public synchronized void removeListener(TelemetryListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                TelemetryListener[] newListeners = new TelemetryListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, newListeners, 0, i);
+                System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                listeners = newListeners;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records a sample, must only be called from the single writer thread.
+     */
+    void record(long time, double value) {
+        long count = writeCount.get();
+        int index = (int)(count & mask);
+        times[index] = time;
+        values[index] = value;
+        writeCount.lazySet(count + 1);
+
+        for (TelemetryListener listener : listeners) {
+            try {
+                listener.onSample(this, time, value);
+            } catch (RuntimeException e) {
+                //a failing listener must not stop the telemetry
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns the total amount of samples recorded, including those that have since been overwritten.
+     */
+    public long getSampleCount() {
+        return writeCount.get();
+    }
+
+    /**
+     * Returns the newest value, or NaN if nothing has been recorded yet.
+     */
+    public double getLatestValue() {
+        long count = writeCount.get();
+        return (count == 0) ? Double.NaN : values[(int)((count - 1) & mask)];
+    }
+
+    /**
+     * Returns the time of the newest sample, or zero if nothing has been recorded yet.
+     */
+    public long getLatestTime() {
+        long count = writeCount.get();
+        return (count == 0) ? 0L : times[(int)((count - 1) & mask)];
+    }
+
+    /**
+     * Copies at most the given amount of the newest samples, oldest first.
+     *
+     * @return  the amount of samples copied
+     */
+    public int readSamples(long[] timesOut, double[] valuesOut, int maxCount) {
+        if (maxCount > timesOut.length || maxCount > valuesOut.length) {
+            throw new IllegalArgumentException("The output arrays are smaller than maxCount = " + maxCount);
+        }
+        long end = writeCount.get();
+        long start = Math.max(0L, end - Math.min(maxCount, capacity));
+        for (long i = start; i < end; i++) {
+            int index = (int)(i & mask);
+            timesOut[(int)(i - start)] = times[index];
+            valuesOut[(int)(i - start)] = values[index];
+        }
+
+        //samples the writer overwrote while they were being copied are dropped from the front
+        long overwritten = writeCount.get() - capacity - start;
+        if (overwritten <= 0) {
+            return (int)(end - start);
+        }
+        if (overwritten >= end - start) {
+            return 0;
+        }
+        int valid = (int)(end - start - overwritten);
+        System.arraycopy(timesOut, (int)overwritten, timesOut, 0, valid);
+        System.arraycopy(valuesOut, (int)overwritten, valuesOut, 0, valid);
+        return valid;
+    }
+
+    /**
+     * Reduces the samples in the time range [fromTime, toTime) to the given amount of equally wide buckets, writing the
+     * minimum and maximum of every bucket. Buckets without samples get NaN. This is what a plot needs to draw every
+     * peak no matter how many samples fall on one pixel.
+     */
+    public void downsample(long fromTime, long toTime, int buckets, double[] minOut, double[] maxOut) {
+        if (toTime <= fromTime || buckets <= 0 || buckets > minOut.length || buckets > maxOut.length) {
+            throw new IllegalArgumentException("Invalid range or bucket count: fromTime = " + fromTime + ", toTime = " + toTime + ", buckets = " + buckets);
+        }
+        for (int i = 0; i < buckets; i++) {
+            minOut[i] = Double.NaN;
+            maxOut[i] = Double.NaN;
+        }
+        long end = writeCount.get();
+        long start = Math.max(0L, end - capacity);
+        long span = toTime - fromTime;
+        for (long i = end - 1; i >= start; i--) {
+            int index = (int)(i & mask);
+            long time = times[index];
+            double value = values[index];
+            if (i < writeCount.get() - capacity || time < fromTime) {
+                //overwritten in the meantime, or older than the range, both mean all remaining samples are too
+                break;
+            }
+            if (time >= toTime) {
+                continue;
+            }
+            int bucket = (int)((time - fromTime) * buckets / span);
+            if (Double.isNaN(minOut[bucket]) || value < minOut[bucket]) {
+                minOut[bucket] = value;
+            }
+            if (Double.isNaN(maxOut[bucket]) || value > maxOut[bucket]) {
+                maxOut[bucket] = value;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TelemetryChannel(" + name + " = " + getLatestValue() + ")";
+    }
+}
@@ -0,0 +1,13 @@
+package com.skiwi.rovcontrolsoftware.telemetry;
+
+/**
+ * @author Frank van Heeswijk
+ */
+@FunctionalInterface
+public interface TelemetryListener {
+    /**
+     * Called on the thread that reads the telemetry, for every sample. Implementations must return quickly, since the
+     * next sample is not read before they do.
+     */
+    void onSample(TelemetryChannel channel, long time, double value);
+}
@@ -0,0 +1,18 @@
+package com.skiwi.rovcontrolsoftware.telemetry;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns the bytes the ROV sends back into telemetry samples. A parser belongs to a single connection and keeps any
+ * incomplete line or frame until the next call.
+ *
+ * @author Frank van Heeswijk
+ */
+public interface TelemetryParser {
+    /**
+     * Consumes all remaining bytes of the buffer.
+     *
+     * @param time  the {@link System#nanoTime()} at which the bytes were read
+     */
+    void parse(ByteBuffer buffer, long time);
+}
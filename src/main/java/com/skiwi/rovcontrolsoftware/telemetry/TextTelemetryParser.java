@@ -0,0 +1,201 @@
+package com.skiwi.rovcontrolsoftware.telemetry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Parses telemetry lines of the form {@code "<name> <number>\n"}, the same shape as the text command protocol. The
+ * name is everything before the last space, so an acknowledgement like {@code "ack cx 90"} lands in channel
+ * {@code "ack cx"}. Lines are collected in a fixed buffer and channels are looked up by their bytes, so parsing does not
+ * allocate once every channel has been seen.
+ *
+ * @author Frank van Heeswijk
+ */
+public class TextTelemetryParser implements TelemetryParser {
+    private static final int MAX_LINE_LENGTH = 128;
+    private static final int CACHE_SIZE = 64;
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1d;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10d;
+        }
+    }
+
+    private final Telemetry telemetry;
+
+    private final byte[] line = new byte[MAX_LINE_LENGTH];
+    private int lineLength;
+    private boolean lineTooLong;
+
+    //open addressing cache from channel name bytes to channel
+    private final byte[][] cachedNames = new byte[CACHE_SIZE][];
+    private final TelemetryChannel[] cachedChannels = new TelemetryChannel[CACHE_SIZE];
+    private int cachedCount;
+
+    public TextTelemetryParser(Telemetry telemetry) {
+        this.telemetry = Objects.requireNonNull(telemetry, "telemetry");
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer, long time) {
+        while (buffer.hasRemaining()) {
+            byte value = buffer.get();
+            if (value == '\n') {
+                if (lineTooLong) {
+                    telemetry.recordMalformed();
+                }
+                else if (lineLength > 0) {
+                    parseLine(time);
+                }
+                lineLength = 0;
+                lineTooLong = false;
+            }
+            else if (value != '\r') {
+                if (lineLength < MAX_LINE_LENGTH) {
+                    line[lineLength++] = value;
+                }
+                else {
+                    lineTooLong = true;
+                }
+            }
+        }
+    }
+
+    private void parseLine(long time) {
+        int separator = lineLength - 1;
+        while (separator > 0 && line[separator] != ' ') {
+            separator--;
+        }
+        if (separator <= 0) {
+            telemetry.recordMalformed();
+            return;
+        }
+        double value = parseNumber(line, separator + 1, lineLength);
+        if (Double.isNaN(value)) {
+            telemetry.recordMalformed();
+            return;
+        }
+        TelemetryChannel channel = lookupChannel(separator);
+        if (channel == null) {
+            telemetry.recordRejected();
+            return;
+        }
+        telemetry.record(channel, time, value);
+    }
+
+    private TelemetryChannel lookupChannel(int nameLength) {
+        int hash = 0;
+        for (int i = 0; i < nameLength; i++) {
+            hash = 31 * hash + line[i];
+        }
+        int mask = CACHE_SIZE - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        for (int probe = 0; probe < CACHE_SIZE; probe++, slot = (slot + 1) & mask) {
+            byte[] cachedName = cachedNames[slot];
+            if (cachedName == null) {
+                break;
+            }
+            if (cachedName.length == nameLength && regionEquals(cachedName, nameLength)) {
+                return cachedChannels[slot];
+            }
+        }
+
+        TelemetryChannel channel = telemetry.getChannel(new String(line, 0, nameLength, StandardCharsets.US_ASCII));
+        //keep the cache at most half full, so that misses stay short
+        if (channel != null && cachedCount < CACHE_SIZE / 2) {
+            cachedNames[slot] = Arrays.copyOf(line, nameLength);
+            cachedChannels[slot] = channel;
+            cachedCount++;
+        }
+        return channel;
+    }
+
+    private boolean regionEquals(byte[] name, int length) {
+        for (int i = 0; i < length; i++) {
+            if (name[i] != line[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a decimal number with an optional sign, fraction and exponent, or returns NaN if it is not one.
+     */
+    static double parseNumber(byte[] bytes, int from, int to) {
+        int index = from;
+        boolean negative = false;
+        if (index < to && (bytes[index] == '-' || bytes[index] == '+')) {
+            negative = (bytes[index] == '-');
+            index++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean seenPoint = false;
+        for (; index < to; index++) {
+            byte value = bytes[index];
+            if (value >= '0' && value <= '9') {
+                if (mantissa < 100_000_000_000_000_000L) {
+                    mantissa = mantissa * 10 + (value - '0');
+                    if (seenPoint) {
+                        exponent--;
+                    }
+                }
+                else if (!seenPoint) {
+                    //digits beyond the precision of the mantissa only scale it
+                    exponent++;
+                }
+                digits++;
+            }
+            else if (value == '.' && !seenPoint) {
+                seenPoint = true;
+            }
+            else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+
+        if (index < to && (bytes[index] == 'e' || bytes[index] == 'E')) {
+            index++;
+            boolean negativeExponent = false;
+            if (index < to && (bytes[index] == '-' || bytes[index] == '+')) {
+                negativeExponent = (bytes[index] == '-');
+                index++;
+            }
+            int explicitExponent = 0;
+            int exponentDigits = 0;
+            for (; index < to && bytes[index] >= '0' && bytes[index] <= '9'; index++) {
+                if (explicitExponent < 10_000) {
+                    explicitExponent = explicitExponent * 10 + (bytes[index] - '0');
+                }
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (index != to) {
+            return Double.NaN;
+        }
+
+        double result = mantissa;
+        if (exponent < 0) {
+            result = (-exponent < POWERS_OF_TEN.length) ? result / POWERS_OF_TEN[-exponent] : result / Math.pow(10d, -exponent);
+        }
+        else if (exponent > 0) {
+            result = (exponent < POWERS_OF_TEN.length) ? result * POWERS_OF_TEN[exponent] : result * Math.pow(10d, exponent);
+        }
+        return negative ? -result : result;
+    }
+}
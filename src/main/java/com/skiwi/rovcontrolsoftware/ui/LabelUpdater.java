@@ -0,0 +1,106 @@
+package com.skiwi.rovcontrolsoftware.ui;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.Label;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Updates bound labels at most once per frame. Any thread may set the value of a binding, the labels are only touched
+ * from the JavaFX application thread, and only when their value changed since the previous frame. The work per frame
+ * therefore does not depend on how often values are set.
+ *
+ * Bindings must be created before the updater is started.
+ *
+ * @author Frank van Heeswijk
+ */
+public class LabelUpdater extends AnimationTimer {
+    private final List<Binding> bindings = new ArrayList<>();
+
+    private Binding[] activeBindings = new Binding[0];
+
+    public IntBinding bindInt(Label label) {
+        IntBinding binding = new IntBinding(label);
+        addBinding(binding);
+        return binding;
+    }
+
+    public TextBinding bindText(Label label) {
+        TextBinding binding = new TextBinding(label);
+        addBinding(binding);
+        return binding;
+    }
+
+    private void addBinding(Binding binding) {
+        bindings.add(binding);
+        activeBindings = bindings.toArray(new Binding[bindings.size()]);
+    }
+
+    @Override
+    public void handle(long now) {
+        for (Binding binding : activeBindings) {
+            binding.render();
+        }
+    }
+
+    private static abstract class Binding {
+        protected final Label label;
+
+        private Binding(Label label) {
+            this.label = Objects.requireNonNull(label, "label");
+        }
+
+        abstract void render();
+    }
+
+    public static class IntBinding extends Binding {
+        private final AtomicInteger value = new AtomicInteger();
+
+        private boolean rendered;
+        private int renderedValue;
+
+        private IntBinding(Label label) {
+            super(label);
+        }
+
+        public void set(int newValue) {
+            value.set(newValue);
+        }
+
+        @Override
+        void render() {
+            int currentValue = value.get();
+            if (!rendered || currentValue != renderedValue) {
+                label.setText(String.valueOf(currentValue));
+                renderedValue = currentValue;
+                rendered = true;
+            }
+        }
+    }
+
+    public static class TextBinding extends Binding {
+        private volatile String text;
+
+        private String renderedText;
+
+        private TextBinding(Label label) {
+            super(label);
+        }
+
+        public void set(String newText) {
+            text = newText;
+        }
+
+        @Override
+        void render() {
+            String currentText = text;
+            if (currentText != null && !currentText.equals(renderedText)) {
+                label.setText(currentText);
+                renderedText = currentText;
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.skiwi.rovcontrolsoftware.ui;
+
+import com.skiwi.rovcontrolsoftware.metrics.Histogram;
+import javafx.geometry.HPos;
+import javafx.geometry.Insets;
+import javafx.geometry.VPos;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.Region;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Shows video frames scaled to fit its bounds while keeping their aspect ratio. A frame is copied once, from the given
+ * buffer into a {@link WritableImage} of the frame's own resolution, and scaled by the scene graph when drawn. Resizing
+ * the view therefore never reallocates, the image is only replaced when the resolution of the frames changes.
+ *
+ * All methods must be called on the JavaFX application thread.
+ *
+ * @author Frank van Heeswijk
+ */
+public class VideoView extends Region {
+    private final ImageView imageView = new ImageView();
+    private final Histogram renderTime = new Histogram();
+
+    private WritableImage image;
+
+    public VideoView() {
+        imageView.setPreserveRatio(true);
+        imageView.setSmooth(true);
+        getChildren().add(imageView);
+    }
+
+    /**
+     * Presents a frame of premultiplied ARGB pixels, the native pixel format of the scene graph.
+     */
+    public void present(IntBuffer pixels, int width, int height, int scanlineStride) {
+        long startTime = System.nanoTime();
+        imageOf(width, height).getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), pixels, scanlineStride);
+        renderTime.record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Presents a frame of premultiplied BGRA pixels, four bytes per pixel.
+     */
+    public void present(ByteBuffer pixels, int width, int height, int scanlineStride) {
+        long startTime = System.nanoTime();
+        imageOf(width, height).getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getByteBgraPreInstance(), pixels, scanlineStride);
+        renderTime.record(System.nanoTime() - startTime);
+    }
+
+    public void clear() {
+        image = null;
+        imageView.setImage(null);
+    }
+
+    /**
+     * Returns the time in nanoseconds it took to copy each presented frame into the scene.
+     */
+    public Histogram getRenderTime() {
+        return renderTime;
+    }
+
+    @Override
+    protected void layoutChildren() {
+        Insets insets = getInsets();
+        double width = Math.max(0d, getWidth() - insets.getLeft() - insets.getRight());
+        double height = Math.max(0d, getHeight() - insets.getTop() - insets.getBottom());
+        imageView.setFitWidth(width);
+        imageView.setFitHeight(height);
+        layoutInArea(imageView, insets.getLeft(), insets.getTop(), width, height, 0d, HPos.CENTER, VPos.CENTER);
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        Insets insets = getInsets();
+        return insets.getLeft() + ((image == null) ? 0d : image.getWidth()) + insets.getRight();
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        Insets insets = getInsets();
+        return insets.getTop() + ((image == null) ? 0d : image.getHeight()) + insets.getBottom();
+    }
+
+    private WritableImage imageOf(int width, int height) {
+        if (image == null || (int)image.getWidth() != width || (int)image.getHeight() != height) {
+            image = new WritableImage(width, height);
+            imageView.setImage(image);
+            requestLayout();
+        }
+        return image;
+    }
+}
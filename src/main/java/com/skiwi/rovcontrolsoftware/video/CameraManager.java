@@ -0,0 +1,349 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Owns the stream of one camera. URL changes are debounced, so typing a URL does not connect to every
+ * prefix of it, and a new URL is probed with a timeout on a small executor of its own before a stream is opened. The
+ * stream it replaces is closed first, so a manager never has more than one stream at a time, and its frames are only
+ * decoded while the stream is visible.
+ *
+ * URLs that probed fine recently are remembered, switching back to one opens its stream without probing again.
+ *
+ * All decisions are taken on a single thread, listeners are called from it.
+ *
+ * @author Frank van Heeswijk
+ */
+public class CameraManager implements Closeable {
+    private static final int PROBE_THREADS = 2;
+    private static final int PROBE_QUEUE_CAPACITY = 4;
+    private static final int PROBE_CACHE_SIZE = 16;
+    private static final long PROBE_CACHE_TIME = TimeUnit.MINUTES.toNanos(5);
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final long reconnectDelay;
+    private final long debounceDelay;
+    private final DecodePool decodePool;
+
+    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor probeExecutor;
+
+    private volatile Consumer<MjpegStream> streamListener = stream -> { };
+    private volatile Consumer<MjpegStream.State> stateListener = state -> { };
+
+    //only accessed from the scheduler thread
+    private String url;
+    private String lowResolutionUrl = "";
+    private boolean lowResolution;
+    private boolean paused;
+    private long generation;
+    private ScheduledFuture<?> pendingUpdate;
+    private boolean visible = true;
+    private boolean focused = true;
+    private boolean closed;
+    private final Map<String, Long> probedUrls = new LinkedHashMap<String, Long>(PROBE_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > PROBE_CACHE_SIZE;
+        }
+    };
+
+    private volatile MjpegStream activeStream;
+
+    private final AtomicLong probeCount = new AtomicLong();
+    private final AtomicLong failedProbeCount = new AtomicLong();
+    private final AtomicLong cachedProbeCount = new AtomicLong();
+    private final AtomicLong openedStreamCount = new AtomicLong();
+    private final AtomicLong closedStreamBytes = new AtomicLong();
+
+    /**
+     * @param connectTimeout    the connect timeout in milliseconds, also the timeout of a probe
+     * @param readTimeout   the time in milliseconds after which a stream that sends nothing is considered lost
+     * @param reconnectDelay    the delay in milliseconds before reconnecting or probing again
+     * @param debounceDelay the time in milliseconds the URL has to stay unchanged before it is used
+     * @param decodePool    the pool the streams are decoded on
+     */
+    public CameraManager(int connectTimeout, int readTimeout, long reconnectDelay, long debounceDelay, DecodePool decodePool) {
+        this.decodePool = Objects.requireNonNull(decodePool, "decodePool");
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.reconnectDelay = reconnectDelay;
+        this.debounceDelay = debounceDelay;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "camera-manager");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //only the newest probe matters, so a full queue drops the oldest
+        this.probeExecutor = new ThreadPoolExecutor(PROBE_THREADS, PROBE_THREADS, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(PROBE_QUEUE_CAPACITY), runnable -> {
+            Thread thread = new Thread(runnable, "camera-probe");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardOldestPolicy());
+    }
+
+    /**
+     * Sets the listener that is told about every new stream to show, or null if there is none. A new stream is passed
+     * before it starts, so that frame listeners added by the listener see every frame.
+     */
+    public void setStreamListener(Consumer<MjpegStream> streamListener) {
+        this.streamListener = Objects.requireNonNull(streamListener, "streamListener");
+    }
+
+    /**
+     * Sets the listener for the state of the camera, of whatever stream is current.
+     */
+    public void setStateListener(Consumer<MjpegStream.State> stateListener) {
+        this.stateListener = Objects.requireNonNull(stateListener, "stateListener");
+    }
+
+    /**
+     * Switches to the camera at the given URL once it has not changed for the debounce delay.
+     */
+    public void setUrl(String url) {
+        Objects.requireNonNull(url, "url");
+        execute(() -> {
+            this.url = url.trim();
+            schedule(debounceDelay);
+        });
+    }
+
+    /**
+     * Sets the URL of a lower resolution stream of the same camera, or an empty string if there is none.
+     */
+    public void setLowResolutionUrl(String lowResolutionUrl) {
+        Objects.requireNonNull(lowResolutionUrl, "lowResolutionUrl");
+        execute(() -> {
+            this.lowResolutionUrl = lowResolutionUrl.trim();
+            if (lowResolution) {
+                schedule(debounceDelay);
+            }
+        });
+    }
+
+    /**
+     * Sets whether the lower resolution stream is shown instead of the normal one, if the camera has one.
+     */
+    public void setLowResolution(boolean lowResolution) {
+        execute(() -> {
+            if (lowResolution != this.lowResolution) {
+                this.lowResolution = lowResolution;
+                schedule(0L);
+            }
+        });
+    }
+
+    /**
+     * Sets whether the camera is paused. A paused camera has no stream at all, so unlike an invisible one it takes no
+     * bandwidth.
+     */
+    public void setPaused(boolean paused) {
+        execute(() -> {
+            if (paused == this.paused || closed) {
+                return;
+            }
+            this.paused = paused;
+            if (paused) {
+                generation++;
+                cancelPendingUpdate();
+                closeActiveStream();
+                stateListener.accept(MjpegStream.State.OFFLINE);
+            }
+            else {
+                schedule(0L);
+            }
+        });
+    }
+
+    /**
+     * Sets whether the stream is on screen, it is only decoded while it is.
+     */
+    public void setVisible(boolean visible) {
+        execute(() -> {
+            this.visible = visible;
+            MjpegStream stream = activeStream;
+            if (stream != null) {
+                stream.setDecoding(visible);
+            }
+        });
+    }
+
+    /**
+     * Sets whether the stream is shown in the main view, which gets it the full frame rate and resolution.
+     */
+    public void setFocused(boolean focused) {
+        execute(() -> {
+            this.focused = focused;
+            MjpegStream stream = activeStream;
+            if (stream != null) {
+                stream.setFocused(focused);
+            }
+        });
+    }
+
+    /**
+     * Returns the stream that is on screen, or null if there is none.
+     */
+    public MjpegStream getActiveStream() {
+        return activeStream;
+    }
+
+    public long getProbeCount() {
+        return probeCount.get();
+    }
+
+    public long getFailedProbeCount() {
+        return failedProbeCount.get();
+    }
+
+    /**
+     * Returns the amount of times a stream was opened without probing, because its URL probed fine recently.
+     */
+    public long getCachedProbeCount() {
+        return cachedProbeCount.get();
+    }
+
+    public long getOpenedStreamCount() {
+        return openedStreamCount.get();
+    }
+
+    /**
+     * Returns the amount of bytes received by all streams of this manager so far.
+     */
+    public long getBytesReceived() {
+        MjpegStream stream = activeStream;
+        return closedStreamBytes.get() + ((stream == null) ? 0L : stream.getVideoMetrics().getBytesReceived());
+    }
+
+    @Override
+    public void close() {
+        execute(() -> {
+            closed = true;
+            generation++;
+            cancelPendingUpdate();
+            closeActiveStream();
+        });
+        scheduler.shutdown();
+        probeExecutor.shutdown();
+    }
+
+    private void execute(Runnable task) {
+        try {
+            scheduler.execute(task);
+        } catch (RejectedExecutionException e) {
+            //the manager has been closed
+        }
+    }
+
+    private void schedule(long delay) {
+        generation++;
+        cancelPendingUpdate();
+        long updateGeneration = generation;
+        pendingUpdate = scheduler.schedule(() -> update(updateGeneration), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelPendingUpdate() {
+        if (pendingUpdate != null) {
+            pendingUpdate.cancel(false);
+            pendingUpdate = null;
+        }
+    }
+
+    private void update(long updateGeneration) {
+        if (closed || paused || url == null || updateGeneration != generation) {
+            return;
+        }
+        pendingUpdate = null;
+        String streamUrl = (lowResolution && !lowResolutionUrl.isEmpty()) ? lowResolutionUrl : url;
+        MjpegStream stream = activeStream;
+        if (stream != null && stream.getUrl().equals(streamUrl)) {
+            //the URL was edited back to what it was
+            return;
+        }
+        closeActiveStream();
+
+        URI uri;
+        try {
+            uri = MjpegStreamReader.parseUri(streamUrl);
+        } catch (IllegalArgumentException e) {
+            //cannot ever work, wait for the next change
+            stateListener.accept(MjpegStream.State.OFFLINE);
+            return;
+        }
+        Long probeTime = probedUrls.get(streamUrl);
+        if (probeTime != null && System.nanoTime() - probeTime < PROBE_CACHE_TIME) {
+            cachedProbeCount.incrementAndGet();
+            openStream(streamUrl);
+            return;
+        }
+
+        stateListener.accept(MjpegStream.State.CONNECTING);
+        probeCount.incrementAndGet();
+        probeExecutor.execute(() -> {
+            boolean online;
+            try {
+                CameraProbe.probe(uri, connectTimeout);
+                online = true;
+            } catch (IOException | RuntimeException e) {
+                online = false;
+            }
+            boolean probeOnline = online;
+            execute(() -> probed(updateGeneration, streamUrl, probeOnline));
+        });
+    }
+
+    private void probed(long probeGeneration, String probeUrl, boolean online) {
+        if (closed || probeGeneration != generation) {
+            //superseded by another URL while probing
+            return;
+        }
+        if (!online) {
+            failedProbeCount.incrementAndGet();
+            stateListener.accept(MjpegStream.State.OFFLINE);
+            schedule(reconnectDelay);
+            return;
+        }
+        probedUrls.put(probeUrl, System.nanoTime());
+        openStream(probeUrl);
+    }
+
+    private void openStream(String streamUrl) {
+        MjpegStream stream = new MjpegStream(streamUrl, connectTimeout, readTimeout, reconnectDelay, decodePool);
+        stream.setStateListener(state -> {
+            if (activeStream == stream) {
+                stateListener.accept(state);
+            }
+        });
+        stream.setDecoding(visible);
+        stream.setFocused(focused);
+        activeStream = stream;
+        openedStreamCount.incrementAndGet();
+        streamListener.accept(stream);
+        stream.start();
+    }
+
+    private void closeActiveStream() {
+        MjpegStream stream = activeStream;
+        if (stream != null) {
+            activeStream = null;
+            stream.close();
+            closedStreamBytes.addAndGet(stream.getVideoMetrics().getBytesReceived());
+            streamListener.accept(null);
+        }
+    }
+}
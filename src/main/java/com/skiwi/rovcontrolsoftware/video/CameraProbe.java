@@ -0,0 +1,53 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks whether a camera answers its stream URL, with a blocking socket that gives up after a timeout. Meant for a
+ * small executor of its own, so that a camera that does not answer never holds up anything else.
+ *
+ * @author Frank van Heeswijk
+ */
+class CameraProbe {
+    private static final int MAX_HEADER_SIZE = 8192;
+
+    private CameraProbe() {
+    }
+
+    /**
+     * @param timeout   the timeout in milliseconds for connecting and for every read of the response header
+     * @throws IOException  if the camera cannot be reached or does not answer with a stream
+     */
+    static void probe(URI uri, int timeout) throws IOException {
+        int port = (uri.getPort() < 0) ? 80 : uri.getPort();
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(uri.getHost(), port), timeout);
+            socket.setSoTimeout(timeout);
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(MjpegStreamReader.createRequest(uri));
+            outputStream.flush();
+
+            InputStream inputStream = socket.getInputStream();
+            byte[] header = new byte[MAX_HEADER_SIZE];
+            int length = 0;
+            int headerEnd;
+            while ((headerEnd = MjpegStreamReader.indexOfHeaderEnd(header, length)) < 0) {
+                if (length == header.length) {
+                    throw new IOException("The HTTP response header is too large");
+                }
+                int read = inputStream.read(header, length, header.length - length);
+                if (read < 0) {
+                    throw new IOException("The camera closed the connection before answering");
+                }
+                length += read;
+            }
+            MjpegStreamReader.checkResponseHeader(new String(header, 0, headerEnd, StandardCharsets.ISO_8859_1));
+        }
+    }
+}
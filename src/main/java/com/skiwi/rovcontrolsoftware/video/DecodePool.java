@@ -0,0 +1,211 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed amount of decode threads shared by all decoders, so that adding a camera adds work but never threads. A free
+ * thread takes the focused decoder with a pending frame first, and otherwise the decoder that has waited longest since
+ * its previous decode. A decoder is only ever decoded by one thread at a time.
+ *
+ * Decoders that are not focused are decoded at a reduced rate and scale: a thumbnail needs neither every frame nor
+ * every pixel, and JPEG subsampling skips most of the work of a full decode.
+ *
+ * The threads run below normal priority, below the control loop and the gamepad poll thread.
+ *
+ * @author Frank van Heeswijk
+ */
+public class DecodePool implements Closeable {
+    private final long secondaryInterval;
+    private final int secondarySubsampling;
+    private final Thread[] threads;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+
+    //only accessed while holding the lock
+    private final List<MjpegDecoder> decoders = new ArrayList<>();
+    private boolean closed;
+
+    private final AtomicLong decodeCount = new AtomicLong();
+    private final AtomicLong busyTime = new AtomicLong();
+
+    /**
+     * @param threadCount   the amount of decode threads
+     * @param secondaryFrameRate    the maximum amount of frames per second decoded of a decoder that is not focused
+     * @param secondarySubsampling  the factor by which the width and height of frames of a decoder that is not
+     *                              focused are reduced
+     */
+    public DecodePool(int threadCount, double secondaryFrameRate, int secondarySubsampling) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("The thread count must be positive: threadCount = " + threadCount);
+        }
+        if (!(secondaryFrameRate > 0d)) {
+            throw new IllegalArgumentException("The secondary frame rate must be positive: secondaryFrameRate = " + secondaryFrameRate);
+        }
+        if (secondarySubsampling <= 0) {
+            throw new IllegalArgumentException("The secondary subsampling must be positive: secondarySubsampling = " + secondarySubsampling);
+        }
+        this.secondaryInterval = (long)(TimeUnit.SECONDS.toNanos(1) / secondaryFrameRate);
+        this.secondarySubsampling = secondarySubsampling;
+        this.threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread(this::runDecodeLoop, "video-decoder-" + i);
+            threads[i].setDaemon(true);
+            threads[i].setPriority(Thread.NORM_PRIORITY - 1);
+            threads[i].start();
+        }
+    }
+
+    public int getThreadCount() {
+        return threads.length;
+    }
+
+    /**
+     * Returns the total amount of frames decoded by this pool, of all decoders.
+     */
+    public long getDecodeCount() {
+        return decodeCount.get();
+    }
+
+    /**
+     * Returns the total time in nanoseconds the threads of this pool spent decoding.
+     */
+    public long getBusyTime() {
+        return busyTime.get();
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void register(MjpegDecoder decoder) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The decode pool has been closed");
+            }
+            decoder.lastDecodeTime = System.nanoTime() - secondaryInterval;
+            decoders.add(decoder);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void unregister(MjpegDecoder decoder) {
+        lock.lock();
+        try {
+            decoders.remove(decoder);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tells the pool that a decoder has a new pending frame, or that it changed focus.
+     */
+    void signal() {
+        lock.lock();
+        try {
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runDecodeLoop() {
+        Iterator<ImageReader> imageReaders = ImageIO.getImageReadersByFormatName("jpeg");
+        if (!imageReaders.hasNext()) {
+            throw new IllegalStateException("No JPEG image reader is available");
+        }
+        ImageReader imageReader = imageReaders.next();
+        ImageReadParam readParam = imageReader.getDefaultReadParam();
+        try {
+            MjpegDecoder decoder;
+            while ((decoder = take()) != null) {
+                long startTime = System.nanoTime();
+                try {
+                    decoder.decodePending(imageReader, readParam, decoder.isFocused() ? 1 : secondarySubsampling);
+                } finally {
+                    busyTime.addAndGet(System.nanoTime() - startTime);
+                    decodeCount.incrementAndGet();
+                    finished(decoder);
+                }
+            }
+        } catch (InterruptedException e) {
+            //nothing to clean up besides the reader
+        } finally {
+            imageReader.dispose();
+        }
+    }
+
+    /**
+     * Waits for the next decoder to decode and claims it, or returns null once the pool is closed.
+     */
+    private MjpegDecoder take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (!closed) {
+                long now = System.nanoTime();
+                long wakeTime = Long.MAX_VALUE;
+                MjpegDecoder next = null;
+                for (MjpegDecoder decoder : decoders) {
+                    if (decoder.claimed || !decoder.hasPendingFrame()) {
+                        continue;
+                    }
+                    boolean focused = decoder.isFocused();
+                    if (!focused && now - decoder.lastDecodeTime < secondaryInterval) {
+                        //its pending frame may be replaced by a newer one in the meantime, which is what we want
+                        wakeTime = Math.min(wakeTime, decoder.lastDecodeTime + secondaryInterval);
+                        continue;
+                    }
+                    if (next == null || (focused && !next.isFocused())
+                            || (focused == next.isFocused() && decoder.lastDecodeTime - next.lastDecodeTime < 0)) {
+                        next = decoder;
+                    }
+                }
+                if (next != null) {
+                    next.claimed = true;
+                    next.lastDecodeTime = now;
+                    return next;
+                }
+                if (wakeTime == Long.MAX_VALUE) {
+                    workAvailable.await();
+                }
+                else {
+                    workAvailable.awaitNanos(wakeTime - now);
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void finished(MjpegDecoder decoder) {
+        lock.lock();
+        try {
+            decoder.claimed = false;
+            //a frame that arrived during the decode could not be taken by another thread
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
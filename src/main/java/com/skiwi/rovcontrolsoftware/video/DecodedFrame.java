@@ -0,0 +1,96 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.nio.IntBuffer;
+
+/**
+ * A decoded image as opaque premultiplied ARGB pixels, the native pixel format of the JavaFX scene graph. The decoder
+ * writes straight into the pixel array, so the frame can be handed to a {@code PixelWriter} without any conversion.
+ *
+ * Frames are pooled by their decoder, call {@link #release()} once the pixels have been uploaded.
+ *
+ * @author Frank van Heeswijk
+ */
+public final class DecodedFrame {
+    private static final int[] RGB_MASKS = { 0xFF0000, 0xFF00, 0xFF };
+
+    private final MjpegDecoder decoder;
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private final IntBuffer pixelBuffer;
+    private final BufferedImage image;
+
+    private long receiveTime;
+    private long sequence;
+
+    DecodedFrame(MjpegDecoder decoder, int width, int height) {
+        this.decoder = decoder;
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+        this.pixelBuffer = IntBuffer.wrap(pixels);
+        //an RGB view on the pixel array, so that the JPEG decoder fills it in place
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length), width, height, width, RGB_MASKS, null);
+        this.image = new BufferedImage(new DirectColorModel(24, RGB_MASKS[0], RGB_MASKS[1], RGB_MASKS[2]), raster, false, null);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Returns the pixels as a buffer positioned at the first pixel, with a scanline stride equal to the width.
+     */
+    public IntBuffer getPixelBuffer() {
+        pixelBuffer.clear();
+        return pixelBuffer;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the first byte of the encoded frame was read from the socket.
+     */
+    public long getReceiveTime() {
+        return receiveTime;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the size of the pixel array in bytes.
+     */
+    public long getMemorySize() {
+        return 4L * pixels.length;
+    }
+
+    public void release() {
+        decoder.recycle(this);
+    }
+
+    BufferedImage getImage() {
+        return image;
+    }
+
+    void completed(EncodedFrame encodedFrame) {
+        //the decoder leaves the alpha byte at zero
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] |= 0xFF000000;
+        }
+        receiveTime = encodedFrame.getReceiveTime();
+        sequence = encodedFrame.getSequence();
+    }
+}
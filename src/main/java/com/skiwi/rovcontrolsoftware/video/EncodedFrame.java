@@ -0,0 +1,94 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One complete JPEG image as received from the camera. Frames are pooled and reference counted: a listener that wants
+ * to keep a frame beyond {@link EncodedFrameListener#onFrame(EncodedFrame)} must {@link #retain()} it and
+ * {@link #release()} it once done, after which its buffer is reused for a later frame.
+ *
+ * @author Frank van Heeswijk
+ */
+public final class EncodedFrame {
+    private static final byte[] START_OF_IMAGE = { (byte)0xFF, (byte)0xD8 };
+
+    private final EncodedFramePool pool;
+    private final AtomicInteger referenceCount = new AtomicInteger();
+
+    private byte[] data;
+    private int length;
+    private long receiveTime;
+    private long sequence;
+
+    EncodedFrame(EncodedFramePool pool, int initialCapacity) {
+        this.pool = pool;
+        this.data = new byte[initialCapacity];
+    }
+
+    /**
+     * Returns the backing array, only the first {@link #getLength()} bytes belong to this frame.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the first byte of this frame was read from the socket.
+     */
+    public long getReceiveTime() {
+        return receiveTime;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void retain() {
+        if (referenceCount.getAndIncrement() <= 0) {
+            throw new IllegalStateException("The frame has already been released");
+        }
+    }
+
+    public void release() {
+        int remaining = referenceCount.decrementAndGet();
+        if (remaining == 0) {
+            pool.recycle(this);
+        }
+        else if (remaining < 0) {
+            throw new IllegalStateException("The frame has been released too often");
+        }
+    }
+
+    void acquired() {
+        referenceCount.set(1);
+        length = 0;
+    }
+
+    void start(long receiveTime) {
+        this.length = 0;
+        this.receiveTime = receiveTime;
+        append(START_OF_IMAGE, 0, START_OF_IMAGE.length);
+    }
+
+    void append(byte[] source, int offset, int count) {
+        if (length + count > data.length) {
+            byte[] newData = new byte[Math.max(length + count, data.length * 2)];
+            System.arraycopy(data, 0, newData, 0, length);
+            data = newData;
+        }
+        System.arraycopy(source, offset, data, length, count);
+        length += count;
+    }
+
+    void clear() {
+        length = 0;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+}
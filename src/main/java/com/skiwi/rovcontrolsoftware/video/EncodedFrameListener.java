@@ -0,0 +1,13 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+/**
+ * @author Frank van Heeswijk
+ */
+@FunctionalInterface
+public interface EncodedFrameListener {
+    /**
+     * Called on the reader thread for every complete frame. The frame is only valid during this call, unless the
+     * listener calls {@link EncodedFrame#retain()}.
+     */
+    void onFrame(EncodedFrame frame);
+}
@@ -0,0 +1,34 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of encoded frame buffers. Buffers grow to the largest frame they held, so after the first few frames
+ * the reader no longer allocates.
+ *
+ * @author Frank van Heeswijk
+ */
+class EncodedFramePool {
+    private final int initialCapacity;
+    private final BlockingQueue<EncodedFrame> freeFrames;
+
+    EncodedFramePool(int poolSize, int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+        this.freeFrames = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    EncodedFrame acquire() {
+        EncodedFrame frame = freeFrames.poll();
+        if (frame == null) {
+            frame = new EncodedFrame(this, initialCapacity);
+        }
+        frame.acquired();
+        return frame;
+    }
+
+    void recycle(EncodedFrame frame) {
+        //when the pool is full the frame is left to the garbage collector
+        freeFrames.offer(frame);
+    }
+}
@@ -0,0 +1,176 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Extracts complete JPEG images from an MJPEG byte stream by following the JPEG marker structure instead of the
+ * multipart boundaries. Segments are skipped by their length, so an end of image marker inside an embedded thumbnail
+ * does not end the frame, and the part headers in between images are skipped since they cannot contain a start of
+ * image marker. This works the same for cameras that send a Content-Length per part and for cameras that do not.
+ *
+ * @author Frank van Heeswijk
+ */
+class JpegFrameScanner {
+    private static final int SEEK_START = 0;
+    private static final int SEEK_START_MARKER = 1;
+    private static final int MARKER_PREFIX = 2;
+    private static final int MARKER = 3;
+    private static final int LENGTH_HIGH = 4;
+    private static final int LENGTH_LOW = 5;
+    private static final int SEGMENT = 6;
+    private static final int ENTROPY = 7;
+    private static final int ENTROPY_MARKER = 8;
+
+    private static final int START_OF_IMAGE = 0xD8;
+    private static final int END_OF_IMAGE = 0xD9;
+    private static final int START_OF_SCAN = 0xDA;
+
+    private final int maxFrameSize;
+
+    private int state = SEEK_START;
+    private int marker;
+    private int remaining;
+
+    private long corruptFrameCount;
+
+    JpegFrameScanner(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Consumes bytes from the given heap buffer and appends those that belong to the current image to the frame.
+     *
+     * @param readTime  the time at which the bytes were read, used as receive time of an image starting in them
+     * @return  true if the frame now holds a complete image, the buffer is then positioned just after it
+     */
+    boolean scan(ByteBuffer buffer, EncodedFrame frame, long readTime) {
+        byte[] data = buffer.array();
+        int offset = buffer.arrayOffset();
+        int position = offset + buffer.position();
+        int limit = offset + buffer.limit();
+        int copyFrom = (state == SEEK_START || state == SEEK_START_MARKER) ? -1 : position;
+        boolean complete = false;
+
+        while (position < limit && !complete) {
+            if (state == SEGMENT) {
+                int skipped = Math.min(remaining, limit - position);
+                position += skipped;
+                remaining -= skipped;
+                if (remaining == 0) {
+                    state = (marker == START_OF_SCAN) ? ENTROPY : MARKER_PREFIX;
+                }
+                continue;
+            }
+
+            int value = data[position++] & 0xFF;
+            switch (state) {
+                case SEEK_START:
+                    if (value == 0xFF) {
+                        state = SEEK_START_MARKER;
+                    }
+                    break;
+                case SEEK_START_MARKER:
+                    if (value == START_OF_IMAGE) {
+                        frame.start(readTime);
+                        copyFrom = position;
+                        state = MARKER_PREFIX;
+                    }
+                    else if (value != 0xFF) {
+                        state = SEEK_START;
+                    }
+                    break;
+                case MARKER_PREFIX:
+                    if (value == 0xFF) {
+                        state = MARKER;
+                    }
+                    else {
+                        copyFrom = corrupt(frame, value);
+                    }
+                    break;
+                case MARKER:
+                case ENTROPY_MARKER:
+                    if (value == 0xFF) {
+                        //fill byte
+                        break;
+                    }
+                    if (state == ENTROPY_MARKER && (value == 0x00 || (value >= 0xD0 && value <= 0xD7))) {
+                        //stuffed byte or restart marker inside the entropy-coded data
+                        state = ENTROPY;
+                        break;
+                    }
+                    if (value == END_OF_IMAGE) {
+                        state = SEEK_START;
+                        complete = true;
+                    }
+                    else if (value == START_OF_IMAGE) {
+                        //the previous image was cut off, start over with this one
+                        corruptFrameCount++;
+                        frame.start(readTime);
+                        copyFrom = position;
+                        state = MARKER_PREFIX;
+                    }
+                    else if (value == 0x01 || (value >= 0xD0 && value <= 0xD7)) {
+                        state = MARKER_PREFIX;
+                    }
+                    else if (value == 0x00) {
+                        copyFrom = corrupt(frame, value);
+                    }
+                    else {
+                        marker = value;
+                        state = LENGTH_HIGH;
+                    }
+                    break;
+                case LENGTH_HIGH:
+                    remaining = value << 8;
+                    state = LENGTH_LOW;
+                    break;
+                case LENGTH_LOW:
+                    remaining = (remaining | value) - 2;
+                    if (remaining < 0) {
+                        copyFrom = corrupt(frame, value);
+                    }
+                    else if (remaining == 0) {
+                        state = (marker == START_OF_SCAN) ? ENTROPY : MARKER_PREFIX;
+                    }
+                    else {
+                        state = SEGMENT;
+                    }
+                    break;
+                case ENTROPY:
+                    if (value == 0xFF) {
+                        state = ENTROPY_MARKER;
+                    }
+                    else {
+                        while (position < limit && data[position] != (byte)0xFF) {
+                            position++;
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown state: " + state);
+            }
+        }
+
+        if (copyFrom >= 0) {
+            if (frame.getLength() + (position - copyFrom) > maxFrameSize) {
+                corrupt(frame, 0);
+            }
+            else {
+                frame.append(data, copyFrom, position - copyFrom);
+            }
+        }
+        buffer.position(position - offset);
+        return complete;
+    }
+
+    long getCorruptFrameCount() {
+        return corruptFrameCount;
+    }
+
+    private int corrupt(EncodedFrame frame, int value) {
+        corruptFrameCount++;
+        frame.clear();
+        state = (value == 0xFF) ? SEEK_START_MARKER : SEEK_START;
+        return -1;
+    }
+}
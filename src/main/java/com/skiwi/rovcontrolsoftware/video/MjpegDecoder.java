@@ -0,0 +1,192 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decodes the JPEG frames of one stream on the threads of a shared {@link DecodePool}. Both hand-overs are latest-wins:
+ * a frame that arrives while the previous one is still waiting to be decoded replaces it, and a decoded frame that has
+ * not been picked up by the time the next one is ready is replaced as well. A slow decoder or a slow screen therefore
+ * drops frames instead of adding latency.
+ *
+ * Decoding uses the JDK JPEG reader into pooled pixel arrays, so it does not depend on any camera driver.
+ *
+ * @author Frank van Heeswijk
+ */
+public class MjpegDecoder implements EncodedFrameListener {
+    private final DecodePool decodePool;
+    private final VideoMetrics videoMetrics;
+
+    private final AtomicReference<EncodedFrame> pendingFrame = new AtomicReference<>();
+    private final AtomicReference<DecodedFrame> latestFrame = new AtomicReference<>();
+    private final Queue<DecodedFrame> freeFrames = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean started;
+    private volatile boolean stopped;
+    private volatile boolean focused = true;
+
+    //only accessed by the decode pool while holding its lock
+    boolean claimed;
+    long lastDecodeTime;
+
+    public MjpegDecoder(DecodePool decodePool, VideoMetrics videoMetrics) {
+        this.decodePool = Objects.requireNonNull(decodePool, "decodePool");
+        this.videoMetrics = Objects.requireNonNull(videoMetrics, "videoMetrics");
+    }
+
+    public synchronized void start() {
+        if (started || stopped) {
+            throw new IllegalStateException("The decoder has already been started");
+        }
+        decodePool.register(this);
+        started = true;
+    }
+
+    public synchronized void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        decodePool.unregister(this);
+        EncodedFrame frame = pendingFrame.getAndSet(null);
+        if (frame != null) {
+            frame.release();
+        }
+        DecodedFrame decodedFrame = latestFrame.getAndSet(null);
+        if (decodedFrame != null) {
+            decodedFrame.release();
+        }
+        DecodedFrame freeFrame;
+        while ((freeFrame = freeFrames.poll()) != null) {
+            videoMetrics.recordFrameMemory(-freeFrame.getMemorySize());
+        }
+    }
+
+    /**
+     * Sets whether this is the decoder of the view the pilot looks at. Only a focused decoder is decoded at the full
+     * frame rate and resolution, the others get what the decode pool leaves for secondary streams.
+     */
+    public void setFocused(boolean focused) {
+        this.focused = focused;
+        decodePool.signal();
+    }
+
+    public boolean isFocused() {
+        return focused;
+    }
+
+    @Override
+    public void onFrame(EncodedFrame frame) {
+        if (!started || stopped) {
+            return;
+        }
+        frame.retain();
+        EncodedFrame replacedFrame = pendingFrame.getAndSet(frame);
+        if (replacedFrame != null) {
+            replacedFrame.release();
+            videoMetrics.recordDroppedBeforeDecode();
+        }
+        if (stopped) {
+            //raced with stop, which may have missed this frame
+            EncodedFrame strandedFrame = pendingFrame.getAndSet(null);
+            if (strandedFrame != null) {
+                strandedFrame.release();
+            }
+            return;
+        }
+        decodePool.signal();
+    }
+
+    /**
+     * Takes the newest decoded frame, or returns null if no new frame has been decoded since the previous call. The
+     * caller owns the returned frame and must release it.
+     */
+    public DecodedFrame pollFrame() {
+        return latestFrame.getAndSet(null);
+    }
+
+    void recycle(DecodedFrame frame) {
+        if (stopped) {
+            videoMetrics.recordFrameMemory(-frame.getMemorySize());
+            return;
+        }
+        freeFrames.offer(frame);
+    }
+
+    boolean hasPendingFrame() {
+        return pendingFrame.get() != null;
+    }
+
+    /**
+     * Decodes the pending frame, if there still is one, with the given subsampling. Called by one decode pool thread at a
+     * time.
+     */
+    void decodePending(ImageReader imageReader, ImageReadParam readParam, int subsampling) {
+        EncodedFrame frame = pendingFrame.getAndSet(null);
+        if (frame == null) {
+            return;
+        }
+        try {
+            decode(frame, imageReader, readParam, subsampling);
+        } finally {
+            frame.release();
+        }
+    }
+
+    private void decode(EncodedFrame frame, ImageReader imageReader, ImageReadParam readParam, int subsampling) {
+        long startTime = System.nanoTime();
+        DecodedFrame decodedFrame = null;
+        try {
+            imageReader.setInput(new MemoryCacheImageInputStream(new ByteArrayInputStream(frame.getData(), 0, frame.getLength())), true, true);
+            //subsampling keeps every n-th pixel of every n-th row, rounding the size up
+            int width = (imageReader.getWidth(0) + subsampling - 1) / subsampling;
+            int height = (imageReader.getHeight(0) + subsampling - 1) / subsampling;
+            decodedFrame = acquire(width, height);
+            readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            readParam.setDestination(decodedFrame.getImage());
+            imageReader.read(0, readParam);
+            decodedFrame.completed(frame);
+        } catch (IOException | RuntimeException e) {
+            videoMetrics.recordDecodeError();
+            if (decodedFrame != null) {
+                recycle(decodedFrame);
+            }
+            return;
+        }
+        videoMetrics.recordDecoded(System.nanoTime() - startTime);
+
+        DecodedFrame replacedFrame = latestFrame.getAndSet(decodedFrame);
+        if (replacedFrame != null) {
+            replacedFrame.release();
+            videoMetrics.recordDroppedBeforeRender();
+        }
+        if (stopped) {
+            //raced with stop, nobody is going to pick this frame up
+            DecodedFrame strandedFrame = latestFrame.getAndSet(null);
+            if (strandedFrame != null) {
+                strandedFrame.release();
+            }
+        }
+    }
+
+    private DecodedFrame acquire(int width, int height) {
+        DecodedFrame frame;
+        while ((frame = freeFrames.poll()) != null) {
+            if (frame.getWidth() == width && frame.getHeight() == height) {
+                return frame;
+            }
+            //the resolution changed, frames of the old size are left to the garbage collector
+            videoMetrics.recordFrameMemory(-frame.getMemorySize());
+        }
+        frame = new DecodedFrame(this, width, height);
+        videoMetrics.recordFrameMemory(frame.getMemorySize());
+        return frame;
+    }
+}
@@ -0,0 +1,106 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * One camera: an {@link MjpegStreamReader} feeding an {@link MjpegDecoder}, sharing one set of metrics. The decoder
+ * runs on a {@link DecodePool} that may be shared with other streams.
+ *
+ * @author Frank van Heeswijk
+ */
+public class MjpegStream implements Closeable {
+    private final VideoMetrics videoMetrics = new VideoMetrics();
+    private final MjpegStreamReader streamReader;
+    private final MjpegDecoder decoder;
+
+    private boolean decoding = true;
+
+    /**
+     * @throws IllegalArgumentException if the URL is not a valid http URL
+     */
+    public MjpegStream(String url, int connectTimeout, int readTimeout, long reconnectDelay, DecodePool decodePool) {
+        Objects.requireNonNull(url, "url");
+        this.streamReader = new MjpegStreamReader(url, connectTimeout, readTimeout, reconnectDelay, videoMetrics);
+        this.decoder = new MjpegDecoder(decodePool, videoMetrics);
+        this.streamReader.addFrameListener(decoder);
+    }
+
+    public void setStateListener(Consumer<State> stateListener) {
+        streamReader.setStateListener(stateListener);
+    }
+
+    public void addFrameListener(EncodedFrameListener frameListener) {
+        streamReader.addFrameListener(frameListener);
+    }
+
+    public void removeFrameListener(EncodedFrameListener frameListener) {
+        streamReader.removeFrameListener(frameListener);
+    }
+
+    /**
+     * Sets whether received frames are decoded, which is only worth it while the stream is on screen. The stream
+     * stays connected either way, so decoding resumes with the next frame.
+     */
+    public synchronized void setDecoding(boolean decoding) {
+        if (decoding == this.decoding) {
+            return;
+        }
+        this.decoding = decoding;
+        if (decoding) {
+            streamReader.addFrameListener(decoder);
+        }
+        else {
+            streamReader.removeFrameListener(decoder);
+        }
+    }
+
+    public synchronized boolean isDecoding() {
+        return decoding;
+    }
+
+    /**
+     * Sets whether this stream is shown in the main view, see {@link MjpegDecoder#setFocused(boolean)}.
+     */
+    public void setFocused(boolean focused) {
+        decoder.setFocused(focused);
+    }
+
+    public boolean isFocused() {
+        return decoder.isFocused();
+    }
+
+    public void start() {
+        decoder.start();
+        streamReader.start();
+    }
+
+    @Override
+    public void close() {
+        streamReader.close();
+        decoder.stop();
+    }
+
+    /**
+     * Takes the newest decoded frame, or returns null if there is none since the previous call. The caller must release
+     * the returned frame.
+     */
+    public DecodedFrame pollFrame() {
+        return decoder.pollFrame();
+    }
+
+    public String getUrl() {
+        return streamReader.getUrl();
+    }
+
+    public VideoMetrics getVideoMetrics() {
+        return videoMetrics;
+    }
+
+    public static enum State {
+        ONLINE,
+        OFFLINE,
+        CONNECTING
+    }
+}
@@ -0,0 +1,267 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Reads an MJPEG stream over HTTP on its own thread and hands every complete JPEG image to the registered listeners.
+ * Images are collected in pooled buffers, the only allocations per connection are for the request and the response
+ * header. The reader reconnects after a fixed delay until it is closed.
+ *
+ * @author Frank van Heeswijk
+ */
+public class MjpegStreamReader implements Closeable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_SIZE = 8192;
+    private static final int MAX_FRAME_SIZE = 8 * 1024 * 1024;
+    private static final int FRAME_POOL_SIZE = 4;
+    private static final int INITIAL_FRAME_CAPACITY = 128 * 1024;
+
+    private final URI uri;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final long reconnectDelay;
+    private final VideoMetrics videoMetrics;
+    private final Thread readerThread;
+
+    private final EncodedFramePool framePool = new EncodedFramePool(FRAME_POOL_SIZE, INITIAL_FRAME_CAPACITY);
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    private EncodedFrameListener[] frameListeners = new EncodedFrameListener[0];
+    private volatile Consumer<MjpegStream.State> stateListener = state -> { };
+
+    private volatile Selector selector;
+    private volatile boolean closed;
+
+    private long sequence;
+
+    /**
+     * @param url   an http URL, user info in it is sent as basic authentication
+     * @param connectTimeout    the connect timeout in milliseconds
+     * @param readTimeout   the time in milliseconds after which a stream that sends nothing is considered lost
+     * @param reconnectDelay    the delay in milliseconds before reconnecting
+     * @throws IllegalArgumentException if the URL is not a valid http URL
+     */
+    public MjpegStreamReader(String url, int connectTimeout, int readTimeout, long reconnectDelay, VideoMetrics videoMetrics) {
+        this.uri = parseUri(Objects.requireNonNull(url, "url"));
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.reconnectDelay = reconnectDelay;
+        this.videoMetrics = Objects.requireNonNull(videoMetrics, "videoMetrics");
+        this.readerThread = new Thread(this::runReadLoop, "mjpeg-reader-" + uri.getHost());
+        this.readerThread.setDaemon(true);
+    }
+
+    public synchronized void addFrameListener(EncodedFrameListener frameListener) {
+        Objects.requireNonNull(frameListener, "frameListener");
+        EncodedFrameListener[] newFrameListeners = new EncodedFrameListener[frameListeners.length + 1];
+        System.arraycopy(frameListeners, 0, newFrameListeners, 0, frameListeners.length);
+        newFrameListeners[frameListeners.length] = frameListener;
+        frameListeners = newFrameListeners;
+    }
+
+    public synchronized void removeFrameListener(EncodedFrameListener frameListener) {
+        for (int i = 0; i < frameListeners.length; i++) {
+            if (frameListeners[i] == frameListener) {
+                EncodedFrameListener[] newFrameListeners = new EncodedFrameListener[frameListeners.length - 1];
+                System.arraycopy(frameListeners, 0, newFrameListeners, 0, i);
+                System.arraycopy(frameListeners, i + 1, newFrameListeners, i, frameListeners.length - i - 1);
+                frameListeners = newFrameListeners;
+                return;
+            }
+        }
+    }
+
+    public void setStateListener(Consumer<MjpegStream.State> stateListener) {
+        this.stateListener = Objects.requireNonNull(stateListener, "stateListener");
+    }
+
+    public String getUrl() {
+        return uri.toString();
+    }
+
+    public void start() {
+        readerThread.start();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Selector currentSelector = selector;
+        if (currentSelector != null) {
+            currentSelector.wakeup();
+        }
+        LockSupport.unpark(readerThread);
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    private void runReadLoop() {
+        while (!closed) {
+            stateListener.accept(MjpegStream.State.CONNECTING);
+            try (SocketChannel socketChannel = SocketChannel.open(); Selector channelSelector = Selector.open()) {
+                selector = channelSelector;
+                connect(socketChannel, channelSelector);
+                readResponseHeader(socketChannel, channelSelector);
+                stateListener.accept(MjpegStream.State.ONLINE);
+                readFrames(socketChannel, channelSelector);
+            } catch (IOException | RuntimeException e) {
+                //the stream is lost, reconnect below unless closed
+            } finally {
+                selector = null;
+            }
+            stateListener.accept(MjpegStream.State.OFFLINE);
+            if (!closed) {
+                LockSupport.parkNanos(this, reconnectDelay * 1_000_000L);
+            }
+        }
+    }
+
+    private void connect(SocketChannel socketChannel, Selector channelSelector) throws IOException {
+        int port = (uri.getPort() < 0) ? 80 : uri.getPort();
+        socketChannel.socket().connect(new InetSocketAddress(uri.getHost(), port), connectTimeout);
+
+        ByteBuffer requestBuffer = ByteBuffer.wrap(createRequest(uri));
+        while (requestBuffer.hasRemaining()) {
+            socketChannel.write(requestBuffer);
+        }
+
+        socketChannel.configureBlocking(false);
+        socketChannel.register(channelSelector, SelectionKey.OP_READ);
+    }
+
+    static byte[] createRequest(URI uri) {
+        int port = (uri.getPort() < 0) ? 80 : uri.getPort();
+        //HTTP/1.0, so that the camera cannot answer with a chunked transfer encoding
+        StringBuilder request = new StringBuilder();
+        request.append("GET ").append(uri.getRawPath().isEmpty() ? "/" : uri.getRawPath());
+        if (uri.getRawQuery() != null) {
+            request.append('?').append(uri.getRawQuery());
+        }
+        request.append(" HTTP/1.0\r\n");
+        request.append("Host: ").append(uri.getHost()).append(':').append(port).append("\r\n");
+        if (uri.getRawUserInfo() != null) {
+            request.append("Authorization: Basic ")
+                    .append(Base64.getEncoder().encodeToString(uri.getUserInfo().getBytes(StandardCharsets.UTF_8))).append("\r\n");
+        }
+        request.append("\r\n");
+        return request.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private void readResponseHeader(SocketChannel socketChannel, Selector channelSelector) throws IOException {
+        readBuffer.clear();
+        int headerEnd;
+        while ((headerEnd = indexOfHeaderEnd(readBuffer.array(), readBuffer.position())) < 0) {
+            if (readBuffer.position() >= MAX_HEADER_SIZE) {
+                throw new IOException("The HTTP response header is too large");
+            }
+            read(socketChannel, channelSelector);
+        }
+
+        checkResponseHeader(new String(readBuffer.array(), 0, headerEnd, StandardCharsets.ISO_8859_1));
+
+        //keep whatever followed the header, it is the start of the stream
+        readBuffer.flip();
+        readBuffer.position(headerEnd + 4);
+        readBuffer.compact();
+    }
+
+    private void readFrames(SocketChannel socketChannel, Selector channelSelector) throws IOException {
+        JpegFrameScanner frameScanner = new JpegFrameScanner(MAX_FRAME_SIZE);
+        EncodedFrame frame = framePool.acquire();
+        try {
+            long readTime = System.nanoTime();
+            while (!closed) {
+                readBuffer.flip();
+                long corruptFrameCount = frameScanner.getCorruptFrameCount();
+                while (frameScanner.scan(readBuffer, frame, readTime)) {
+                    frame.setSequence(sequence++);
+                    videoMetrics.recordReceived();
+                    for (EncodedFrameListener frameListener : frameListeners) {
+                        try {
+                            frameListener.onFrame(frame);
+                        } catch (RuntimeException e) {
+                            //a failing listener must not cost the other listeners their frames
+                            e.printStackTrace();
+                        }
+                    }
+                    frame.release();
+                    frame = framePool.acquire();
+                }
+                videoMetrics.recordCorruptFrames(frameScanner.getCorruptFrameCount() - corruptFrameCount);
+                readBuffer.clear();
+                read(socketChannel, channelSelector);
+                readTime = System.nanoTime();
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    private void read(SocketChannel socketChannel, Selector channelSelector) throws IOException {
+        while (true) {
+            if (closed) {
+                throw new AsynchronousCloseException();
+            }
+            int read = socketChannel.read(readBuffer);
+            if (read < 0) {
+                throw new EOFException("The camera closed the stream");
+            }
+            if (read > 0) {
+                videoMetrics.recordBytesReceived(read);
+                return;
+            }
+            if (channelSelector.select(readTimeout) == 0 && !closed) {
+                throw new SocketTimeoutException("The camera sent nothing for " + readTimeout + " ms");
+            }
+            channelSelector.selectedKeys().clear();
+        }
+    }
+
+    static void checkResponseHeader(String header) throws IOException {
+        String statusLine = header.split("\r\n", 2)[0];
+        String[] statusParts = statusLine.split(" ", 3);
+        if (statusParts.length < 2 || !statusParts[1].equals("200")) {
+            throw new IOException("Unexpected HTTP response: " + statusLine);
+        }
+    }
+
+    static int indexOfHeaderEnd(byte[] data, int length) {
+        for (int i = 0; i + 3 < length; i++) {
+            if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r' && data[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static URI parseUri(String url) {
+        URI uri;
+        try {
+            uri = new URI(url.trim());
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid camera URL: " + url, e);
+        }
+        if (!"http".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null) {
+            throw new IllegalArgumentException("Only http camera URLs are supported: " + url);
+        }
+        return uri;
+    }
+}
@@ -0,0 +1,130 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import com.skiwi.rovcontrolsoftware.metrics.Histogram;
+import com.skiwi.rovcontrolsoftware.metrics.RateMeter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a single video stream. The glass-to-glass latency is measured from the moment the first byte of a frame
+ * is read from the socket until the frame is written into the scene, since MJPEG carries no capture time that shares a
+ * clock with ours. Durations are in nanoseconds.
+ *
+ * @author Frank van Heeswijk
+ */
+public class VideoMetrics {
+    private final RateMeter receiveRate = new RateMeter();
+    private final RateMeter decodeRate = new RateMeter();
+    private final RateMeter renderRate = new RateMeter();
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong corruptFrameCount = new AtomicLong();
+    private final AtomicLong decodeErrorCount = new AtomicLong();
+    private final AtomicLong droppedBeforeDecodeCount = new AtomicLong();
+    private final AtomicLong droppedBeforeRenderCount = new AtomicLong();
+    private final AtomicLong frameMemory = new AtomicLong();
+
+    private final Histogram decodeTime = new Histogram();
+    private final Histogram glassToGlassLatency = new Histogram();
+
+    void recordBytesReceived(int count) {
+        bytesReceived.addAndGet(count);
+    }
+
+    void recordReceived() {
+        receiveRate.mark();
+    }
+
+    void recordCorruptFrames(long count) {
+        corruptFrameCount.addAndGet(count);
+    }
+
+    void recordDecoded(long duration) {
+        decodeRate.mark();
+        decodeTime.record(duration);
+    }
+
+    void recordDecodeError() {
+        decodeErrorCount.incrementAndGet();
+    }
+
+    void recordDroppedBeforeDecode() {
+        droppedBeforeDecodeCount.incrementAndGet();
+    }
+
+    void recordDroppedBeforeRender() {
+        droppedBeforeRenderCount.incrementAndGet();
+    }
+
+    void recordFrameMemory(long delta) {
+        frameMemory.addAndGet(delta);
+    }
+
+    public void recordRendered(DecodedFrame frame, long time) {
+        renderRate.mark(time);
+        glassToGlassLatency.record(time - frame.getReceiveTime());
+    }
+
+    public double getReceiveFps() {
+        return receiveRate.getRate();
+    }
+
+    public double getDecodeFps() {
+        return decodeRate.getRate();
+    }
+
+    public double getRenderFps() {
+        return renderRate.getRate();
+    }
+
+    public long getReceivedFrameCount() {
+        return receiveRate.getCount();
+    }
+
+    public long getDecodedFrameCount() {
+        return decodeRate.getCount();
+    }
+
+    public long getRenderedFrameCount() {
+        return renderRate.getCount();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getCorruptFrameCount() {
+        return corruptFrameCount.get();
+    }
+
+    public long getDecodeErrorCount() {
+        return decodeErrorCount.get();
+    }
+
+    public long getDroppedBeforeDecodeCount() {
+        return droppedBeforeDecodeCount.get();
+    }
+
+    public long getDroppedBeforeRenderCount() {
+        return droppedBeforeRenderCount.get();
+    }
+
+    public long getDroppedFrameCount() {
+        return droppedBeforeDecodeCount.get() + droppedBeforeRenderCount.get();
+    }
+
+    /**
+     * Returns the amount of bytes held by the decoded frames of the stream, whether pooled or in use.
+     */
+    public long getFrameMemory() {
+        return frameMemory.get();
+    }
+
+    public Histogram getDecodeTime() {
+        return decodeTime;
+    }
+
+    public Histogram getGlassToGlassLatency() {
+        return glassToGlassLatency;
+    }
+}
@@ -0,0 +1,48 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import com.skiwi.rovcontrolsoftware.ui.VideoView;
+import javafx.animation.AnimationTimer;
+
+import java.util.Objects;
+
+/**
+ * Presents the newest decoded frame of a stream in a {@link VideoView}, once per JavaFX pulse at most.
+ *
+ * @author Frank van Heeswijk
+ */
+public class VideoRenderer extends AnimationTimer {
+    private final VideoView videoView;
+
+    private MjpegStream stream;
+
+    public VideoRenderer(VideoView videoView) {
+        this.videoView = Objects.requireNonNull(videoView, "videoView");
+    }
+
+    /**
+     * Sets the stream to show, or null to show nothing. Must be called on the JavaFX application thread.
+     */
+    public void setStream(MjpegStream stream) {
+        this.stream = stream;
+        if (stream == null) {
+            videoView.clear();
+        }
+    }
+
+    @Override
+    public void handle(long now) {
+        if (stream == null) {
+            return;
+        }
+        DecodedFrame frame = stream.pollFrame();
+        if (frame == null) {
+            return;
+        }
+        try {
+            videoView.present(frame.getPixelBuffer(), frame.getWidth(), frame.getHeight(), frame.getWidth());
+            stream.getVideoMetrics().recordRendered(frame, System.nanoTime());
+        } finally {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.skiwi.rovcontrolsoftware;
+
+import com.skiwi.rovcontrolsoftware.control.ControlEngine;
+import com.skiwi.rovcontrolsoftware.control.ControlInput;
+import com.skiwi.rovcontrolsoftware.control.ControlLoop;
+import com.skiwi.rovcontrolsoftware.control.OutputStage;
+import com.skiwi.rovcontrolsoftware.gamepads.VirtualController;
+import com.skiwi.rovcontrolsoftware.gamepads.XboxGamepad;
+import com.skiwi.rovcontrolsoftware.recording.SessionRecorder;
+import com.skiwi.rovcontrolsoftware.replay.SessionReplayer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class HeadlessApplicationTest {
+    private static final long SEGMENT_SIZE = 1024L * 1024;
+    private static final long US = 1_000L;
+    private static final long MS = 1_000_000L;
+
+    private File directory;
+
+    //the clock of the recorded session
+    private long time;
+
+    private SessionRecorder sessionRecorder;
+    private OutputStage outputStage;
+    private ControlEngine controlEngine;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("session").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testReplayProducesTheRecordedCommands() throws IOException {
+        sessionRecorder = SessionRecorder.open(directory, SEGMENT_SIZE, () -> time);
+        //wired like the main window, on a clock this test controls
+        outputStage = new OutputStage((actuator, value, originTime) -> sessionRecorder.recordCommand(actuator, value, originTime), () -> time);
+        ControlEngine.configureOutputStage(outputStage);
+        controlEngine = new ControlEngine(outputStage);
+        ControlLoop controlLoop = new ControlLoop(200, ControlLoop.LatePolicy.CATCH_UP, 5, (tickTime, elapsedTime) -> {
+            sessionRecorder.recordControlTick(tickTime, elapsedTime);
+            controlEngine.step(tickTime, elapsedTime);
+            outputStage.step(tickTime, elapsedTime);
+        });
+        applyControlInput(ControlInput.RESET, 0f);
+
+        VirtualController controller = new VirtualController("Pilot");
+        XboxGamepad gamepad = new XboxGamepad(controller, MS, MS);
+        sessionRecorder.recordGamepadConnected(0);
+        gamepad.setRawInputListener((component, eventTime, value) -> sessionRecorder.recordGamepadInput(0, component, eventTime, value));
+        controlEngine.bind(gamepad);
+
+        //the loop starts off the phase of the first record, and wakes up late by a varying amount
+        long wakeTime = 3700 * US;
+        int wakeCount = 0;
+        for (time = 100 * US; time < 2000 * MS; time += 100 * US) {
+            if (time == 100 * MS) {
+                push(controller, gamepad, XboxGamepad.Component.RIGHT_STICK_X_AXIS, 1f);
+            }
+            else if (time == 300 * MS) {
+                push(controller, gamepad, XboxGamepad.Component.TRIGGER_AXIS, -0.8f);
+            }
+            else if (time == 450 * MS) {
+                push(controller, gamepad, XboxGamepad.Component.RIGHT_STICK_Y_AXIS, -0.6f);
+            }
+            else if (time == 700 * MS) {
+                push(controller, gamepad, XboxGamepad.Component.RIGHT_STICK_X_AXIS, 0f);
+                push(controller, gamepad, XboxGamepad.Component.TRIGGER_AXIS, 0f);
+            }
+            else if (time == 800 * MS) {
+                applyControlInput(ControlInput.PAN_CAMERA, -5f);
+            }
+            else if (time == 1100 * MS) {
+                push(controller, gamepad, XboxGamepad.Component.RIGHT_STICK_Y_AXIS, 0f);
+                applyControlInput(ControlInput.TILT_CAMERA, 5f);
+            }
+            if (time >= wakeTime) {
+                long nextTickTime = controlLoop.advanceTo(time);
+                wakeCount++;
+                //now and then the loop stalls long enough to catch up
+                wakeTime = nextTickTime + ((wakeCount % 50 == 0) ? 17 * MS : (wakeCount * 37 % 11) * 100 * US);
+            }
+        }
+        sessionRecorder.close();
+
+        assertTrue(HeadlessApplication.runReplay(directory, SessionReplayer.AS_FAST_AS_POSSIBLE));
+    }
+
+    private void applyControlInput(ControlInput input, float value) {
+        sessionRecorder.recordControlInput(input, value);
+        controlEngine.onControlInput(input, value);
+    }
+
+    private void push(VirtualController controller, XboxGamepad gamepad, XboxGamepad.Component component, float value) {
+        controller.push(component, value, time);
+        gamepad.pollOnce();
+    }
+}
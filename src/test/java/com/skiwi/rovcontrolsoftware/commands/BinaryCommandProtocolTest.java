@@ -0,0 +1,74 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class BinaryCommandProtocolTest {
+    @Test
+    public void testCrcMatchesTheCheckValue() {
+        //CRC-8 with polynomial 0x07, no reflection and no final xor
+        ByteBuffer buffer = ByteBuffer.wrap("123456789".getBytes(StandardCharsets.US_ASCII));
+        assertEquals((byte)0xF4, BinaryCommandProtocol.crc8(buffer, 0, buffer.capacity()));
+    }
+
+    @Test
+    public void testFrameLayout() {
+        BinaryCommandProtocol protocol = new BinaryCommandProtocol(true);
+        ByteBuffer buffer = ByteBuffer.allocate(protocol.getMaxFrameSize());
+        protocol.encode(Actuator.ML, -10000, buffer);
+
+        assertEquals(6, buffer.position());
+        assertEquals(Actuator.ML.getOpcode(), buffer.get(0));
+        assertEquals((short)-10000, buffer.getShort(1));
+        assertEquals((short)0, buffer.getShort(3));
+        assertEquals(BinaryCommandProtocol.crc8(buffer, 0, 5), buffer.get(5));
+    }
+
+    @Test
+    public void testCrcDetectsACorruptedByte() {
+        BinaryCommandProtocol protocol = new BinaryCommandProtocol(true);
+        ByteBuffer buffer = ByteBuffer.allocate(protocol.getMaxFrameSize());
+        protocol.encode(Actuator.CX, 90, buffer);
+
+        for (int offset = 0; offset < 5; offset++) {
+            for (int bit = 0; bit < 8; bit++) {
+                ByteBuffer corrupted = ByteBuffer.wrap(buffer.array().clone());
+                corrupted.put(offset, (byte)(corrupted.get(offset) ^ (1 << bit)));
+                assertNotEquals(corrupted.get(5), BinaryCommandProtocol.crc8(corrupted, 0, 5));
+            }
+        }
+    }
+
+    @Test
+    public void testSequenceNumbersWrapAround() {
+        BinaryCommandProtocol protocol = new BinaryCommandProtocol(false);
+        ByteBuffer buffer = ByteBuffer.allocate(protocol.getMaxFrameSize());
+        assertEquals(5, protocol.getMaxFrameSize());
+        for (int i = 0; i <= 0xFFFF; i++) {
+            buffer.clear();
+            protocol.encode(Actuator.CX, 90, buffer);
+            assertEquals(i, buffer.getShort(3) & 0xFFFF);
+        }
+        buffer.clear();
+        protocol.encode(Actuator.CX, 90, buffer);
+        assertEquals(0, buffer.getShort(3) & 0xFFFF);
+    }
+
+    @Test
+    public void testValuesOutsideTheInt16RangeAreSaturated() {
+        BinaryCommandProtocol protocol = new BinaryCommandProtocol(false);
+        ByteBuffer buffer = ByteBuffer.allocate(2 * protocol.getMaxFrameSize());
+        protocol.encode(Actuator.ML, 100000, buffer);
+        protocol.encode(Actuator.MR, -100000, buffer);
+
+        assertEquals(Short.MAX_VALUE, buffer.getShort(1));
+        assertEquals(Short.MIN_VALUE, buffer.getShort(6));
+    }
+}
@@ -0,0 +1,144 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class CommandPipelineTest {
+    private static final long FLUSH_DELAY = 50L;
+
+    private RecordingCommandSink commandSink;
+    private CommandPipeline commandPipeline;
+    private boolean started;
+
+    @Before
+    public void setUp() {
+        commandSink = new RecordingCommandSink();
+        commandPipeline = new CommandPipeline(commandSink, FLUSH_DELAY);
+    }
+
+    @After
+    public void tearDown() {
+        if (started) {
+            commandPipeline.stop();
+        }
+    }
+
+    @Test
+    public void testOnlyTheNewestValuePerActuatorIsSent() {
+        commandPipeline.submit(Actuator.CX, 10);
+        commandPipeline.submit(Actuator.ML, 500);
+        commandPipeline.submit(Actuator.CX, 20);
+        commandPipeline.submit(Actuator.CX, 30);
+        assertEquals(2, commandPipeline.getQueueDepth());
+
+        commandPipeline.flush();
+        assertEquals(Arrays.asList("cx 30", "ml 500", "flush"), commandSink.commands);
+        assertEquals(0, commandPipeline.getQueueDepth());
+        assertEquals(4L, commandPipeline.getSubmittedCount());
+        assertEquals(2L, commandPipeline.getCoalescedCount());
+        assertEquals(2L, commandPipeline.getSentCount());
+        assertEquals(1L, commandPipeline.getBatchCount());
+    }
+
+    @Test
+    public void testAnEmptyPipelineDoesNotFlushTheSink() {
+        commandPipeline.flush();
+        commandPipeline.submit(Actuator.CX, 10);
+        commandPipeline.flush();
+        commandPipeline.flush();
+
+        assertEquals(Arrays.asList("cx 10", "flush"), commandSink.commands);
+        assertEquals(1L, commandPipeline.getBatchCount());
+    }
+
+    @Test
+    public void testExtremeValuesAreNotMistakenForAnEmptySlot() {
+        commandPipeline.submit(Actuator.CX, Integer.MIN_VALUE);
+        commandPipeline.submit(Actuator.CY, 0);
+        commandPipeline.submit(Actuator.SY, Integer.MAX_VALUE);
+        commandPipeline.submit(Actuator.SY, -1);
+        assertEquals(3, commandPipeline.getQueueDepth());
+
+        commandPipeline.flush();
+        assertEquals(Arrays.asList("cx " + Integer.MIN_VALUE, "cy 0", "sy -1", "flush"), commandSink.commands);
+        assertEquals(1L, commandPipeline.getCoalescedCount());
+    }
+
+    @Test(timeout = 5000)
+    public void testBatchesGoOutOnTheFlushPeriod() throws InterruptedException {
+        commandPipeline.submit(Actuator.CX, 10);
+        long startTime = System.nanoTime();
+        commandPipeline.start();
+        started = true;
+
+        long firstFlushTime = commandSink.flushTimes.take();
+        commandPipeline.submit(Actuator.CX, 20);
+        long secondFlushTime = commandSink.flushTimes.take();
+        //a little slack for the timer
+        long minInterval = TimeUnit.MILLISECONDS.toNanos(FLUSH_DELAY * 4 / 5);
+        assertTrue("The first batch went out after " + (firstFlushTime - startTime) + " ns", firstFlushTime - startTime >= minInterval);
+        assertTrue("The second batch went out after " + (secondFlushTime - firstFlushTime) + " ns", secondFlushTime - firstFlushTime >= minInterval);
+
+        //nothing pending, nothing sent
+        TimeUnit.MILLISECONDS.sleep(3 * FLUSH_DELAY);
+        assertTrue(commandSink.flushTimes.isEmpty());
+        assertEquals(Arrays.asList("cx 10", "flush", "cx 20", "flush"), commandSink.commands);
+    }
+
+    @Test
+    public void testAFailedBatchIsCountedAsDropped() {
+        commandSink.failFlush = true;
+        commandPipeline.submit(Actuator.CX, 10);
+        commandPipeline.submit(Actuator.CY, 20);
+        commandPipeline.submit(Actuator.CY, 30);
+        commandPipeline.flush();
+
+        assertEquals(2L, commandPipeline.getDroppedCount());
+        assertEquals(0L, commandPipeline.getSentCount());
+        assertEquals(0L, commandPipeline.getBatchCount());
+        assertEquals(0, commandPipeline.getQueueDepth());
+
+        //the next batch goes out as usual
+        commandSink.failFlush = false;
+        commandSink.commands.clear();
+        commandPipeline.submit(Actuator.CX, 40);
+        commandPipeline.flush();
+        assertEquals(Arrays.asList("cx 40", "flush"), commandSink.commands);
+        assertEquals(1L, commandPipeline.getSentCount());
+        assertEquals(2L, commandPipeline.getDroppedCount());
+    }
+
+    private static class RecordingCommandSink implements CommandSink {
+        private final List<String> commands = new ArrayList<>();
+        private final BlockingQueue<Long> flushTimes = new LinkedBlockingQueue<>();
+        private volatile boolean failFlush;
+
+        @Override
+        public synchronized void send(Actuator actuator, int value) {
+            commands.add(actuator.getKey() + " " + value);
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (failFlush) {
+                throw new IOException("The link is down");
+            }
+            commands.add("flush");
+            flushTimes.add(System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class ConnectionManagerTest {
+    private static final int VALUE_COUNT = 20000;
+
+    private OfflineCommandBuffer offlineCommandBuffer;
+    private ConnectionManager connectionManager;
+    private ServerSocket serverSocket;
+
+    @Before
+    public void setUp() {
+        offlineCommandBuffer = new SlowOfflineCommandBuffer();
+        connectionManager = new ConnectionManager(offlineCommandBuffer, 1000, 0L, 5L, 10L);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        connectionManager.close();
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testSendWhileOfflineIsBuffered() {
+        connectionManager.send(Actuator.CX, 10);
+        connectionManager.send(Actuator.CX, 20);
+        connectionManager.send(Actuator.ML, 500);
+
+        assertFalse(connectionManager.isConnected());
+        assertEquals(2, offlineCommandBuffer.size());
+        assertEquals(1L, offlineCommandBuffer.getCollapsedCount());
+    }
+
+    @Test(timeout = 20000)
+    public void testReconnectReplaysBufferedStateBeforeNewerCommands() throws Exception {
+        //nothing listens on the port yet, so the manager keeps retrying while commands are sent
+        int port = reservePort();
+        connectionManager.configure(InetAddress.getLoopbackAddress().getHostAddress(), port, TextCommandProtocol::new);
+
+        Thread sender = new Thread(() -> {
+            try {
+                for (int value = 1; value <= VALUE_COUNT; value++) {
+                    connectionManager.send(Actuator.CX, value);
+                    connectionManager.flush();
+                    if (value % 100 == 0) {
+                        TimeUnit.MICROSECONDS.sleep(200);
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }, "test-sender");
+        sender.start();
+        TimeUnit.MILLISECONDS.sleep(20);
+
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        List<Integer> values = new ArrayList<>();
+        try (Socket socket = serverSocket.accept()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                assertTrue("Unexpected line " + line, line.startsWith("cx "));
+                int value = Integer.parseInt(line.substring(3));
+                values.add(value);
+                if (value == VALUE_COUNT) {
+                    break;
+                }
+            }
+        }
+        sender.join();
+
+        assertFalse("Nothing was received", values.isEmpty());
+        for (int i = 1; i < values.size(); i++) {
+            assertTrue("Value " + values.get(i) + " arrived after the newer value " + values.get(i - 1), values.get(i) > values.get(i - 1));
+        }
+        assertEquals(VALUE_COUNT, (int)values.get(values.size() - 1));
+        assertEquals(0, offlineCommandBuffer.size());
+    }
+
+    @Test(timeout = 30000)
+    public void testCommandsOfALostConnectionAreReplayedOnReconnect() throws Exception {
+        serverSocket = new ServerSocket();
+        serverSocket.setReceiveBufferSize(4096);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        connectionManager.configure(InetAddress.getLoopbackAddress().getHostAddress(), serverSocket.getLocalPort(), TextCommandProtocol::new);
+
+        Socket firstSocket = serverSocket.accept();
+        while (connectionManager.getCommandChannel() == null) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        NioCommandChannel firstChannel = connectionManager.getCommandChannel();
+        int value = 0;
+        while (firstChannel.getPartialWriteCount() == 0) {
+            if (firstChannel.getQueueSize() > 512) {
+                TimeUnit.MILLISECONDS.sleep(1);
+                continue;
+            }
+            connectionManager.send(Actuator.CX, ++value);
+            connectionManager.flush();
+        }
+        //stuck behind the full link when the connection is lost
+        connectionManager.send(Actuator.CX, -1);
+        connectionManager.flush();
+        firstSocket.setSoLinger(true, 0);
+        firstSocket.close();
+
+        try (Socket secondSocket = serverSocket.accept()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(secondSocket.getInputStream(), StandardCharsets.US_ASCII));
+            assertEquals("cx -1", reader.readLine());
+        }
+        assertTrue(connectionManager.getRescuedCommandCount() > 0);
+    }
+
+    @Test(timeout = 20000)
+    public void testAPeerThatDropsEveryConnectionIsRetriedWithBackoff() throws Exception {
+        connectionManager.close();
+        connectionManager = new ConnectionManager(offlineCommandBuffer, 1000, 0L, 20L, 160L);
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        connectionManager.configure(InetAddress.getLoopbackAddress().getHostAddress(), serverSocket.getLocalPort(), TextCommandProtocol::new);
+
+        //retried after 20, 40, 80 and then at most 160 ms
+        long[] acceptTimes = new long[5];
+        for (int i = 0; i < acceptTimes.length; i++) {
+            serverSocket.accept().close();
+            acceptTimes[i] = System.nanoTime();
+        }
+        long lastInterval = TimeUnit.NANOSECONDS.toMillis(acceptTimes[4] - acceptTimes[3]);
+        assertTrue("The last retry came after " + lastInterval + " ms", lastInterval >= 120L);
+    }
+
+    /**
+     * Widens the windows in which a hand-over that is not atomic with sending would reorder or strand commands.
+     */
+    private static class SlowOfflineCommandBuffer extends OfflineCommandBuffer {
+        @Override
+        public void buffer(Actuator actuator, int value) {
+            pause();
+            super.buffer(actuator, value);
+        }
+
+        @Override
+        public int replay(CommandSink commandSink) throws IOException {
+            pause();
+            return super.replay(commandSink);
+        }
+
+        private static void pause() {
+            try {
+                TimeUnit.MILLISECONDS.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static int reservePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class NioCommandChannelTest {
+    private static final int RECEIVE_BUFFER_SIZE = 4096;
+    private static final long MAX_FILL_BYTES = 64L * 1024 * 1024;
+
+    private ServerSocket serverSocket;
+    private NioCommandChannel channel;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket();
+        //a small receive window makes the link fill up quickly once the test stops reading
+        serverSocket.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        serverSocket.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testCommandsArriveInOrder() throws IOException {
+        channel = open(() -> { });
+        try (Socket socket = serverSocket.accept()) {
+            channel.send(Actuator.CX, 90);
+            channel.send(Actuator.ML, -10000);
+            channel.send(Actuator.CX, 0);
+            channel.flush();
+
+            BufferedReader reader = reader(socket);
+            assertEquals("cx 90", reader.readLine());
+            assertEquals("ml -10000", reader.readLine());
+            assertEquals("cx 0", reader.readLine());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testOneFlushWritesMoreThanTheWriteBufferHolds() throws IOException {
+        channel = open(() -> { });
+        try (Socket socket = serverSocket.accept()) {
+            //about ten kilobytes of commands, more than one write buffer full
+            int count = 1000;
+            for (int value = 1; value <= count; value++) {
+                channel.send(Actuator.CX, 100000 + value);
+            }
+            channel.flush();
+
+            BufferedReader reader = reader(socket);
+            for (int value = 1; value <= count; value++) {
+                assertEquals("cx " + (100000 + value), reader.readLine());
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testPartialWritesAreCompletedOnceTheReceiverReads() throws Exception {
+        channel = open(() -> { });
+        try (Socket socket = serverSocket.accept()) {
+            int lastValue = fillLink();
+            assertTrue(channel.getPartialWriteCount() > 0);
+
+            //every value is sent once, so they must arrive complete and in order
+            BufferedReader reader = reader(socket);
+            for (int expected = 1; expected <= lastValue; expected++) {
+                assertEquals("cx " + expected, reader.readLine());
+            }
+            assertEquals(0L, channel.getDroppedCount());
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testUnsentCommandsAreMovedToTheOfflineBuffer() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        channel = open(closed::countDown);
+        Socket socket = serverSocket.accept();
+        fillLink();
+        //these can only be queued, the link is full
+        channel.send(Actuator.CX, -1);
+        channel.send(Actuator.SY, 45);
+        channel.flush();
+
+        //closing with unread data resets the connection
+        socket.setSoLinger(true, 0);
+        socket.close();
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertTrue(channel.awaitTermination(5, TimeUnit.SECONDS));
+        assertFalse(channel.isOpen());
+
+        OfflineCommandBuffer offlineCommandBuffer = new OfflineCommandBuffer();
+        offlineCommandBuffer.buffer(Actuator.SY, 90);
+        assertEquals(1, channel.drainUnsent(offlineCommandBuffer));
+
+        Map<Actuator, Integer> replayed = replay(offlineCommandBuffer);
+        assertEquals(Integer.valueOf(-1), replayed.get(Actuator.CX));
+        //the command buffered after the connection was lost is newer than the one the channel still held
+        assertEquals(Integer.valueOf(90), replayed.get(Actuator.SY));
+        assertEquals(2, replayed.size());
+    }
+
+    @Test(timeout = 10000)
+    public void testSendAfterCloseFails() throws Exception {
+        channel = open(() -> { });
+        serverSocket.accept().close();
+        channel.close();
+        assertTrue(channel.awaitTermination(5, TimeUnit.SECONDS));
+        try {
+            channel.send(Actuator.CX, 1);
+            fail("Sending on a closed channel should fail");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    /**
+     * Sends a rising sequence of camera values until writes no longer complete, waiting for the queue whenever it is
+     * half full so that nothing is dropped.
+     *
+     * @return  the last value sent
+     */
+    private int fillLink() throws IOException, InterruptedException {
+        int value = 0;
+        while (channel.getPartialWriteCount() == 0) {
+            assertTrue("The link never filled up", channel.getBytesWritten() < MAX_FILL_BYTES);
+            if (channel.getQueueSize() > 512) {
+                TimeUnit.MILLISECONDS.sleep(1);
+                continue;
+            }
+            channel.send(Actuator.CX, ++value);
+            channel.flush();
+        }
+        return value;
+    }
+
+    private NioCommandChannel open(Runnable closeListener) throws IOException {
+        return NioCommandChannel.open((InetSocketAddress)serverSocket.getLocalSocketAddress(), 1000, new TextCommandProtocol(), closeListener);
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+    }
+
+    private static Map<Actuator, Integer> replay(OfflineCommandBuffer offlineCommandBuffer) throws IOException {
+        Map<Actuator, Integer> replayed = new EnumMap<>(Actuator.class);
+        offlineCommandBuffer.replay(new CommandSink() {
+            @Override
+            public void send(Actuator actuator, int value) {
+                replayed.put(actuator, value);
+            }
+
+            @Override
+            public void flush() {
+            }
+        });
+        return replayed;
+    }
+}
@@ -0,0 +1,102 @@
+package com.skiwi.rovcontrolsoftware.commands;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class OfflineCommandBufferTest {
+    @Test
+    public void testOnlyTheLastValuePerActuatorIsKept() throws IOException {
+        OfflineCommandBuffer offlineCommandBuffer = new OfflineCommandBuffer();
+        offlineCommandBuffer.buffer(Actuator.CX, 10);
+        offlineCommandBuffer.buffer(Actuator.CX, 20);
+        offlineCommandBuffer.buffer(Actuator.CX, 30);
+        offlineCommandBuffer.buffer(Actuator.ML, 500);
+
+        assertEquals(2, offlineCommandBuffer.size());
+        assertEquals(4L, offlineCommandBuffer.getBufferedCount());
+        assertEquals(2L, offlineCommandBuffer.getCollapsedCount());
+
+        RecordingSink sink = new RecordingSink();
+        assertEquals(2, offlineCommandBuffer.replay(sink));
+        assertEquals(Arrays.asList("cx 30", "ml 500"), sink.commands);
+    }
+
+    @Test
+    public void testReplayFollowsTheActuatorOrderAndFlushesOnce() throws IOException {
+        OfflineCommandBuffer offlineCommandBuffer = new OfflineCommandBuffer();
+        offlineCommandBuffer.buffer(Actuator.MR, 5);
+        offlineCommandBuffer.buffer(Actuator.SY, 45);
+        offlineCommandBuffer.buffer(Actuator.CX, 90);
+
+        RecordingSink sink = new RecordingSink();
+        offlineCommandBuffer.replay(sink);
+        assertEquals(Arrays.asList("cx 90", "sy 45", "mr 5"), sink.commands);
+        assertEquals(1, sink.flushCount);
+        assertEquals(0, offlineCommandBuffer.size());
+        assertEquals(3L, offlineCommandBuffer.getReplayedCount());
+
+        //nothing is left to replay
+        RecordingSink secondSink = new RecordingSink();
+        assertEquals(0, offlineCommandBuffer.replay(secondSink));
+        assertEquals(0, secondSink.flushCount);
+    }
+
+    @Test
+    public void testFailedReplayKeepsTheState() {
+        OfflineCommandBuffer offlineCommandBuffer = new OfflineCommandBuffer();
+        offlineCommandBuffer.buffer(Actuator.CX, 90);
+        offlineCommandBuffer.buffer(Actuator.CY, 45);
+        try {
+            offlineCommandBuffer.replay(new CommandSink() {
+                @Override
+                public void send(Actuator actuator, int value) throws IOException {
+                    throw new IOException("Connection reset");
+                }
+
+                @Override
+                public void flush() {
+                }
+            });
+            fail("The failure of the sink should be thrown");
+        } catch (IOException e) {
+            //expected
+        }
+        assertEquals(2, offlineCommandBuffer.size());
+    }
+
+    @Test
+    public void testBufferIfAbsentKeepsNewerValues() throws IOException {
+        OfflineCommandBuffer offlineCommandBuffer = new OfflineCommandBuffer();
+        offlineCommandBuffer.buffer(Actuator.CX, 90);
+        assertFalse(offlineCommandBuffer.bufferIfAbsent(Actuator.CX, 10));
+        assertTrue(offlineCommandBuffer.bufferIfAbsent(Actuator.CY, 20));
+
+        RecordingSink sink = new RecordingSink();
+        offlineCommandBuffer.replay(sink);
+        assertEquals(Arrays.asList("cx 90", "cy 20"), sink.commands);
+    }
+
+    private static class RecordingSink implements CommandSink {
+        private final List<String> commands = new ArrayList<>();
+        private int flushCount;
+
+        @Override
+        public void send(Actuator actuator, int value) {
+            commands.add(actuator.getKey() + " " + value);
+        }
+
+        @Override
+        public void flush() {
+            flushCount++;
+        }
+    }
+}
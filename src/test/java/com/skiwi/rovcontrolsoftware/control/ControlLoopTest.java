@@ -0,0 +1,98 @@
+package com.skiwi.rovcontrolsoftware.control;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class ControlLoopTest {
+    private static final long MS = 1_000_000L;
+
+    private final List<String> ticks = new ArrayList<>();
+
+    @Test
+    public void testTicksFollowTheGrid() {
+        ControlLoop controlLoop = loop(ControlLoop.LatePolicy.CATCH_UP, 5);
+        assertEquals(10 * MS, controlLoop.advanceTo(0L));
+        assertEquals(10 * MS, controlLoop.advanceTo(5 * MS));
+        //a late tick does not shift the ones after it
+        assertEquals(20 * MS, controlLoop.advanceTo(12 * MS));
+        assertEquals(30 * MS, controlLoop.advanceTo(20 * MS));
+
+        assertTicks("0/0", "12/12", "20/8");
+        assertEquals(0L, controlLoop.getOverrunCount());
+    }
+
+    @Test
+    public void testCatchUpRunsMissedTicksOnTheGrid() {
+        ControlLoop controlLoop = loop(ControlLoop.LatePolicy.CATCH_UP, 5);
+        controlLoop.advanceTo(0L);
+        controlLoop.advanceTo(10 * MS);
+        assertEquals(50 * MS, controlLoop.advanceTo(43 * MS));
+        controlLoop.advanceTo(50 * MS);
+
+        assertTicks("0/0", "10/10", "20/10", "30/10", "43/13", "50/7");
+        assertEquals(1L, controlLoop.getOverrunCount());
+        assertEquals(0L, controlLoop.getSkippedTickCount());
+    }
+
+    @Test
+    public void testCatchUpSkipsBeyondTheMaximum() {
+        ControlLoop controlLoop = loop(ControlLoop.LatePolicy.CATCH_UP, 1);
+        controlLoop.advanceTo(0L);
+        controlLoop.advanceTo(10 * MS);
+        assertEquals(70 * MS, controlLoop.advanceTo(63 * MS));
+
+        //the skipped ticks are integrated by the first tick that runs
+        assertTicks("0/0", "10/10", "50/40", "63/13");
+        assertEquals(3L, controlLoop.getSkippedTickCount());
+    }
+
+    @Test
+    public void testSkipRunsOnlyTheDueTick() {
+        ControlLoop controlLoop = loop(ControlLoop.LatePolicy.SKIP, 5);
+        controlLoop.advanceTo(0L);
+        controlLoop.advanceTo(10 * MS);
+        assertEquals(50 * MS, controlLoop.advanceTo(43 * MS));
+        controlLoop.advanceTo(50 * MS);
+
+        assertTicks("0/0", "10/10", "43/33", "50/7");
+        assertEquals(2L, controlLoop.getSkippedTickCount());
+        assertEquals(4L, controlLoop.getTickCount());
+    }
+
+    @Test
+    public void testSameTimesRunTheSameTicks() {
+        long[] times = { 3 * MS, 7 * MS, 31 * MS, 32 * MS, 95 * MS, 96 * MS };
+        List<String> firstRun = run(times);
+        assertEquals(firstRun, run(times));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRateOutOfRange() {
+        new ControlLoop(ControlLoop.MAX_RATE + 1, ControlLoop.LatePolicy.SKIP, 0, (time, elapsedTime) -> { });
+    }
+
+    private List<String> run(long[] times) {
+        ticks.clear();
+        ControlLoop controlLoop = loop(ControlLoop.LatePolicy.CATCH_UP, 2);
+        for (long time : times) {
+            controlLoop.advanceTo(time);
+        }
+        return new ArrayList<>(ticks);
+    }
+
+    private ControlLoop loop(ControlLoop.LatePolicy latePolicy, int maxCatchUpTicks) {
+        return new ControlLoop(100, latePolicy, maxCatchUpTicks, (time, elapsedTime) -> ticks.add(time / MS + "/" + elapsedTime / MS));
+    }
+
+    private void assertTicks(String... expectedTicks) {
+        assertEquals(Arrays.asList(expectedTicks), ticks);
+    }
+}
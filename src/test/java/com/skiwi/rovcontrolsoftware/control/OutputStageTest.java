@@ -0,0 +1,156 @@
+package com.skiwi.rovcontrolsoftware.control;
+
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class OutputStageTest {
+    private static final long MS = 1_000_000L;
+
+    private final List<String> outputs = new ArrayList<>();
+    private final List<Long> originTimes = new ArrayList<>();
+    private long time;
+    private OutputStage outputStage;
+
+    @Before
+    public void setUp() {
+        outputStage = new OutputStage((actuator, value, originTime) -> {
+            outputs.add(actuator.getKey() + " " + value);
+            originTimes.add(originTime);
+        }, () -> time);
+    }
+
+    @Test
+    public void testUnchangedValuesAreSuppressed() {
+        outputStage.onOutput(Actuator.CX, 90);
+        outputStage.onOutput(Actuator.CX, 90);
+        outputStage.onOutput(Actuator.CY, 90);
+        outputStage.onOutput(Actuator.CX, 91);
+
+        assertOutputs("cx 90", "cy 90", "cx 91");
+        assertEquals(1L, outputStage.getSuppressedCount());
+        assertEquals(3L, outputStage.getSentCount());
+    }
+
+    @Test
+    public void testValuesAboveTheMaximumRateAreHeldBack() {
+        outputStage.setLimits(Actuator.CX, 50, 0, 0L);
+        outputStage.onOutput(Actuator.CX, 90);
+        time = 5 * MS;
+        outputStage.onOutput(Actuator.CX, 95);
+        outputStage.step(time, 5 * MS);
+        time = 10 * MS;
+        outputStage.onOutput(Actuator.CX, 100);
+        outputStage.step(time, 5 * MS);
+        assertOutputs("cx 90");
+
+        //only the newest held back value goes out
+        time = 20 * MS;
+        outputStage.step(time, 10 * MS);
+        assertOutputs("cx 90", "cx 100");
+        assertEquals(2L, outputStage.getDeferredCount());
+    }
+
+    @Test
+    public void testReturningToTheSentValueCancelsAHeldBackValue() {
+        outputStage.setLimits(Actuator.CX, 50, 0, 0L);
+        outputStage.onOutput(Actuator.CX, 90);
+        time = 5 * MS;
+        outputStage.onOutput(Actuator.CX, 95);
+        outputStage.onOutput(Actuator.CX, 90);
+        time = 40 * MS;
+        outputStage.step(time, 35 * MS);
+
+        assertOutputs("cx 90");
+    }
+
+    @Test
+    public void testSlewRateLimitsEveryStep() {
+        outputStage.setLimits(Actuator.ML, 50, 40000, 0L);
+        outputStage.onOutput(Actuator.ML, 0);
+        time = 20 * MS;
+        outputStage.onOutput(Actuator.ML, 10000);
+        for (int i = 0; i < 20; i++) {
+            time += 20 * MS;
+            outputStage.step(time, 20 * MS);
+        }
+
+        //800 per 20 milliseconds at 40000 per second
+        List<String> expected = new ArrayList<>();
+        expected.add("ml 0");
+        for (int value = 800; value < 10000; value += 800) {
+            expected.add("ml " + value);
+        }
+        expected.add("ml 10000");
+        assertEquals(expected, outputs);
+        assertEquals(12L, outputStage.getSlewLimitedCount());
+    }
+
+    @Test
+    public void testSlewRateDoesNotGrowWithALongPause() {
+        outputStage.setLimits(Actuator.ML, 50, 40000, 0L);
+        outputStage.onOutput(Actuator.ML, 0);
+        time = 1000 * MS;
+        outputStage.onOutput(Actuator.ML, -10000);
+
+        assertOutputs("ml 0", "ml -800");
+    }
+
+    @Test
+    public void testKeepalives() {
+        outputStage.setLimits(Actuator.CX, 50, 0, 1000L);
+        outputStage.step(time, 0L);
+        //nothing is sent before a first value
+        assertOutputs();
+
+        outputStage.onOutput(Actuator.CX, 90);
+        time = 999 * MS;
+        outputStage.step(time, 999 * MS);
+        assertOutputs("cx 90");
+
+        time = 1000 * MS;
+        outputStage.step(time, MS);
+        time = 1500 * MS;
+        outputStage.step(time, 500 * MS);
+        time = 2000 * MS;
+        outputStage.step(time, 500 * MS);
+        assertOutputs("cx 90", "cx 90", "cx 90");
+        assertEquals(2L, outputStage.getKeepaliveCount());
+    }
+
+    @Test
+    public void testOnlyTheFirstValueTowardsATargetCarriesItsOrigin() {
+        outputStage.setLimits(Actuator.ML, 50, 40000, 500L);
+        outputStage.onOutput(Actuator.ML, 0, 1L);
+        time = 5 * MS;
+        //held back by the rate and then slew limited, so it goes out on the control loop
+        outputStage.onOutput(Actuator.ML, 1600, 2L);
+        for (int i = 0; i < 3; i++) {
+            time += 20 * MS;
+            outputStage.step(time, 20 * MS);
+        }
+        time += 500 * MS;
+        outputStage.step(time, 500 * MS);
+
+        assertOutputs("ml 0", "ml 800", "ml 1600", "ml 1600");
+        assertEquals(Arrays.asList(1L, 2L, 0L, 0L), originTimes);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeLimits() {
+        outputStage.setLimits(Actuator.CX, -1, 0, 0L);
+    }
+
+    private void assertOutputs(String... expectedOutputs) {
+        assertEquals(Arrays.asList(expectedOutputs), outputs);
+    }
+}
@@ -0,0 +1,182 @@
+package com.skiwi.rovcontrolsoftware.gamepads;
+
+import com.skiwi.rovcontrolsoftware.control.ControlEngine;
+import net.java.games.input.Controller;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class GamepadDiscoveryTest {
+    private static final long SCAN_INTERVAL = 60_000L;   //only the first scan and the rescans of a test run
+    private static final long POLL_PERIOD = 1_000_000L;
+    private static final long TIMEOUT = 5000L;
+
+    private final AtomicReference<Controller[]> controllers = new AtomicReference<>(new Controller[0]);
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+    private GamepadDiscovery gamepadDiscovery;
+
+    @Before
+    public void setUp() {
+        gamepadDiscovery = new GamepadDiscovery(controllers::get, SCAN_INTERVAL, POLL_PERIOD, POLL_PERIOD);
+        gamepadDiscovery.setGamepadListener(new GamepadListener() {
+            @Override
+            public void onConnected(XboxGamepad gamepad) {
+                events.add("connected " + gamepad.getName());
+            }
+
+            @Override
+            public void onDisconnected(XboxGamepad gamepad) {
+                events.add("disconnected " + gamepad.getName());
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        gamepadDiscovery.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testGamepadsComeAndGo() throws Exception {
+        VirtualController first = new VirtualController("First");
+        controllers.set(new Controller[] { first });
+        gamepadDiscovery.start();
+        assertEquals("connected First", events.take());
+
+        VirtualController second = new VirtualController("Second");
+        controllers.set(new Controller[] { first, second });
+        rescan();
+        assertEquals("connected Second", events.take());
+        assertEquals(Arrays.asList(first, second), controllersOf(gamepadDiscovery));
+
+        //gone as soon as a poll fails, without waiting for a scan
+        first.disconnect();
+        controllers.set(new Controller[] { second });
+        assertEquals("disconnected First", events.take());
+        assertEquals(Arrays.asList(second), controllersOf(gamepadDiscovery));
+        assertEquals(2L, gamepadDiscovery.getConnectedCount());
+        assertEquals(1L, gamepadDiscovery.getDisconnectedCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testNewObjectsForKnownDevicesAreMatchedByName() throws Exception {
+        VirtualController pad = new VirtualController("Pad");
+        controllers.set(new Controller[] { pad });
+        gamepadDiscovery.start();
+        assertEquals("connected Pad", events.take());
+
+        //a new enumeration returns new objects for the devices that were already there
+        controllers.set(new Controller[] { new VirtualController("Pad") });
+        rescan();
+        assertTrue(events.isEmpty());
+        assertEquals(Arrays.asList(pad), controllersOf(gamepadDiscovery));
+
+        //only the objects beyond the amount of known gamepads of that name are new devices
+        VirtualController secondPad = new VirtualController("Pad");
+        controllers.set(new Controller[] { new VirtualController("Pad"), secondPad, new VirtualController("Other") });
+        rescan();
+        assertEquals("connected Pad", events.take());
+        assertEquals("connected Other", events.take());
+        assertEquals(3, gamepadDiscovery.getGamepads().size());
+        assertSame(secondPad, gamepadDiscovery.getGamepads().get(1).getController());
+    }
+
+    @Test(timeout = 10000)
+    public void testAFailingListenerDoesNotStopDiscovery() throws Exception {
+        gamepadDiscovery.setGamepadListener(new GamepadListener() {
+            @Override
+            public void onConnected(XboxGamepad gamepad) {
+                events.add("connected " + gamepad.getName());
+                throw new IllegalStateException("Listener failure for " + gamepad.getName());
+            }
+
+            @Override
+            public void onDisconnected(XboxGamepad gamepad) {
+                events.add("disconnected " + gamepad.getName());
+                throw new IllegalStateException("Listener failure for " + gamepad.getName());
+            }
+        });
+        VirtualController first = new VirtualController("First");
+        controllers.set(new Controller[] { first });
+        gamepadDiscovery.start();
+        assertEquals("connected First", events.take());
+
+        VirtualController second = new VirtualController("Second");
+        controllers.set(new Controller[] { first, second });
+        rescan();
+        assertEquals("connected Second", events.take());
+
+        //the gamepad still polls after the failure, or its unplugging would go unnoticed
+        first.disconnect();
+        assertEquals("disconnected First", events.take());
+        assertEquals(Arrays.asList(second), controllersOf(gamepadDiscovery));
+    }
+
+    @Test(timeout = 10000)
+    public void testTwoGamepadsTakeThePilotAndCoPilotSeats() throws Exception {
+        ControlEngine controlEngine = new ControlEngine((actuator, value, originTime) -> { });
+        gamepadDiscovery.setGamepadListener(new GamepadListener() {
+            @Override
+            public void onConnected(XboxGamepad gamepad) {
+                controlEngine.bind(gamepad);
+                events.add("connected " + gamepad.getName());
+            }
+
+            @Override
+            public void onDisconnected(XboxGamepad gamepad) {
+                controlEngine.unbind(gamepad);
+                events.add("disconnected " + gamepad.getName());
+            }
+        });
+        VirtualController first = new VirtualController("First");
+        VirtualController second = new VirtualController("Second");
+        controllers.set(new Controller[] { first, second });
+        gamepadDiscovery.start();
+        assertEquals("connected First", events.take());
+        assertEquals("connected Second", events.take());
+
+        assertSame(first, controlEngine.getPilot().getController());
+        assertSame(second, controlEngine.getCoPilot().getController());
+
+        //the co-pilot takes over from a pilot that is unplugged
+        first.disconnect();
+        assertEquals("disconnected First", events.take());
+        assertSame(second, controlEngine.getPilot().getController());
+        assertNull(controlEngine.getCoPilot());
+    }
+
+    /**
+     * Scans and waits until the scan has finished.
+     */
+    private void rescan() throws InterruptedException {
+        long scanCount = gamepadDiscovery.getScanDuration().getCount();
+        gamepadDiscovery.rescan();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+        while (gamepadDiscovery.getScanDuration().getCount() == scanCount) {
+            assertTrue("The rescan never finished", System.nanoTime() - deadline < 0);
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+    }
+
+    private static List<Controller> controllersOf(GamepadDiscovery gamepadDiscovery) {
+        List<Controller> controllers = new ArrayList<>();
+        for (XboxGamepad gamepad : gamepadDiscovery.getGamepads()) {
+            controllers.add(gamepad.getController());
+        }
+        return controllers;
+    }
+}
@@ -0,0 +1,56 @@
+package com.skiwi.rovcontrolsoftware.gamepads;
+
+import net.java.games.input.Component;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class XboxGamepadTest {
+    private static final XboxGamepad.Component[] DPAD_DIRECTIONS = {
+        XboxGamepad.Component.DPAD_UP, XboxGamepad.Component.DPAD_UPRIGHT, XboxGamepad.Component.DPAD_RIGHT,
+        XboxGamepad.Component.DPAD_DOWNRIGHT, XboxGamepad.Component.DPAD_DOWN, XboxGamepad.Component.DPAD_DOWNLEFT,
+        XboxGamepad.Component.DPAD_LEFT, XboxGamepad.Component.DPAD_UPLEFT
+    };
+
+    private VirtualController controller;
+    private XboxGamepad gamepad;
+
+    @Before
+    public void setUp() {
+        controller = new VirtualController("Virtual gamepad");
+        gamepad = new XboxGamepad(controller, 1_000_000L, 1_000_000L);
+    }
+
+    @Test
+    public void testDpadReportsOnlyTheDirectionItPointsIn() {
+        push(Component.POV.UP);
+        assertDpad(XboxGamepad.Component.DPAD_UP);
+
+        //straight to the next direction, without passing the centre
+        push(Component.POV.RIGHT);
+        assertDpad(XboxGamepad.Component.DPAD_RIGHT);
+
+        push(Component.POV.CENTER);
+        assertDpad(null);
+    }
+
+    private void push(float povValue) {
+        controller.push(XboxGamepad.Component.DPAD_ANY, povValue, 0L);
+        assertEquals(1, gamepad.pollOnce());
+    }
+
+    /**
+     * @param expectedDirection the only direction that should be pressed, or null for none
+     */
+    private void assertDpad(XboxGamepad.Component expectedDirection) {
+        GamepadState state = gamepad.getState();
+        assertEquals(expectedDirection != null, state.isPressed(XboxGamepad.Component.DPAD_ANY));
+        for (XboxGamepad.Component direction : DPAD_DIRECTIONS) {
+            assertEquals(direction.toString(), direction == expectedDirection, state.isPressed(direction));
+        }
+    }
+}
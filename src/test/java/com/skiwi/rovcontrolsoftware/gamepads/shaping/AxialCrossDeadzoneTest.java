@@ -0,0 +1,39 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class AxialCrossDeadzoneTest {
+    private static final float DELTA = 1e-5f;
+
+    //x, y, shaped x, shaped y
+    private static final float[][] CASES = {
+        { 0f, 0f, 0f, 0f },
+        { 0.2f, 0.2f, 0f, 0f },
+        { 0.25f, -0.25f, 0f, 0f },          //on the edge of both bars
+        { 0.2f, 0.8f, 0f, 0.8f * 0.55f / 0.75f },   //inside the vertical bar of the cross, only y moves
+        { -0.5f, 0.1f, -0.5f * 0.25f / 0.75f, 0f },
+        { 1f, -1f, 1f, -1f }
+    };
+
+    @Test
+    public void testShapedValues() {
+        StickFilter deadzone = new AxialCrossDeadzone(0.25f);
+        float[] output = new float[2];
+        for (float[] testCase : CASES) {
+            deadzone.apply(testCase[0], testCase[1], output);
+            String input = "(" + testCase[0] + ", " + testCase[1] + ")";
+            assertEquals(input, testCase[2], output[0], DELTA);
+            assertEquals(input, testCase[3], output[1], DELTA);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFullDeadzone() {
+        new AxialCrossDeadzone(1f);
+    }
+}
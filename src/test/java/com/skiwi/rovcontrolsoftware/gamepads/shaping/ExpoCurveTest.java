@@ -0,0 +1,42 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class ExpoCurveTest {
+    private static final float DELTA = 1e-6f;
+
+    //expo, value, result
+    private static final float[][] CASES = {
+        { 0f, 0.5f, 0.5f },
+        { 0f, -0.3f, -0.3f },
+        { 1f, 0.5f, 0.125f },
+        { 1f, -0.5f, -0.125f },
+        { 0.5f, 0.5f, 0.3125f },
+        { 0.5f, 0f, 0f },
+        { 0.5f, 1f, 1f },
+        { 0.5f, -1f, -1f },
+        { 1f, 1f, 1f }
+    };
+
+    @Test
+    public void testCurve() {
+        for (float[] testCase : CASES) {
+            assertEquals("expo " + testCase[0] + ", value " + testCase[1], testCase[2], new ExpoCurve(testCase[0]).apply(testCase[1]), DELTA);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeExpo() {
+        new ExpoCurve(-0.1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExpoAboveOne() {
+        new ExpoCurve(1.1f);
+    }
+}
@@ -0,0 +1,63 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class HysteresisDeadzoneTest {
+    private static final float DELTA = 1e-5f;
+
+    //x, y, shaped x, shaped y, applied in order as the deadzone keeps state
+    private static final float[][] STEPS = {
+        { 0.25f, 0f, 0f, 0f },              //between the thresholds, still in the deadzone it starts in
+        { 0.3f, 0f, 0f, 0f },               //on the exit threshold
+        { 0.4f, 0f, 0.25f, 0f },            //past the exit threshold, scaled from the enter threshold
+        { 0.25f, 0f, 0.0625f, 0f },         //between the thresholds, still out of the deadzone
+        { 0.2f, 0f, 0f, 0f },               //on the enter threshold, out but without deflection
+        { 0.1f, 0f, 0f, 0f },               //below the enter threshold
+        { 0.25f, 0f, 0f, 0f },              //between the thresholds, back in the deadzone
+        { 0.3f, 0.3f, 0.198223f, 0.198223f },
+        { 0f, 0f, 0f, 0f },
+        { -1f, 0f, -1f, 0f }
+    };
+
+    @Test
+    public void testEnterAndExitThresholds() {
+        StickFilter deadzone = new HysteresisDeadzone(0.2f, 0.3f);
+        float[] output = new float[2];
+        for (int i = 0; i < STEPS.length; i++) {
+            float[] step = STEPS[i];
+            deadzone.apply(step[0], step[1], output);
+            String input = "step " + i + " (" + step[0] + ", " + step[1] + ")";
+            assertEquals(input, step[2], output[0], DELTA);
+            assertEquals(input, step[3], output[1], DELTA);
+        }
+    }
+
+    @Test
+    public void testEqualThresholdsActLikeARadialDeadzone() {
+        StickFilter deadzone = new HysteresisDeadzone(0.25f, 0.25f);
+        StickFilter radialDeadzone = new ScaledRadialDeadzone(0.25f);
+        float[] output = new float[2];
+        float[] expected = new float[2];
+        for (float x = -1f; x <= 1f; x += 0.05f) {
+            deadzone.apply(x, 0.1f, output);
+            radialDeadzone.apply(x, 0.1f, expected);
+            assertEquals("x = " + x, expected[0], output[0], DELTA);
+            assertEquals("x = " + x, expected[1], output[1], DELTA);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExitBelowEnter() {
+        new HysteresisDeadzone(0.3f, 0.2f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFullExitDeadzone() {
+        new HysteresisDeadzone(0.2f, 1f);
+    }
+}
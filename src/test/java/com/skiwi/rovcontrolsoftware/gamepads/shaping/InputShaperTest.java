@@ -0,0 +1,117 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+import com.skiwi.rovcontrolsoftware.gamepads.XboxGamepad.Component;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class InputShaperTest {
+    private static final float DELTA = 1e-5f;
+
+    private static final int LEFT_X = Component.LEFT_STICK_X_AXIS.ordinal();
+    private static final int LEFT_Y = Component.LEFT_STICK_Y_AXIS.ordinal();
+    private static final int TRIGGER = Component.TRIGGER_AXIS.ordinal();
+
+    private final float[] rawValues = new float[Component.values().length];
+    private final float[] shapedValues = new float[Component.values().length];
+
+    @Test
+    public void testAStickIsShapedAsAPair() {
+        InputShaper inputShaper = InputShaper.builder()
+            .stickFilter(Component.LEFT_STICK_X_AXIS, Component.LEFT_STICK_Y_AXIS, new ScaledRadialDeadzone(0.25f))
+            .build();
+        rawValues[LEFT_X] = 0.3f;
+        rawValues[LEFT_Y] = 0.4f;
+
+        //either axis of the stick shapes both
+        assertEquals(LEFT_X, inputShaper.shape(LEFT_Y, rawValues, shapedValues));
+        assertEquals(0.2f, shapedValues[LEFT_X], DELTA);
+        assertEquals(0.8f / 3f, shapedValues[LEFT_Y], DELTA);
+
+        rawValues[LEFT_X] = -0.6f;
+        rawValues[LEFT_Y] = 0.8f;
+        assertEquals(LEFT_Y, inputShaper.shape(LEFT_X, rawValues, shapedValues));
+        assertEquals(-0.6f, shapedValues[LEFT_X], DELTA);
+        assertEquals(0.8f, shapedValues[LEFT_Y], DELTA);
+    }
+
+    @Test
+    public void testAnUnconfiguredAxisPassesThrough() {
+        InputShaper inputShaper = InputShaper.builder()
+            .stickFilter(Component.LEFT_STICK_X_AXIS, Component.LEFT_STICK_Y_AXIS, new ScaledRadialDeadzone(0.25f))
+            .build();
+        for (float value : new float[] { -1f, -0.01f, 0f, 0.2f, 1f }) {
+            rawValues[TRIGGER] = value;
+            assertEquals(-1, inputShaper.shape(TRIGGER, rawValues, shapedValues));
+            assertEquals(value, shapedValues[TRIGGER], 0f);
+        }
+    }
+
+    @Test
+    public void testAxisFiltersApplyInOrder() {
+        AxisFilter halve = value -> value / 2f;
+        InputShaper deadzoneFirst = InputShaper.builder()
+            .axisFilter(Component.TRIGGER_AXIS, new LinearDeadzone(0.25f))
+            .axisFilter(Component.TRIGGER_AXIS, halve)
+            .build();
+        InputShaper halveFirst = InputShaper.builder()
+            .axisFilter(Component.TRIGGER_AXIS, halve)
+            .axisFilter(Component.TRIGGER_AXIS, new LinearDeadzone(0.25f))
+            .build();
+        rawValues[TRIGGER] = 0.5f;
+
+        deadzoneFirst.shape(TRIGGER, rawValues, shapedValues);
+        assertEquals(0.5f / 6f, shapedValues[TRIGGER], DELTA);
+        halveFirst.shape(TRIGGER, rawValues, shapedValues);
+        assertEquals(0f, shapedValues[TRIGGER], DELTA);
+    }
+
+    @Test
+    public void testTheResponseCurveComesAfterTheDeadzones() {
+        InputShaper inputShaper = InputShaper.builder()
+            .stickFilter(Component.LEFT_STICK_X_AXIS, Component.LEFT_STICK_Y_AXIS, new ScaledRadialDeadzone(0.25f))
+            .responseCurve(Component.LEFT_STICK_X_AXIS, new ExpoCurve(1f))
+            .responseCurve(Component.TRIGGER_AXIS, new ExpoCurve(1f))
+            .axisFilter(Component.TRIGGER_AXIS, new LinearDeadzone(0.25f))
+            .build();
+        rawValues[LEFT_X] = -0.5f;
+        rawValues[LEFT_Y] = 0f;
+        rawValues[TRIGGER] = 0.5f;
+
+        inputShaper.shape(LEFT_X, rawValues, shapedValues);
+        assertEquals(-1f / 27f, shapedValues[LEFT_X], DELTA);
+        assertEquals(0f, shapedValues[LEFT_Y], DELTA);
+        inputShaper.shape(TRIGGER, rawValues, shapedValues);
+        assertEquals(1f / 216f, shapedValues[TRIGGER], DELTA);
+    }
+
+    @Test
+    public void testConfiguringTheSameStickReplacesItsFilter() {
+        InputShaper inputShaper = InputShaper.builder()
+            .stickFilter(Component.LEFT_STICK_X_AXIS, Component.LEFT_STICK_Y_AXIS, new ScaledRadialDeadzone(0.25f))
+            .stickFilter(Component.LEFT_STICK_X_AXIS, Component.LEFT_STICK_Y_AXIS, new AxialCrossDeadzone(0.1f))
+            .build();
+        rawValues[LEFT_X] = 0.5f;
+        rawValues[LEFT_Y] = 0.05f;
+
+        inputShaper.shape(LEFT_X, rawValues, shapedValues);
+        //the axial deadzone scales like LinearDeadzone, the radial one would have kept some of y
+        assertEquals(0.5f * 0.4f / 0.9f, shapedValues[LEFT_X], DELTA);
+        assertEquals(0f, shapedValues[LEFT_Y], DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSticksMayNotShareAnAxis() {
+        InputShaper.builder()
+            .stickFilter(Component.LEFT_STICK_X_AXIS, Component.LEFT_STICK_Y_AXIS, new ScaledRadialDeadzone(0.25f))
+            .stickFilter(Component.LEFT_STICK_Y_AXIS, Component.RIGHT_STICK_X_AXIS, new ScaledRadialDeadzone(0.25f));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAStickNeedsTwoAxes() {
+        InputShaper.builder().stickFilter(Component.LEFT_STICK_X_AXIS, Component.LEFT_STICK_X_AXIS, new ScaledRadialDeadzone(0.25f));
+    }
+}
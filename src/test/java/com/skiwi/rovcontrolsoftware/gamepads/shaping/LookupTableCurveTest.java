@@ -0,0 +1,49 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class LookupTableCurveTest {
+    private static final float DELTA = 1e-5f;
+
+    //value, result for the points 0, 0.1, 0.5 and 1
+    private static final float[][] CASES = {
+        { 0f, 0f },
+        { 1f / 3f, 0.1f },          //on a point
+        { 0.5f, 0.3f },             //halfway between two points
+        { -0.5f, -0.3f },
+        { 0.9f, 0.85f },
+        { 1f, 1f },                 //the last point
+        { -1f, -1f },
+        { 1.5f, 1f },               //clamped to the range
+        { -1.5f, -1f }
+    };
+
+    @Test
+    public void testInterpolation() {
+        float[] table = { 0f, 0.1f, 0.5f, 1f };
+        ResponseCurve curve = new LookupTableCurve(table);
+        //the curve keeps its own copy
+        table[1] = 1f;
+        for (float[] testCase : CASES) {
+            assertEquals("value " + testCase[0], testCase[1], curve.apply(testCase[0]), DELTA);
+        }
+    }
+
+    @Test
+    public void testTwoPointsAreALine() {
+        ResponseCurve curve = new LookupTableCurve(0f, 1f);
+        for (float value = -1f; value <= 1f; value += 0.125f) {
+            assertEquals(value, curve.apply(value), DELTA);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSinglePoint() {
+        new LookupTableCurve(1f);
+    }
+}
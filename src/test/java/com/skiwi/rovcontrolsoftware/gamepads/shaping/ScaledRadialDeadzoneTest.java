@@ -0,0 +1,57 @@
+package com.skiwi.rovcontrolsoftware.gamepads.shaping;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class ScaledRadialDeadzoneTest {
+    private static final float DELTA = 1e-5f;
+
+    //x, y, shaped x, shaped y
+    private static final float[][] CASES = {
+        { 0f, 0f, 0f, 0f },
+        { 0.2f, 0f, 0f, 0f },
+        { 0.17f, 0.17f, 0f, 0f },          //inside the circle, although each axis alone is not
+        { 0.25f, 0f, 0f, 0f },              //on the edge
+        { -0.5f, 0f, -1f / 3f, 0f },
+        { 0.3f, 0.4f, 0.2f, 0.8f / 3f },    //a quarter past the edge, in the same direction
+        { 1f, 0f, 1f, 0f },
+        { 0f, -1f, 0f, -1f },
+        { 0.6f, 0.8f, 0.6f, 0.8f },
+        { -0.6f, -0.8f, -0.6f, -0.8f }
+    };
+
+    @Test
+    public void testShapedValues() {
+        StickFilter deadzone = new ScaledRadialDeadzone(0.25f);
+        float[] output = new float[2];
+        for (float[] testCase : CASES) {
+            deadzone.apply(testCase[0], testCase[1], output);
+            String input = "(" + testCase[0] + ", " + testCase[1] + ")";
+            assertEquals(input, testCase[2], output[0], DELTA);
+            assertEquals(input, testCase[3], output[1], DELTA);
+        }
+    }
+
+    @Test
+    public void testNoDeadzonePassesEverythingThrough() {
+        StickFilter deadzone = new ScaledRadialDeadzone(0f);
+        float[] output = new float[2];
+        deadzone.apply(0.01f, -0.02f, output);
+        assertEquals(0.01f, output[0], DELTA);
+        assertEquals(-0.02f, output[1], DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeDeadzone() {
+        new ScaledRadialDeadzone(-0.1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFullDeadzone() {
+        new ScaledRadialDeadzone(1f);
+    }
+}
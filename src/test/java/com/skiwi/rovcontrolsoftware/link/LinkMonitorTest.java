@@ -0,0 +1,235 @@
+package com.skiwi.rovcontrolsoftware.link;
+
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+import com.skiwi.rovcontrolsoftware.commands.ConnectionManager;
+import com.skiwi.rovcontrolsoftware.commands.OfflineCommandBuffer;
+import com.skiwi.rovcontrolsoftware.commands.TextCommandProtocol;
+import com.skiwi.rovcontrolsoftware.telemetry.Telemetry;
+import com.skiwi.rovcontrolsoftware.telemetry.TextTelemetryParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs a command channel and two video streams over a {@link ShapingProxy} to a stand-in ROV that acknowledges every
+ * command. The focused camera streams at a quarter of the link rate, the secondary camera as fast as the link takes it
+ * until it is paused.
+ *
+ * @author Frank van Heeswijk
+ */
+public class LinkMonitorTest {
+    private static final long LINK_RATE = 256 * 1024;  //bytes per second
+    private static final int LINK_QUEUE_CAPACITY = 64 * 1024;   //a quarter of a second when full
+    private static final long MAX_QUEUE_DELAY = 50L;    //milliseconds
+    private static final long FOCUSED_VIDEO_RATE = LINK_RATE / 4;
+    private static final long COMMAND_INTERVAL = 20L;   //milliseconds
+    private static final int CHUNK_SIZE = 1460;
+
+    private final List<Closeable> closeables = new CopyOnWriteArrayList<>();
+    private final AtomicLong videoBytesReceived = new AtomicLong();
+
+    private volatile boolean secondaryStreaming;
+    private volatile boolean sendingCommands = true;
+
+    private ShapingProxy shapingProxy;
+    private ConnectionManager connectionManager;
+    private LinkMonitor linkMonitor;
+
+    @Before
+    public void setUp() throws IOException {
+        shapingProxy = new ShapingProxy(LINK_RATE, LINK_QUEUE_CAPACITY);
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int commandPort = shapingProxy.addRoute(0, new InetSocketAddress(loopback, startServer("test-ack-server", this::acknowledge)));
+        int focusedPort = shapingProxy.addRoute(0, new InetSocketAddress(loopback, startServer("test-focused-camera",
+                socket -> sendVideo(socket, FOCUSED_VIDEO_RATE))));
+        int secondaryPort = shapingProxy.addRoute(0, new InetSocketAddress(loopback, startServer("test-secondary-camera",
+                socket -> sendVideo(socket, 0L))));
+
+        Telemetry telemetry = new Telemetry(16, 16);
+        connectionManager = new ConnectionManager(new OfflineCommandBuffer(), 1000, 0L, 50L, 1000L);
+        connectionManager.setTelemetryParserSupplier(() -> new TextTelemetryParser(telemetry));
+        linkMonitor = new LinkMonitor(connectionManager, videoBytesReceived::get, MAX_QUEUE_DELAY);
+        telemetry.addListener(linkMonitor);
+
+        Socket focusedSocket = new Socket(loopback, focusedPort);
+        Socket secondarySocket = new Socket(loopback, secondaryPort);
+        closeables.add(focusedSocket);
+        closeables.add(secondarySocket);
+        startThread("test-focused-client", () -> receiveVideo(focusedSocket));
+        startThread("test-secondary-client", () -> receiveVideo(secondarySocket));
+        linkMonitor.setVideoLevelListener(videoLevel -> {
+            if (videoLevel != VideoLevel.FULL) {
+                closeQuietly(secondarySocket);
+            }
+        });
+        connectionManager.configure(loopback.getHostAddress(), commandPort, TextCommandProtocol::new);
+        startThread("test-command-sender", this::sendCommands);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        sendingCommands = false;
+        linkMonitor.close();
+        connectionManager.close();
+        assertTrue(connectionManager.awaitTermination(5, TimeUnit.SECONDS));
+        shapingProxy.close();
+        for (Closeable closeable : closeables) {
+            closeQuietly(closeable);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testVideoIsReducedUntilTheAcknowledgementsAreOnTimeAgain() throws Exception {
+        //the lowest round trip time is learned while the link has room to spare
+        linkMonitor.start();
+        await(() -> linkMonitor.getRoundTripTime().getCount() >= 10);
+        assertFalse(linkMonitor.isCongested());
+        assertEquals(VideoLevel.FULL, linkMonitor.getVideoLevel());
+
+        //the acknowledgements queue behind the video
+        secondaryStreaming = true;
+        await(() -> linkMonitor.getVideoLevel() != VideoLevel.FULL);
+        assertTrue(linkMonitor.getCongestionCount() > 0);
+        assertTrue(linkMonitor.getRoundTripTime().getMax() > TimeUnit.MILLISECONDS.toNanos(MAX_QUEUE_DELAY));
+        assertFalse(Double.isNaN(linkMonitor.getBudget()));
+
+        //the focused camera alone leaves room, so the round trip time comes back down and stays there
+        await(() -> !linkMonitor.isCongested() && linkMonitor.getQueueDelay() <= TimeUnit.MILLISECONDS.toNanos(MAX_QUEUE_DELAY));
+        long videoBytes = videoBytesReceived.get();
+        long ackCount = linkMonitor.getRoundTripTime().getCount();
+        long endTime = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (System.nanoTime() - endTime < 0) {
+            assertTrue("Queue delay of " + linkMonitor.getQueueDelay() / 1e6d + " ms",
+                    linkMonitor.getQueueDelay() <= TimeUnit.MILLISECONDS.toNanos(MAX_QUEUE_DELAY));
+            TimeUnit.MILLISECONDS.sleep(COMMAND_INTERVAL);
+        }
+        assertFalse(linkMonitor.isCongested());
+        assertTrue("The video stopped", videoBytesReceived.get() > videoBytes);
+        assertTrue("The acknowledgements stopped", linkMonitor.getRoundTripTime().getCount() > ackCount);
+    }
+
+    private void sendCommands() {
+        try {
+            for (int value = 0; sendingCommands; value = (value + 1) % 180) {
+                connectionManager.send(Actuator.CX, value);
+                connectionManager.flush();
+                TimeUnit.MILLISECONDS.sleep(COMMAND_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Acknowledges every command line the way the ROV firmware does.
+     */
+    private void acknowledge(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            writer.write(LinkMonitor.ACK_PREFIX + line + "\n");
+            writer.flush();
+        }
+    }
+
+    /**
+     * @param rate  the bytes per second to send, or zero for as fast as possible once the secondary camera streams
+     */
+    private void sendVideo(Socket socket, long rate) throws IOException {
+        OutputStream output = socket.getOutputStream();
+        byte[] chunk = new byte[CHUNK_SIZE];
+        try {
+            while (rate == 0L && !secondaryStreaming) {
+                TimeUnit.MILLISECONDS.sleep(1);
+            }
+            while (true) {
+                output.write(chunk);
+                if (rate > 0L) {
+                    TimeUnit.NANOSECONDS.sleep(CHUNK_SIZE * TimeUnit.SECONDS.toNanos(1) / rate);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void receiveVideo(Socket socket) {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try {
+            InputStream input = socket.getInputStream();
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                videoBytesReceived.addAndGet(read);
+            }
+        } catch (IOException e) {
+            //paused, or closed at the end of the test
+        }
+    }
+
+    /**
+     * Serves the first connection on a loopback port.
+     *
+     * @return  the port listened on
+     */
+    private int startServer(String name, SocketHandler handler) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        closeables.add(serverSocket);
+        startThread(name, () -> {
+            try (Socket socket = serverSocket.accept()) {
+                closeables.add(socket);
+                socket.setTcpNoDelay(true);
+                handler.handle(socket);
+            } catch (IOException e) {
+                //closed at the end of the test
+            }
+        });
+        return serverSocket.getLocalPort();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        while (!condition.getAsBoolean()) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private static void startThread(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            //nothing left to do
+        }
+    }
+
+    @FunctionalInterface
+    private interface SocketHandler {
+        void handle(Socket socket) throws IOException;
+    }
+}
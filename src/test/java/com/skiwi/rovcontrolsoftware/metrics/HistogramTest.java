@@ -0,0 +1,86 @@
+package com.skiwi.rovcontrolsoftware.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class HistogramTest {
+    @Test
+    public void testSmallValuesHaveBucketsOfTheirOwn() {
+        for (long value = 0; value < 32; value++) {
+            assertEquals(value, Histogram.indexOf(value));
+            assertEquals(value, Histogram.highestEquivalentValue((int)value));
+        }
+    }
+
+    @Test
+    public void testEveryValueLiesWithinTheBoundsOfItsBucket() {
+        for (int power = 0; power < 63; power++) {
+            long base = 1L << power;
+            for (long value : new long[] { base - 1, base, base + 1, base + (base >>> 1), base + (base - 1) }) {
+                if (value < 0) {
+                    continue;
+                }
+                int index = Histogram.indexOf(value);
+                long highest = Histogram.highestEquivalentValue(index);
+                assertTrue("Value " + value + " is above its bucket", value <= highest);
+                if (index > 0) {
+                    assertTrue("Value " + value + " is below its bucket", value > Histogram.highestEquivalentValue(index - 1));
+                }
+                //sixteen sub-buckets per power of two
+                assertTrue("Bucket of " + value + " is too wide", highest - value <= value / 16);
+            }
+        }
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        for (int index = 1; index < Histogram.indexOf(Long.MAX_VALUE); index++) {
+            long lowest = Histogram.highestEquivalentValue(index - 1) + 1;
+            assertEquals(index, Histogram.indexOf(lowest));
+            assertEquals(index, Histogram.indexOf(Histogram.highestEquivalentValue(index)));
+        }
+    }
+
+    @Test
+    public void testTheLargestValueFits() {
+        Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, Histogram.highestEquivalentValue(Histogram.indexOf(Long.MAX_VALUE)));
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100d));
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0L, histogram.getValueAtPercentile(50d));
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1000L, histogram.getCount());
+        assertEquals(1L, histogram.getMin());
+        assertEquals(1000L, histogram.getMax());
+        assertEquals(500.5d, histogram.getMean(), 0d);
+        assertEquals(1L, histogram.getValueAtPercentile(0d));
+        long median = histogram.getValueAtPercentile(50d);
+        assertTrue("Median " + median, median >= 500 && median <= 500 + 500 / 16);
+        //never above the largest value recorded
+        assertEquals(1000L, histogram.getValueAtPercentile(100d));
+    }
+
+    @Test
+    public void testNegativeValuesCountAsZero() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5L);
+        assertEquals(0L, histogram.getMin());
+        assertEquals(0L, histogram.getValueAtPercentile(100d));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPercentileOutOfRange() {
+        new Histogram().getValueAtPercentile(100.5d);
+    }
+}
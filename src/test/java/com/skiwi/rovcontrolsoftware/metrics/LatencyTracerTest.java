@@ -0,0 +1,102 @@
+package com.skiwi.rovcontrolsoftware.metrics;
+
+import com.skiwi.rovcontrolsoftware.commands.CommandPipeline;
+import com.skiwi.rovcontrolsoftware.commands.NioCommandChannel;
+import com.skiwi.rovcontrolsoftware.commands.TextCommandProtocol;
+import com.skiwi.rovcontrolsoftware.control.ControlEngine;
+import com.skiwi.rovcontrolsoftware.control.OutputStage;
+import com.skiwi.rovcontrolsoftware.gamepads.VirtualController;
+import com.skiwi.rovcontrolsoftware.gamepads.XboxGamepad;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Traces an input from a virtual gamepad through the control engine and the command pipeline onto a loopback socket.
+ *
+ * @author Frank van Heeswijk
+ */
+public class LatencyTracerTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final LatencyTracer latencyTracer = new LatencyTracer();
+
+    private ServerSocket serverSocket;
+    private NioCommandChannel channel;
+    private long time;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        serverSocket.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testEveryStageOfAnInputIsTraced() throws Exception {
+        channel = NioCommandChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()), 1000, new TextCommandProtocol());
+        channel.setLatencyTracer(latencyTracer);
+        CommandPipeline commandPipeline = new CommandPipeline(channel, 10L);
+        commandPipeline.setLatencyTracer(latencyTracer);
+        OutputStage outputStage = new OutputStage(commandPipeline::submit, () -> time);
+        ControlEngine.configureOutputStage(outputStage);
+        ControlEngine controlEngine = new ControlEngine(outputStage);
+
+        VirtualController controller = new VirtualController("Virtual gamepad");
+        XboxGamepad gamepad = new XboxGamepad(controller, 1_000_000L, 1_000_000L);
+        gamepad.setLatencyTracer(latencyTracer);
+        controlEngine.bind(gamepad);
+
+        try (Socket socket = serverSocket.accept()) {
+            //the initial values are not caused by any input
+            controlEngine.reset();
+            commandPipeline.flush();
+
+            //a full deflection of the right stick pans the camera on the next tick
+            time = SECOND;
+            controller.push(XboxGamepad.Component.RIGHT_STICK_X_AXIS, 1f, time);
+            assertEquals(1, gamepad.pollOnce());
+            controlEngine.step(time, TICK);
+            outputStage.step(time, TICK);
+            commandPipeline.flush();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            String line;
+            do {
+                line = reader.readLine();
+                assertNotNull("The pan never arrived", line);
+            } while (!line.equals("cx 95"));
+        }
+
+        //a stage records only samples with an origin, so every count is one traced input
+        while (latencyTracer.getHistogram(LatencyTracer.Stage.WRITTEN).getCount() == 0) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        long previousLatency = 0L;
+        for (LatencyTracer.Stage stage : LatencyTracer.Stage.values()) {
+            Histogram histogram = latencyTracer.getHistogram(stage);
+            assertEquals(stage.toString(), 1L, histogram.getCount());
+            assertTrue(stage + " took " + histogram.getMax() + " ns", histogram.getMax() >= previousLatency && histogram.getMax() < 5 * SECOND);
+            previousLatency = histogram.getMax();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.skiwi.rovcontrolsoftware.recording;
+
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class SessionRecorderTest {
+    private static final long SEGMENT_SIZE = 4096L;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("session").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testCloseCutsTheSegmentsOffAfterTheirRecords() throws Exception {
+        SessionRecorder sessionRecorder = SessionRecorder.open(directory, SEGMENT_SIZE);
+        sessionRecorder.recordCommand(Actuator.CX, 90, 0L);
+        sessionRecorder.recordCommand(Actuator.CY, 80, 0L);
+        sessionRecorder.recordCommand(Actuator.ML, -500, 0L);
+        sessionRecorder.close();
+        assertTrue(sessionRecorder.awaitTermination(5, TimeUnit.SECONDS));
+
+        //the header and three records, and the header of the spare that was never used
+        assertEquals(4L * SessionRecorder.RECORD_SIZE, new File(directory, SessionRecorder.segmentFileName(0)).length());
+        assertEquals((long)SessionRecorder.RECORD_SIZE, new File(directory, SessionRecorder.segmentFileName(1)).length());
+
+        List<String> commands = new ArrayList<>();
+        try (SessionReader sessionReader = SessionReader.open(directory)) {
+            SessionRecord record = new SessionRecord();
+            while (sessionReader.next(record)) {
+                if (record.getType() == RecordType.COMMAND) {
+                    commands.add(record.getActuator().getKey() + " " + record.getCommandValue());
+                }
+            }
+        }
+        assertEquals(Arrays.asList("cx 90", "cy 80", "ml -500"), commands);
+    }
+
+    @Test
+    public void testRecordsAfterCloseAreDropped() throws Exception {
+        SessionRecorder sessionRecorder = SessionRecorder.open(directory, SEGMENT_SIZE);
+        sessionRecorder.close();
+        sessionRecorder.recordCommand(Actuator.CX, 90, 0L);
+        assertTrue(sessionRecorder.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(0L, sessionRecorder.getRecordCount());
+        assertEquals(1L, sessionRecorder.getDroppedCount());
+    }
+}
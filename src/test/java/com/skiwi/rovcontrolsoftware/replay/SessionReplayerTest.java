@@ -0,0 +1,88 @@
+package com.skiwi.rovcontrolsoftware.replay;
+
+import com.skiwi.rovcontrolsoftware.commands.Actuator;
+import com.skiwi.rovcontrolsoftware.gamepads.GamepadListener;
+import com.skiwi.rovcontrolsoftware.gamepads.XboxGamepad;
+import com.skiwi.rovcontrolsoftware.recording.SessionReader;
+import com.skiwi.rovcontrolsoftware.recording.SessionRecorder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class SessionReplayerTest {
+    private static final long SEGMENT_SIZE = 4096L;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("session").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testEveryRecordedGamepadIsReplayedOnItsOwn() throws Exception {
+        SessionRecorder sessionRecorder = SessionRecorder.open(directory, SEGMENT_SIZE);
+        sessionRecorder.recordGamepadConnected(0);
+        sessionRecorder.recordGamepadConnected(1);
+        sessionRecorder.recordGamepadInput(0, XboxGamepad.Component.LEFT_STICK_X_AXIS, 1_000L, 0.5f);
+        sessionRecorder.recordGamepadInput(1, XboxGamepad.Component.LEFT_STICK_X_AXIS, 2_000L, -0.5f);
+        sessionRecorder.recordGamepadDisconnected(0);
+        sessionRecorder.recordGamepadInput(1, XboxGamepad.Component.LEFT_STICK_X_AXIS, 3_000L, 0.25f);
+        sessionRecorder.recordCommand(Actuator.ML, 100, 0L);
+        sessionRecorder.close();
+
+        List<XboxGamepad> connected = new ArrayList<>();
+        List<XboxGamepad> disconnected = new ArrayList<>();
+        List<List<Float>> values = new ArrayList<>();
+        SessionReplayer sessionReplayer = new SessionReplayer();
+        sessionReplayer.setGamepadListener(new GamepadListener() {
+            @Override
+            public void onConnected(XboxGamepad gamepad) {
+                List<Float> gamepadValues = new ArrayList<>();
+                values.add(gamepadValues);
+                gamepad.addAxisListener(XboxGamepad.Component.LEFT_STICK_X_AXIS, (component, time, value) -> gamepadValues.add(value));
+                connected.add(gamepad);
+            }
+
+            @Override
+            public void onDisconnected(XboxGamepad gamepad) {
+                disconnected.add(gamepad);
+            }
+        });
+
+        SessionReplayer.ReplayResult result;
+        try (SessionReader sessionReader = SessionReader.open(directory)) {
+            result = sessionReplayer.replay(sessionReader, SessionReplayer.AS_FAST_AS_POSSIBLE);
+        }
+
+        assertEquals(2, connected.size());
+        assertEquals(Arrays.asList(connected.get(0)), disconnected);
+        assertEquals(Arrays.asList(0.5f), values.get(0));
+        assertEquals(Arrays.asList(-0.5f, 0.25f), values.get(1));
+        assertEquals(3L, result.getInputCount());
+        assertEquals(1, result.getRecordedCommands().size());
+    }
+}
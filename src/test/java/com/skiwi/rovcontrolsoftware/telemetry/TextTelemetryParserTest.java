@@ -0,0 +1,72 @@
+package com.skiwi.rovcontrolsoftware.telemetry;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class TextTelemetryParserTest {
+    @Test
+    public void testParseNumber() {
+        assertEquals(90d, parseNumber("90"), 0d);
+        assertEquals(-1.5d, parseNumber("-1.5"), 0d);
+        assertEquals(2d, parseNumber("+2"), 0d);
+        assertEquals(0.5d, parseNumber(".5"), 0d);
+        assertEquals(5d, parseNumber("5."), 0d);
+        assertEquals(1000d, parseNumber("1e3"), 0d);
+        assertEquals(0.025d, parseNumber("2.5E-2"), 1e-18d);
+        assertEquals(12.5d, parseNumber("1.25e+1"), 0d);
+        assertEquals(0d, parseNumber("-0"), 0d);
+    }
+
+    @Test
+    public void testParseNumberBeyondTheMantissa() {
+        assertEquals(12345678901234567890d, parseNumber("12345678901234567890"), 1e4d);
+        assertEquals(0.1234567890123456789d, parseNumber("0.1234567890123456789"), 1e-17d);
+        assertEquals(1e300d, parseNumber("1e300"), 1e286d);
+        assertEquals(1e-300d, parseNumber("1e-300"), 1e-314d);
+    }
+
+    @Test
+    public void testParseNumberRejectsOtherText() {
+        for (String text : new String[] { "", "-", "+", ".", "e5", "1e", "1e-", "abc", "1.2.3", "12x", "1 2", "0x10" }) {
+            assertTrue("Parsed " + text, Double.isNaN(parseNumber(text)));
+        }
+    }
+
+    @Test
+    public void testParseNumberOnlyReadsTheGivenRange() {
+        byte[] bytes = "ack 42 99".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(42d, TextTelemetryParser.parseNumber(bytes, 4, 6), 0d);
+    }
+
+    @Test
+    public void testLinesAreSplitAtTheLastSpace() {
+        Telemetry telemetry = new Telemetry(16, 4);
+        TextTelemetryParser parser = new TextTelemetryParser(telemetry);
+        //lines may be split over reads
+        parser.parse(buffer("depth 1.5\r\nack c"), 10L);
+        parser.parse(buffer("x 90\nbroken\n\n"), 20L);
+
+        assertEquals(1.5d, telemetry.findChannel("depth").getLatestValue(), 0d);
+        assertEquals(10L, telemetry.findChannel("depth").getLatestTime());
+        assertEquals(90d, telemetry.findChannel("ack cx").getLatestValue(), 0d);
+        assertEquals(20L, telemetry.findChannel("ack cx").getLatestTime());
+        assertEquals(2L, telemetry.getSampleCount());
+        assertEquals(1L, telemetry.getMalformedCount());
+    }
+
+    private static double parseNumber(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return TextTelemetryParser.parseNumber(bytes, 0, bytes.length);
+    }
+
+    private static ByteBuffer buffer(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
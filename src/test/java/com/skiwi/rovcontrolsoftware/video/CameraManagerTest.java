@@ -0,0 +1,179 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class CameraManagerTest {
+    private static final int TIMEOUT = 5000;
+    private static final int PROBE_TIMEOUT = 300;
+    private static final long DEBOUNCE_DELAY = 100L;
+
+    private final BlockingQueue<String> streamEvents = new LinkedBlockingQueue<>();
+    private final List<MjpegStream.State> states = Collections.synchronizedList(new ArrayList<>());
+
+    private StubMjpegServer server;
+    private DecodePool decodePool;
+    private CameraManager cameraManager;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubMjpegServer();
+        decodePool = new DecodePool(1, 10d, 1);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (cameraManager != null) {
+            cameraManager.close();
+        }
+        decodePool.close();
+        server.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testOnlyTheUrlThatStaysUnchangedIsProbed() throws Exception {
+        cameraManager = open(TIMEOUT);
+        //typing the URL, every prefix well within the debounce delay of the previous one
+        String url = server.getUrl();
+        for (int length = "http://".length(); length <= url.length(); length++) {
+            cameraManager.setUrl(url.substring(0, length));
+        }
+
+        try (StubMjpegServer.Connection probeConnection = server.accept(); StubMjpegServer.Connection connection = server.accept()) {
+            assertEquals("open " + url, streamEvents.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+            assertEquals(1L, cameraManager.getProbeCount());
+            assertEquals(1L, cameraManager.getOpenedStreamCount());
+            assertEquals(url, cameraManager.getActiveStream().getUrl());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testTheSupersededStreamIsClosed() throws Exception {
+        cameraManager = open(TIMEOUT);
+        byte[] jpeg = StubMjpegServer.createJpeg(32, 32, 1L);
+        try (StubMjpegServer secondServer = new StubMjpegServer()) {
+            cameraManager.setUrl(server.getUrl());
+            try (StubMjpegServer.Connection probeConnection = server.accept(); StubMjpegServer.Connection connection = server.accept()) {
+                assertEquals("open " + server.getUrl(), streamEvents.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+                MjpegStream firstStream = cameraManager.getActiveStream();
+                connection.sendPart(jpeg);
+                await(() -> firstStream.getVideoMetrics().getDecodedFrameCount() == 1L);
+
+                cameraManager.setUrl(secondServer.getUrl());
+                try (StubMjpegServer.Connection secondProbeConnection = secondServer.accept(); StubMjpegServer.Connection secondConnection = secondServer.accept()) {
+                    //the old stream is gone before the new one is shown
+                    assertEquals("closed", streamEvents.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+                    assertEquals("open " + secondServer.getUrl(), streamEvents.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+                    connection.awaitClosed(TIMEOUT);
+
+                    MjpegStream secondStream = cameraManager.getActiveStream();
+                    secondConnection.sendPart(jpeg);
+                    await(() -> secondStream.getVideoMetrics().getDecodedFrameCount() == 1L);
+                    //the pool counts a decode once it is done with it
+                    await(() -> decodePool.getDecodeCount() == 2L);
+                    assertEquals(1L, firstStream.getVideoMetrics().getDecodedFrameCount());
+                }
+            }
+        }
+        assertEquals(2L, cameraManager.getOpenedStreamCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testACameraThatDoesNotAnswerIsOfflineAfterTheProbeTimeout() throws Exception {
+        cameraManager = open(PROBE_TIMEOUT);
+        try (ServerSocket silentServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            cameraManager.setUrl(url(silentServer));
+            await(() -> cameraManager.getFailedProbeCount() >= 1L);
+        }
+        assertEquals(Arrays.asList(MjpegStream.State.CONNECTING, MjpegStream.State.OFFLINE), states.subList(0, 2));
+        assertEquals(0L, cameraManager.getOpenedStreamCount());
+        assertNull(cameraManager.getActiveStream());
+        assertTrue(streamEvents.isEmpty());
+    }
+
+    @Test(timeout = 10000)
+    public void testAProbeThatHangsDoesNotHoldUpTheNextUrl() throws Exception {
+        cameraManager = open(TIMEOUT);
+        try (ServerSocket silentServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            cameraManager.setUrl(url(silentServer));
+            await(() -> cameraManager.getProbeCount() == 1L);
+
+            long startTime = System.nanoTime();
+            cameraManager.setUrl(server.getUrl());
+            try (StubMjpegServer.Connection probeConnection = server.accept(); StubMjpegServer.Connection connection = server.accept()) {
+                assertEquals("open " + server.getUrl(), streamEvents.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+                long elapsedTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                assertTrue("The stream opened after " + elapsedTime + " ms", elapsedTime < TIMEOUT);
+            }
+        }
+        assertEquals(2L, cameraManager.getProbeCount());
+        //the answer of the first probe no longer matters
+        assertEquals(0L, cameraManager.getFailedProbeCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testOnlyAVisibleStreamIsDecoded() throws Exception {
+        cameraManager = open(TIMEOUT);
+        cameraManager.setUrl(server.getUrl());
+        try (StubMjpegServer.Connection probeConnection = server.accept(); StubMjpegServer.Connection connection = server.accept()) {
+            assertEquals("open " + server.getUrl(), streamEvents.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+            MjpegStream stream = cameraManager.getActiveStream();
+            VideoMetrics videoMetrics = stream.getVideoMetrics();
+
+            cameraManager.setVisible(false);
+            await(() -> !stream.isDecoding());
+            connection.sendPart(StubMjpegServer.createJpeg(32, 32, 1L));
+            await(() -> videoMetrics.getReceivedFrameCount() == 1L);
+
+            cameraManager.setVisible(true);
+            await(stream::isDecoding);
+            connection.sendPart(StubMjpegServer.createJpeg(32, 32, 2L));
+            //a decoded frame is counted just before it can be taken
+            DecodedFrame frame;
+            while ((frame = stream.pollFrame()) == null) {
+                TimeUnit.MILLISECONDS.sleep(1);
+            }
+            assertEquals(1L, frame.getSequence());
+            frame.release();
+            assertEquals(1L, videoMetrics.getDecodedFrameCount());
+            await(() -> decodePool.getDecodeCount() == 1L);
+        }
+    }
+
+    private CameraManager open(int connectTimeout) {
+        CameraManager cameraManager = new CameraManager(connectTimeout, TIMEOUT, 50L, DEBOUNCE_DELAY, decodePool);
+        cameraManager.setStreamListener(stream -> streamEvents.add((stream == null) ? "closed" : "open " + stream.getUrl()));
+        cameraManager.setStateListener(states::add);
+        return cameraManager;
+    }
+
+    private static String url(ServerSocket serverSocket) {
+        return "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + serverSocket.getLocalPort() + "/video";
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+        while (!condition.getAsBoolean() && System.nanoTime() - deadline < 0) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,99 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class CameraProbeTest {
+    private static final int TIMEOUT = 300;
+
+    private StubMjpegServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubMjpegServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testACameraThatAnswersWithAStreamIsOnline() throws Exception {
+        Thread camera = new Thread(() -> {
+            try (StubMjpegServer.Connection connection = server.accept()) {
+                connection.awaitClosed(5000);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        camera.start();
+        CameraProbe.probe(MjpegStreamReader.parseUri(server.getUrl()), TIMEOUT);
+        camera.join();
+    }
+
+    @Test(timeout = 10000)
+    public void testACameraThatDoesNotAnswerTimesOut() throws Exception {
+        //the connection is accepted by the backlog, but nothing ever reads the request
+        try (ServerSocket silentServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            long startTime = System.nanoTime();
+            try {
+                CameraProbe.probe(uri(silentServer), TIMEOUT);
+                fail("A camera that does not answer should not be online");
+            } catch (SocketTimeoutException e) {
+                //expected
+            }
+            long elapsedTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            assertTrue("The probe gave up after " + elapsedTime + " ms", elapsedTime >= TIMEOUT * 4 / 5 && elapsedTime < 5 * TIMEOUT);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testAnAnswerThatIsNotAStreamFails() throws Exception {
+        try (ServerSocket webServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread camera = new Thread(() -> {
+                try (Socket socket = webServer.accept()) {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+                    while (!reader.readLine().isEmpty()) {
+                        //skip the request
+                    }
+                    socket.getOutputStream().write("HTTP/1.0 404 Not Found\r\nContent-Type: text/html\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                    socket.getOutputStream().flush();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            camera.start();
+            try {
+                CameraProbe.probe(uri(webServer), TIMEOUT);
+                fail("A page that is not a stream should not be online");
+            } catch (SocketTimeoutException e) {
+                fail("The answer should have been rejected, not waited for");
+            } catch (IOException e) {
+                //expected
+            }
+            camera.join();
+        }
+    }
+
+    private static URI uri(ServerSocket serverSocket) {
+        return MjpegStreamReader.parseUri("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + serverSocket.getLocalPort() + "/video");
+    }
+}
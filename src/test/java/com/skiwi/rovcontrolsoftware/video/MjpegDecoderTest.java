@@ -0,0 +1,92 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class MjpegDecoderTest {
+    private static final int TIMEOUT = 5000;
+    private static final int FRAME_COUNT = 6;
+
+    private StubMjpegServer server;
+    private DecodePool decodePool;
+    private MjpegStream stream;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubMjpegServer();
+        //a stream that is not focused is decoded once, and then not again for a hundred seconds
+        decodePool = new DecodePool(1, 0.01d, 2);
+        stream = new MjpegStream(server.getUrl(), TIMEOUT, TIMEOUT, 50L, decodePool);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        stream.close();
+        decodePool.close();
+        server.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testAFrameWaitingForTheDecoderIsReplacedByANewerOne() throws Exception {
+        stream.setFocused(false);
+        stream.start();
+        VideoMetrics videoMetrics = stream.getVideoMetrics();
+        try (StubMjpegServer.Connection connection = server.accept()) {
+            connection.sendPart(StubMjpegServer.createJpeg(64, 48, 0L));
+            awaitEquals(1L, videoMetrics::getDecodedFrameCount);
+            for (int i = 1; i < FRAME_COUNT; i++) {
+                connection.sendPart(StubMjpegServer.createJpeg(64, 48, i));
+            }
+        }
+
+        //the newest frame waits, every one before it that came after the decode was replaced
+        awaitEquals(FRAME_COUNT - 2, videoMetrics::getDroppedBeforeDecodeCount);
+        assertEquals(FRAME_COUNT, videoMetrics.getReceivedFrameCount());
+        assertEquals(1L, videoMetrics.getDecodedFrameCount());
+        DecodedFrame frame = stream.pollFrame();
+        assertEquals(0L, frame.getSequence());
+        //decoded at the secondary subsampling
+        assertEquals(32, frame.getWidth());
+        assertEquals(24, frame.getHeight());
+        frame.release();
+    }
+
+    @Test(timeout = 10000)
+    public void testADecodedFrameWaitingForTheScreenIsReplacedByANewerOne() throws Exception {
+        stream.start();
+        VideoMetrics videoMetrics = stream.getVideoMetrics();
+        try (StubMjpegServer.Connection connection = server.accept()) {
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                connection.sendPart(StubMjpegServer.createJpeg(64, 48, i));
+                awaitEquals(i + 1, videoMetrics::getDecodedFrameCount);
+            }
+        }
+
+        assertEquals(0L, videoMetrics.getDroppedBeforeDecodeCount());
+        assertEquals(FRAME_COUNT - 1, videoMetrics.getDroppedBeforeRenderCount());
+        DecodedFrame frame = stream.pollFrame();
+        assertEquals(FRAME_COUNT - 1, frame.getSequence());
+        assertEquals(64, frame.getWidth());
+        assertEquals(48, frame.getHeight());
+        frame.release();
+        assertNull(stream.pollFrame());
+    }
+
+    private static void awaitEquals(long expected, LongSupplier actual) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+        while (actual.getAsLong() != expected && System.nanoTime() - deadline < 0) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        assertEquals(expected, actual.getAsLong());
+    }
+}
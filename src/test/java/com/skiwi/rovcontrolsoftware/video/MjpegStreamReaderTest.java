@@ -0,0 +1,120 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Frank van Heeswijk
+ */
+public class MjpegStreamReaderTest {
+    private static final int TIMEOUT = 5000;
+    private static final long RECONNECT_DELAY = 50L;
+
+    private final BlockingQueue<ReceivedFrame> frames = new LinkedBlockingQueue<>();
+    private final List<MjpegStream.State> states = Collections.synchronizedList(new ArrayList<>());
+    private final VideoMetrics videoMetrics = new VideoMetrics();
+
+    private StubMjpegServer server;
+    private MjpegStreamReader reader;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubMjpegServer();
+        reader = new MjpegStreamReader(server.getUrl(), TIMEOUT, TIMEOUT, RECONNECT_DELAY, videoMetrics);
+        reader.addFrameListener(frame -> frames.add(new ReceivedFrame(frame)));
+        reader.setStateListener(states::add);
+        reader.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+        server.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testFramesSplitOverReadsArriveWhole() throws Exception {
+        byte[] firstJpeg = StubMjpegServer.createJpeg(64, 48, 1L);
+        byte[] secondJpeg = StubMjpegServer.createJpeg(64, 48, 2L);
+        try (StubMjpegServer.Connection connection = server.accept()) {
+            assertTrue(connection.getRequest(), connection.getRequest().startsWith("GET /video?fps=10 HTTP/1.0\r\n"));
+            //inside the start of image marker, inside a segment length, inside the entropy-coded data and inside the end of image marker
+            connection.sendPartSplit(firstJpeg, 1, 5, firstJpeg.length / 2, firstJpeg.length - 1);
+            connection.sendPart(secondJpeg);
+
+            assertFrame(firstJpeg, 0L, frames.take());
+            assertFrame(secondJpeg, 1L, frames.take());
+        }
+        assertEquals(0L, videoMetrics.getCorruptFrameCount());
+        assertEquals(2L, videoMetrics.getReceivedFrameCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testATruncatedPartIsDroppedAndCounted() throws Exception {
+        byte[] truncatedJpeg = StubMjpegServer.createJpeg(64, 48, 3L);
+        byte[] jpeg = StubMjpegServer.createJpeg(64, 48, 4L);
+        try (StubMjpegServer.Connection connection = server.accept()) {
+            connection.sendPart(truncatedJpeg, truncatedJpeg.length * 2 / 3);
+            connection.sendPart(jpeg);
+
+            assertFrame(jpeg, 0L, frames.take());
+            awaitEquals(1L, videoMetrics::getCorruptFrameCount);
+        }
+        assertTrue(frames.isEmpty());
+    }
+
+    @Test(timeout = 10000)
+    public void testReconnectAfterTheCameraClosedTheStream() throws Exception {
+        byte[] firstJpeg = StubMjpegServer.createJpeg(32, 32, 5L);
+        byte[] secondJpeg = StubMjpegServer.createJpeg(32, 32, 6L);
+        try (StubMjpegServer.Connection connection = server.accept()) {
+            connection.sendPart(firstJpeg);
+            assertFrame(firstJpeg, 0L, frames.take());
+        }
+        try (StubMjpegServer.Connection connection = server.accept()) {
+            connection.sendPart(secondJpeg);
+            //the sequence goes on over connections
+            assertFrame(secondJpeg, 1L, frames.take());
+        }
+        awaitEquals(6L, () -> Math.min(states.size(), 6));
+        assertEquals(Arrays.asList(MjpegStream.State.CONNECTING, MjpegStream.State.ONLINE, MjpegStream.State.OFFLINE,
+                MjpegStream.State.CONNECTING, MjpegStream.State.ONLINE, MjpegStream.State.OFFLINE), states.subList(0, 6));
+    }
+
+    private static void assertFrame(byte[] expectedJpeg, long expectedSequence, ReceivedFrame frame) {
+        assertArrayEquals(expectedJpeg, frame.data);
+        assertEquals(expectedSequence, frame.sequence);
+    }
+
+    private static void awaitEquals(long expected, LongSupplier actual) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+        while (actual.getAsLong() != expected && System.nanoTime() - deadline < 0) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        assertEquals(expected, actual.getAsLong());
+    }
+
+    private static class ReceivedFrame {
+        private final byte[] data;
+        private final long sequence;
+
+        private ReceivedFrame(EncodedFrame frame) {
+            //the frame is only valid during the call
+            this.data = Arrays.copyOf(frame.getData(), frame.getLength());
+            this.sequence = frame.getSequence();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.skiwi.rovcontrolsoftware.video;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A camera on the loopback interface that serves JPEG images as a multipart MJPEG stream, one connection at a time,
+ * exactly when and in the pieces the test says.
+ *
+ * @author Frank van Heeswijk
+ */
+class StubMjpegServer implements Closeable {
+    private static final String BOUNDARY = "frame";
+
+    private final ServerSocket serverSocket;
+
+    StubMjpegServer() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    String getUrl() {
+        return "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + serverSocket.getLocalPort() + "/video?fps=10";
+    }
+
+    /**
+     * Waits for the reader to connect, reads its request and answers with the header of the stream.
+     */
+    Connection accept() throws IOException {
+        Socket socket = serverSocket.accept();
+        Connection connection = new Connection(socket);
+        connection.send(("HTTP/1.0 200 OK\r\nContent-Type: multipart/x-mixed-replace; boundary=" + BOUNDARY + "\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+        return connection;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * Returns a JPEG image of noise, which gives it entropy-coded data of a realistic size.
+     */
+    static byte[] createJpeg(int width, int height, long seed) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, "jpeg", output)) {
+            throw new IOException("No JPEG image writer is available");
+        }
+        return output.toByteArray();
+    }
+
+    static class Connection implements Closeable {
+        private final Socket socket;
+        private final OutputStream output;
+        private final String request;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.output = socket.getOutputStream();
+            this.request = readRequest(socket.getInputStream());
+        }
+
+        String getRequest() {
+            return request;
+        }
+
+        void sendPart(byte[] jpeg) throws IOException {
+            sendPart(jpeg, jpeg.length);
+        }
+
+        /**
+         * Sends a part that is cut off after the given amount of bytes of the image, the way a camera that restarts its
+         * encoder does.
+         */
+        void sendPart(byte[] jpeg, int length) throws IOException {
+            send(partHeader(jpeg.length));
+            output.write(jpeg, 0, length);
+            send(new byte[0]);
+        }
+
+        /**
+         * Sends a part in pieces that end at the given offsets of the image, pausing in between so that the reader
+         * receives every piece in a read of its own.
+         */
+        void sendPartSplit(byte[] jpeg, int... splitOffsets) throws IOException, InterruptedException {
+            send(partHeader(jpeg.length));
+            int offset = 0;
+            for (int splitOffset : splitOffsets) {
+                output.write(jpeg, offset, splitOffset - offset);
+                output.flush();
+                TimeUnit.MILLISECONDS.sleep(20);
+                offset = splitOffset;
+            }
+            output.write(jpeg, offset, jpeg.length - offset);
+            send(new byte[0]);
+        }
+
+        /**
+         * Waits for the reader to close the connection.
+         *
+         * @throws java.net.SocketTimeoutException if it is still open after the timeout in milliseconds
+         */
+        void awaitClosed(int timeout) throws IOException {
+            socket.setSoTimeout(timeout);
+            InputStream input = socket.getInputStream();
+            while (input.read() >= 0) {
+                //the reader sends nothing after its request
+            }
+        }
+
+        private void send(byte[] bytes) throws IOException {
+            output.write(bytes);
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+
+        private static byte[] partHeader(int length) {
+            return ("\r\n--" + BOUNDARY + "\r\nContent-Type: image/jpeg\r\nContent-Length: " + length + "\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        private static String readRequest(InputStream input) throws IOException {
+            StringBuilder request = new StringBuilder();
+            while (request.length() < 4 || !request.substring(request.length() - 4).equals("\r\n\r\n")) {
+                int value = input.read();
+                if (value < 0) {
+                    throw new IOException("The reader closed the connection during its request");
+                }
+                request.append((char)value);
+            }
+            return request.toString();
+        }
+    }
+}